@@ -151,7 +151,8 @@ public class FileLogger {
     }
 
     /**
-     * Writes an array of log lines to the file.
+     * Writes an array of log lines to the file. Room is made for all of them at once,
+     * and only the last lines are written if there are more than the maximum size.
      *
      * @param logLines Log lines.
      */
@@ -159,8 +160,27 @@ public class FileLogger {
         if (logLines == null || logLines.length == 0) {
             return;
         }
-        for (final String logLine : logLines) {
-            addLogLine(logLine);
+        final List<byte[]> entries = new ArrayList<>(logLines.length);
+        try {
+            for (final String logLine : logLines) {
+                if (!TextUtils.isEmpty(logLine)) {
+                    entries.add(logLine.getBytes(UTF8));
+                }
+            }
+            final int numToAdd = Math.min(entries.size(), maxSize);
+            final int numToRemove = Math.min(getSize(), getSize() + numToAdd - maxSize);
+            if (numToRemove >= getSize()) {
+                file.clear();
+            } else {
+                for (int i = 0; i < numToRemove; i++) {
+                    file.remove();
+                }
+            }
+            for (int i = entries.size() - numToAdd; i < entries.size(); i++) {
+                file.add(entries.get(i));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write log lines", e);
         }
     }
 
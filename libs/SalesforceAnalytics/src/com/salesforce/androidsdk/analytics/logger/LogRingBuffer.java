@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.analytics.logger;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer that many threads can add to and a single thread drains.
+ * Adding never blocks or allocates: when the buffer is full, the element is rejected.
+ * Each slot carries a sequence number telling whether it is free for the producer
+ * claiming that position or holds an element ready for the consumer.
+ */
+class LogRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private volatile long consumerPosition;
+
+    /**
+     * Parameterized constructor.
+     *
+     * @param capacity Capacity (rounded up to a power of two).
+     */
+    LogRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the capacity of the buffer.
+     *
+     * @return Capacity.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element. Can be called from any thread.
+     *
+     * @param element Element.
+     * @return True - if added, False - if the buffer was full.
+     */
+    boolean offer(E element) {
+        long position = producerPosition.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+
+                    // Publishes the element to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = producerPosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to maxElements elements to the given list, oldest first.
+     * Must only be called from one thread at a time.
+     *
+     * @param list List to add the elements to.
+     * @param maxElements Maximum number of elements to move.
+     * @return Number of elements moved.
+     */
+    int drainTo(List<E> list, int maxElements) {
+        long position = consumerPosition;
+        int count = 0;
+        while (count < maxElements) {
+            final int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+
+                // Empty, or the producer of that position has not published its element yet
+                break;
+            }
+            list.add(elements.get(index));
+            elements.set(index, null);
+
+            // Hands the slot back to producers, one lap later
+            sequences.set(index, position + mask + 1);
+            position++;
+            count++;
+        }
+        consumerPosition = position;
+        return count;
+    }
+
+    /**
+     * Returns true if there is no element ready to be drained.
+     *
+     * @return True - if empty, False - otherwise.
+     */
+    boolean isEmpty() {
+        final long position = consumerPosition;
+        return sequences.get((int) (position & mask)) != position + 1;
+    }
+
+    /**
+     * Returns the approximate number of elements in the buffer.
+     *
+     * @return Number of elements.
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(capacity(), producerPosition.get() - consumerPosition));
+    }
+}
@@ -35,18 +35,25 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple logger that allows components to log statements of different log levels. This class
  * also provides the ability to break down logs at the component level and set different log
  * levels for different components. The available options for log output are console and file.
+ * Log lines destined to the file are accumulated in a bounded buffer and written in batches
+ * on a background thread. Logging never blocks: when the buffer is full, the line is dropped
+ * from the file (it still goes to the console) and counted.
  *
  * @author bhariharan
  */
@@ -57,7 +64,13 @@ public class SalesforceLogger {
     private static final String LOG_LINE_FORMAT_WITH_EXCEPTION = "TIME: %s, LEVEL: %s, TAG: %s, MESSAGE: %s, EXCEPTION: %s";
     private static final String US_DATE_FORMAT = "MM-dd HH:mm:ss.SSS";
     private static final String SF_LOGGER_PREFS = "sf_logger_prefs";
+    private static final String DROPPED_LOG_LINES_FORMAT = "TIME: %s, LEVEL: %s, TAG: %s, MESSAGE: %d log lines dropped";
+    private static final int FILE_BUFFER_CAPACITY = 1024;
+    private static final int FILE_BATCH_SIZE = 256;
     private static final ExecutorService THREAD_POOL = Executors.newFixedThreadPool(1);
+
+    // Only used from the thread of THREAD_POOL
+    private static final SimpleDateFormat FILE_DATE_FORMAT = new SimpleDateFormat(US_DATE_FORMAT, Locale.US);
     private static Map<String, SalesforceLogger> LOGGERS;
 
     /**
@@ -82,6 +95,11 @@ public class SalesforceLogger {
     private Context context;
     private String componentName;
     private Level logLevel;
+    private final LogRingBuffer<LogRecord> fileBuffer = new LogRingBuffer<>(FILE_BUFFER_CAPACITY);
+    private final AtomicBoolean fileDrainScheduled = new AtomicBoolean();
+    private final AtomicLong droppedLogLines = new AtomicLong();
+    private final AtomicLong writtenLogLines = new AtomicLong();
+    private long reportedDroppedLogLines;
 
     /**
      * Returns a logger instance associated with a named component.
@@ -214,6 +232,34 @@ public class SalesforceLogger {
         return (maxSize > 0);
     }
 
+    /**
+     * Returns the number of log lines that were not written to the file because
+     * the buffer in front of it was full.
+     *
+     * @return Number of dropped log lines.
+     */
+    public long getDroppedLogLineCount() {
+        return droppedLogLines.get();
+    }
+
+    /**
+     * Returns the number of log lines written to the file.
+     *
+     * @return Number of written log lines.
+     */
+    public long getWrittenLogLineCount() {
+        return writtenLogLines.get();
+    }
+
+    /**
+     * Returns the number of log lines waiting to be written to the file.
+     *
+     * @return Number of pending log lines.
+     */
+    public int getPendingLogLineCount() {
+        return fileBuffer.size();
+    }
+
     /**
      * Logs an error log line.
      *
@@ -349,7 +395,7 @@ public class SalesforceLogger {
                 default:
                     Log.d(tag, message);
             }
-            logToFile(getTimeFromUTC(), level, tag, message, null);
+            logToFile(System.currentTimeMillis(), level, tag, message, null);
         }
     }
 
@@ -384,35 +430,103 @@ public class SalesforceLogger {
             default:
                 Log.d(tag, message, e);
           }
-          logToFile(getTimeFromUTC(), level, tag, message, e);
+          logToFile(System.currentTimeMillis(), level, tag, message, e);
       }
     }
 
-    private void logToFile(final String curTime, final Level level, final String tag,
-                           final String message, final Throwable e) {
-        THREAD_POOL.execute(new Runnable() {
+    private void logToFile(long time, Level level, String tag, String message, Throwable e) {
+        if (fileLogger == null || fileLogger.getMaxSize() <= 0) {
+            return;
+        }
+        if (!fileBuffer.offer(new LogRecord(time, level, tag, message, e))) {
+            droppedLogLines.incrementAndGet();
+        }
+        scheduleFileDrain();
+    }
 
-            @Override
-            public void run() {
-                if (fileLogger != null) {
-                    String logLine;
-                    if (e != null) {
-                        logLine = String.format(LOG_LINE_FORMAT_WITH_EXCEPTION, curTime, level,
-                                tag, message, Log.getStackTraceString(e));
-                    } else {
-                        logLine = String.format(LOG_LINE_FORMAT, curTime, level, tag, message);
-                    }
-                    fileLogger.addLogLine(logLine);
+    /*
+     * At most one drain task per logger is queued or running at any time,
+     * so the executor queue stays bounded no matter how much is logged.
+     */
+    private void scheduleFileDrain() {
+        if (fileDrainScheduled.compareAndSet(false, true)) {
+            THREAD_POOL.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    drainToFile();
+                }
+            });
+        }
+    }
+
+    private void drainToFile() {
+        final List<LogRecord> records = new ArrayList<>(FILE_BATCH_SIZE);
+        final List<String> logLines = new ArrayList<>(FILE_BATCH_SIZE + 1);
+        do {
+            while (fileBuffer.drainTo(records, FILE_BATCH_SIZE) > 0) {
+                for (final LogRecord record : records) {
+                    logLines.add(record.toLogLine());
                 }
+                reportDroppedLogLines(logLines);
+                writeToFile(logLines);
+                records.clear();
+                logLines.clear();
+            }
+            fileDrainScheduled.set(false);
+
+            // Picks up lines added after the buffer was found empty, unless another drain got scheduled
+        } while (!fileBuffer.isEmpty() && fileDrainScheduled.compareAndSet(false, true));
+    }
+
+    private void reportDroppedLogLines(List<String> logLines) {
+        final long dropped = droppedLogLines.get();
+        if (dropped > reportedDroppedLogLines) {
+            logLines.add(String.format(Locale.US, DROPPED_LOG_LINES_FORMAT,
+                    FILE_DATE_FORMAT.format(new Date()), Level.WARN, TAG, dropped - reportedDroppedLogLines));
+            reportedDroppedLogLines = dropped;
+        }
+    }
+
+    private void writeToFile(List<String> logLines) {
+        if (fileLogger != null) {
+            try {
+                fileLogger.addLogLines(logLines);
+                writtenLogLines.addAndGet(logLines.size());
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to write log lines", e);
             }
-        });
+        }
     }
 
-    private String getTimeFromUTC() {
-        long curTime = System.currentTimeMillis();
-        final Date date = new Date(curTime);
-        final SimpleDateFormat dateFormat = new SimpleDateFormat(US_DATE_FORMAT, Locale.US);
-        return dateFormat.format(date);
+    /**
+     * Log line waiting to be written to the file. It is only formatted when written.
+     */
+    private static class LogRecord {
+
+        private final long time;
+        private final Level level;
+        private final String tag;
+        private final String message;
+        private final Throwable e;
+
+        LogRecord(long time, Level level, String tag, String message, Throwable e) {
+            this.time = time;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.e = e;
+        }
+
+        String toLogLine() {
+            final String curTime = FILE_DATE_FORMAT.format(new Date(time));
+            if (e != null) {
+                return String.format(LOG_LINE_FORMAT_WITH_EXCEPTION, curTime, level,
+                        tag, message, Log.getStackTraceString(e));
+            } else {
+                return String.format(LOG_LINE_FORMAT, curTime, level, tag, message);
+            }
+        }
     }
 
     private synchronized void storeLoggerPrefs(Level level) {
@@ -32,7 +32,12 @@ import android.util.Base64;
 
 import com.salesforce.androidsdk.analytics.util.SalesforceAnalyticsLogger;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
@@ -41,12 +46,16 @@ import java.security.PublicKey;
 import java.security.SecureRandom;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.Mac;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * Helper class for encryption/decryption/hash computations.
+ * Cipher and Mac instances are expensive to get and are not thread safe,
+ * so each thread reuses its own instances.
  */
 public class Encryptor {
 
@@ -58,6 +67,58 @@ public class Encryptor {
     private static final String SHA1PRNG = "SHA1PRNG";
     private static final String RSA_PKCS1 = "RSA/ECB/PKCS1Padding";
     private static final String BOUNCY_CASTLE = "BC";
+    private static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
+
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+
+        @Override
+        protected Cipher initialValue() {
+            return getBestCipher();
+        }
+    };
+
+    private static final ThreadLocal<Mac> MACS = new ThreadLocal<Mac>() {
+
+        @Override
+        protected Mac initialValue() {
+            try {
+                return getMac();
+            } catch (GeneralSecurityException e) {
+                SalesforceAnalyticsLogger.e(null, TAG, "No MAC algorithm available", e);
+                return null;
+            }
+        }
+    };
+
+    private static final ThreadLocal<SecureRandom> RANDOMS = new ThreadLocal<SecureRandom>() {
+
+        @Override
+        protected SecureRandom initialValue() {
+            try {
+                return SecureRandom.getInstance(SHA1PRNG);
+            } catch (NoSuchAlgorithmException e) {
+                SalesforceAnalyticsLogger.e(null, TAG, "No random number generator available", e);
+                return null;
+            }
+        }
+    };
+
+    // Last key used by the thread, and its decoded value
+    private static final ThreadLocal<String[]> LAST_KEYS = new ThreadLocal<String[]>() {
+
+        @Override
+        protected String[] initialValue() {
+            return new String[1];
+        }
+    };
+    private static final ThreadLocal<byte[][]> LAST_KEY_BYTES = new ThreadLocal<byte[][]>() {
+
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[1][];
+        }
+    };
 
     /**
      * Decrypts data with key using AES-128.
@@ -115,7 +176,7 @@ public class Encryptor {
         try {
 
             // Decodes with Base64.
-            byte[] keyBytes = Base64.decode(key, Base64.DEFAULT);
+            byte[] keyBytes = decodeKey(key);
             byte[] dataBytes = Base64.decode(data, Base64.DEFAULT);
 
             // Decrypts with AES-128.
@@ -204,7 +265,7 @@ public class Encryptor {
         try {
 
             // Encrypts with our preferred cipher.
-            byte[] keyBytes = Base64.decode(key, Base64.DEFAULT);
+            byte[] keyBytes = decodeKey(key);
             byte[] dataBytes = data.getBytes(UTF8);
             return Base64.encode(encrypt(dataBytes, keyBytes, iv), Base64.DEFAULT);
         } catch (Exception ex) {
@@ -213,6 +274,166 @@ public class Encryptor {
         return null;
     }
 
+    /**
+     * Encrypts data with key using AES-128. Returns raw bytes (initialization vector followed by
+     * the encrypted data) instead of Base64 encoded bytes.
+     *
+     * @param data Data.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Encrypted data.
+     */
+    public static byte[] encryptRawBytes(byte[] data, String key) {
+        if (TextUtils.isEmpty(key) || data == null) {
+            return data;
+        }
+        try {
+            byte[] keyBytes = decodeKey(key);
+            return encrypt(data, keyBytes, generateInitVector());
+        } catch (Exception ex) {
+            SalesforceAnalyticsLogger.w(null, TAG, "Error during encryption", ex);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a stream that decrypts data produced by encryptRawBytes as it is read.
+     * The initialization vector is read from the given stream right away.
+     *
+     * @param in Stream of encrypted data.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Stream of decrypted data.
+     * @throws IOException If the initialization vector can't be read or the cipher can't be set up.
+     */
+    public static InputStream getDecryptingInputStream(InputStream in, String key) throws IOException {
+        if (TextUtils.isEmpty(key)) {
+            return in;
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        new DataInputStream(in).readFully(iv);
+        try {
+            byte[] keyBytes = decodeKey(key);
+
+            // The stream keeps using the cipher, it can't be the one reused by this thread.
+            final Cipher cipher = requireCipher(getBestCipher());
+            final SecretKeySpec skeySpec = new SecretKeySpec(keyBytes, cipher.getAlgorithm());
+            cipher.init(Cipher.DECRYPT_MODE, skeySpec, new IvParameterSpec(iv));
+            return new CipherInputStream(in, cipher);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Error during decryption", e);
+        }
+    }
+
+    /**
+     * Decrypts data produced by encryptRawBytes (initialization vector followed by the encrypted data).
+     *
+     * @param data Encrypted data.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Decrypted data.
+     */
+    public static byte[] decryptRawBytes(byte[] data, String key) {
+        if (TextUtils.isEmpty(key) || data == null) {
+            return data;
+        }
+        try {
+            return decrypt(data, 0, data.length, decodeKey(key), new byte[IV_LENGTH]);
+        } catch (Exception ex) {
+            SalesforceAnalyticsLogger.w(null, TAG, "Error during decryption", ex);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the size of the output of encrypt(ByteBuffer, ByteBuffer, String) for the given data size.
+     *
+     * @param dataLength Size of the data to encrypt.
+     * @return Size of the encrypted data (initialization vector included).
+     */
+    public static int getEncryptedSize(int dataLength) {
+        return IV_LENGTH + (dataLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Encrypts the remaining bytes of data with key using AES-128, and writes the initialization
+     * vector followed by the encrypted data to output (same format as encryptRawBytes).
+     * Nothing is Base64 encoded, and no intermediate array or string is created.
+     *
+     * @param data Data to encrypt (its position is moved to its limit).
+     * @param output Buffer to write to, with at least getEncryptedSize(data.remaining()) bytes remaining.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Number of bytes written to output.
+     * @throws GeneralSecurityException If the encryption failed or the output is too small.
+     */
+    public static int encrypt(ByteBuffer data, ByteBuffer output, String key) throws GeneralSecurityException {
+        if (TextUtils.isEmpty(key)) {
+            final int length = data.remaining();
+            output.put(data);
+            return length;
+        }
+        final byte[] iv = generateInitVector();
+        final Cipher cipher = requireCipher(CIPHERS.get());
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(decodeKey(key), cipher.getAlgorithm()),
+                new IvParameterSpec(iv));
+        if (output.remaining() < iv.length + cipher.getOutputSize(data.remaining())) {
+            throw new GeneralSecurityException("Output buffer too small");
+        }
+        output.put(iv);
+        return iv.length + cipher.doFinal(data, output);
+    }
+
+    /**
+     * Decrypts the remaining bytes of data (initialization vector followed by the encrypted data,
+     * as written by encrypt(ByteBuffer, ByteBuffer, String) or encryptRawBytes) and writes the result to output.
+     *
+     * @param data Data to decrypt (its position is moved to its limit).
+     * @param output Buffer to write to, with at least data.remaining() bytes remaining.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Number of bytes written to output.
+     * @throws GeneralSecurityException If the decryption failed or the output is too small.
+     */
+    public static int decrypt(ByteBuffer data, ByteBuffer output, String key) throws GeneralSecurityException {
+        if (TextUtils.isEmpty(key)) {
+            final int length = data.remaining();
+            output.put(data);
+            return length;
+        }
+        if (data.remaining() < IV_LENGTH) {
+            throw new GeneralSecurityException("Missing initialization vector");
+        }
+        final byte[] iv = new byte[IV_LENGTH];
+        data.get(iv);
+        final Cipher cipher = requireCipher(CIPHERS.get());
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(decodeKey(key), cipher.getAlgorithm()),
+                new IvParameterSpec(iv));
+        return cipher.doFinal(data, output);
+    }
+
+    /**
+     * Returns a stream that encrypts data as it is written, in the format read by getDecryptingInputStream
+     * (initialization vector followed by the encrypted data). The stream must be closed to write the last block.
+     *
+     * @param out Stream to write the encrypted data to.
+     * @param key Base64 encoded 128 bit key or null (to leave data unchanged).
+     * @return Stream to write the data to.
+     * @throws IOException If the initialization vector can't be written or the cipher can't be set up.
+     */
+    public static OutputStream getEncryptingOutputStream(OutputStream out, String key) throws IOException {
+        if (TextUtils.isEmpty(key)) {
+            return out;
+        }
+        try {
+            final byte[] iv = generateInitVector();
+
+            // The stream keeps using the cipher, it can't be the one reused by this thread.
+            final Cipher cipher = requireCipher(getBestCipher());
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(decodeKey(key), cipher.getAlgorithm()),
+                    new IvParameterSpec(iv));
+            out.write(iv);
+            return new CipherOutputStream(out, cipher);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Error during encryption", e);
+        }
+    }
+
     /**
      * Checks if the string is Base64 encoded.
      *
@@ -241,15 +462,9 @@ public class Encryptor {
             // Signs with SHA-256.
             byte [] keyBytes = key.getBytes(UTF8);
             byte [] dataBytes = data.getBytes(UTF8);
-            Mac sha;
-
-            /*
-             * TODO: Remove this check once minAPI >= 28.
-             */
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                sha = Mac.getInstance(MAC_TRANSFORMATION);
-            } else {
-                sha = Mac.getInstance(MAC_TRANSFORMATION, getLegacyEncryptionProvider());
+            Mac sha = MACS.get();
+            if (sha == null) {
+                sha = getMac();
             }
             final SecretKeySpec keySpec = new SecretKeySpec(keyBytes, sha.getAlgorithm());
             sha.init(keySpec);
@@ -352,7 +567,7 @@ public class Encryptor {
      */
     public static String decryptBytes(byte[] data, byte[] key, byte[] iv) {
         try {
-            final Cipher cipher = getBestCipher();
+            final Cipher cipher = requireCipher(CIPHERS.get());
             final SecretKeySpec skeySpec = new SecretKeySpec(key, cipher.getAlgorithm());
             final IvParameterSpec ivSpec = new IvParameterSpec(iv);
             cipher.init(Cipher.DECRYPT_MODE, skeySpec, ivSpec);
@@ -365,23 +580,30 @@ public class Encryptor {
     }
 
     private static byte[] generateInitVector() throws NoSuchAlgorithmException {
-        final SecureRandom random = SecureRandom.getInstance(SHA1PRNG);
-        byte[] iv = new byte[16];
+        SecureRandom random = RANDOMS.get();
+        if (random == null) {
+            random = SecureRandom.getInstance(SHA1PRNG);
+        }
+        byte[] iv = new byte[IV_LENGTH];
         random.nextBytes(iv);
         return iv;
     }
 
     private static byte[] encrypt(byte[] data, byte[] key, byte[] iv) throws GeneralSecurityException {
-        final Cipher cipher = getBestCipher();
+        final Cipher cipher = requireCipher(CIPHERS.get());
         final SecretKeySpec skeySpec = new SecretKeySpec(key, cipher.getAlgorithm());
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
         cipher.init(Cipher.ENCRYPT_MODE, skeySpec, ivSpec);
-        byte[] meat = cipher.doFinal(data);
 
         // Prepends the IV to the encoded data (first 16 bytes / 128 bits).
-        byte[] result = new byte[iv.length + meat.length];
+        byte[] result = new byte[iv.length + cipher.getOutputSize(data.length)];
         System.arraycopy(iv, 0, result, 0, iv.length);
-        System.arraycopy(meat, 0, result, iv.length, meat.length);
+        int length = iv.length + cipher.doFinal(data, 0, data.length, result, iv.length);
+        if (length < result.length) {
+            final byte[] trimmedResult = new byte[length];
+            System.arraycopy(result, 0, trimmedResult, 0, length);
+            result = trimmedResult;
+        }
         return result;
     }
 
@@ -390,16 +612,35 @@ public class Encryptor {
         // Grabs the init vector prefix (first 16 bytes / 128 bits).
         System.arraycopy(data, offset, iv, 0, iv.length);
 
-        // Grabs the encrypted body after the init vector prefix.
+        // Decrypts the encrypted body after the init vector prefix in place (no copy).
         int meatLen = length - iv.length;
         int meatOffset = offset + iv.length;
-        byte[] meat = new byte[meatLen];
-        System.arraycopy(data, meatOffset, meat, 0, meatLen);
-        final Cipher cipher = getBestCipher();
+        final Cipher cipher = requireCipher(CIPHERS.get());
         final SecretKeySpec skeySpec = new SecretKeySpec(key, cipher.getAlgorithm());
         final IvParameterSpec ivSpec = new IvParameterSpec(iv);
         cipher.init(Cipher.DECRYPT_MODE, skeySpec, ivSpec);
-        return cipher.doFinal(meat, 0, meatLen);
+        return cipher.doFinal(data, meatOffset, meatLen);
+    }
+
+    /*
+     * Decodes the Base64 key, unless it is the last key decoded by this thread.
+     * The array returned must not be modified.
+     */
+    private static byte[] decodeKey(String key) {
+        final String[] lastKey = LAST_KEYS.get();
+        final byte[][] lastKeyBytes = LAST_KEY_BYTES.get();
+        if (!key.equals(lastKey[0])) {
+            lastKeyBytes[0] = Base64.decode(key, Base64.DEFAULT);
+            lastKey[0] = key;
+        }
+        return lastKeyBytes[0];
+    }
+
+    private static Cipher requireCipher(Cipher cipher) throws GeneralSecurityException {
+        if (cipher == null) {
+            throw new NoSuchAlgorithmException("No cipher transformation available");
+        }
+        return cipher;
     }
 
     private static Cipher getBestCipher() {
@@ -413,6 +654,18 @@ public class Encryptor {
         return cipher;
     }
 
+    private static Mac getMac() throws GeneralSecurityException {
+
+        /*
+         * TODO: Remove this check once minAPI >= 28.
+         */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return Mac.getInstance(MAC_TRANSFORMATION);
+        } else {
+            return Mac.getInstance(MAC_TRANSFORMATION, getLegacyEncryptionProvider());
+        }
+    }
+
     /*
      * TODO: Remove this method and its usages once minAPI >= 28.
      */
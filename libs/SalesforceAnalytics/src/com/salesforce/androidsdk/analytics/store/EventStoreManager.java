@@ -36,31 +36,70 @@ import com.salesforce.androidsdk.analytics.util.SalesforceAnalyticsLogger;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Provides APIs to store events in an encrypted store on the filesystem.
- * Each event is stored in a separate file on the filesystem.
+ * Events are appended to segment files. Each record is made of a type, the event ID
+ * and the length prefixed encrypted event. Deleting an event appends a tombstone to the
+ * segment holding it, and a segment is deleted as soon as it holds no live event.
+ * The location of every live event is kept in memory, so storing, fetching and
+ * counting events does not require listing the files directory.
  *
  * @author bhariharan
  */
 public class EventStoreManager {
 
     private static final String TAG = "EventStoreManager";
+    private static final String UTF8 = "UTF-8";
+    private static final String EVENTS_DIR = "analytics_events";
+    private static final String SEGMENT_EXTENSION = ".seg";
+    private static final byte RECORD_EVENT = 1;
+    private static final byte RECORD_DELETED = 2;
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 128 * 1024;
+    static final int SYNC_INTERVAL = 32;
 
     private String filenameSuffix;
     private File rootDir;
+    private File segmentsDir;
     private EventFileFilter fileFilter;
     private Context context;
     private String encryptionKey;
     private boolean isLoggingEnabled = true;
     private int maxEvents = 1000;
+    private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    // Segments by sequence number and location of the live events (in the order they were stored)
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> locations = new LinkedHashMap<>();
+    private boolean loaded;
+
+    // Segment being appended to
+    private Segment currentSegment;
+    private FileOutputStream currentFileStream;
+    private DataOutputStream currentStream;
+    private int unsyncedRecords;
 
     /**
      * Parameterized constructor.
@@ -76,31 +115,26 @@ public class EventStoreManager {
         this.encryptionKey = encryptionKey;
         fileFilter = new EventFileFilter(filenameSuffix);
         rootDir = context.getFilesDir();
+        segmentsDir = new File(new File(rootDir, EVENTS_DIR), filenameSuffix);
     }
 
     /**
-     * Stores an event to the filesystem. A combination of event's unique ID and
-     * filename suffix is used to generate a unique filename per event.
+     * Stores an event to the filesystem. If an event with the same ID was
+     * already stored, it gets replaced.
      *
      * @param event Event to be persisted.
      */
-    public void storeEvent(InstrumentationEvent event) {
+    public synchronized void storeEvent(InstrumentationEvent event) {
         if (event == null || TextUtils.isEmpty(event.toJson().toString())) {
             SalesforceAnalyticsLogger.d(context, TAG, "Invalid event");
             return;
         }
+        loadIfNeeded();
         if (!shouldStoreEvent()) {
             return;
         }
-        final String filename = event.getEventId() + filenameSuffix;
-        FileOutputStream outputStream;
-        try {
-            outputStream = context.openFileOutput(filename, Context.MODE_PRIVATE);
-            outputStream.write(encrypt(event.toJson().toString()).getBytes());
-            outputStream.close();
-        } catch (Exception e) {
-            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while saving event to filesystem", e);
-        }
+        appendEvent(event);
+        syncIfNeeded();
     }
 
     /**
@@ -108,17 +142,23 @@ public class EventStoreManager {
      *
      * @param events List of events.
      */
-    public void storeEvents(List<InstrumentationEvent> events) {
+    public synchronized void storeEvents(List<InstrumentationEvent> events) {
         if (events == null || events.size() == 0) {
             SalesforceAnalyticsLogger.d(context, TAG, "No events to store");
             return;
         }
-        if (!shouldStoreEvent()) {
-            return;
-        }
+        loadIfNeeded();
         for (final InstrumentationEvent event : events) {
-            storeEvent(event);
+            if (event == null || TextUtils.isEmpty(event.toJson().toString())) {
+                SalesforceAnalyticsLogger.d(context, TAG, "Invalid event");
+                continue;
+            }
+            if (!shouldStoreEvent()) {
+                break;
+            }
+            appendEvent(event);
         }
+        syncIfNeeded();
     }
 
     /**
@@ -127,28 +167,79 @@ public class EventStoreManager {
      * @param eventId Unique identifier for the event.
      * @return Event.
      */
-    public InstrumentationEvent fetchEvent(String eventId) {
+    public synchronized InstrumentationEvent fetchEvent(String eventId) {
         if (TextUtils.isEmpty(eventId)) {
             SalesforceAnalyticsLogger.e(context, TAG, "Invalid event ID supplied: " + eventId);
             return null;
         }
-        final String filename = eventId + filenameSuffix;
-        final File file = new File(rootDir, filename);
-        return fetchEvent(file);
+        loadIfNeeded();
+        final Location location = locations.get(eventId);
+        if (location == null) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Event does not exist");
+            return null;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(location.segment.file, "r");
+            file.seek(location.offset);
+            return toEvent(readRecord(file, true));
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while attempting to read event", e);
+        } finally {
+            closeQuietly(file);
+        }
+        return null;
     }
 
     /**
      * Returns all the events stored on the filesystem for that unique identifier.
      *
-     * @return List of events.
+     * @return List of events (in the order they were stored).
      */
-    public List<InstrumentationEvent> fetchAllEvents() {
-        final List<File> files = getAllFiles();
+    public synchronized List<InstrumentationEvent> fetchAllEvents() {
+        return fetchEvents(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the oldest events stored on the filesystem for that unique identifier.
+     * Can be used to go through the stored events in chunks of bounded size, for instance
+     * by deleting the events returned before asking for the next ones.
+     *
+     * @param maxEvents Maximum number of events to return.
+     * @param maxSize Maximum size (in bytes, as stored) of the events to return.
+     *                The first event is always returned, even if it is bigger.
+     * @return List of events (in the order they were stored).
+     */
+    public synchronized List<InstrumentationEvent> fetchEvents(int maxEvents, long maxSize) {
+        loadIfNeeded();
         final List<InstrumentationEvent> events = new ArrayList<>();
-        for (final File file : files) {
-            final InstrumentationEvent event = fetchEvent(file);
-            if (event != null) {
-                events.add(event);
+        long size = 0;
+        for (final Segment segment : segments.values()) {
+            if (segment.liveCount == 0) {
+                continue;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+                long offset = 0;
+                while (offset < segment.length) {
+                    final Record record = readRecord(in, true);
+                    if (record.type == RECORD_EVENT && isLive(record.eventId, segment, offset)) {
+                        if (events.size() >= maxEvents || (!events.isEmpty() && size + record.payload.length > maxSize)) {
+                            return events;
+                        }
+                        final InstrumentationEvent event = toEvent(record);
+                        if (event != null) {
+                            events.add(event);
+                            size += record.payload.length;
+                        }
+                    }
+                    offset += record.size;
+                }
+            } catch (IOException e) {
+                SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while attempting to read segment", e);
+            } finally {
+                closeQuietly(in);
             }
         }
         return events;
@@ -160,37 +251,78 @@ public class EventStoreManager {
      * @param eventId Unique identifier for the event.
      * @return True - if successful, False - otherwise.
      */
-    public boolean deleteEvent(String eventId) {
+    public synchronized boolean deleteEvent(String eventId) {
         if (TextUtils.isEmpty(eventId)) {
             SalesforceAnalyticsLogger.e(context, TAG, "Invalid event ID supplied: " + eventId);
             return false;
         }
-        final String filename = eventId + filenameSuffix;
-        final File file = new File(rootDir, filename);
-        return file.delete();
+        loadIfNeeded();
+        if (!locations.containsKey(eventId)) {
+            return false;
+        }
+        deleteEvents(Collections.singletonList(eventId));
+        return true;
     }
 
     /**
      * Deletes the events stored on the filesystem for that unique identifier.
+     * Segments left without live events are deleted right away.
      */
-    public void deleteEvents(List<String> eventIds) {
+    public synchronized void deleteEvents(List<String> eventIds) {
         if (eventIds == null || eventIds.size() == 0) {
             SalesforceAnalyticsLogger.d(context, TAG, "No events to delete");
             return;
         }
+        loadIfNeeded();
+
+        // Groups events by segment
+        final Map<Segment, List<String>> eventIdsBySegment = new HashMap<>();
         for (final String eventId : eventIds) {
-            deleteEvent(eventId);
+            final Location location = locations.get(eventId);
+            if (location == null) {
+                continue;
+            }
+            List<String> segmentEventIds = eventIdsBySegment.get(location.segment);
+            if (segmentEventIds == null) {
+                segmentEventIds = new ArrayList<>();
+                eventIdsBySegment.put(location.segment, segmentEventIds);
+            }
+            if (!segmentEventIds.contains(eventId)) {
+                segmentEventIds.add(eventId);
+            }
+        }
+
+        // Deletes whole segments when possible, writes tombstones otherwise
+        for (final Map.Entry<Segment, List<String>> entry : eventIdsBySegment.entrySet()) {
+            final Segment segment = entry.getKey();
+            final List<String> segmentEventIds = entry.getValue();
+            if (segmentEventIds.size() < segment.liveCount) {
+                final List<Location> deletedLocations = new ArrayList<>();
+                for (final String eventId : segmentEventIds) {
+                    deletedLocations.add(locations.get(eventId));
+                }
+                if (!appendTombstones(segment, segmentEventIds, deletedLocations)) {
+                    continue;
+                }
+                segment.liveCount -= segmentEventIds.size();
+            } else {
+                deleteSegment(segment);
+            }
+            for (final String eventId : segmentEventIds) {
+                locations.remove(eventId);
+            }
         }
     }
 
     /**
      * Deletes all the events stored on the filesystem for that unique identifier.
      */
-    public void deleteAllEvents() {
-        final List<File> files = getAllFiles();
-        for (final File file : files) {
-            file.delete();
+    public synchronized void deleteAllEvents() {
+        loadIfNeeded();
+        for (final Segment segment : new ArrayList<>(segments.values())) {
+            deleteSegment(segment);
         }
+        locations.clear();
     }
 
     /**
@@ -200,20 +332,20 @@ public class EventStoreManager {
      * @param oldKey Old encryption key.
      * @param newKey New encryption key.
      */
-    public void changeEncryptionKey(String oldKey, String newKey) {
+    public synchronized void changeEncryptionKey(String oldKey, String newKey) {
 
         /*
-         * We need to disable logging while the upgrade is in progress to
-         * prevent rogue threads from attempting to write data with the old key.
+         * Other threads can't store events while the upgrade is in progress
+         * since all accesses to the store are synchronized.
          */
-        boolean logEnabledStatus = isLoggingEnabled;
-        isLoggingEnabled = false;
         encryptionKey = oldKey;
         final List<InstrumentationEvent> storedEvents = fetchAllEvents();
         deleteAllEvents();
         encryptionKey = newKey;
-        storeEvents(storedEvents);
-        isLoggingEnabled = logEnabledStatus;
+        for (final InstrumentationEvent event : storedEvents) {
+            appendEvent(event);
+        }
+        sync();
     }
 
     /**
@@ -258,29 +390,369 @@ public class EventStoreManager {
      *
      * @return Number of stored events.
      */
-    public int getNumStoredEvents() {
-        int numFiles = 0;
-        final File[] listOfFiles = rootDir.listFiles();
-        if (listOfFiles != null) {
-            numFiles = listOfFiles.length;
+    public synchronized int getNumStoredEvents() {
+        loadIfNeeded();
+        return locations.size();
+    }
+
+    /**
+     * Forces the events stored so far to be written to disk.
+     * Otherwise they are synced every SYNC_INTERVAL events and whenever a segment fills up.
+     */
+    public synchronized void sync() {
+        if (currentFileStream == null || unsyncedRecords == 0) {
+            return;
         }
-        return numFiles;
+        try {
+            currentFileStream.getFD().sync();
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while syncing events", e);
+        }
+    }
+
+    /**
+     * Sets the size after which a new segment is started (used by tests).
+     *
+     * @param maxSegmentSize Size in bytes.
+     */
+    synchronized void setMaxSegmentSize(int maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Returns the number of segment files (used by tests).
+     *
+     * @return Number of segments.
+     */
+    synchronized int getNumSegments() {
+        loadIfNeeded();
+        return segments.size();
     }
 
     private boolean shouldStoreEvent() {
-        final List<File> files = getAllFiles();
-        int fileCount = 0;
+        return (isLoggingEnabled && (locations.size() < maxEvents));
+    }
+
+    private boolean isLive(String eventId, Segment segment, long offset) {
+        final Location location = locations.get(eventId);
+        return location != null && location.segment == segment && location.offset == offset;
+    }
+
+    private boolean appendEvent(InstrumentationEvent event) {
+        final String eventId = event.getEventId();
+        final byte[] payload = Encryptor.encryptRawBytes(event.toJson().toString().getBytes(Charset.forName(UTF8)), encryptionKey);
+        if (payload == null) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Event could not be encrypted");
+            return false;
+        }
+        final Segment segment;
+        final DataOutputStream out;
+        try {
+            out = getCurrentStream();
+            segment = currentSegment;
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while opening segment", e);
+            return false;
+        }
+        final long offset = segment.length;
+        final byte[] eventIdBytes = eventId.getBytes(Charset.forName(UTF8));
+        try {
+            out.writeByte(RECORD_EVENT);
+            out.writeShort(eventIdBytes.length);
+            out.write(eventIdBytes);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while saving event to filesystem", e);
+            closeCurrentSegment();
+            truncate(segment, offset);
+            return false;
+        }
+        segment.length = offset + 1 + 2 + eventIdBytes.length + 4 + payload.length;
+        segment.liveCount++;
+        unsyncedRecords++;
+
+        // Replaces the event previously stored with the same ID (if any)
+        final Location previous = locations.remove(eventId);
+        locations.put(eventId, new Location(segment, offset));
+        if (previous != null) {
+            if (previous.segment.liveCount == 1) {
+                deleteSegment(previous.segment);
+            } else if (appendTombstones(previous.segment, Collections.singletonList(eventId),
+                    Collections.singletonList(previous))) {
+                previous.segment.liveCount--;
+            }
+        }
+        return true;
+    }
+
+    private boolean appendTombstones(Segment segment, List<String> eventIds, List<Location> deletedLocations) {
+        DataOutputStream out = null;
+        FileOutputStream fileStream = null;
+        final long offset = segment.length;
+        long length = offset;
+        try {
+            if (segment == currentSegment) {
+                out = currentStream;
+            } else {
+                fileStream = new FileOutputStream(segment.file, true);
+                out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            }
+            for (int i = 0; i < eventIds.size(); i++) {
+                final byte[] eventIdBytes = eventIds.get(i).getBytes(Charset.forName(UTF8));
+                out.writeByte(RECORD_DELETED);
+                out.writeShort(eventIdBytes.length);
+                out.write(eventIdBytes);
+                out.writeLong(deletedLocations.get(i).offset);
+                length += 1 + 2 + eventIdBytes.length + 8;
+            }
+            out.flush();
+
+            // Deleted events must not come back (and be published again) after a crash
+            if (fileStream != null) {
+                fileStream.getFD().sync();
+            } else {
+                unsyncedRecords++;
+                sync();
+            }
+            segment.length = length;
+            return true;
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while deleting events", e);
+            if (segment == currentSegment) {
+                closeCurrentSegment();
+            }
+            truncate(segment, offset);
+            return false;
+        } finally {
+            if (fileStream != null) {
+                closeQuietly(out != null ? out : fileStream);
+            }
+        }
+    }
+
+    private DataOutputStream getCurrentStream() throws IOException {
+        if (currentSegment != null && currentSegment.length >= maxSegmentSize) {
+            closeCurrentSegment();
+        }
+        if (currentSegment == null) {
+            if (!segmentsDir.exists() && !segmentsDir.mkdirs()) {
+                throw new IOException("Could not create directory " + segmentsDir);
+            }
+            final long sequence = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+            final Segment segment = new Segment(sequence, new File(segmentsDir, sequence + SEGMENT_EXTENSION));
+            currentFileStream = new FileOutputStream(segment.file, true);
+            currentStream = new DataOutputStream(new BufferedOutputStream(currentFileStream));
+            segments.put(sequence, segment);
+            currentSegment = segment;
+        }
+        return currentStream;
+    }
+
+    private void syncIfNeeded() {
+        if (unsyncedRecords >= SYNC_INTERVAL) {
+            sync();
+        }
+    }
+
+    private void closeCurrentSegment() {
+        if (currentSegment == null) {
+            return;
+        }
+        sync();
+        closeQuietly(currentStream);
+        currentSegment = null;
+        currentFileStream = null;
+        currentStream = null;
+        unsyncedRecords = 0;
+    }
+
+    private void deleteSegment(Segment segment) {
+        if (segment == currentSegment) {
+            closeQuietly(currentStream);
+            currentSegment = null;
+            currentFileStream = null;
+            currentStream = null;
+            unsyncedRecords = 0;
+        }
+        segments.remove(segment.sequence);
+        segment.liveCount = 0;
+        if (!segment.file.delete()) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Could not delete segment " + segment.file.getName());
+        }
+    }
+
+    private void truncate(Segment segment, long length) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(segment.file, "rw");
+            file.setLength(length);
+            segment.length = length;
+        } catch (IOException e) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while truncating segment", e);
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Builds the in memory index from the segments on the first access.
+     * Events stored one per file by earlier versions are moved to the segments.
+     */
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        final File[] files = segmentsDir.listFiles();
         if (files != null) {
-            fileCount = files.size();
+            for (final File file : files) {
+                final String name = file.getName();
+                if (!name.endsWith(SEGMENT_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    final long sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                    segments.put(sequence, new Segment(sequence, file));
+                } catch (NumberFormatException e) {
+                    SalesforceAnalyticsLogger.e(context, TAG, "Unexpected file " + name);
+                }
+            }
+        }
+        for (final Segment segment : segments.values()) {
+            indexSegment(segment);
         }
-        return (isLoggingEnabled && (fileCount < maxEvents));
+        for (final Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.liveCount == 0) {
+                deleteSegment(segment);
+            }
+        }
+        migrateLegacyEvents();
     }
 
-    private InstrumentationEvent fetchEvent(File file) {
-        if (file == null || !file.exists()) {
-            SalesforceAnalyticsLogger.e(context, TAG, "File does not exist");
-            return null;
+    private void indexSegment(Segment segment) {
+        segment.length = segment.file.length();
+        DataInputStream in = null;
+        long offset = 0;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+            while (offset < segment.length) {
+                final Record record = readRecord(in, false);
+                if (record.type == RECORD_EVENT) {
+                    final Location previous = locations.remove(record.eventId);
+                    if (previous != null) {
+                        previous.segment.liveCount--;
+                    }
+                    locations.put(record.eventId, new Location(segment, offset));
+                    segment.liveCount++;
+                } else if (isLive(record.eventId, segment, record.deletedOffset)) {
+                    locations.remove(record.eventId);
+                    segment.liveCount--;
+                }
+                offset += record.size;
+            }
+        } catch (IOException e) {
+
+            // Drops the partially written (or corrupted) record at the end of the segment
+            SalesforceAnalyticsLogger.w(context, TAG, "Truncating segment " + segment.file.getName(), e);
+            closeQuietly(in);
+            in = null;
+            truncate(segment, offset);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void migrateLegacyEvents() {
+        final File[] listOfFiles = rootDir.listFiles(fileFilter);
+        if (listOfFiles == null || listOfFiles.length == 0) {
+            return;
+        }
+        final List<File> migratedFiles = new ArrayList<>();
+        for (final File file : listOfFiles) {
+            if (!file.isFile()) {
+                continue;
+            }
+
+            // Unreadable files can't ever be migrated, files that could not be appended are retried next time
+            final InstrumentationEvent event = fetchLegacyEvent(file);
+            if (event == null || appendEvent(event)) {
+                migratedFiles.add(file);
+            }
+        }
+
+        // Legacy files are only deleted once the events appended are on disk
+        sync();
+        for (final File file : migratedFiles) {
+            file.delete();
         }
+    }
+
+    private Record readRecord(DataInput in, boolean withPayload) throws IOException {
+        final Record record = new Record();
+        record.type = in.readByte();
+        final byte[] eventIdBytes = new byte[in.readUnsignedShort()];
+        in.readFully(eventIdBytes);
+        record.eventId = new String(eventIdBytes, Charset.forName(UTF8));
+        if (record.type == RECORD_EVENT) {
+            final int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid record length " + length);
+            }
+            if (withPayload) {
+                record.payload = new byte[length];
+                in.readFully(record.payload);
+            } else {
+                skipFully(in, length);
+            }
+            record.size = 1 + 2 + eventIdBytes.length + 4 + length;
+        } else if (record.type == RECORD_DELETED) {
+            record.deletedOffset = in.readLong();
+            record.size = 1 + 2 + eventIdBytes.length + 8;
+        } else {
+            throw new IOException("Invalid record type " + record.type);
+        }
+        return record;
+    }
+
+    private void skipFully(DataInput in, int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+
+                // Throws EOFException at the end of the file
+                in.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private InstrumentationEvent toEvent(Record record) {
+        InstrumentationEvent event = null;
+        String eventString = null;
+        try {
+            final byte[] decrypted = Encryptor.decryptRawBytes(record.payload, encryptionKey);
+            if (decrypted != null) {
+                eventString = new String(decrypted, UTF8);
+            }
+        } catch (Exception ex) {
+            SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while attempting to decrypt event", ex);
+        }
+        if (!TextUtils.isEmpty(eventString)) {
+            try {
+                final JSONObject jsonObject = new JSONObject(eventString);
+                event = new InstrumentationEvent(jsonObject);
+            } catch (JSONException e) {
+                SalesforceAnalyticsLogger.e(context, TAG, "Exception occurred while attempting to convert to JSON", e);
+            }
+        }
+        return event;
+    }
+
+    private InstrumentationEvent fetchLegacyEvent(File file) {
         InstrumentationEvent event = null;
         String eventString = null;
         final StringBuilder json = new StringBuilder();
@@ -306,27 +778,65 @@ public class EventStoreManager {
         return event;
     }
 
-    private List<File> getAllFiles() {
-        final List<File> files = new ArrayList<>();
-        final File[] listOfFiles = rootDir.listFiles();
-        for (final File file : listOfFiles) {
-            if (file != null && fileFilter.accept(rootDir, file.getName())) {
-                files.add(file);
+    private String decrypt(String data) {
+        return Encryptor.decrypt(data, encryptionKey);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do
             }
         }
-        return files;
     }
 
-    private String encrypt(String data) {
-        return Encryptor.encrypt(data, encryptionKey);
+    /**
+     * Segment file.
+     */
+    private static class Segment {
+
+        final long sequence;
+        final File file;
+        long length;
+        int liveCount;
+
+        Segment(long sequence, File file) {
+            this.sequence = sequence;
+            this.file = file;
+        }
     }
 
-    private String decrypt(String data) {
-        return Encryptor.decrypt(data, encryptionKey);
+    /**
+     * Location of a live event.
+     */
+    private static class Location {
+
+        final Segment segment;
+        final long offset;
+
+        Location(Segment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Record read from a segment.
+     */
+    private static class Record {
+
+        byte type;
+        String eventId;
+        byte[] payload;
+        long deletedOffset;
+        int size;
     }
 
     /**
-     * This class acts as a filter to identify only the relevant event files.
+     * This class acts as a filter to identify only the relevant event files
+     * (stored one per file by earlier versions).
      *
      * @author bhariharan
      */
@@ -28,9 +28,12 @@ package com.salesforce.androidsdk.accounts;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
+import android.accounts.OnAccountsUpdateListener;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.os.Bundle;
@@ -40,17 +43,28 @@ import com.salesforce.androidsdk.app.Features;
 import com.salesforce.androidsdk.app.SalesforceSDKManager;
 import com.salesforce.androidsdk.auth.AuthenticatorService;
 import com.salesforce.androidsdk.rest.ClientManager;
+import com.salesforce.androidsdk.util.SalesforceSDKLogger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class acts as a manager that provides methods to access
  * user accounts that are currently logged in, and can be used
  * to add new user accounts.
  *
+ * User accounts built from the account manager are cached in memory (building one requires
+ * a dozen of IPC calls and decryptions). Accounts added, updated or removed through the SDK
+ * are invalidated right away. The cache is also invalidated when accounts are added or removed
+ * and when tokens are refreshed or revoked (as notified by the account manager and broadcasts).
+ *
  * @author bhariharan
  */
 public class UserAccountManager {
@@ -58,6 +72,7 @@ public class UserAccountManager {
 	private static final String CURRENT_USER_PREF = "current_user_info";
 	private static final String USER_ID_KEY = "user_id";
 	private static final String ORG_ID_KEY = "org_id";
+	private static final String TAG = "UserAccountManager";
 
 	public static final String USER_SWITCH_INTENT_ACTION = "com.salesforce.USERSWITCHED";
 
@@ -99,10 +114,18 @@ public class UserAccountManager {
 
 	private static UserAccountManager INSTANCE;
 
+	// Managers whose cache is invalidated by the (single) account listener and broadcast receiver
+	private static final Set<UserAccountManager> CACHE_INVALIDATION_TARGETS =
+			Collections.newSetFromMap(new WeakHashMap<UserAccountManager, Boolean>());
+	private static boolean cacheInvalidationRegistered; // guarded by CACHE_INVALIDATION_TARGETS
+
 	private Context context;
 	private AccountManager accountManager;
 	private String accountType;
-	private UserAccount cachedCurrentUserAccount;
+	private volatile UserAccount cachedCurrentUserAccount;
+	private final Map<Account, UserAccount> userAccountCache = new HashMap<>();
+	private final AtomicLong userAccountCacheHits = new AtomicLong();
+	private final AtomicLong userAccountCacheMisses = new AtomicLong();
 
 	/**
 	 * Returns a singleton instance of this class.
@@ -123,6 +146,13 @@ public class UserAccountManager {
 		context = SalesforceSDKManager.getInstance().getAppContext();
 		accountManager = AccountManager.get(context);
 		accountType = SalesforceSDKManager.getInstance().getAccountType();
+		synchronized (CACHE_INVALIDATION_TARGETS) {
+			CACHE_INVALIDATION_TARGETS.add(this);
+			if (!cacheInvalidationRegistered) {
+				cacheInvalidationRegistered = true;
+				registerUserAccountCacheInvalidation(context, accountManager);
+			}
+		}
 	}
 
 	/**
@@ -219,13 +249,10 @@ public class UserAccountManager {
         for (final Account account : accounts) {
         	if (account != null) {
 
-        		// Reads the user ID and org ID from account manager.
-				final String orgId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
-                		AuthenticatorService.KEY_ORG_ID));
-        		final String userId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
-        				AuthenticatorService.KEY_USER_ID));
-        		if (storedUserId.trim().equals(userId)
-        				&& storedOrgId.trim().equals(orgId)) {
+        		// Reads the user ID and org ID from the (cached) user account.
+        		final String[] orgAndUserIds = getOrgAndUserIds(account);
+        		if (storedUserId.trim().equals(orgAndUserIds[1])
+        				&& storedOrgId.trim().equals(orgAndUserIds[0])) {
         			return account;
         		}
         	}
@@ -411,6 +438,96 @@ public class UserAccountManager {
 		if (account == null) {
 			return null;
 		}
+		synchronized (userAccountCache) {
+			final UserAccount cachedUserAccount = userAccountCache.get(account);
+			if (cachedUserAccount != null) {
+				userAccountCacheHits.incrementAndGet();
+				return cachedUserAccount;
+			}
+		}
+		userAccountCacheMisses.incrementAndGet();
+		final UserAccount userAccount = readUserAccount(account);
+		if (userAccount != null) {
+			synchronized (userAccountCache) {
+				userAccountCache.put(account, userAccount);
+			}
+		}
+		return userAccount;
+	}
+
+	/**
+	 * Removes the cached user account built from the given account, for instance after its
+	 * data has been changed in the account manager. The next call to buildUserAccount
+	 * reads it again from the account manager.
+	 *
+	 * @param account Account object.
+	 */
+	public void invalidateUserAccount(Account account) {
+		if (account == null) {
+			return;
+		}
+		synchronized (userAccountCache) {
+			userAccountCache.remove(account);
+		}
+		cachedCurrentUserAccount = null;
+	}
+
+	/**
+	 * Removes all cached user accounts.
+	 */
+	public void clearUserAccountCache() {
+		synchronized (userAccountCache) {
+			userAccountCache.clear();
+		}
+		cachedCurrentUserAccount = null;
+	}
+
+	/**
+	 * Returns the number of user accounts returned from the cache.
+	 *
+	 * @return Number of cache hits.
+	 */
+	public long getUserAccountCacheHitCount() {
+		return userAccountCacheHits.get();
+	}
+
+	/**
+	 * Returns the number of user accounts that had to be read from the account manager.
+	 *
+	 * @return Number of cache misses.
+	 */
+	public long getUserAccountCacheMissCount() {
+		return userAccountCacheMisses.get();
+	}
+
+	/**
+	 * Returns the ratio of user accounts returned from the cache.
+	 *
+	 * @return Cache hit rate (between 0 and 1).
+	 */
+	public double getUserAccountCacheHitRate() {
+		final long hits = userAccountCacheHits.get();
+		final long total = hits + userAccountCacheMisses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/*
+	 * Returns the org ID and user ID of the account, from the cached user account when possible.
+	 * Incomplete accounts (e.g. without auth token) are not cached, their IDs are read from the account manager.
+	 */
+	private String[] getOrgAndUserIds(Account account) {
+		final UserAccount userAccount = buildUserAccount(account);
+		if (userAccount != null) {
+			return new String[] {userAccount.getOrgId(), userAccount.getUserId()};
+		}
+		final String orgId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
+				AuthenticatorService.KEY_ORG_ID));
+		final String userId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
+				AuthenticatorService.KEY_USER_ID));
+		return new String[] {orgId, userId};
+	}
+
+	private UserAccount readUserAccount(Account account) {
 		final String authToken = SalesforceSDKManager.decrypt(accountManager.getUserData(account, AccountManager.KEY_AUTHTOKEN));
 		final String refreshToken = SalesforceSDKManager.decrypt(accountManager.getPassword(account));
 		final String loginServer = SalesforceSDKManager.decrypt(accountManager.getUserData(account, AuthenticatorService.KEY_LOGIN_URL));
@@ -499,13 +616,10 @@ public class UserAccountManager {
         for (final Account account : accounts) {
         	if (account != null) {
 
-        		// Reads the user ID and org ID from account manager.
-				final String orgId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
-                		AuthenticatorService.KEY_ORG_ID));
-        		final String userId = SalesforceSDKManager.decrypt(accountManager.getUserData(account,
-        				AuthenticatorService.KEY_USER_ID));
-        		if (storedUserId.trim().equals(userId.trim())
-        				&& storedOrgId.trim().equals(orgId.trim())) {
+        		// Reads the user ID and org ID from the (cached) user account.
+        		final String[] orgAndUserIds = getOrgAndUserIds(account);
+        		if (storedUserId.trim().equals(orgAndUserIds[1].trim())
+        				&& storedOrgId.trim().equals(orgAndUserIds[0].trim())) {
         			return account;
         		}
         	}
@@ -551,4 +665,51 @@ public class UserAccountManager {
         }
         return null;
     }
+
+	private void retainUserAccounts(List<Account> existingAccounts) {
+		synchronized (userAccountCache) {
+			userAccountCache.keySet().retainAll(existingAccounts);
+		}
+	}
+
+	private static List<UserAccountManager> getCacheInvalidationTargets() {
+		synchronized (CACHE_INVALIDATION_TARGETS) {
+			return new ArrayList<>(CACHE_INVALIDATION_TARGETS);
+		}
+	}
+
+	/*
+	 * Accounts added or removed (possibly by another process) are reported by the account manager,
+	 * tokens refreshed or revoked by the SDK are broadcast.
+	 * Registered once for the process: the listener and receiver don't hold on to the managers they invalidate.
+	 */
+	private static void registerUserAccountCacheInvalidation(Context context, AccountManager accountManager) {
+		try {
+			accountManager.addOnAccountsUpdatedListener(new OnAccountsUpdateListener() {
+
+				@Override
+				public void onAccountsUpdated(Account[] accounts) {
+					final List<Account> existingAccounts = Arrays.asList(accounts);
+					for (final UserAccountManager userAccountManager : getCacheInvalidationTargets()) {
+						userAccountManager.retainUserAccounts(existingAccounts);
+					}
+				}
+			}, null, false);
+		} catch (Exception e) {
+			SalesforceSDKLogger.w(TAG, "Could not listen to account changes", e);
+		}
+		final IntentFilter filter = new IntentFilter();
+		filter.addAction(ClientManager.ACCESS_TOKEN_REFRESH_INTENT);
+		filter.addAction(ClientManager.ACCESS_TOKEN_REVOKE_INTENT);
+		filter.addAction(ClientManager.INSTANCE_URL_UPDATE_INTENT);
+		context.registerReceiver(new BroadcastReceiver() {
+
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				for (final UserAccountManager userAccountManager : getCacheInvalidationTargets()) {
+					userAccountManager.clearUserAccountCache();
+				}
+			}
+		}, filter);
+	}
 }
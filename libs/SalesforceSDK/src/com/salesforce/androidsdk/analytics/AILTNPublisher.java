@@ -99,13 +99,6 @@ public class AILTNPublisher implements AnalyticsPublisher {
     }
 
     public boolean publishLogLines(JSONArray logLines) {
-        final JSONObject body = new JSONObject();
-        try {
-            body.put(LOG_LINES, logLines);
-        } catch (JSONException e) {
-            SalesforceSDKLogger.e(TAG, "Exception thrown while constructing event payload", e);
-            return false;
-        }
         RestResponse restResponse = null;
         try {
             final String apiPath = String.format(API_PATH,
@@ -121,12 +114,11 @@ public class AILTNPublisher implements AnalyticsPublisher {
             }
 
             /*
-             * There's no easy way to get content length using GZIP interceptors. Some trickery is
-             * required to achieve this by adding an additional interceptor to determine content length.
+             * There's no easy way to get content length using GZIP interceptors. The body
+             * is compressed ahead of time instead, so its length is known.
              * See this post for more details: https://github.com/square/okhttp/issues/350#issuecomment-123105641.
              */
-            final RequestBody requestBody = setContentLength(gzipCompressedBody(RequestBody.create(RestRequest.MEDIA_TYPE_JSON,
-                    body.toString())));
+            final RequestBody requestBody = gzipCompressedBody(logLines);
             final Map<String, String> requestHeaders = new HashMap<>();
             requestHeaders.put(CONTENT_ENCODING, GZIP);
             requestHeaders.put(CONTENT_LENGTH, Long.toString(requestBody.contentLength()));
@@ -144,46 +136,40 @@ public class AILTNPublisher implements AnalyticsPublisher {
         return false;
     }
 
-    private RequestBody setContentLength(final RequestBody requestBody) throws IOException {
+    /*
+     * Writes the log lines one at a time straight into the GZIP stream, so that the
+     * uncompressed body is never held in memory as a whole. Only the compressed bytes
+     * are buffered, and they are shared (not copied) every time the body is written.
+     */
+    private RequestBody gzipCompressedBody(JSONArray logLines) throws IOException {
         final Buffer buffer = new Buffer();
-        requestBody.writeTo(buffer);
-        return new RequestBody() {
-
-            @Override
-            public MediaType contentType() {
-                return requestBody.contentType();
+        final BufferedSink gzipSink = Okio.buffer(new GzipSink(buffer));
+        gzipSink.writeUtf8("{").writeUtf8(JSONObject.quote(LOG_LINES)).writeUtf8(":[");
+        for (int i = 0; i < logLines.length(); i++) {
+            if (i > 0) {
+                gzipSink.writeUtf8(",");
             }
-
-            @Override
-            public long contentLength() {
-                return buffer.size();
-            }
-
-            @Override
-            public void writeTo(BufferedSink sink) throws IOException {
-                sink.write(buffer.snapshot());
-            }
-        };
-    }
-
-    private RequestBody gzipCompressedBody(final RequestBody body) {
+            final Object logLine = logLines.opt(i);
+            gzipSink.writeUtf8(logLine instanceof String ? JSONObject.quote((String) logLine) : String.valueOf(logLine));
+        }
+        gzipSink.writeUtf8("]}");
+        gzipSink.close();
         return new RequestBody() {
 
             @Override
             public MediaType contentType() {
-                return body.contentType();
+                return RestRequest.MEDIA_TYPE_JSON;
             }
 
             @Override
             public long contentLength() {
-                return -1;
+                return buffer.size();
             }
 
             @Override
             public void writeTo(BufferedSink sink) throws IOException {
-                final BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
-                body.writeTo(gzipSink);
-                gzipSink.close();
+                final Buffer copy = buffer.clone();
+                sink.write(copy, copy.size());
             }
         };
     }
@@ -49,6 +49,7 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -68,6 +69,8 @@ public class SalesforceAnalyticsManager {
     private static final String ANALYTICS_ON_OFF_KEY = "ailtn_enabled";
     private static final String AILTN_POLICY_PREF = "ailtn_policy";
     private static final int DEFAULT_PUBLISH_FREQUENCY_IN_HOURS = 8;
+    private static final int DEFAULT_MAX_EVENTS_PER_CHUNK = 500;
+    private static final long DEFAULT_MAX_CHUNK_SIZE = 256 * 1024;
     private static final String TAG = "AnalyticsManager";
     private static final String UNAUTH_INSTANCE_KEY = "_no_user";
 
@@ -81,6 +84,8 @@ public class SalesforceAnalyticsManager {
     private UserAccount account;
     private boolean enabled;
     private Map<Class<? extends Transform>, Class<? extends AnalyticsPublisher>> remotes;
+    private int maxEventsPerChunk = DEFAULT_MAX_EVENTS_PER_CHUNK;
+    private long maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
 
     /**
      * Returns the instance of this class associated with an unauthenticated user context.
@@ -263,21 +268,77 @@ public class SalesforceAnalyticsManager {
         return enabled;
     }
 
+    /**
+     * Sets the maximum number of events sent in one request when publishing.
+     *
+     * @param maxEventsPerChunk Maximum number of events.
+     */
+    public synchronized void setMaxEventsPerChunk(int maxEventsPerChunk) {
+        this.maxEventsPerChunk = Math.max(1, maxEventsPerChunk);
+    }
+
+    /**
+     * Returns the maximum number of events sent in one request when publishing.
+     *
+     * @return Maximum number of events.
+     */
+    public synchronized int getMaxEventsPerChunk() {
+        return maxEventsPerChunk;
+    }
+
+    /**
+     * Sets the maximum size (in bytes, as stored) of the events sent in one request when publishing.
+     *
+     * @param maxChunkSize Maximum size in bytes.
+     */
+    public synchronized void setMaxChunkSize(long maxChunkSize) {
+        this.maxChunkSize = Math.max(1, maxChunkSize);
+    }
+
+    /**
+     * Returns the maximum size (in bytes, as stored) of the events sent in one request when publishing.
+     *
+     * @return Maximum size in bytes.
+     */
+    public synchronized long getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
     /**
      * Publishes all stored events to all registered network endpoints after
-     * applying the required event format transforms. Stored events will be
-     * deleted if publishing was successful for all registered endpoints.
+     * applying the required event format transforms. Events are read from the store
+     * and published in chunks (see setMaxEventsPerChunk and setMaxChunkSize). Each
+     * chunk is deleted from the store once it has been published successfully to all
+     * registered endpoints, publishing stops at the first chunk that fails.
      * This method should NOT be called from the main thread.
      */
     public synchronized void publishAllEvents() {
-        final List<InstrumentationEvent> events = eventStoreManager.fetchAllEvents();
-        publishEvents(events);
+        final Set<String> publishedEventIds = new HashSet<>();
+        while (true) {
+            final List<InstrumentationEvent> events = eventStoreManager.fetchEvents(maxEventsPerChunk, maxChunkSize);
+            if (events.isEmpty()) {
+                break;
+            }
+
+            // Stops if published events are read again, i.e. they could not be deleted.
+            for (final InstrumentationEvent event : events) {
+                if (!publishedEventIds.add(event.getEventId())) {
+                    SalesforceSDKLogger.w(TAG, "Published events could not be deleted");
+                    return;
+                }
+            }
+            if (!publishChunk(events)) {
+                break;
+            }
+        }
     }
 
     /**
      * Publishes a list of events to all registered network endpoints after
-     * applying the required event format transforms. Stored events will be
-     * deleted if publishing was successful for all registered endpoints.
+     * applying the required event format transforms. Events are published in chunks
+     * of at most getMaxEventsPerChunk events. Stored events of a chunk will be deleted
+     * if publishing was successful for all registered endpoints, publishing stops at
+     * the first chunk that fails.
      * This method should NOT be called from the main thread.
      *
      * @param events List of events.
@@ -286,7 +347,26 @@ public class SalesforceAnalyticsManager {
         if (events == null || events.size() == 0) {
             return;
         }
+        for (int start = 0; start < events.size(); start += maxEventsPerChunk) {
+            final int end = Math.min(events.size(), start + maxEventsPerChunk);
+            if (!publishChunk(events.subList(start, end))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Publishes a chunk of events to all registered network endpoints and deletes
+     * them from the store if publishing was successful for all registered endpoints.
+     *
+     * @param events Events.
+     * @return True - if successful, False - otherwise.
+     */
+    private boolean publishChunk(List<InstrumentationEvent> events) {
         final List<String> eventsIds = new ArrayList<>();
+        for (final InstrumentationEvent event : events) {
+            eventsIds.add(event.getEventId());
+        }
         boolean success = true;
         final Set<Class<? extends Transform>> remoteKeySet = remotes.keySet();
         for (final Class<? extends Transform> transformClass : remoteKeySet) {
@@ -299,7 +379,6 @@ public class SalesforceAnalyticsManager {
             if (transformer != null) {
                 final JSONArray eventsJSONArray = new JSONArray();
                 for (final InstrumentationEvent event : events) {
-                    eventsIds.add(event.getEventId());
                     final JSONObject eventJSON = transformer.transform(event);
                     if (eventJSON != null) {
                         eventsJSONArray.put(eventJSON);
@@ -332,6 +411,7 @@ public class SalesforceAnalyticsManager {
         if (success) {
             eventStoreManager.deleteEvents(eventsIds);
         }
+        return success;
     }
 
     /**
@@ -239,6 +239,9 @@ public class AuthenticatorService extends Service {
                         }
                     }
                 }
+
+                // Cached user account has an outdated auth token.
+                SalesforceSDKManager.getInstance().getUserAccountManager().invalidateUserAccount(account);
                 resBundle.putString(AuthenticatorService.KEY_THUMBNAIL_URL, encrThumbnailUrl);
                 String encrCommunityId = null;
                 if (communityId != null) {
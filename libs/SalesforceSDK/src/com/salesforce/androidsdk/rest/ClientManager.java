@@ -286,6 +286,7 @@ public class ClientManager {
         List<AccountManagerFuture<Boolean>> removalFutures = new ArrayList<AccountManagerFuture<Boolean>>();
         for (Account a : accounts) {
             removalFutures.add(accountManager.removeAccount(a, null, null));
+            SalesforceSDKManager.getInstance().getUserAccountManager().invalidateUserAccount(a);
         }
         for (AccountManagerFuture<Boolean> f : removalFutures) {
             try {
@@ -382,6 +383,7 @@ public class ClientManager {
             // WARNING! This assumes all user data is a String!
             accountManager.setUserData(acc, key, extras.getString(key));
         }
+        SalesforceSDKManager.getInstance().getUserAccountManager().invalidateUserAccount(acc);
 
         /*
          * Sets this user as the current user only if this is the first user being logged in
@@ -419,6 +421,7 @@ public class ClientManager {
     public void removeAccountAsync(Account acc, AccountManagerCallback<Boolean> callback) {
         if (acc != null) {
             accountManager.removeAccount(acc, callback, null);
+            SalesforceSDKManager.getInstance().getUserAccountManager().invalidateUserAccount(acc);
         }
     }
 
@@ -641,6 +644,7 @@ public class ClientManager {
                         }
                     }
                 }
+                UserAccountManager.getInstance().invalidateUserAccount(account);
                 final UserAccount userAccount = UserAccountManager.getInstance().buildUserAccount(account);
                 userAccount.downloadProfilePhoto();
                 UserAccountManager.getInstance().clearCachedCurrentUser();
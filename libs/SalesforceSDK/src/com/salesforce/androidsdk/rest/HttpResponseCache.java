@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.rest;
+
+import com.salesforce.androidsdk.analytics.security.Encryptor;
+import com.salesforce.androidsdk.util.SalesforceSDKLogger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Encrypted, size-bounded cache of HTTP responses used by RestClient for GET requests with a cache policy
+ * (see RestRequest.CachePolicy) e.g. describe and layout requests.
+ *
+ * Only successful responses with an ETag or Last-Modified header are cached. A cached response is revalidated
+ * with a conditional request (If-None-Match / If-Modified-Since): when the server answers 304 (without a body),
+ * the cached body is returned instead.
+ *
+ * Each response is kept in its own file, encrypted with the given key. Least recently used responses are evicted
+ * once the files take more than maxSize bytes.
+ */
+public class HttpResponseCache implements Interceptor {
+
+    public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    private static final String TAG = "HttpResponseCache";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String URL = "url";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int MAX_META_SIZE = 64 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final String encryptionKey;
+    private final long maxSize;
+    private long size = -1; // computed on first use, guarded by this
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param directory Directory for cached responses (created if needed).
+     * @param encryptionKey Key with which to encrypt cached responses.
+     * @param maxSize Max size in bytes of the cached responses.
+     */
+    public HttpResponseCache(File directory, String encryptionKey, long maxSize) {
+        this.directory = directory;
+        this.encryptionKey = encryptionKey;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        final Request request = chain.request();
+        final RestRequest.CachePolicy cachePolicy = (request.tag() instanceof RestRequest.CachePolicy)
+                ? (RestRequest.CachePolicy) request.tag() : RestRequest.CachePolicy.NO_CACHE;
+        if (cachePolicy == RestRequest.CachePolicy.NO_CACHE || !"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+        final String url = request.url().toString();
+        final String key = getKey(url);
+        final Entry entry = get(key, url);
+        if (entry != null && cachePolicy == RestRequest.CachePolicy.CACHE_FIRST) {
+            hitCount.incrementAndGet();
+            touch(key);
+            return entry.toResponse(request, null);
+        }
+
+        // Asking the server whether the cached response is still valid
+        Request networkRequest = request;
+        if (entry != null) {
+            final Request.Builder builder = request.newBuilder();
+            if (entry.etag != null) {
+                builder.header(IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                builder.header(IF_MODIFIED_SINCE, entry.lastModified);
+            }
+            networkRequest = builder.build();
+        }
+        final Response response = chain.proceed(networkRequest);
+        if (entry != null && response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            hitCount.incrementAndGet();
+            notModifiedCount.incrementAndGet();
+            response.close();
+            touch(key);
+            return entry.toResponse(request, response);
+        }
+        missCount.incrementAndGet();
+        final String etag = response.header(ETAG);
+        final String lastModified = response.header(LAST_MODIFIED);
+        if (!response.isSuccessful() || response.body() == null || (etag == null && lastModified == null)) {
+            if (entry != null && response.isSuccessful()) {
+                remove(key);
+            }
+            return response;
+        }
+
+        // Caching response
+        final ResponseBody body = response.body();
+        final MediaType contentType = body.contentType();
+        final byte[] bytes = body.bytes();
+        put(key, new Entry(url, etag, lastModified, contentType == null ? null : contentType.toString(), bytes));
+        return response.newBuilder().body(ResponseBody.create(contentType, bytes)).build();
+    }
+
+    /**
+     * @return Number of requests answered with a cached response (with or without asking the server).
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of requests for which the response had to be downloaded.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Number of cached responses the server found still valid (304 responses).
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * @return Size in bytes of the cached responses.
+     */
+    public synchronized long getSize() {
+        if (size < 0) {
+            size = 0;
+            for (File file : listFiles()) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes all cached responses.
+     */
+    public synchronized void clear() {
+        for (File file : listFiles()) {
+            if (!file.delete()) {
+                SalesforceSDKLogger.w(TAG, "Could not delete " + file);
+            }
+        }
+        size = 0;
+    }
+
+    private Entry get(String key, String url) {
+        final File file = new File(directory, key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                final DataInputStream dataIn = new DataInputStream(Encryptor.getDecryptingInputStream(in, encryptionKey));
+                final int metaSize = dataIn.readInt();
+                if (metaSize < 0 || metaSize > MAX_META_SIZE) {
+                    throw new IOException("Invalid cached response");
+                }
+                final byte[] metaBytes = new byte[metaSize];
+                dataIn.readFully(metaBytes);
+                final JSONObject meta = new JSONObject(new String(metaBytes, UTF8));
+                if (!url.equals(meta.getString(URL))) {
+                    return null; // hash collision
+                }
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[4096];
+                int count;
+                while ((count = dataIn.read(buffer)) != -1) {
+                    body.write(buffer, 0, count);
+                }
+                return new Entry(url, meta.optString(ETAG, null), meta.optString(LAST_MODIFIED, null),
+                        meta.optString(CONTENT_TYPE, null), body.toByteArray());
+            } finally {
+                in.close();
+            }
+        } catch (IOException | JSONException e) {
+            SalesforceSDKLogger.w(TAG, "Could not read cached response", e);
+            remove(key);
+            return null;
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        final byte[] encrypted;
+        try {
+            encrypted = Encryptor.encryptRawBytes(entry.serialize(), encryptionKey);
+        } catch (IOException | JSONException e) {
+            SalesforceSDKLogger.w(TAG, "Could not serialize response", e);
+            return;
+        }
+        if (encrypted == null || encrypted.length > maxSize) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            SalesforceSDKLogger.w(TAG, "Could not create " + directory);
+            return;
+        }
+        final File file = new File(directory, key);
+        final File tmpFile = new File(directory, key + TMP_SUFFIX);
+        try {
+            final FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(encrypted);
+            } finally {
+                out.close();
+            }
+            final long previousLength = file.length();
+            getSize();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tmpFile);
+            }
+            size += encrypted.length - previousLength;
+        } catch (IOException e) {
+            SalesforceSDKLogger.w(TAG, "Could not write cached response", e);
+            tmpFile.delete();
+            return;
+        }
+        evictIfNeeded();
+    }
+
+    private synchronized void remove(String key) {
+        final File file = new File(directory, key);
+        final long length = file.length();
+        if (file.delete() && size >= 0) {
+            size -= length;
+        }
+    }
+
+    private void touch(String key) {
+        new File(directory, key).setLastModified(System.currentTimeMillis());
+    }
+
+    private synchronized void evictIfNeeded() {
+        if (getSize() <= maxSize) {
+            return;
+        }
+        final File[] files = listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            final long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File[] listFiles() {
+        final File[] files = directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private static String getKey(String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(UTF8));
+            final StringBuilder key = new StringBuilder();
+            for (byte b : digest) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Cached response
+     */
+    private static class Entry {
+        final String url;
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        final byte[] body;
+
+        Entry(String url, String etag, String lastModified, String contentType, byte[] body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * @return size of meta data, meta data (json) and body
+         */
+        byte[] serialize() throws IOException, JSONException {
+            final JSONObject meta = new JSONObject();
+            meta.put(URL, url);
+            meta.put(ETAG, etag);
+            meta.put(LAST_MODIFIED, lastModified);
+            meta.put(CONTENT_TYPE, contentType);
+            final byte[] metaBytes = meta.toString().getBytes(UTF8);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + metaBytes.length + body.length);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(metaBytes.length);
+            out.write(metaBytes);
+            out.write(body);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        /**
+         * @param request
+         * @param notModifiedResponse 304 response from the server or null if the server was not contacted
+         * @return response with the cached body
+         */
+        Response toResponse(Request request, Response notModifiedResponse) {
+            final Response.Builder builder = (notModifiedResponse != null)
+                    ? notModifiedResponse.newBuilder()
+                    : new Response.Builder().protocol(Protocol.HTTP_1_1);
+            if (contentType != null) {
+                builder.header(CONTENT_TYPE, contentType);
+            }
+            return builder.request(request)
+                    .code(HttpURLConnection.HTTP_OK)
+                    .message("OK")
+                    .body(ResponseBody.create(contentType == null ? null : MediaType.parse(contentType), body))
+                    .build();
+        }
+    }
+}
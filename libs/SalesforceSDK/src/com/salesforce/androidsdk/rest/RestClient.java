@@ -34,12 +34,24 @@ import com.salesforce.androidsdk.util.SalesforceSDKLogger;
 
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -70,11 +82,16 @@ public class RestClient {
 	private static Map<String, OAuthRefreshInterceptor> OAUTH_REFRESH_INTERCEPTORS = new HashMap<>();
 	private static Map<String, OkHttpClient.Builder> OK_CLIENT_BUILDERS = new HashMap<>();
     private static Map<String, OkHttpClient> OK_CLIENTS = new HashMap<>();
+	private static Map<String, HttpResponseCache> RESPONSE_CACHES = new HashMap<>();
+	private static final Map<String, InFlightCall> IN_FLIGHT_CALLS = new HashMap<>();
+	private static final AtomicLong COALESCED_REQUEST_COUNT = new AtomicLong();
+	private static final String RESPONSE_CACHE_DIR = "rest_responses";
 
 	private ClientInfo clientInfo;
     private HttpAccess httpAccessor;
 	private AuthTokenProvider authTokenProvider;
     private OAuthRefreshInterceptor oAuthRefreshInterceptor;
+	private HttpResponseCache responseCache;
 	private OkHttpClient.Builder okHttpClientBuilder;
 	private OkHttpClient okHttpClient;
 
@@ -141,6 +158,7 @@ public class RestClient {
         this.httpAccessor = httpAccessor;
 		this.authTokenProvider = authTokenProvider;
 		setOAuthRefreshInterceptor(authToken);
+		setResponseCache();
 		setOkHttpClientBuilder();
 		setOkHttpClient(null);
 	}
@@ -153,6 +171,10 @@ public class RestClient {
 		String userId = userAccount != null ? userAccount.getUserId() : null;
 		String cacheKey = computeCacheKey(orgId, userId);
 		OAUTH_REFRESH_INTERCEPTORS.remove(cacheKey);
+		HttpResponseCache responseCache = RESPONSE_CACHES.remove(cacheKey);
+		if (responseCache != null) {
+			responseCache.clear();
+		}
 		OK_CLIENT_BUILDERS.remove(cacheKey);
 		OkHttpClient client = OK_CLIENTS.remove(cacheKey);
 		if (client != null) {
@@ -165,6 +187,7 @@ public class RestClient {
 	 */
 	public synchronized static void clearCaches() {
 		OAUTH_REFRESH_INTERCEPTORS.clear();
+		RESPONSE_CACHES.clear();
 		OK_CLIENT_BUILDERS.clear();
 		OK_CLIENTS.clear();
     }
@@ -192,6 +215,26 @@ public class RestClient {
 		this.oAuthRefreshInterceptor = oAuthRefreshInterceptor;
 	}
 
+	/**
+	 * Sets the HttpResponseCache associated with this user account.
+	 * Cached responses are kept in the cache directory of the app (one directory per user) and encrypted with the SDK key.
+	 */
+	private synchronized void setResponseCache() {
+		if (!SalesforceSDKManager.hasInstance()) {
+			return;
+		}
+		final String cacheKey = getCacheKey();
+		HttpResponseCache responseCache = RESPONSE_CACHES.get(cacheKey);
+
+		// If none cached, create new one
+		if (responseCache == null) {
+			final File directory = new File(new File(SalesforceSDKManager.getInstance().getAppContext().getCacheDir(), RESPONSE_CACHE_DIR), cacheKey);
+			responseCache = new HttpResponseCache(directory, SalesforceSDKManager.getEncryptionKey(), HttpResponseCache.DEFAULT_MAX_SIZE);
+			RESPONSE_CACHES.put(cacheKey, responseCache);
+		}
+		this.responseCache = responseCache;
+	}
+
 	/**
 	 * Sets the OkHttpclient.Builder associated with this user account. The OkHttpclient.Builder
 	 * are cached in a map and reused as and when a user account
@@ -203,8 +246,13 @@ public class RestClient {
 
 		// If none cached, create new one
 		if (okHttpClientBuilder == null) {
-			okHttpClientBuilder = httpAccessor.getOkHttpClientBuilder()
-					.addInterceptor(getOAuthRefreshInterceptor());
+			okHttpClientBuilder = httpAccessor.getOkHttpClientBuilder();
+
+			// Response cache goes first so that conditional requests are authenticated (and retried) by the refresh interceptor
+			if (responseCache != null) {
+				okHttpClientBuilder.addInterceptor(responseCache);
+			}
+			okHttpClientBuilder.addInterceptor(getOAuthRefreshInterceptor());
 			OK_CLIENT_BUILDERS.put(getCacheKey(), okHttpClientBuilder);
 		}
 		this.okHttpClientBuilder = okHttpClientBuilder;
@@ -297,6 +345,13 @@ public class RestClient {
 		return oAuthRefreshInterceptor;
 	}
 
+	/**
+	 * @return underlying HttpResponseCache (null if the SDK has not been initialized)
+	 */
+	public HttpResponseCache getResponseCache() {
+		return responseCache;
+	}
+
 	/**
 	 * @return underlying OkHttpClient.Builder
 	 */
@@ -319,7 +374,8 @@ public class RestClient {
     public Request buildRequest(RestRequest restRequest) {
         final Request.Builder builder =  new Request.Builder()
                 .url(HttpUrl.get(oAuthRefreshInterceptor.clientInfo.resolveUrl(restRequest)))
-                .method(restRequest.getMethod().toString(), restRequest.getRequestBody());
+                .method(restRequest.getMethod().toString(), restRequest.getRequestBody())
+                .tag(restRequest.getCachePolicy());
         oAuthRefreshInterceptor.setShouldRefreshOn403(restRequest.getShouldRefreshOn403());
 
         // Adding additional headers
@@ -357,6 +413,203 @@ public class RestClient {
 		return call;
 	}
 
+	/**
+	 * Send the given restRequest asynchronously and return a future of its RestResponse.
+	 * Identical GET / HEAD requests (same user, url and headers) sent while one of them is in flight share
+	 * a single call: the response is then fully buffered in memory before being handed to every caller.
+	 * A shared response can still be read with {@link RestResponse#asInputStream()} (which then streams the buffered
+	 * content), so callers don't need to know whether their request was coalesced. Large downloads that must not be
+	 * buffered should use {@link #sendSync(RestRequest)} or {@link #sendAsync(RestRequest, AsyncRequestCallback)}.
+	 * Cancelling the returned future only cancels the call once no other caller is waiting for it.
+	 * Note: Callbacks and continuations of the future run on a network thread.
+	 * @param restRequest
+	 * @return future of the response
+	 */
+	public RestFuture<RestResponse> sendAsync(RestRequest restRequest) {
+		final Request request = buildRequest(restRequest);
+		final String key = getInFlightKey(request);
+		InFlightCall inFlightCall = null;
+		boolean isNew = false;
+		synchronized (IN_FLIGHT_CALLS) {
+			if (key != null) {
+				inFlightCall = IN_FLIGHT_CALLS.get(key);
+			}
+			if (inFlightCall == null) {
+				inFlightCall = new InFlightCall(key);
+				isNew = true;
+				if (key != null) {
+					IN_FLIGHT_CALLS.put(key, inFlightCall);
+				}
+			} else {
+				COALESCED_REQUEST_COUNT.incrementAndGet();
+			}
+			inFlightCall.subscribers++;
+		}
+		final RestFuture<RestResponse> future = inFlightCall.subscribe();
+		if (isNew) {
+			inFlightCall.start(okHttpClient.newCall(request));
+		}
+		return future;
+	}
+
+	/**
+	 * @return Number of requests that were answered by a call already in flight for an identical request.
+	 */
+	public static long getCoalescedRequestCount() {
+		return COALESCED_REQUEST_COUNT.get();
+	}
+
+	/**
+	 * Sets the max number of requests to each host the underlying OkHttpClient runs concurrently
+	 * (asynchronous requests beyond that wait in the dispatcher queue).
+	 * NB: the OkHttpClient, and therefore the policy, is shared by all the RestClient of the same user.
+	 * @param maxRequestsPerHost
+	 */
+	public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+		okHttpClient.dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+	}
+
+	/**
+	 * @return Max number of requests to each host run concurrently.
+	 */
+	public int getMaxRequestsPerHost() {
+		return okHttpClient.dispatcher().getMaxRequestsPerHost();
+	}
+
+	/**
+	 * Sets the max number of requests the underlying OkHttpClient runs concurrently (all hosts together).
+	 * @param maxRequests
+	 */
+	public void setMaxRequests(int maxRequests) {
+		okHttpClient.dispatcher().setMaxRequests(maxRequests);
+	}
+
+	/**
+	 * @return Max number of requests run concurrently.
+	 */
+	public int getMaxRequests() {
+		return okHttpClient.dispatcher().getMaxRequests();
+	}
+
+	/**
+	 * @return key identifying identical idempotent requests or null if request should not be coalesced
+	 */
+	private String getInFlightKey(Request request) {
+		final String method = request.method();
+		if (request.body() != null || !("GET".equals(method) || "HEAD".equals(method))) {
+			return null;
+		}
+		return getCacheKey() + " " + method + " " + request.url() + " " + request.tag() + "\n" + request.headers();
+	}
+
+	/**
+	 * Call shared by identical requests
+	 */
+	private static class InFlightCall implements Callback {
+		private final String key;
+		private final RestFuture<RestResponse> sharedFuture = new RestFuture<>();
+		private Call call;        // guarded by IN_FLIGHT_CALLS
+		private int subscribers;  // guarded by IN_FLIGHT_CALLS
+
+		InFlightCall(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * NB: subscribers must have been incremented (while holding IN_FLIGHT_CALLS)
+		 * @return future for one more caller
+		 */
+		RestFuture<RestResponse> subscribe() {
+			final RestFuture<RestResponse> future = new RestFuture<>();
+			future.setOnCancel(new Runnable() {
+				@Override
+				public void run() {
+					unsubscribe();
+				}
+			});
+			sharedFuture.addCallback(new RestFuture.Callback<RestResponse>() {
+				@Override
+				public void onSuccess(RestResponse response) {
+					future.complete(response);
+				}
+
+				@Override
+				public void onError(Exception exception) {
+					future.completeExceptionally(exception);
+				}
+			});
+			return future;
+		}
+
+		void start(Call call) {
+			synchronized (IN_FLIGHT_CALLS) {
+				if (subscribers == 0) {
+					return; // cancelled already
+				}
+				this.call = call;
+			}
+			call.enqueue(this);
+		}
+
+		@Override
+		public void onFailure(Call call, IOException e) {
+			detach();
+			sharedFuture.completeExceptionally(e);
+		}
+
+		@Override
+		public void onResponse(Call call, Response response) {
+			final int waitingCallers = detach();
+			if (waitingCallers == 0) {
+
+				// Every caller cancelled: nobody will read the response
+				response.close();
+				return;
+			}
+			final RestResponse restResponse = new RestResponse(response);
+			if (waitingCallers > 1) {
+
+				// Response is read by several callers
+				try {
+					restResponse.buffer();
+				} catch (IOException e) {
+					response.close();
+					sharedFuture.completeExceptionally(e);
+					return;
+				}
+			}
+			sharedFuture.complete(restResponse);
+		}
+
+		private void unsubscribe() {
+			final Call callToCancel;
+			synchronized (IN_FLIGHT_CALLS) {
+				subscribers--;
+				if (subscribers > 0) {
+					return;
+				}
+				detach();
+				callToCancel = call;
+			}
+			if (callToCancel != null) {
+				callToCancel.cancel();
+			}
+		}
+
+		/**
+		 * Stops identical requests from joining this call
+		 * @return number of callers waiting for the response
+		 */
+		private int detach() {
+			synchronized (IN_FLIGHT_CALLS) {
+				if (key != null && IN_FLIGHT_CALLS.get(key) == this) {
+					IN_FLIGHT_CALLS.remove(key);
+				}
+				return subscribers;
+			}
+		}
+	}
+
 	/**
 	 * Send the given restRequest synchronously and return a RestResponse
 	 * Note: Cannot be used by code on the UI thread (use sendAsync instead).
@@ -621,13 +874,39 @@ public class RestClient {
 
     /**
      * Network interceptor that does oauth refresh and request retry when access token has expired.
+     *
+     * The access token is also refreshed before it is expected to expire (based on the time of the last refresh),
+     * so that requests don't have to fail with a 401 first. Only one refresh runs at a time: requests sent while
+     * a refresh is in flight are held until it completes and then use the new access token.
+     * NB: the time at which the access token was issued is not known, so the first refresh of a session
+     * is always done after a request has failed; refreshes are proactive after that.
      */
     public static class OAuthRefreshInterceptor implements Interceptor {
 
+        // Salesforce sessions time out after 2 hours by default
+        public static final long DEFAULT_ACCESS_TOKEN_LIFETIME = 2 * 60 * 60 * 1000L;
+        public static final long DEFAULT_PROACTIVE_REFRESH_MARGIN = 5 * 60 * 1000L;
+
+        // After a failed proactive refresh, requests go out with the current access token for that long before trying again
+        public static final long PROACTIVE_REFRESH_RETRY_DELAY = 30 * 1000L;
+
+        // Refreshes run on their own threads so that a cancelled request doesn't abort a refresh other requests are waiting for
+        private static final int MAX_REFRESH_THREADS = 4;
+        private static final ExecutorService REFRESH_THREAD_POOL = createRefreshThreadPool();
+
         private final AuthTokenProvider authTokenProvider;
         private String authToken;
-        private ClientInfo clientInfo;
+        private volatile ClientInfo clientInfo;
         private boolean shouldRefreshOn403 = true;
+        private long accessTokenLifetime = DEFAULT_ACCESS_TOKEN_LIFETIME;
+        private long proactiveRefreshMargin = DEFAULT_PROACTIVE_REFRESH_MARGIN;
+        private final Object refreshLock = new Object();
+        private Future<Void> refreshInFlight; // guarded by refreshLock
+        private boolean refreshInFlightProactive; // guarded by refreshLock
+        private long lastProactiveRefreshFailureTime = -1; // guarded by refreshLock
+        private final AtomicLong proactiveRefreshCount = new AtomicLong();
+        private final AtomicLong reactiveRefreshCount = new AtomicLong();
+        private final AtomicLong avoidedUnauthorizedRetryCount = new AtomicLong();
 
         /**
          * Constructs a SalesforceHttpInterceptor with the given clientInfo, authToken and authTokenProvider.
@@ -647,10 +926,32 @@ public class RestClient {
             this.authTokenProvider = authTokenProvider;
         }
 
+        /**
+         * At most one refresh runs per interceptor: the pool only grows with the number of users refreshing at the same time
+         */
+        private static ExecutorService createRefreshThreadPool() {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_REFRESH_THREADS, MAX_REFRESH_THREADS,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "OAuthRefresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+
         @Override
         public Response intercept(Chain chain) throws IOException {
             Request request = chain.request();
+            final boolean heldForRefresh = awaitRefreshIfNeeded();
+            final String authTokenUsed = getAuthToken();
             request = buildAuthenticatedRequest(request);
+            if (heldForRefresh) {
+                request = adjustHostIfNeeded(request);
+            }
             Response response = chain.proceed(request);
 			int responseCode = response.code();
 			boolean refreshRequired = shouldRefreshOn403 ? (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED
@@ -661,24 +962,207 @@ public class RestClient {
 			 * return 403 as the error code when an instance split or migration occurs.
 			 */
             if (refreshRequired) {
-                refreshAccessToken();
+
+                // No need to refresh if another request already got a new token since this one was sent
+                if (authTokenUsed == null || authTokenUsed.equals(getAuthToken())) {
+                    waitForRefresh(getOrStartRefresh(false));
+                }
                 if (getAuthToken() != null) {
                     request = buildAuthenticatedRequest(request);
-					HttpUrl currentInstanceUrl = HttpUrl.get(clientInfo.getInstanceUrl());
-					if (currentInstanceUrl != null && currentInstanceUrl.host() != null) {
-
-						// This happens during instance migration. hosts could change
-						// In that case, the new host should replace the old host in the request object
-						if (!currentInstanceUrl.host().equals(request.url().host())) {
-							request = adjustHostInRequest(request, currentInstanceUrl.host());
-						}
-					}
+                    request = adjustHostIfNeeded(request);
                     response = chain.proceed(request);
                 }
             }
             return response;
         }
 
+        /**
+         * Sets the expected lifetime of access tokens (i.e. the session timeout of the org).
+         * The access token is refreshed proactiveRefreshMargin ms before it is expected to expire.
+         * Its expiry is only known once it has been refreshed: until then, it is refreshed after a request fails.
+         *
+         * @param accessTokenLifetime Lifetime in ms, 0 to only refresh once a request has failed.
+         */
+        public synchronized void setAccessTokenLifetime(long accessTokenLifetime) {
+            this.accessTokenLifetime = accessTokenLifetime;
+        }
+
+        /**
+         * @return Expected lifetime of access tokens (ms).
+         */
+        public synchronized long getAccessTokenLifetime() {
+            return accessTokenLifetime;
+        }
+
+        /**
+         * Sets how long before its expected expiry the access token is refreshed.
+         *
+         * @param proactiveRefreshMargin Margin in ms.
+         */
+        public synchronized void setProactiveRefreshMargin(long proactiveRefreshMargin) {
+            this.proactiveRefreshMargin = proactiveRefreshMargin;
+        }
+
+        /**
+         * @return How long before its expected expiry the access token is refreshed (ms).
+         */
+        public synchronized long getProactiveRefreshMargin() {
+            return proactiveRefreshMargin;
+        }
+
+        /**
+         * @return Number of refreshes done before the access token was expected to expire.
+         */
+        public long getProactiveRefreshCount() {
+            return proactiveRefreshCount.get();
+        }
+
+        /**
+         * @return Number of refreshes done after a request failed with 401 (or 403).
+         */
+        public long getReactiveRefreshCount() {
+            return reactiveRefreshCount.get();
+        }
+
+        /**
+         * @return Number of requests that were held until a refresh completed instead of being sent
+         * with an access token that was expired or about to expire (and retried after a 401).
+         */
+        public long getAvoidedUnauthorizedRetryCount() {
+            return avoidedUnauthorizedRetryCount.get();
+        }
+
+        /**
+         * Waits for the refresh in flight if any, or refreshes the access token if it is about to expire.
+         * If a proactive refresh fails, the request goes out with the current access token (which might still be valid):
+         * revocation is only reported once a request has failed and a reactive refresh has failed too.
+         *
+         * @return True - if the request was held for a refresh that succeeded, False - otherwise.
+         */
+        private boolean awaitRefreshIfNeeded() throws IOException {
+            if (authTokenProvider == null) {
+                return false;
+            }
+            Future<Void> refresh;
+            boolean proactive;
+            synchronized (refreshLock) {
+                refresh = refreshInFlight;
+                proactive = refreshInFlightProactive;
+                if (refresh == null && isAccessTokenExpiring() && !isProactiveRefreshBackingOff()) {
+                    refresh = getOrStartRefresh(true);
+                    proactive = true;
+                }
+            }
+            if (refresh == null) {
+                return false;
+            }
+            try {
+                waitForRefresh(refresh);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!proactive) {
+                    throw e;
+                }
+                SalesforceSDKLogger.w(TAG, "Proactive access token refresh failed, sending request with current access token", e);
+                return false;
+            }
+            avoidedUnauthorizedRetryCount.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * NB: must be called while holding refreshLock.
+         *
+         * @return True - if a proactive refresh failed less than PROACTIVE_REFRESH_RETRY_DELAY ms ago.
+         */
+        private boolean isProactiveRefreshBackingOff() {
+            return lastProactiveRefreshFailureTime >= 0
+                    && System.currentTimeMillis() - lastProactiveRefreshFailureTime < PROACTIVE_REFRESH_RETRY_DELAY;
+        }
+
+        /**
+         * NB: no expiry can be expected until the access token has been refreshed once (last refresh time unknown).
+         *
+         * @return True - if the access token is expected to expire within proactiveRefreshMargin.
+         */
+        private boolean isAccessTokenExpiring() {
+            final long lifetime = getAccessTokenLifetime();
+            final long elapsed = getElapsedTimeSinceLastRefresh();
+            return lifetime > 0 && elapsed >= 0 && elapsed >= lifetime - getProactiveRefreshMargin();
+        }
+
+        /**
+         * Returns the refresh in flight or starts a new one.
+         *
+         * @param proactive True - if the access token is about to expire, False - if a request failed.
+         * @return Refresh.
+         */
+        private Future<Void> getOrStartRefresh(final boolean proactive) {
+            synchronized (refreshLock) {
+                if (refreshInFlight == null) {
+                    (proactive ? proactiveRefreshCount : reactiveRefreshCount).incrementAndGet();
+                    final FutureTask<Void> refresh = new FutureTask<>(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            boolean succeeded = false;
+                            try {
+                                refreshAccessToken();
+                                succeeded = true;
+                                return null;
+                            } finally {
+                                synchronized (refreshLock) {
+                                    refreshInFlight = null;
+                                    if (succeeded) {
+                                        lastProactiveRefreshFailureTime = -1;
+                                    } else if (proactive) {
+                                        lastProactiveRefreshFailureTime = System.currentTimeMillis();
+                                    }
+                                }
+                            }
+                        }
+                    });
+                    refreshInFlight = refresh;
+                    refreshInFlightProactive = proactive;
+                    REFRESH_THREAD_POOL.execute(refresh);
+                }
+                return refreshInFlight;
+            }
+        }
+
+        private void waitForRefresh(Future<Void> refresh) throws IOException {
+            try {
+                refresh.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for access token refresh");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Access token refresh failed", cause);
+            }
+        }
+
+        /**
+         * Moves request to the current instance host if it changed.
+         *
+         * @param request
+         * @return
+         */
+        private Request adjustHostIfNeeded(Request request) {
+            HttpUrl currentInstanceUrl = HttpUrl.get(clientInfo.getInstanceUrl());
+            if (currentInstanceUrl != null && currentInstanceUrl.host() != null) {
+
+                // This happens during instance migration. hosts could change
+                // In that case, the new host should replace the old host in the request object
+                if (!currentInstanceUrl.host().equals(request.url().host())) {
+                    request = adjustHostInRequest(request, currentInstanceUrl.host());
+                }
+            }
+            return request;
+        }
+
         /**
          * Returns whether the SDK should attempt to refresh tokens if the service returns HTTP 403.
          *
@@ -790,11 +1274,12 @@ public class RestClient {
 
                 // Check if the instanceUrl changed
                 String instanceUrl = authTokenProvider.getInstanceUrl();
+                final ClientInfo clientInfo = this.clientInfo;
                 if (!clientInfo.instanceUrl.toString().equalsIgnoreCase(instanceUrl)) {
                     try {
 
                         // Create a new ClientInfo
-                        clientInfo = new ClientInfo(new URI(instanceUrl),
+                        this.clientInfo = new ClientInfo(new URI(instanceUrl),
                                 clientInfo.loginUrl, clientInfo.identityUrl,
                                 clientInfo.accountName, clientInfo.username,
                                 clientInfo.userId, clientInfo.orgId, clientInfo.communityId,
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.rest;
+
+import com.salesforce.androidsdk.util.SalesforceSDKLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous request (see RestClient#sendAsync(RestRequest)).
+ *
+ * Callbacks and continuations run on the thread that completes the future (a network thread for requests),
+ * or right away on the calling thread if the future is already complete. Dependent requests can therefore be
+ * chained with then(...) without any thread waiting on a response:
+ *
+ *     restClient.sendAsync(request1).then(new RestFuture.Continuation<RestResponse, RestResponse>() {
+ *         public RestFuture<RestResponse> then(RestResponse response1) throws Exception {
+ *             return restClient.sendAsync(buildRequest2(response1.asJSONObject()));
+ *         }
+ *     }).addCallback(...);
+ *
+ * Cancelling a future cancels the stage it depends on (e.g. the underlying call).
+ *
+ * @param <T> Type of result.
+ */
+public class RestFuture<T> implements Future<T> {
+
+    private static final String TAG = "RestFuture";
+
+    /**
+     * Callback invoked once the future completes.
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+        void onError(Exception exception);
+    }
+
+    /**
+     * Turns the result of a future into another value.
+     */
+    public interface Transformation<T, U> {
+        U apply(T result) throws Exception;
+    }
+
+    /**
+     * Starts the next asynchronous step (e.g. a dependent request) from the result of a future.
+     */
+    public interface Continuation<T, U> {
+        RestFuture<U> then(T result) throws Exception;
+    }
+
+    private boolean done;
+    private boolean cancelled;
+    private T result;
+    private Exception exception;
+    private List<Callback<T>> callbacks = new ArrayList<>();
+    private Runnable onCancel;
+
+    /**
+     * Completes the future with the given result.
+     *
+     * @param result Result.
+     * @return True - if the future was completed by this call, False - if it was already complete.
+     */
+    public boolean complete(T result) {
+        return finish(result, null, false);
+    }
+
+    /**
+     * Completes the future with the given exception.
+     *
+     * @param exception Exception.
+     * @return True - if the future was completed by this call, False - if it was already complete.
+     */
+    public boolean completeExceptionally(Exception exception) {
+        return finish(null, exception, false);
+    }
+
+    /**
+     * Adds callback to invoke once the future completes.
+     *
+     * @param callback Callback.
+     * @return This future.
+     */
+    public RestFuture<T> addCallback(Callback<T> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        invoke(callback);
+        return this;
+    }
+
+    /**
+     * Returns future of the transformed result.
+     *
+     * @param transformation Transformation applied to the result of this future.
+     * @return Future of the transformed result.
+     */
+    public <U> RestFuture<U> map(final Transformation<T, U> transformation) {
+        final RestFuture<U> next = dependentFuture();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    next.complete(transformation.apply(result));
+                } catch (Exception e) {
+                    next.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                next.completeExceptionally(exception);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Returns future of the next asynchronous step, started once this future completes successfully.
+     *
+     * @param continuation Starts the next step from the result of this future.
+     * @return Future of the next step.
+     */
+    public <U> RestFuture<U> then(final Continuation<T, U> continuation) {
+        final RestFuture<U> next = dependentFuture();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                final RestFuture<U> step;
+                try {
+                    step = continuation.then(result);
+                } catch (Exception e) {
+                    next.completeExceptionally(e);
+                    return;
+                }
+                if (step == null) {
+                    next.complete(null);
+                    return;
+                }
+                next.setOnCancel(new Runnable() {
+                    @Override
+                    public void run() {
+                        step.cancel(true);
+                    }
+                });
+                step.addCallback(new Callback<U>() {
+                    @Override
+                    public void onSuccess(U result) {
+                        next.complete(result);
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        next.completeExceptionally(exception);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                next.completeExceptionally(exception);
+            }
+        });
+        return next;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(null, new CancellationException(), true)) {
+            return false;
+        }
+        final Runnable toRun;
+        synchronized (this) {
+            toRun = onCancel;
+        }
+        if (toRun != null) {
+            toRun.run();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    /**
+     * Sets what to do when the future is cancelled (e.g. cancel the underlying call).
+     * Runs right away if the future was already cancelled.
+     *
+     * @param onCancel Runnable.
+     */
+    void setOnCancel(Runnable onCancel) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.onCancel = onCancel;
+                return;
+            }
+        }
+        onCancel.run();
+    }
+
+    private <U> RestFuture<U> dependentFuture() {
+        final RestFuture<U> next = new RestFuture<>();
+        next.setOnCancel(new Runnable() {
+            @Override
+            public void run() {
+                cancel(true);
+            }
+        });
+        return next;
+    }
+
+    private boolean finish(T result, Exception exception, boolean cancelled) {
+        final List<Callback<T>> toInvoke;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.cancelled = cancelled;
+            this.result = result;
+            this.exception = exception;
+            toInvoke = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        for (Callback<T> callback : toInvoke) {
+            invoke(callback);
+        }
+        return true;
+    }
+
+    private void invoke(Callback<T> callback) {
+        final T result;
+        final Exception exception;
+        synchronized (this) {
+            result = this.result;
+            exception = this.exception;
+        }
+        try {
+            if (exception == null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onError(exception);
+            }
+        } catch (RuntimeException e) {
+            SalesforceSDKLogger.e(TAG, "Exception thrown by callback", e);
+        }
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (exception != null) {
+            throw new ExecutionException(exception);
+        }
+        return result;
+    }
+}
@@ -133,6 +133,15 @@ public class RestRequest {
 		LOGIN, INSTANCE
 	}
 
+    /**
+     * Enumeration for the ways a GET request can use the HTTP response cache of RestClient (see HttpResponseCache).
+     */
+	public enum CachePolicy {
+		NO_CACHE,       // always download the response, don't cache it
+		REVALIDATE,     // ask the server whether the cached response is still valid (conditional request), download it otherwise
+		CACHE_FIRST     // use the cached response without contacting the server, download it if there is none
+	}
+
 	private enum RestAction {
 
 		USERINFO("/services/oauth2/userinfo"),
@@ -173,6 +182,7 @@ public class RestRequest {
 	private final Map<String, String> additionalHttpHeaders;
 	private final JSONObject requestBodyAsJson; // needed for composite and batch requests
     private boolean shouldRefreshOn403 = true;
+    private volatile CachePolicy cachePolicy = CachePolicy.NO_CACHE;
 
     /**
      * Generic constructor for arbitrary requests without a body.
@@ -346,6 +356,32 @@ public class RestRequest {
         this.shouldRefreshOn403 = shouldRefreshOn403;
     }
 
+    /**
+     * Returns how the request uses the HTTP response cache.
+     *
+     * @return Cache policy.
+     */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * Sets how the request uses the HTTP response cache (only used by GET requests).
+     *
+     * @param cachePolicy Cache policy.
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = (cachePolicy == null ? CachePolicy.NO_CACHE : cachePolicy);
+    }
+
+    /**
+     * Returns request with the given cache policy (used for payloads that are big and rarely change).
+     */
+    private static RestRequest withCachePolicy(RestRequest request, CachePolicy cachePolicy) {
+        request.setCachePolicy(cachePolicy);
+        return request;
+    }
+
 	/**
 	 * Request to get information about the user making the request.
 	 * @return RestRequest object that requests user info.
@@ -384,7 +420,7 @@ public class RestRequest {
      * @see <a href="http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_describeGlobal.htm">http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_describeGlobal.htm</a>
 	 */
 	public static RestRequest getRequestForDescribeGlobal(String apiVersion) {
-		return new RestRequest(RestMethod.GET, RestAction.DESCRIBE_GLOBAL.getPath(apiVersion));
+		return withCachePolicy(new RestRequest(RestMethod.GET, RestAction.DESCRIBE_GLOBAL.getPath(apiVersion)), CachePolicy.REVALIDATE);
 	}
 
 	/**
@@ -396,7 +432,7 @@ public class RestRequest {
 	 * @see <a href="http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_basic_info.htm">http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_basic_info.htm</a>
 	 */
 	public static RestRequest getRequestForMetadata(String apiVersion, String objectType) {
-        return new RestRequest(RestMethod.GET, RestAction.METADATA.getPath(apiVersion, objectType));
+		return withCachePolicy(new RestRequest(RestMethod.GET, RestAction.METADATA.getPath(apiVersion, objectType)), CachePolicy.REVALIDATE);
 	}
 
 	/**
@@ -408,7 +444,7 @@ public class RestRequest {
      * @see <a href="http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_describe.htm">http://www.salesforce.com/us/developer/docs/api_rest/Content/resources_sobject_describe.htm</a>
 	 */
 	public static RestRequest getRequestForDescribe(String apiVersion, String objectType) {
-        return new RestRequest(RestMethod.GET, RestAction.DESCRIBE.getPath(apiVersion, objectType));
+		return withCachePolicy(new RestRequest(RestMethod.GET, RestAction.DESCRIBE.getPath(apiVersion, objectType)), CachePolicy.REVALIDATE);
 	}
 	
 	/**
@@ -594,7 +630,7 @@ public class RestRequest {
             path.append("?layoutType=");
             path.append(layoutType);
         }
-		return new RestRequest(RestMethod.GET, path.toString());
+		return withCachePolicy(new RestRequest(RestMethod.GET, path.toString()), CachePolicy.REVALIDATE);
 	}
 
     /**
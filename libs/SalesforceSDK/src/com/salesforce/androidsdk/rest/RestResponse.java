@@ -32,6 +32,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -56,6 +57,7 @@ public class RestResponse {
 
 	// Populated when "consume" is called
 	private boolean consumed;
+	private boolean buffered;
 	private byte[] responseAsBytes;
 	private Charset responseCharSet;
 
@@ -130,6 +132,17 @@ public class RestResponse {
 		}
 	}
 
+	/**
+	 * Fully consume response entity content, after which {@link #asInputStream()} streams the
+	 * buffered content (and can be called any number of times)
+	 * Used for responses shared by several callers
+	 * @throws IOException
+	 */
+	void buffer() throws IOException {
+		consume();
+		buffered = true;
+	}
+
 	/**
 	 * Fully consume a response and swallow any exceptions thrown during the process.
 	 * @see RestResponse#consume()
@@ -214,10 +227,18 @@ public class RestResponse {
 	 * {@link #asJSONObject()} will throw exceptions.
 	 * </p>
 	 *
+	 * <p>
+	 * A response shared by coalesced requests (see {@link RestClient#sendAsync(RestRequest)}) is buffered:
+	 * the stream then reads the buffered content, and the accessor methods keep working.
+	 * </p>
+	 *
 	 * @return an {@link InputStream} from the response content
 	 * @throws IOException if the stream could not be created or has already been consumed
 	 */
 	public InputStream asInputStream() throws IOException {
+		if (buffered) {
+			return new ByteArrayInputStream(responseAsBytes);
+		}
 		if (consumed) {
 			throw new IOException("Content has been consumed");
 		}
@@ -61,8 +61,18 @@ public class AlterSoupLongOperation extends LongOperation {
 	private static final String OLD_INDEX_SPECS = "oldIndexSpecs";
 	private static final String NEW_INDEX_SPECS = "newIndexSpecs";
 	private static final String RE_INDEX_DATA = "reIndexData";
+	private static final String CHECKPOINT_ID = "checkpointId";
 	public static final String TAG = "AlterSoup:Status";
 
+	// Statement to find the last id of the next batch of rows to copy
+	private static final String LAST_ID_IN_BATCH_SQL = "SELECT ifnull(max(%1$s), -1) FROM (SELECT %1$s FROM %2$s WHERE %1$s > ? ORDER BY %1$s LIMIT %3$d)";
+
+	// Statements to reserve the ids of the rows to copy in the new soup table
+	private static final String MAX_ID_SQL = "SELECT ifnull(max(%s), 0) FROM %s";
+	private static final String SEQ_COUNT_SQL = "SELECT count(*) FROM SQLITE_SEQUENCE WHERE name = ?";
+	private static final String SEQ_INSERT_SQL = "INSERT INTO SQLITE_SEQUENCE (name, seq) VALUES (?, ?)";
+	private static final String SEQ_UPDATE_SQL = "UPDATE SQLITE_SEQUENCE SET seq = max(seq, ?) WHERE name = ?";
+
 	/**
      * Enum for alter steps
      */
@@ -110,6 +120,12 @@ public class AlterSoupLongOperation extends LongOperation {
 	
 	// Row id for long_operations_status
 	private long rowId;
+
+	// Last soup entry id copied (during copy step) or re-indexed (during re-index step)
+	private long checkpointId = -1;
+
+	// Number of batches left to copy or re-index before stopping (used by test only, -1 for no limit)
+	private int batchesLeft = -1;
 	
 	/**
 	 * Default constructor when reading back from long operations status table
@@ -185,6 +201,21 @@ public class AlterSoupLongOperation extends LongOperation {
 	public void run(AlterSoupStep toStep) {
 		alterSoupInternal(toStep);
 	}
+
+	/**
+	 * Used by test only
+	 * Stops after copying or re-indexing maxBatches batches (to simulate an interruption in the middle of a step)
+	 * @param toStep
+	 * @param maxBatches
+	 */
+	public void run(AlterSoupStep toStep, int maxBatches) {
+		batchesLeft = maxBatches;
+		try {
+			alterSoupInternal(toStep);
+		} finally {
+			batchesLeft = -1;
+		}
+	}
 	
 	/**
 	 * @return last step completed
@@ -209,6 +240,7 @@ public class AlterSoupLongOperation extends LongOperation {
 		this.oldIndexSpecs = IndexSpec.fromJSON(details.getJSONArray(OLD_INDEX_SPECS));
 		this.reIndexData = details.getBoolean(RE_INDEX_DATA);
 		this.soupTableName = details.getString(SOUP_TABLE_NAME);
+		this.checkpointId = details.optLong(CHECKPOINT_ID, -1);
 	}
 
 
@@ -217,31 +249,38 @@ public class AlterSoupLongOperation extends LongOperation {
 	 * @param toStep 
 	 */
 	private void alterSoupInternal(AlterSoupStep toStep)  {
-		
-		switch(afterStep) {
-		case STARTING:
-			renameOldSoupTable();
-			if (toStep == AlterSoupStep.RENAME_OLD_SOUP_TABLE) break;
-		case RENAME_OLD_SOUP_TABLE:
-			dropOldIndexes();
-			if (toStep == AlterSoupStep.DROP_OLD_INDEXES) break;
-		case DROP_OLD_INDEXES:
-			registerSoupUsingTableName();
-			if (toStep == AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME) break;
-		case REGISTER_SOUP_USING_TABLE_NAME:
-			copyTable();
-			if (toStep == AlterSoupStep.COPY_TABLE) break;
-		case COPY_TABLE:
-			// Re-index soup (if requested)
-			if (reIndexData)
-				reIndexSoup();
-			if (toStep == AlterSoupStep.RE_INDEX_SOUP) break;
-		case RE_INDEX_SOUP:
-			dropOldTable();		
-			if (toStep == AlterSoupStep.DROP_OLD_TABLE) break;
-		case DROP_OLD_TABLE:
-			// Nothing left to do
-			break;
+
+		// The database is unlocked between batches, other threads can't use the soup until it is altered
+		SoupAlterBarrier barrier = store.getSoupAlterBarrier();
+		barrier.beginAlter(soupName);
+		try {
+			switch(afterStep) {
+			case STARTING:
+				renameOldSoupTable();
+				if (toStep == AlterSoupStep.RENAME_OLD_SOUP_TABLE) break;
+			case RENAME_OLD_SOUP_TABLE:
+				dropOldIndexes();
+				if (toStep == AlterSoupStep.DROP_OLD_INDEXES) break;
+			case DROP_OLD_INDEXES:
+				registerSoupUsingTableName();
+				if (toStep == AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME) break;
+			case REGISTER_SOUP_USING_TABLE_NAME:
+				copyTable();
+				if (toStep == AlterSoupStep.COPY_TABLE || batchesLeft == 0) break;
+			case COPY_TABLE:
+				// Re-index soup (if requested)
+				if (reIndexData)
+					reIndexSoup();
+				if (toStep == AlterSoupStep.RE_INDEX_SOUP || batchesLeft == 0) break;
+			case RE_INDEX_SOUP:
+				dropOldTable();
+				if (toStep == AlterSoupStep.DROP_OLD_TABLE) break;
+			case DROP_OLD_TABLE:
+				// Nothing left to do
+				break;
+			}
+		} finally {
+			barrier.endAlter(soupName);
 		}
 	}
 
@@ -321,6 +360,9 @@ public class AlterSoupLongOperation extends LongOperation {
 			// Create new table for soup
 			store.registerSoupUsingTableName(newSoupSpec, newIndexSpecs, soupTableName);
 
+			// New rows must not take the ids of rows still to be copied
+			reserveSoupEntryIds();
+
 			// Update row in alter status table
 			updateLongOperationDbRow(AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME);
 
@@ -334,29 +376,61 @@ public class AlterSoupLongOperation extends LongOperation {
 
 	/**
 	 * Step 4: copy data from old soup table to new soup table
+	 * Rows are copied in batches of SmartStore.REINDEX_BATCH_SIZE, each batch in its own transaction
+	 * The database is unlocked between batches unless the caller is already in a transaction
+	 * (other threads wait for the alter before reading or writing the soup, see SoupAlterBarrier)
+	 * The ids of the rows to copy are reserved in the new table, so rows inserted meanwhile can't collide with them
+	 * The last row copied is checkpointed with each batch
 	 */
 	protected void copyTable() {
-		db.beginTransaction();
-		try {
-			// We need column names in the index specs
-			this.newIndexSpecs = store.getSoupIndexSpecs(soupName);
-		
-			// Move data (core columns + indexed paths that we are still indexing)
-			copyOldData();
+		// We need column names in the index specs
+		this.newIndexSpecs = store.getSoupIndexSpecs(soupName);
 
-			// Update row in alter status table 
-			updateLongOperationDbRow(AlterSoupStep.COPY_TABLE);
+		// Copy statements (core columns + indexed paths that we are still indexing)
+		List<String> copyStatements = getCopyStatements();
 
-            db.setTransactionSuccessful();
+		if (db.inTransaction()) {
+			synchronized(db) {
+				copyTableInBatches(copyStatements);
+			}
+		} else {
+			copyTableInBatches(copyStatements);
 		}
-		finally {
-			db.endTransaction();
+	}
+
+	private void copyTableInBatches(List<String> copyStatements) {
+		// Operation might be resumed from a version that did not reserve ids
+		synchronized(db) {
+			reserveSoupEntryIds();
 		}
+
+		boolean done;
+		do {
+			synchronized(db) {
+				db.beginTransaction();
+				try {
+					long lastId = copyOldData(copyStatements, checkpointId, SmartStore.REINDEX_BATCH_SIZE);
+					done = lastId == -1;
+					checkpointId = lastId;
+
+					// Update row in alter status table
+					updateLongOperationDbRow(done ? AlterSoupStep.COPY_TABLE : AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME);
+
+					db.setTransactionSuccessful();
+				}
+				finally {
+					db.endTransaction();
+				}
+			}
+		} while (!done && hasBatchesLeft());
 	}
 
 
 	/**
 	 * Step 5: re-index soup for new indexes (optional step)
+	 * Soup elements are re-indexed in batches of SmartStore.REINDEX_BATCH_SIZE, each batch in its own transaction
+	 * The database is unlocked between batches unless the caller is already in a transaction
+	 * The last soup element re-indexed is checkpointed with each batch
 	 */
 	protected void reIndexSoup() {
 		// Putting path--type of old index specs in a set
@@ -372,17 +446,47 @@ public class AlterSoupLongOperation extends LongOperation {
 				indexPaths.add(indexSpec.path);
 			}
 		}
-		
-		db.beginTransaction();
-        try {
-            store.reIndexSoup(soupName, indexPaths.toArray(new String[0]), false);
-            updateLongOperationDbRow(AlterSoupStep.RE_INDEX_SOUP);
+		IndexSpec[] indexSpecs = store.getIndexSpecsToReIndex(soupName, indexPaths.toArray(new String[0]));
 
-            db.setTransactionSuccessful();
-        }
-        finally {
-            db.endTransaction();
-        }
+		if (db.inTransaction()) {
+			synchronized(db) {
+				reIndexSoupInBatches(indexSpecs);
+			}
+		} else {
+			reIndexSoupInBatches(indexSpecs);
+		}
+	}
+
+	private void reIndexSoupInBatches(IndexSpec[] indexSpecs) {
+		boolean done;
+		do {
+			synchronized(db) {
+				db.beginTransaction();
+				try {
+					long lastId = indexSpecs.length == 0 ? -1 : store.reIndexSoupBatch(soupName, soupTableName, indexSpecs, checkpointId, SmartStore.REINDEX_BATCH_SIZE);
+					done = lastId == -1;
+					checkpointId = lastId;
+
+					// Update row in alter status table
+					updateLongOperationDbRow(done ? AlterSoupStep.RE_INDEX_SOUP : AlterSoupStep.COPY_TABLE);
+
+					db.setTransactionSuccessful();
+				}
+				finally {
+					db.endTransaction();
+				}
+			}
+		} while (!done && hasBatchesLeft());
+	}
+
+	/**
+	 * @return false if the batch limit set by run(toStep, maxBatches) has been reached
+	 */
+	private boolean hasBatchesLeft() {
+		if (batchesLeft > 0) {
+			batchesLeft--;
+		}
+		return batchesLeft != 0;
 	}
 
 
@@ -445,6 +549,7 @@ public class AlterSoupLongOperation extends LongOperation {
     	details.put(OLD_INDEX_SPECS, IndexSpec.toJSON(oldIndexSpecs));
     	details.put(NEW_INDEX_SPECS, IndexSpec.toJSON(newIndexSpecs));
     	details.put(RE_INDEX_DATA, reIndexData);
+    	details.put(CHECKPOINT_ID, checkpointId);
 		return details;
 	}
 	
@@ -463,18 +568,26 @@ public class AlterSoupLongOperation extends LongOperation {
 	    	Long now = System.currentTimeMillis();
 			ContentValues contentValues = new ContentValues();
 	    	contentValues.put(SmartStore.STATUS_COL, newStatus.toString());
+	    	try {
+	    		contentValues.put(SmartStore.DETAILS_COL, getDetails().toString());
+	    	} catch (JSONException e) {
+	    		throw new SmartStoreException("Could not save checkpoint: " + e.getMessage());
+	    	}
 	    	contentValues.put(SmartStore.LAST_MODIFIED_COL, now);
 	    	DBHelper.getInstance(db).update(db, SmartStore.LONG_OPERATIONS_STATUS_TABLE, contentValues, SmartStore.ID_PREDICATE, rowId + "");
 		}
-        SmartStoreLogger.i(TAG, soupName + " " + newStatus);
+        SmartStoreLogger.i(TAG, soupName + " " + newStatus + (checkpointId == -1 ? "" : " " + checkpointId));
 	}
 	
 	/**
 	 * Helper method
 	 *
-	 * @return insert statement to copy data from soup old backing table to soup new backing table
+	 * @return insert statements to copy a range of rows (id > ? AND id <= ?) from soup old backing table to soup new backing table
 	 */
-	private void copyOldData() {
+	private List<String> getCopyStatements() {
+		List<String> copyStatements = new ArrayList<String>();
+		String rangePredicate = " WHERE " + SmartStore.ID_COL + " > ? AND " + SmartStore.ID_COL + " <= ?";
+
 		Map<String, IndexSpec> mapOldSpecs = IndexSpec.mapForIndexSpecs(oldIndexSpecs);
 		Map<String, IndexSpec> mapNewSpecs = IndexSpec.mapForIndexSpecs(newIndexSpecs);
 
@@ -520,9 +633,7 @@ public class AlterSoupLongOperation extends LongOperation {
 		String copyToSoupTable = String.format("INSERT INTO %s (%s) SELECT %s FROM %s",
 							soupTableName, TextUtils.join(",", newColumns),
 							TextUtils.join(",", oldColumns), getOldSoupTableName());
-
-		// Execute copy
-		db.execSQL(copyToSoupTable);
+		copyStatements.add(copyToSoupTable + rangePredicate);
 
 		// Fts
 		if (IndexSpec.hasFTS(newIndexSpecs)) {
@@ -552,15 +663,52 @@ public class AlterSoupLongOperation extends LongOperation {
 					soupTableName, SmartStore.FTS_SUFFIX, TextUtils.join(",", newColumnsFts),
 					TextUtils.join(",", oldColumnsFts), getOldSoupTableName());
 
-			// Execute copy
-			db.execSQL(copyToFtsTable);
+			copyStatements.add(copyToFtsTable + rangePredicate);
+		}
+		return copyStatements;
+	}
+
+	/**
+	 * Helper method
+	 * Moves the id sequence of the new soup table past the ids of the old soup table
+	 */
+	private void reserveSoupEntryIds() {
+		DBHelper dbHelper = DBHelper.getInstance(db);
+		long maxOldId = dbHelper.queryForLong(db, String.format(MAX_ID_SQL, SmartStore.ID_COL, getOldSoupTableName()));
+		if (dbHelper.queryForLong(db, SEQ_COUNT_SQL, soupTableName) == 0) {
+			db.execSQL(SEQ_INSERT_SQL, new Object[] { soupTableName, maxOldId });
+		} else {
+			db.execSQL(SEQ_UPDATE_SQL, new Object[] { maxOldId, soupTableName });
+		}
+	}
+
+	/**
+	 * Helper method
+	 * Copies the next batch of rows (in id order) from soup old backing table to soup new backing table
+	 *
+	 * @param copyStatements statements returned by getCopyStatements
+	 * @param afterId id of last row copied (-1 to start from the beginning)
+	 * @param batchSize max number of rows to copy
+	 * @return id of last row copied or -1 if there was none left
+	 */
+	private long copyOldData(List<String> copyStatements, long afterId, int batchSize) {
+		long upToId = DBHelper.getInstance(db).queryForLong(db, String.format(LAST_ID_IN_BATCH_SQL, SmartStore.ID_COL, getOldSoupTableName(), batchSize), afterId + "");
+		if (upToId == -1) {
+			return -1;
+		}
+		String rangePredicate = SmartStore.ID_COL + " > ? AND " + SmartStore.ID_COL + " <= ?";
+		String[] rangeArgs = new String[] { afterId + "", upToId + "" };
+
+		// Execute copy
+		for (String copyStatement : copyStatements) {
+			db.execSQL(copyStatement, new Object[] { afterId, upToId });
 		}
 
 		if (oldSoupSpec.getFeatures().contains(SoupSpec.FEATURE_EXTERNAL_STORAGE) && !newSoupSpec.getFeatures().contains(SoupSpec.FEATURE_EXTERNAL_STORAGE)) {
 			// External to internal storage
 			Cursor c = null;
 			try {
-				c = db.query(getOldSoupTableName(), new String[] { SmartStore.ID_COL }, null, null, null, null, null);
+				c = db.query(getOldSoupTableName(), new String[] { SmartStore.ID_COL }, rangePredicate, rangeArgs, null, null, null);
 				if (c.moveToFirst()) {
 					Long[] ids = new Long[c.getCount()];
 					int counter = 0;
@@ -585,7 +733,7 @@ public class AlterSoupLongOperation extends LongOperation {
 			// Internal to external storage
 			Cursor c = null;
 			try {
-				c = db.query(getOldSoupTableName(), new String[] { SmartStore.ID_COL, SmartStore.SOUP_COL }, null, null, null, null, null);
+				c = db.query(getOldSoupTableName(), new String[] { SmartStore.ID_COL, SmartStore.SOUP_COL }, rangePredicate, rangeArgs, null, null, null);
 				if (c.moveToFirst()) {
 					do {
 						long id = c.getLong(0);
@@ -599,6 +747,7 @@ public class AlterSoupLongOperation extends LongOperation {
 				}
 			}
 		}
+		return upToId;
 	}
 	
 	/**
@@ -50,7 +50,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SmartStore Database Helper
@@ -90,18 +91,25 @@ public class DBHelper {
 	private static final String COUNT_SELECT = "SELECT count(*) FROM %s %s";
 	private static final String SEQ_SELECT = "SELECT seq FROM SQLITE_SEQUENCE WHERE name = ?";
 	private static final String LIMIT_SELECT = "SELECT * FROM (%s) LIMIT %s";
+	private static final String BOUND_LIMIT_SELECT = "SELECT * FROM (%s) LIMIT ? OFFSET ?";
+
+	// Maximum number of compiled query statements kept per database
+	public static final int QUERY_STATEMENT_CACHE_SIZE = 50;
+
+	// NB: soup meta data caches are also read (and populated) by read-only connections of a ReadConnectionPool
+	//     without holding the lock on the database, so they need to be thread safe
 
 	// Cache of soup name to soup table names
-	private Map<String, String> soupNameToTableNamesMap = new HashMap<String, String>();
+	private Map<String, String> soupNameToTableNamesMap = new ConcurrentHashMap<String, String>();
 
 	// Cache of soup name to index specs
-	private Map<String, IndexSpec[]> soupNameToIndexSpecsMap = new HashMap<String, IndexSpec[]>();
+	private Map<String, IndexSpec[]> soupNameToIndexSpecsMap = new ConcurrentHashMap<String, IndexSpec[]>();
 
 	// Cache of soup name to boolean indicating if soup uses FTS
-	private Map<String, Boolean> soupNameToHasFTS = new HashMap<String, Boolean>();
+	private Map<String, Boolean> soupNameToHasFTS = new ConcurrentHashMap<String, Boolean>();
 
 	// Cache of soup name to soup features
-	private Map<String, List<String>> soupNameToFeaturesMap = new HashMap<>();
+	private Map<String, List<String>> soupNameToFeaturesMap = new ConcurrentHashMap<>();
 
 	// Cache of table name to get-next-id compiled statements
 	private Map<String, SQLiteStatement> tableNameToNextIdStatementsMap = new HashMap<String, SQLiteStatement>();
@@ -109,8 +117,18 @@ public class DBHelper {
 	// Cache of table name to insert helpers
 	private Map<String, InsertHelper> tableNameToInsertHelpersMap = new HashMap<String, InsertHelper>();
 
-	// Cache of raw count sql to compiled statements
-	private Map<String, SQLiteStatement> rawCountSqlToStatementsMap = new HashMap<String, SQLiteStatement>();
+	// LRU cache of query sql (raw counts and other single value queries) to compiled statements
+	private StatementCache queryStatementCache = new StatementCache(QUERY_STATEMENT_CACHE_SIZE);
+
+	// Cache of table name to compiled write statements (keyed by sql)
+	private Map<String, Map<String, SQLiteStatement>> tableNameToWriteStatementsMap = new HashMap<String, Map<String, SQLiteStatement>>();
+
+	// Incremented whenever soup meta data is dropped from the caches (soup altered or removed)
+	// Lets SmartSqlHelper detect stale smart sql translations
+	private final AtomicInteger metadataGeneration = new AtomicInteger();
+
+	// Keeps soups being altered from being used by other threads (created lazily)
+	private SoupAlterBarrier soupAlterBarrier;
 
 	// Boolean to turn explain query plan capture on or off
 	private boolean captureExplainQueryPlan;
@@ -177,6 +195,24 @@ public class DBHelper {
 		return soupNameToHasFTS.get(soupName);
 	}
 
+	/**
+	 * @param db
+	 * @return barrier keeping soups being altered from being used by other threads
+	 */
+	synchronized SoupAlterBarrier getSoupAlterBarrier(SQLiteDatabase db) {
+		if (soupAlterBarrier == null) {
+			soupAlterBarrier = new SoupAlterBarrier(db);
+		}
+		return soupAlterBarrier;
+	}
+
+	/**
+	 * @return current generation of the soup meta data caches
+	 */
+	public int getMetadataGeneration() {
+		return metadataGeneration.get();
+	}
+
 	/**
 	 * @param soupName
 	 */
@@ -191,28 +227,51 @@ public class DBHelper {
 			if (prog != null) 
 				prog.close();
 			
-			cleanupRawCountSqlToStatementMaps(tableName);
+			queryStatementCache.removeForTable(tableName);
+			cleanupWriteStatementsMap(tableName);
+			cleanupWriteStatementsMap(tableName + SmartStore.FTS_SUFFIX);
 		}
 		soupNameToTableNamesMap.remove(soupName);
 		soupNameToIndexSpecsMap.remove(soupName);
 		soupNameToHasFTS.remove(soupName);
 		soupNameToFeaturesMap.remove(soupName);
+
+		// Bumped last, so that a translation reading the meta data while it was being removed ends up stale
+		metadataGeneration.incrementAndGet();
 	}
 
-	private void cleanupRawCountSqlToStatementMaps(String tableName) {
-		List<String> countSqlToRemove = new ArrayList<String>();
-		for (Entry<String, SQLiteStatement>  entry : rawCountSqlToStatementsMap.entrySet()) {
-			String countSql = entry.getKey();
-			if (countSql.contains(tableName)) {
-				SQLiteStatement countProg = entry.getValue();
-				if (countProg != null)
-					countProg.close();
-				countSqlToRemove.add(countSql);
+	private void cleanupWriteStatementsMap(String tableName) {
+		Map<String, SQLiteStatement> statements = tableNameToWriteStatementsMap.remove(tableName);
+		if (statements != null) {
+			for (SQLiteStatement prog : statements.values()) {
+				prog.close();
 			}
 		}
-		for (String countSql : countSqlToRemove) {
-			rawCountSqlToStatementsMap.remove(countSql);
+	}
+
+	/**
+	 * Get compiled insert/update statement for a table
+	 * Statements are cached until the soup backed by the table is altered or dropped
+	 *
+	 * @param db
+	 * @param tableName
+	 * @param sql insert or update statement against tableName
+	 * @return compiled statement (bindings cleared)
+	 */
+	public SQLiteStatement getWriteStatement(SQLiteDatabase db, String tableName, String sql) {
+		Map<String, SQLiteStatement> statements = tableNameToWriteStatementsMap.get(tableName);
+		if (statements == null) {
+			statements = new HashMap<String, SQLiteStatement>();
+			tableNameToWriteStatementsMap.put(tableName, statements);
+		}
+		SQLiteStatement prog = statements.get(sql);
+		if (prog == null) {
+			prog = db.compileStatement(sql);
+			statements.put(sql, prog);
+		} else {
+			prog.clearBindings();
 		}
+		return prog;
 	}
 
 	/**
@@ -281,6 +340,32 @@ public class DBHelper {
 		return db.rawQuery(limitSql, whereArgs);
 	}
 
+	/**
+	 * Does a limit for a raw query
+	 * Limit and offset are bound (instead of being part of the sql) so that fetching successive pages
+	 * runs the same sql and reuses the statement compiled by the database for the first page
+	 * @param db
+	 * @param sql
+	 * @param offset
+	 * @param limit negative for no limit
+	 * @param whereArgs
+	 * @return
+	 */
+	public Cursor limitRawQuery(SQLiteDatabase db, String sql, long offset, long limit, String... whereArgs) {
+		String limitSql = String.format(BOUND_LIMIT_SELECT, sql);
+		int argsCount = whereArgs == null ? 0 : whereArgs.length;
+		String[] limitArgs = new String[argsCount + 2];
+		if (argsCount > 0) {
+			System.arraycopy(whereArgs, 0, limitArgs, 0, argsCount);
+		}
+		limitArgs[argsCount] = Long.toString(limit);
+		limitArgs[argsCount + 1] = Long.toString(offset);
+		if (captureExplainQueryPlan) {
+			runExplainQueryPlan(db, limitSql, limitArgs);
+		}
+		return db.rawQuery(limitSql, limitArgs);
+	}
+
 	private void runExplainQueryPlan(SQLiteDatabase db, String sql, String... whereArgs) {
 		JSONObject lastExplain = new JSONObject();
 		Cursor c = null;
@@ -316,22 +401,69 @@ public class DBHelper {
 	 * @return
 	 */
 	public int countRawCountQuery(SQLiteDatabase db, String countSql, String... whereArgs) {
-		SQLiteStatement prog = rawCountSqlToStatementsMap.get(countSql);
-		if (prog == null) {
-			prog = db.compileStatement(countSql);
-			rawCountSqlToStatementsMap.put(countSql, prog);
-		}
+		return (int) queryForLong(db, countSql, whereArgs);
+	}
+
+	/**
+	 * Runs a query returning a single number using a cached compiled statement
+	 * NB: db should be the database this helper is attached to
+	 * @param db
+	 * @param sql
+	 * @param whereArgs
+	 * @return value in first column of first row or -1 if there are no rows
+	 */
+	public long queryForLong(SQLiteDatabase db, String sql, String... whereArgs) {
+		SQLiteStatement prog = queryStatementCache.get(db, sql);
 		if (whereArgs != null) {
 			for (int i=0; i<whereArgs.length; i++) {
 				prog.bindString(i+1, whereArgs[i]);
 			}
 		}
 		try {
-			int count =  (int) prog.simpleQueryForLong();
-			prog.clearBindings();
-			return count;
+			return prog.simpleQueryForLong();
 		} catch (SQLiteDoneException e) {
 			return -1;
+		} finally {
+			prog.clearBindings();
+		}
+	}
+
+	/**
+	 * @return number of times a compiled query statement was reused
+	 */
+	public long getQueryStatementCacheHitCount() {
+		return queryStatementCache.getHitCount();
+	}
+
+	/**
+	 * @return number of times a query statement had to be compiled
+	 */
+	public long getQueryStatementCacheMissCount() {
+		return queryStatementCache.getMissCount();
+	}
+
+	/**
+	 * @return number of compiled query statements closed to make room for new ones
+	 */
+	public long getQueryStatementCacheEvictionCount() {
+		return queryStatementCache.getEvictionCount();
+	}
+
+	/**
+	 * Does a count for a raw count query without caching its compiled statement
+	 * To be used with connections other than the one owning this helper (e.g. read-only connections of a ReadConnectionPool)
+	 * @param db
+	 * @param countSql
+	 * @param whereArgs
+	 * @return
+	 */
+	public int countRawCountQueryUncached(SQLiteDatabase db, String countSql, String... whereArgs) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery(countSql, whereArgs);
+			return c.moveToFirst() ? c.getInt(0) : -1;
+		} finally {
+			safeClose(c);
 		}
 	}
 
@@ -428,7 +560,6 @@ public class DBHelper {
 	 * Resets all cached data from memory.
 	 */
 	public synchronized void clearMemoryCache() {
-
 		// Closes all statements.
 		for (final InsertHelper  ih : tableNameToInsertHelpersMap.values()) {
 			ih.close();
@@ -436,8 +567,10 @@ public class DBHelper {
 		for (final SQLiteStatement prog : tableNameToNextIdStatementsMap.values()) {
 			prog.close();
 		}
-		for (final SQLiteStatement rawCountSql : rawCountSqlToStatementsMap.values()) {
-			rawCountSql.close();
+		for (final Map<String, SQLiteStatement> statements : tableNameToWriteStatementsMap.values()) {
+			for (final SQLiteStatement prog : statements.values()) {
+				prog.close();
+			}
 		}
 
 		// Clears all maps.
@@ -446,7 +579,11 @@ public class DBHelper {
 		soupNameToFeaturesMap.clear();
 		tableNameToInsertHelpersMap.clear();
 		tableNameToNextIdStatementsMap.clear();
-		rawCountSqlToStatementsMap.clear();
+		queryStatementCache.clear();
+		tableNameToWriteStatementsMap.clear();
+
+		// Bumped last (see removeFromCache)
+		metadataGeneration.incrementAndGet();
 	}
 
     /**
@@ -524,7 +661,9 @@ public class DBHelper {
 		List<String> features = getCachedFeatures(soupName);
 		if (features == null) {
 			features = getFeaturesFromDb(db, soupName);
-			cacheFeatures(soupName, features);
+			if (features != null) {
+				cacheFeatures(soupName, features);
+			}
 		}
 		return features;
 	}
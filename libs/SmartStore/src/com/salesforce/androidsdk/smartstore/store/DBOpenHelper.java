@@ -31,7 +31,7 @@ import android.text.TextUtils;
 
 import com.salesforce.androidsdk.accounts.UserAccount;
 import com.salesforce.androidsdk.analytics.EventBuilderHelper;
-import com.salesforce.androidsdk.analytics.security.Encryptor;
+import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException;
 import com.salesforce.androidsdk.smartstore.util.SmartStoreLogger;
 
 import net.sqlcipher.database.SQLiteDatabase;
@@ -41,18 +41,21 @@ import net.sqlcipher.database.SQLiteOpenHelper;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Helper class to manage SmartStore's database creation and version management.
@@ -73,6 +76,20 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	private static String dataDir;
 	private String dbName;
 
+	// Pool of read-only connections (null unless turned on)
+	private ReadConnectionPool readConnectionPool;
+
+	// Key the database is being opened with (only set while getWritableDatabase runs)
+	private String openingKey;
+
+	// True if external storage of new soups should use packed segment files (see PackedBlobStore)
+	private boolean packedExternalStorage;
+
+	// Per soup packed / unpacked decision, so that blob reads don't go through PackedBlobStore.getInstance
+	// Invalidated when the soup blobs directory is created or removed (soup registered, dropped or altered)
+	private final Map<String, PackedBlobStore> packedBlobStores = new ConcurrentHashMap<>();
+	private final Set<String> unpackedSoups = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 	/*
 	 * Cache for the helper instances
 	 */
@@ -272,7 +289,75 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	@Override
 	@SuppressWarnings("deprecation")
 	public void onOpen(SQLiteDatabase db) {
-		(new SmartStore(db)).resumeLongOperations();
+		(new SmartStore(db, openingKey)).resumeLongOperations();
+	}
+
+	@Override
+	public synchronized SQLiteDatabase getWritableDatabase(String password) {
+		// Long operations resumed in onOpen might need the key (e.g. to re-encrypt files)
+		openingKey = password;
+		try {
+			return super.getWritableDatabase(password);
+		} finally {
+			openingKey = null;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		setReadConnectionPool(null);
+		super.close();
+	}
+
+	/**
+	 * @return pool of read-only connections or null if reads go through the writable connection
+	 */
+	public synchronized ReadConnectionPool getReadConnectionPool() {
+		return readConnectionPool;
+	}
+
+	/**
+	 * Replaces the pool of read-only connections (closing the previous one if any)
+	 *
+	 * @param pool New pool or null to turn the pool off.
+	 */
+	public synchronized void setReadConnectionPool(ReadConnectionPool pool) {
+		if (readConnectionPool != null && readConnectionPool != pool) {
+			readConnectionPool.close();
+		}
+		readConnectionPool = pool;
+	}
+
+	/**
+	 * @return True if soups with external storage created from now on use packed segment files.
+	 */
+	public synchronized boolean isPackedExternalStorage() {
+		return packedExternalStorage;
+	}
+
+	/**
+	 * Sets the external storage format for soups created from now on.
+	 * Existing soups keep the format they were created with.
+	 *
+	 * @param packedExternalStorage True to pack soup elements into segment files, false for one file per soup element.
+	 */
+	public synchronized void setPackedExternalStorage(boolean packedExternalStorage) {
+		this.packedExternalStorage = packedExternalStorage;
+	}
+
+	/**
+	 * Makes the read-only connections of the given database use the new key.
+	 *
+	 * @param db Database being rekeyed.
+	 * @param newKey New encryption key.
+	 */
+	public static synchronized void changeKeyForReadConnections(SQLiteDatabase db, String newKey) {
+		for (DBOpenHelper helper : openHelpers.values()) {
+			ReadConnectionPool pool = helper.getReadConnectionPool();
+			if (pool != null && pool.getPath().equals(db.getPath())) {
+				pool.changeKey(newKey);
+			}
+		}
 	}
 
 	/**
@@ -342,6 +427,7 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 			// Delete external blobs directory
 			StringBuilder blobsDbPath = new StringBuilder(ctx.getApplicationInfo().dataDir);
 			blobsDbPath.append("/databases/").append(fullDBName).append(EXTERNAL_BLOBS_SUFFIX);
+			PackedBlobStore.closeAll(blobsDbPath.toString());
 			removeAllFiles(new File(blobsDbPath.toString()));
 		} catch (Exception e) {
             SmartStoreLogger.e(TAG, "Exception occurred while attemption to delete database", e);
@@ -551,7 +637,12 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	 */
 	public boolean createExternalBlobsDirectory(String soupTableName) {
 		File blobsDirectory = new File(getExternalSoupBlobsPath(soupTableName));
-		return blobsDirectory.mkdirs();
+		invalidatePackedBlobStore(soupTableName);
+		boolean created = blobsDirectory.mkdirs();
+		if (created && isPackedExternalStorage()) {
+			created = PackedBlobStore.setUp(blobsDirectory);
+		}
+		return created;
 	}
 
 	/**
@@ -563,6 +654,8 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	 */
 	public boolean removeExternalBlobsDirectory(String soupTableName) {
 		if (dataDir != null) {
+			invalidatePackedBlobStore(soupTableName);
+			PackedBlobStore.closeAll(getExternalSoupBlobsPath(soupTableName));
 			return removeAllFiles(new File(getExternalSoupBlobsPath(soupTableName)));
 		} else {
 			return false;
@@ -571,43 +664,58 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 
 	/**
 	 * Re-encrypts the files on external storage with the new key. If external storage is not enabled for any table in the db, this operation is ignored.
+	 * Files are re-encrypted by a long operation which is resumed when the database is next opened if the process dies before it completes.
 	 *
-	 * @param db DB containing external storage (if applicable).
+	 * @param db DB containing external storage (if applicable). Its key should already be the new key.
 	 * @param oldKey Old key with which to decrypt the existing data.
 	 * @param newKey New key with which to encrypt the existing data.
 	 */
 	public static void reEncryptAllFiles(SQLiteDatabase db, String oldKey, String newKey) {
-		StringBuilder path = new StringBuilder(db.getPath()).append(EXTERNAL_BLOBS_SUFFIX);
-		File dir = new File(path.toString());
-		if (dir.exists()) {
-			File[] tables = dir.listFiles();
-			if (tables != null) {
-				for (File table : tables) {
-					File[] blobs = table.listFiles();
-					if (blobs != null) {
-						for (File blob : blobs) {
-							StringBuilder json = new StringBuilder();
-							String result = null;
-							try {
-								BufferedReader br = new BufferedReader(new FileReader(blob));
-								String line;
-								while ((line = br.readLine()) != null) {
-									json.append(line).append('\n');
-								}
-								br.close();
-								result = Encryptor.decrypt(json.toString(), oldKey);
-								blob.delete();
-								FileOutputStream outputStream = new FileOutputStream(blob, false);
-								outputStream.write(Encryptor.encrypt(result, newKey).getBytes());
-								outputStream.close();
-							} catch (IOException ex) {
-                                SmartStoreLogger.e(TAG, "Exception occurred while rekeying external files", ex);
-							}
-						}
-					}
-				}
+		runReEncryptAllFiles(prepareReEncryptAllFiles(db, oldKey, newKey));
+	}
+
+	/**
+	 * Records the re-encryption of the files on external storage, to be called before the database is rekeyed
+	 * (so that it is resumed when the database is next opened if the process dies right after the rekey).
+	 *
+	 * @param db DB containing external storage (if applicable). Its key should still be the old key.
+	 * @param oldKey Old key with which to decrypt the existing data.
+	 * @param newKey New key with which to encrypt the existing data.
+	 * @return Operation to run once the database is rekeyed or null if external storage is not used.
+	 */
+	static ReEncryptFilesLongOperation prepareReEncryptAllFiles(SQLiteDatabase db, String oldKey, String newKey) {
+		if (getExternalBlobsDir(db).exists()) {
+			try {
+				return new ReEncryptFilesLongOperation(new SmartStore(db), oldKey, newKey);
+			} catch (JSONException | SmartStoreException ex) {
+				SmartStoreLogger.e(TAG, "Exception occurred while rekeying external files", ex);
 			}
 		}
+		return null;
+	}
+
+	/**
+	 * Runs the re-encryption of the files on external storage returned by prepareReEncryptAllFiles.
+	 * If it fails, it is resumed when the database is next opened.
+	 *
+	 * @param operation Operation or null.
+	 */
+	static void runReEncryptAllFiles(ReEncryptFilesLongOperation operation) {
+		if (operation != null) {
+			try {
+				operation.run();
+			} catch (SmartStoreException ex) {
+				SmartStoreLogger.e(TAG, "Exception occurred while rekeying external files", ex);
+			}
+		}
+	}
+
+	/**
+	 * @param db DB.
+	 * @return Folder containing external storage for the given db.
+	 */
+	static File getExternalBlobsDir(SQLiteDatabase db) {
+		return new File(db.getPath() + EXTERNAL_BLOBS_SUFFIX);
 	}
 
 	/**
@@ -635,9 +743,14 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	 * @return True if operation was successful, false otherwise.
 	 */
 	public boolean saveSoupBlobFromString(String soupTableName, long soupEntryId, String soupEltStr, String encryptionKey) {
+		PackedBlobStore packedBlobStore = getPackedBlobStore(soupTableName);
+		if (packedBlobStore != null) {
+			byte[] data = SoupBlobFormat.encode(soupEltStr, encryptionKey);
+			return data != null && packedBlobStore.put(soupEntryId, data);
+		}
 		File file = getSoupBlobFile(soupTableName, soupEntryId);
 		try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
-			byte[] data = Encryptor.encryptBytes(soupEltStr, encryptionKey);
+			byte[] data = SoupBlobFormat.encode(soupEltStr, encryptionKey);
 			if (data != null) {
 				outputStream.write(data);
 				return true;
@@ -680,16 +793,52 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	 * @return The blob from file storage represented as String. Returns null if there was an error.
 	 */
 	public String loadSoupBlobAsString(String soupTableName, long soupEntryId, String encryptionKey) {
-		File file = getSoupBlobFile(soupTableName, soupEntryId);
-		try (FileInputStream f = new FileInputStream(file)) {
-			DataInputStream data = new DataInputStream(f);
-			byte[] bytes = new byte[(int) file.length()];
-			data.readFully(bytes);
-			return Encryptor.decrypt(bytes, encryptionKey);
+		StringBuilder result = new StringBuilder();
+		return loadSoupBlobInto(result, soupTableName, soupEntryId, encryptionKey) ? result.toString() : null;
+	}
+
+	/**
+	 * Retrieves the soup blob for the given soup entry id from file storage and appends it to the given builder.
+	 * The blob is decrypted as it is read (without loading the encrypted data in memory first).
+	 *
+	 * @param out Builder to append the blob to (left unchanged if there was an error).
+	 * @param soupTableName Soup name to which the blob belongs.
+	 * @param soupEntryId Entry id for the requested soup blob.
+	 * @param encryptionKey Key with which to decrypt the data.
+	 *
+	 * @return True if the blob was appended, false if there was an error.
+	 */
+	public boolean loadSoupBlobInto(StringBuilder out, String soupTableName, long soupEntryId, String encryptionKey) {
+		int initialLength = out.length();
+		boolean loaded = false;
+		InputStream inputStream = null;
+		try {
+			PackedBlobStore packedBlobStore = getPackedBlobStore(soupTableName);
+			if (packedBlobStore != null) {
+				inputStream = packedBlobStore.openStream(soupEntryId);
+				if (inputStream == null) {
+					throw new FileNotFoundException("No packed soup blob for " + soupEntryId);
+				}
+			} else {
+				inputStream = new BufferedInputStream(new FileInputStream(getSoupBlobFile(soupTableName, soupEntryId)));
+			}
+			SoupBlobFormat.decode(inputStream, encryptionKey, out);
+			loaded = true;
 		} catch (IOException ex) {
             SmartStoreLogger.e(TAG, "Exception occurred while attempting to read external soup blob", ex);
+		} finally {
+			if (!loaded) {
+				out.setLength(initialLength);
+			}
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException ex) {
+					SmartStoreLogger.e(TAG, "Exception occurred while closing external soup blob", ex);
+				}
+			}
 		}
-		return null;
+		return loaded;
 	}
 
 	/**
@@ -701,6 +850,14 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 	 * @return True if all soup entry ids were deleted, false if blob could not be found or had an error.
 	 */
 	public boolean removeSoupBlob(String soupTableName, Long[] soupEntryIds) {
+		PackedBlobStore packedBlobStore = getPackedBlobStore(soupTableName);
+		if (packedBlobStore != null) {
+			boolean success = true;
+			for (long soupEntryId : soupEntryIds) {
+				success &= packedBlobStore.remove(soupEntryId);
+			}
+			return success;
+		}
 		File file;
 		boolean success = true;
 		for (long soupEntryId : soupEntryIds) {
@@ -710,8 +867,46 @@ public class DBOpenHelper extends SQLiteOpenHelper {
 		return success;
 	}
 
+	/**
+	 * Returns the packed store holding the blobs of the given soup.
+	 *
+	 * @param soupTableName Soup name to which the blobs belong.
+	 *
+	 * @return Packed store or null if the soup uses one file per soup element.
+	 */
+	public PackedBlobStore getPackedBlobStore(String soupTableName) {
+		PackedBlobStore packedBlobStore = packedBlobStores.get(soupTableName);
+		if (packedBlobStore != null && !packedBlobStore.isClosed()) {
+			return packedBlobStore;
+		}
+		if (packedBlobStore == null && unpackedSoups.contains(soupTableName)) {
+			return null;
+		}
+
+		// Cache miss (or store closed since): checks the marker file
+		packedBlobStore = PackedBlobStore.getInstance(new File(getExternalSoupBlobsPath(soupTableName)));
+		if (packedBlobStore != null) {
+			packedBlobStores.put(soupTableName, packedBlobStore);
+		} else {
+			packedBlobStores.remove(soupTableName);
+			unpackedSoups.add(soupTableName);
+		}
+		return packedBlobStore;
+	}
+
+	/**
+	 * Forgets whether the given soup uses packed storage (to be called when its blobs directory changes).
+	 *
+	 * @param soupTableName Soup name to which the blobs belong.
+	 */
+	public void invalidatePackedBlobStore(String soupTableName) {
+		packedBlobStores.remove(soupTableName);
+		unpackedSoups.remove(soupTableName);
+	}
+
 	/**
 	 * Returns a file that the soup data is stored in for the given soup name and entry id.
+	 * NB: only applicable to soups that use one file per soup element.
 	 *
 	 * @param soupTableName Soup name to which the blob belongs.
 	 * @param soupEntryId Entry id for the requested soup blob.
@@ -44,17 +44,17 @@ public class IndexSpec {
     public final String path;
     public final Type type;
     public final String columnName;
+    public final JSONPath jsonPath; // path parsed once, used to project values of indexed fields
 
     public IndexSpec(String path, Type type) {
-        this.path = path;
-        this.type = type;
-        this.columnName = null; // undefined
+        this(path, type, null); // column name undefined
     }
 
     public IndexSpec(String path, Type type, String columnName) {
         this.path = path;
         this.type = type;
         this.columnName = columnName;
+        this.jsonPath = new JSONPath(path);
     }
 
     @Override
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-parsed path (e.g. "a.b.c") into json objects
+ * Parsing is done once (no regex), projection walks the json without allocating anything unless an array is traversed
+ */
+public final class JSONPath {
+
+	private static final String[] EMPTY = new String[0];
+
+	public final String path;
+	private final String[] pathElements;
+
+	/**
+	 * @param path dot separated path, null or empty string for the whole object
+	 */
+	public JSONPath(String path) {
+		this.path = path;
+		this.pathElements = parse(path);
+	}
+
+	/**
+	 * @param soup
+	 * @return object at path in soup (see SmartStore.project for examples)
+	 */
+	public Object project(JSONObject soup) {
+		if (soup == null) {
+			return null;
+		}
+		return project(soup, 0);
+	}
+
+	private Object project(Object jsonObj, int index) {
+		// Walk down json objects without recursing
+		while (index < pathElements.length && jsonObj instanceof JSONObject) {
+			jsonObj = opt((JSONObject) jsonObj, pathElements[index]);
+			index++;
+		}
+		if (index == pathElements.length || jsonObj == null) {
+			return jsonObj;
+		}
+
+		// Arrays: project every element
+		if (jsonObj instanceof JSONArray) {
+			JSONArray jsonArr = (JSONArray) jsonObj;
+			JSONArray result = null;
+			for (int i = 0; i < jsonArr.length(); i++) {
+				Object arrayElt = jsonArr.opt(i);
+				if (arrayElt == null || arrayElt == JSONObject.NULL) {
+					continue;
+				}
+				Object resultPart = project(arrayElt, index);
+				if (resultPart != null) {
+					if (result == null) {
+						result = new JSONArray();
+					}
+					result.put(resultPart);
+				}
+			}
+			return result;
+		}
+
+		// Path goes through a primitive value
+		return null;
+	}
+
+	/**
+	 * Same as JSONObjectHelper.opt but with a single lookup
+	 */
+	private static Object opt(JSONObject obj, String key) {
+		Object value = obj.opt(key);
+		return value == JSONObject.NULL ? null : value;
+	}
+
+	private static String[] parse(String path) {
+		if (path == null || path.length() == 0) {
+			return EMPTY;
+		}
+		List<String> elements = new ArrayList<>();
+		int start = 0;
+		int end;
+		while ((end = path.indexOf('.', start)) >= 0) {
+			elements.add(path.substring(start, end));
+			start = end + 1;
+		}
+		elements.add(path.substring(start));
+		return elements.toArray(new String[elements.size()]);
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
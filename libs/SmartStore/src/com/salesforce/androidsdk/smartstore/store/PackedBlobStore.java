@@ -0,0 +1,631 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import com.salesforce.androidsdk.smartstore.util.SmartStoreLogger;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * External storage for the soup elements of one soup packed into append-only segment files
+ * (instead of one file per soup element)
+ *
+ * Segment files are made of records: entry id (long), payload length (int) and payload bytes
+ * A record with a negative length is a tombstone (entry removed)
+ * The offset index is kept in memory and rebuilt by scanning the record headers when the store is opened
+ * Reads are positional reads on the segment files
+ * Segments that are mostly made of overwritten or removed records are compacted in the background
+ * (the records copied out of a segment are synced to disk before it is deleted)
+ */
+public class PackedBlobStore {
+
+	private static final String TAG = "PackedBlobStore";
+
+	// Presence of that file in a soup blobs directory indicates the packed format is used
+	public static final String PACKED_MARKER = "packed";
+	public static final String SEGMENT_PREFIX = "segment_";
+
+	// A new segment is started once the current one reaches that size
+	public static final int MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+	// Sealed segments with less live data than that ratio get compacted
+	public static final double COMPACTION_THRESHOLD = 0.5;
+
+	private static final int RECORD_HEADER_SIZE = 8 + 4;
+	private static final int TOMBSTONE = -1;
+
+	private static final Map<String, PackedBlobStore> INSTANCES = new HashMap<>();
+	private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, "PackedBlobStoreCompaction");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final File dir;
+
+	// Offset index: entry id to location of its latest record
+	private final Map<Long, Location> index = new HashMap<>();
+
+	// Segment number to segment
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+	private RandomAccessFile activeFile;
+	private Segment activeSegment;
+	private volatile boolean closed;
+	private boolean loading;
+
+	/**
+	 * Returns the packed store for the given soup blobs directory
+	 *
+	 * @param dir Soup blobs directory.
+	 * @return Packed store or null if the directory doesn't use the packed format.
+	 */
+	public static synchronized PackedBlobStore getInstance(File dir) {
+		final String path = dir.getAbsolutePath();
+		PackedBlobStore instance = INSTANCES.get(path);
+		if (!isPacked(dir)) {
+			// Directory removed or never set up for packed storage
+			if (instance != null) {
+				instance.close();
+				INSTANCES.remove(path);
+			}
+			return null;
+		}
+		if (instance == null) {
+			instance = new PackedBlobStore(dir);
+			INSTANCES.put(path, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets up the given soup blobs directory for packed storage
+	 *
+	 * @param dir Soup blobs directory (must exist).
+	 * @return True if successful.
+	 */
+	public static boolean setUp(File dir) {
+		try {
+			final File marker = new File(dir, PACKED_MARKER);
+			return marker.exists() || marker.createNewFile();
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while setting up packed external storage", e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param dir Soup blobs directory.
+	 * @return True if the directory uses the packed format.
+	 */
+	public static boolean isPacked(File dir) {
+		return new File(dir, PACKED_MARKER).exists();
+	}
+
+	/**
+	 * Closes the packed stores of directories under the given path (to be called before removing them)
+	 *
+	 * @param path Directory path.
+	 */
+	public static synchronized void closeAll(String path) {
+		final String prefix = new File(path).getAbsolutePath();
+		final Iterator<Map.Entry<String, PackedBlobStore>> iterator = INSTANCES.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry<String, PackedBlobStore> entry = iterator.next();
+			if (entry.getKey().startsWith(prefix)) {
+				entry.getValue().close();
+				iterator.remove();
+			}
+		}
+	}
+
+	private PackedBlobStore(File dir) {
+		this.dir = dir;
+		load();
+	}
+
+	/**
+	 * Stores the payload for the given entry (replacing the previous one if any)
+	 *
+	 * @param soupEntryId Soup entry id.
+	 * @param payload Encrypted soup element.
+	 * @return True if successful.
+	 */
+	public synchronized boolean put(long soupEntryId, byte[] payload) {
+		try {
+			final Location location = append(soupEntryId, payload, 0, payload.length);
+			markDead(index.put(soupEntryId, location));
+			return true;
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while writing to packed external storage", e);
+			return false;
+		}
+	}
+
+	/**
+	 * @param soupEntryId Soup entry id.
+	 * @return Payload for the given entry or null if there is none.
+	 */
+	public synchronized byte[] get(long soupEntryId) {
+		final Location location = index.get(soupEntryId);
+		if (location == null) {
+			return null;
+		}
+		try {
+			return location.segment.read(location.offset + RECORD_HEADER_SIZE, location.length).array();
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while reading from packed external storage", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param soupEntryId Soup entry id.
+	 * @return Stream reading the payload for the given entry straight from the segment file or null if there is none.
+	 */
+	public synchronized InputStream openStream(long soupEntryId) {
+		final Location location = index.get(soupEntryId);
+		if (location == null) {
+			return null;
+		}
+		try {
+			return new BufferedInputStream(new PayloadInputStream(location.segment.file, location.offset + RECORD_HEADER_SIZE, location.length));
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while reading from packed external storage", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the given entry
+	 *
+	 * @param soupEntryId Soup entry id.
+	 * @return True if the entry existed and was removed.
+	 */
+	public synchronized boolean remove(long soupEntryId) {
+		final Location location = index.get(soupEntryId);
+		if (location == null) {
+			return false;
+		}
+		try {
+			final Location tombstone = append(soupEntryId, null, 0, TOMBSTONE);
+			index.remove(soupEntryId);
+			markDead(location);
+			markDead(tombstone); // tombstones are only needed until compaction of the segments before them
+			return true;
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while writing to packed external storage", e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return Number of entries.
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return Number of segment files.
+	 */
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Re-encrypts all entries with the new key
+	 * Entries are written to new segments, old segments are then deleted
+	 * Entries that can't be re-encrypted are carried over as is (and can be re-encrypted by calling this method again)
+	 *
+	 * @param oldKey Old key with which to decrypt the existing data.
+	 * @param newKey New key with which to encrypt the existing data.
+	 * @throws IOException If some entries could not be re-encrypted.
+	 */
+	public synchronized void reEncrypt(String oldKey, String newKey) throws IOException {
+		final List<Segment> oldSegments = new ArrayList<>(segments.values());
+		startNewSegment();
+		IOException failure = null;
+		for (Map.Entry<Long, Location> entry : new ArrayList<>(index.entrySet())) {
+			final byte[] payload = get(entry.getKey());
+			if (payload == null) {
+				// Old segments are kept, entries already copied are simply superseded by later records
+				throw new IOException("Could not read entry " + entry.getKey());
+			}
+			byte[] newPayload = null;
+			try {
+				newPayload = SoupBlobFormat.reEncrypt(payload, oldKey, newKey);
+			} catch (IOException e) {
+				SmartStoreLogger.e(TAG, "Exception occurred while rekeying entry " + entry.getKey(), e);
+				failure = e;
+			}
+
+			// Entries already encrypted with the new key (or that could not be re-encrypted) are carried over as is
+			newPayload = newPayload == null ? payload : newPayload;
+			entry.setValue(append(entry.getKey(), newPayload, 0, newPayload.length));
+		}
+		syncActiveFile();
+		for (Segment segment : oldSegments) {
+			deleteSegment(segment);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Compacts all sealed segments with too much dead data
+	 */
+	public synchronized void compact() {
+		for (Segment segment : new ArrayList<>(segments.values())) {
+			if (segment != activeSegment && segment.needsCompaction()) {
+				compact(segment);
+			}
+		}
+	}
+
+	/**
+	 * Closes open files (the store can't be used afterwards)
+	 */
+	public synchronized void close() {
+		closed = true;
+		closeActiveFile();
+		for (Segment segment : segments.values()) {
+			segment.closeReadFile();
+		}
+	}
+
+	/**
+	 * @return True if the store has been closed (a new instance has to be obtained from getInstance).
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private synchronized void load() {
+		final File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX);
+			}
+		});
+		if (files != null) {
+			for (File file : files) {
+				try {
+					final int number = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length()));
+					segments.put(number, new Segment(number, file));
+				} catch (NumberFormatException e) {
+					SmartStoreLogger.w(TAG, "Ignoring unexpected file " + file.getName());
+				}
+			}
+		}
+
+		// Replay segments in order to rebuild index (later records win)
+		// Compactions are only scheduled once all segments have been replayed
+		activeSegment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+		loading = true;
+		try {
+			for (Segment segment : segments.values()) {
+				try {
+					scan(segment);
+				} catch (IOException e) {
+					SmartStoreLogger.e(TAG, "Exception occurred while loading packed external storage", e);
+				}
+			}
+		} finally {
+			loading = false;
+		}
+		for (Segment segment : segments.values()) {
+			scheduleCompactionIfNeeded(segment);
+		}
+	}
+
+	private void scan(Segment segment) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+			final long fileLength = file.length();
+			long offset = 0;
+			while (offset + RECORD_HEADER_SIZE <= fileLength) {
+				file.seek(offset);
+				final long soupEntryId = file.readLong();
+				final int length = file.readInt();
+				final int recordSize = RECORD_HEADER_SIZE + Math.max(length, 0);
+				if (offset + recordSize > fileLength) {
+					break; // incomplete record
+				}
+				// Same accounting as append: every record is counted live before being marked dead
+				segment.totalBytes += recordSize;
+				segment.liveBytes += recordSize;
+				final Location location = new Location(segment, offset, length);
+				if (length == TOMBSTONE) {
+					markDead(index.remove(soupEntryId));
+					markDead(location);
+				} else {
+					markDead(index.put(soupEntryId, location));
+				}
+				offset += recordSize;
+			}
+			if (offset < fileLength) {
+				// Drop incomplete record left by an interrupted write
+				SmartStoreLogger.w(TAG, "Truncating incomplete record in " + segment.file.getName());
+				file.setLength(offset);
+			}
+		}
+	}
+
+	private Location append(long soupEntryId, byte[] payload, int payloadOffset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Packed store closed");
+		}
+		if (activeSegment == null || activeSegment.totalBytes >= MAX_SEGMENT_SIZE) {
+			startNewSegment();
+		}
+		if (activeFile == null) {
+			activeFile = new RandomAccessFile(activeSegment.file, "rw");
+		}
+		final int recordSize = RECORD_HEADER_SIZE + Math.max(length, 0);
+		final ByteBuffer record = ByteBuffer.allocate(recordSize);
+		record.putLong(soupEntryId).putInt(length);
+		if (length > 0) {
+			record.put(payload, payloadOffset, length);
+		}
+		final long offset = activeSegment.totalBytes;
+		activeFile.seek(offset);
+		activeFile.write(record.array());
+		activeSegment.totalBytes += recordSize;
+		activeSegment.liveBytes += recordSize;
+		return new Location(activeSegment, offset, length);
+	}
+
+	private void startNewSegment() throws IOException {
+		closeActiveFile();
+		final int number = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		final Segment segment = new Segment(number, new File(dir, SEGMENT_PREFIX + number));
+		if (!segment.file.exists() && !segment.file.createNewFile()) {
+			throw new IOException("Could not create " + segment.file.getName());
+		}
+		segments.put(number, segment);
+		activeSegment = segment;
+	}
+
+	private void syncActiveFile() throws IOException {
+		if (activeFile != null) {
+			activeFile.getChannel().force(true);
+		}
+	}
+
+	private void closeActiveFile() {
+		if (activeFile != null) {
+			try {
+				// Records of the previous segment might have been copied out of segments since deleted
+				syncActiveFile();
+				activeFile.close();
+			} catch (IOException e) {
+				SmartStoreLogger.e(TAG, "Exception occurred while closing segment", e);
+			}
+			activeFile = null;
+		}
+	}
+
+	private void markDead(Location location) {
+		if (location == null) {
+			return;
+		}
+		final Segment segment = location.segment;
+		segment.liveBytes -= RECORD_HEADER_SIZE + Math.max(location.length, 0);
+		scheduleCompactionIfNeeded(segment);
+	}
+
+	private void scheduleCompactionIfNeeded(final Segment segment) {
+		if (!loading && segment != activeSegment && segment.needsCompaction() && !segment.compactionScheduled) {
+			segment.compactionScheduled = true;
+			COMPACTION_EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (PackedBlobStore.this) {
+						segment.compactionScheduled = false;
+						if (!closed && segments.get(segment.number) == segment
+								&& segment != activeSegment && segment.needsCompaction()) {
+							compact(segment);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private void compact(Segment segment) {
+		try {
+			final boolean hasOlderSegments = segments.firstKey() < segment.number;
+			long offset = 0;
+			while (offset + RECORD_HEADER_SIZE <= segment.totalBytes) {
+				final ByteBuffer header = segment.read(offset, RECORD_HEADER_SIZE);
+				final long soupEntryId = header.getLong();
+				final int length = header.getInt();
+				if (length == TOMBSTONE) {
+					// Tombstone still needed if an older segment might have a record for that entry
+					if (hasOlderSegments && !index.containsKey(soupEntryId)) {
+						markDead(append(soupEntryId, null, 0, TOMBSTONE));
+					}
+				} else {
+					final Location location = index.get(soupEntryId);
+					if (location != null && location.segment == segment && location.offset == offset) {
+						final byte[] payload = segment.read(offset + RECORD_HEADER_SIZE, length).array();
+						index.put(soupEntryId, append(soupEntryId, payload, 0, length));
+					}
+				}
+				offset += RECORD_HEADER_SIZE + Math.max(length, 0);
+			}
+
+			// The index is rebuilt from the records on disk, the copies have to be durable before the segment goes away
+			syncActiveFile();
+			deleteSegment(segment);
+		} catch (IOException e) {
+			SmartStoreLogger.e(TAG, "Exception occurred while compacting packed external storage", e);
+		}
+	}
+
+	private void deleteSegment(Segment segment) {
+		segments.remove(segment.number);
+		segment.closeReadFile();
+		if (!segment.file.delete()) {
+			SmartStoreLogger.w(TAG, "Could not delete " + segment.file.getName());
+		}
+	}
+
+	/**
+	 * Segment file
+	 */
+	private static class Segment {
+		final int number;
+		final File file;
+		long totalBytes;
+		long liveBytes;
+		boolean compactionScheduled;
+		RandomAccessFile readFile;
+
+		Segment(int number, File file) {
+			this.number = number;
+			this.file = file;
+		}
+
+		boolean needsCompaction() {
+			return totalBytes > 0 && liveBytes < totalBytes * COMPACTION_THRESHOLD;
+		}
+
+		/**
+		 * @param position Position in the segment file.
+		 * @param length Number of bytes to read.
+		 * @return Buffer (ready to be read) with the bytes read.
+		 */
+		ByteBuffer read(long position, int length) throws IOException {
+			if (readFile == null) {
+				readFile = new RandomAccessFile(file, "r");
+			}
+			final FileChannel channel = readFile.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new EOFException("Unexpected end of " + file.getName());
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+
+		void closeReadFile() {
+			if (readFile != null) {
+				try {
+					readFile.close();
+				} catch (IOException e) {
+					SmartStoreLogger.e(TAG, "Exception occurred while closing segment", e);
+				}
+				readFile = null;
+			}
+		}
+	}
+
+	/**
+	 * Stream over a record payload
+	 * Uses its own handle on the segment file, so it can still be read if the segment gets compacted meanwhile
+	 */
+	private static class PayloadInputStream extends InputStream {
+		private final RandomAccessFile file;
+		private long position;
+		private long remaining;
+
+		PayloadInputStream(File segmentFile, long position, int length) throws IOException {
+			this.file = new RandomAccessFile(segmentFile, "r");
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] bytes = new byte[1];
+			return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			final int count = file.getChannel().read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining)), position);
+			if (count < 0) {
+				throw new EOFException("Unexpected end of segment");
+			}
+			position += count;
+			remaining -= count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return (int) remaining;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+	/**
+	 * Location of a record
+	 */
+	private static class Location {
+		final Segment segment;
+		final long offset;
+		final int length;
+
+		Location(Segment segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import android.content.ContentValues;
+
+import com.salesforce.androidsdk.analytics.security.Encryptor;
+import com.salesforce.androidsdk.smartstore.store.LongOperation.LongOperationType;
+import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException;
+import com.salesforce.androidsdk.smartstore.util.SmartStoreLogger;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class taking care of re-encrypting external storage files after the key of the database changed
+ * Two entry points:
+ * - new ReEncryptFilesLongOperation(...) + run() => when asked to changeKey in SmartStore
+ * - LongOperation.getOperation(...) + run() => when completing interrupted long operations when opening the database
+ *
+ * Files are re-encrypted in chunks on a bounded pool of threads
+ * Progress is checkpointed in the long_operations_status table after each chunk:
+ * - tables are processed in name order, entries of a table in soup entry id order
+ * - checkpoint is the table being processed and the last soup entry id done in that table
+ * Files of the chunk in flight when the process died might already be encrypted with the new key, they are detected and left alone.
+ * If a file can't be re-encrypted, the operation stops without moving the checkpoint past it (it is retried when resumed).
+ *
+ * NB: the row is created before the database is rekeyed. The keys are not saved: the details only contain the old key
+ * encrypted with the new key, which is the key the database is opened with when the operation is resumed.
+ */
+public class ReEncryptFilesLongOperation extends LongOperation {
+
+	// Fields of details for re-encrypt files long operation row in long_operations_status table
+	private static final String WRAPPED_OLD_KEY = "wrappedOldKey";
+	private static final String CHECKPOINT_TABLE = "checkpointTable";
+	private static final String CHECKPOINT_ENTRY_ID = "checkpointEntryId";
+	public static final String TAG = "ReEncryptFiles:Status";
+
+	// Number of files re-encrypted between checkpoints
+	public static final int CHUNK_SIZE = 100;
+
+	// Max number of threads re-encrypting files
+	public static final int MAX_THREADS = 4;
+
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final long TABLE_DONE = Long.MAX_VALUE;
+
+	/**
+	 * Enum for re-encrypt steps
+	 */
+	public enum ReEncryptStep {
+		STARTING,
+		RE_ENCRYPT_FILES,
+		DONE;
+
+		public static final ReEncryptStep LAST = DONE;
+	}
+
+	// Last step completed
+	private ReEncryptStep afterStep;
+
+	// Key files are encrypted with
+	private String oldKey;
+
+	// Key files should be encrypted with
+	private String newKey;
+
+	// Old key encrypted with the new key (saved in the details instead of the keys)
+	private String wrappedOldKey;
+
+	// Table being re-encrypted (tables before it in name order are done)
+	private String checkpointTable;
+
+	// Last soup entry id re-encrypted in checkpoint table
+	private long checkpointEntryId;
+
+	// Number of files re-encrypted by this instance
+	private final AtomicInteger filesReEncrypted = new AtomicInteger();
+
+	// Underlying database
+	private SQLiteDatabase db;
+
+	// Row id for long_operations_status
+	private long rowId;
+
+	/**
+	 * Default constructor when reading back from long operations status table
+	 * Should be followed by a call to: initFromDbRow
+	 */
+	public ReEncryptFilesLongOperation() {
+
+	}
+
+	/**
+	 * Constructor
+	 * Should be called before the database itself is rekeyed (and run after)
+	 *
+	 * @param store
+	 * @param oldKey
+	 * @param newKey
+	 * @throws JSONException
+	 */
+	public ReEncryptFilesLongOperation(SmartStore store, String oldKey, String newKey) throws JSONException {
+		this.db = store.getDatabase();
+		this.oldKey = oldKey;
+		this.newKey = newKey;
+		this.wrappedOldKey = Encryptor.encrypt(oldKey, newKey);
+		if (wrappedOldKey == null) throw new SmartStoreException("Could not save old key");
+		this.checkpointTable = "";
+		this.checkpointEntryId = -1;
+
+		// Create row in long operations status table - auto commit
+		this.rowId = createLongOperationDbRow();
+
+		// Last step completed
+		this.afterStep = ReEncryptStep.STARTING;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.salesforce.androidsdk.smartstore.store.LongOperation#run()
+	 */
+	@Override
+	public void run() {
+		run(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Used by test only
+	 * @param maxChunks number of chunks to re-encrypt before stopping (as if the process had died)
+	 */
+	public void run(int maxChunks) {
+		if (afterStep == ReEncryptStep.LAST) {
+			return;
+		}
+		if (oldKey == null) {
+			SmartStoreLogger.w(TAG, "Old key not available, files can't be re-encrypted");
+			return;
+		}
+		final File dir = DBOpenHelper.getExternalBlobsDir(db);
+		final File[] tables = dir.listFiles();
+		if (tables != null) {
+			Arrays.sort(tables);
+			final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+			try {
+				for (File table : tables) {
+					if (table.getName().compareTo(checkpointTable) < 0) {
+						continue;
+					}
+					maxChunks = reEncryptTable(executor, table, maxChunks);
+					if (maxChunks <= 0) {
+						return;
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+		updateLongOperationDbRow(ReEncryptStep.DONE);
+	}
+
+	/**
+	 * @return last step completed
+	 */
+	public ReEncryptStep getLastStepCompleted() {
+		return afterStep;
+	}
+
+	/**
+	 * @return number of files re-encrypted by this instance so far
+	 */
+	public int getFilesReEncryptedCount() {
+		return filesReEncrypted.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.salesforce.androidsdk.smartstore.store.LongOperation#initFromDbRow(com.salesforce.androidsdk.smartstore.store.SmartStore, long, org.json.JSONObject, java.lang.String)
+	 */
+	@Override
+	protected void initFromDbRow(SmartStore store, long rowId, JSONObject details, String statusStr) throws JSONException {
+		this.db = store.getDatabase();
+		this.rowId = rowId;
+		this.afterStep = ReEncryptStep.valueOf(statusStr);
+		this.wrappedOldKey = details.getString(WRAPPED_OLD_KEY);
+
+		// The database was rekeyed before the operation was interrupted: it is opened with the new key
+		this.newKey = store.encryptionKey;
+		this.oldKey = newKey == null ? null : Encryptor.decrypt(wrappedOldKey, newKey);
+		this.checkpointTable = details.getString(CHECKPOINT_TABLE);
+		this.checkpointEntryId = details.getLong(CHECKPOINT_ENTRY_ID);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.salesforce.androidsdk.smartstore.store.LongOperation#getDetails()
+	 */
+	@Override
+	public JSONObject getDetails() throws JSONException {
+		JSONObject details = new JSONObject();
+		details.put(WRAPPED_OLD_KEY, wrappedOldKey);
+		details.put(CHECKPOINT_TABLE, checkpointTable);
+		details.put(CHECKPOINT_ENTRY_ID, checkpointEntryId);
+		return details;
+	}
+
+	/**
+	 * Re-encrypts files of the given table past the checkpoint
+	 * @return number of chunks left to run
+	 */
+	private int reEncryptTable(ExecutorService executor, final File table, int maxChunks) {
+		final long afterEntryId = table.getName().equals(checkpointTable) ? checkpointEntryId : -1;
+		if (afterEntryId == TABLE_DONE) {
+			return maxChunks;
+		}
+
+		// Packed storage re-encrypts all its entries at once (and skips the ones already re-encrypted)
+		final PackedBlobStore packedBlobStore = PackedBlobStore.getInstance(table);
+		if (packedBlobStore != null) {
+			try {
+				packedBlobStore.reEncrypt(oldKey, newKey);
+			} catch (IOException e) {
+				SmartStoreLogger.e(TAG, "Exception occurred while rekeying packed external storage", e);
+				throw new SmartStoreException("Could not rekey external files: " + e.getMessage());
+			}
+			filesReEncrypted.addAndGet(packedBlobStore.size());
+			checkpoint(table.getName(), TABLE_DONE);
+			return maxChunks - 1;
+		}
+
+		final List<Long> soupEntryIds = getSoupEntryIds(table, afterEntryId);
+		for (int start = 0; start < soupEntryIds.size(); start += CHUNK_SIZE) {
+			if (maxChunks <= 0) {
+				return 0;
+			}
+			final List<Long> chunk = soupEntryIds.subList(start, Math.min(start + CHUNK_SIZE, soupEntryIds.size()));
+			final List<Future<Void>> futures = new ArrayList<>(chunk.size());
+			for (final Long soupEntryId : chunk) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						reEncryptFile(new File(table, DBOpenHelper.SOUP_ELEMENT_PREFIX + soupEntryId));
+						return null;
+					}
+				}));
+			}
+
+			// Checkpoint only moves past the chunk if all its files were re-encrypted
+			waitFor(futures);
+			checkpoint(table.getName(), chunk.get(chunk.size() - 1));
+			maxChunks--;
+		}
+		checkpoint(table.getName(), TABLE_DONE);
+		return maxChunks;
+	}
+
+	/**
+	 * @return sorted soup entry ids of the files in the given table past the given id
+	 * Left over temporary files (from an interrupted run) are deleted
+	 */
+	private List<Long> getSoupEntryIds(File table, long afterEntryId) {
+		final List<Long> soupEntryIds = new ArrayList<>();
+		final File[] blobs = table.listFiles();
+		if (blobs != null) {
+			for (File blob : blobs) {
+				final String name = blob.getName();
+				if (name.endsWith(TMP_SUFFIX)) {
+					blob.delete();
+				} else if (name.startsWith(DBOpenHelper.SOUP_ELEMENT_PREFIX)) {
+					try {
+						final long soupEntryId = Long.parseLong(name.substring(DBOpenHelper.SOUP_ELEMENT_PREFIX.length()));
+						if (soupEntryId > afterEntryId) {
+							soupEntryIds.add(soupEntryId);
+						}
+					} catch (NumberFormatException e) {
+						SmartStoreLogger.w(TAG, "Unexpected file in external storage: " + name);
+					}
+				}
+			}
+		}
+		Collections.sort(soupEntryIds);
+		return soupEntryIds;
+	}
+
+	/**
+	 * Re-encrypts one file
+	 * New content is written to a temporary file which then replaces the file, so a file is always readable with one of the keys
+	 */
+	private void reEncryptFile(File blob) throws IOException {
+		final byte[] data;
+		try (RandomAccessFile file = new RandomAccessFile(blob, "r")) {
+			data = new byte[(int) file.length()];
+			file.readFully(data);
+		}
+		final byte[] newData = SoupBlobFormat.reEncrypt(data, oldKey, newKey);
+		if (newData != null) {
+			final File tmp = new File(blob.getPath() + TMP_SUFFIX);
+			try (FileOutputStream outputStream = new FileOutputStream(tmp, false)) {
+				outputStream.write(newData);
+				outputStream.getFD().sync();
+			}
+			if (!tmp.renameTo(blob)) {
+				tmp.delete();
+				throw new IOException("Could not replace " + blob.getName());
+			}
+		}
+		filesReEncrypted.incrementAndGet();
+	}
+
+	private void waitFor(List<Future<Void>> futures) {
+		Throwable failure = null;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SmartStoreException("Interrupted while rekeying external files");
+			} catch (ExecutionException e) {
+				SmartStoreLogger.e(TAG, "Exception occurred while rekeying external files", e.getCause());
+				failure = e.getCause();
+			}
+		}
+		if (failure != null) {
+			throw new SmartStoreException("Could not rekey external files: " + failure.getMessage());
+		}
+	}
+
+	private void checkpoint(String table, long soupEntryId) {
+		this.checkpointTable = table;
+		this.checkpointEntryId = soupEntryId;
+		updateLongOperationDbRow(ReEncryptStep.RE_ENCRYPT_FILES);
+	}
+
+	/**
+	 * Create row in long operations status table for a new re-encrypt files operation
+	 * @return
+	 * @throws JSONException
+	 */
+	protected long createLongOperationDbRow() throws JSONException {
+		ReEncryptStep status = ReEncryptStep.STARTING;
+		JSONObject details = getDetails();
+
+		Long now = System.currentTimeMillis();
+		ContentValues contentValues = new ContentValues();
+		contentValues.put(SmartStore.TYPE_COL, LongOperationType.reEncryptFiles.toString());
+		contentValues.put(SmartStore.STATUS_COL, status.toString());
+		contentValues.put(SmartStore.DETAILS_COL, details.toString());
+		contentValues.put(SmartStore.CREATED_COL, now);
+		contentValues.put(SmartStore.LAST_MODIFIED_COL, now);
+		SmartStoreLogger.i(TAG, status.toString());
+		return DBHelper.getInstance(db).insert(db, SmartStore.LONG_OPERATIONS_STATUS_TABLE, contentValues);
+	}
+
+	/**
+	 * Update row in long operations status table for on-going re-encrypt files operation
+	 * Delete row if newStatus is ReEncryptStep.LAST
+	 * @param newStatus
+	 */
+	protected void updateLongOperationDbRow(ReEncryptStep newStatus) {
+		if (newStatus == ReEncryptStep.LAST) {
+			DBHelper.getInstance(db).delete(db, SmartStore.LONG_OPERATIONS_STATUS_TABLE, SmartStore.ID_PREDICATE, rowId + "");
+		}
+		else {
+			Long now = System.currentTimeMillis();
+			ContentValues contentValues = new ContentValues();
+			contentValues.put(SmartStore.STATUS_COL, newStatus.toString());
+			try {
+				contentValues.put(SmartStore.DETAILS_COL, getDetails().toString());
+			} catch (JSONException e) {
+				throw new SmartStoreException("Could not save checkpoint: " + e.getMessage());
+			}
+			contentValues.put(SmartStore.LAST_MODIFIED_COL, now);
+			DBHelper.getInstance(db).update(db, SmartStore.LONG_OPERATIONS_STATUS_TABLE, contentValues, SmartStore.ID_PREDICATE, rowId + "");
+		}
+		afterStep = newStatus;
+		SmartStoreLogger.i(TAG, newStatus + " " + checkpointTable + " " + checkpointEntryId + " (" + filesReEncrypted.get() + " files)");
+	}
+}
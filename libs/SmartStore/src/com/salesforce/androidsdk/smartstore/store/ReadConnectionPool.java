@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import android.database.Cursor;
+
+import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException;
+import com.salesforce.androidsdk.smartstore.util.SmartStoreLogger;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pool of read-only connections to a SmartStore database
+ *
+ * The database is switched to write-ahead-log mode so that readers never wait on the writer:
+ * queries run against a committed snapshot on one of the pooled connections while
+ * mutations keep going through the single writable connection handed out by DBOpenHelper.
+ *
+ * Connections are opened lazily, up to the size of the pool.
+ */
+public class ReadConnectionPool {
+
+	private static final String TAG = "ReadConnectionPool";
+	private static final String WAL_MODE = "wal";
+
+	// Path of the database file
+	private final String path;
+
+	// Max number of connections opened at once
+	private final int size;
+
+	// Key used to open new connections
+	private String encryptionKey;
+
+	// Connections not currently in use
+	private final Deque<SQLiteDatabase> idleConnections = new ArrayDeque<>();
+
+	// Generation of every opened connection (idle or in use)
+	private final Map<SQLiteDatabase, Integer> connectionGenerations = new HashMap<>();
+
+	// Bumped when opened connections can no longer be used (e.g. after a key change)
+	private int generation;
+
+	// True once the pool has been closed
+	private boolean closed;
+
+	/**
+	 * Constructor
+	 * NB: switches the database to write-ahead-log mode, must not be called during a transaction
+	 *
+	 * @param db writable connection to the database
+	 * @param encryptionKey key to open read-only connections with
+	 * @param size max number of read-only connections
+	 */
+	public ReadConnectionPool(SQLiteDatabase db, String encryptionKey, int size) {
+		if (size <= 0) {
+			throw new SmartStoreException("Invalid read connection pool size: " + size);
+		}
+		this.path = db.getPath();
+		this.encryptionKey = encryptionKey;
+		this.size = size;
+		enableWriteAheadLogging(db);
+	}
+
+	/**
+	 * @return max number of read-only connections
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return path of the database file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Get a read-only connection, waiting for one to be released if all are in use
+	 * Caller must give it back with release()
+	 *
+	 * @return read-only connection
+	 */
+	public synchronized SQLiteDatabase acquire() {
+		while (true) {
+			if (closed) {
+				throw new SmartStoreException("Read connection pool for " + path + " is closed");
+			}
+			if (!idleConnections.isEmpty()) {
+				return idleConnections.pop();
+			}
+			if (connectionGenerations.size() < size) {
+				SQLiteDatabase readDb = openConnection();
+				connectionGenerations.put(readDb, generation);
+				return readDb;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SmartStoreException("Interrupted while waiting for a read connection");
+			}
+		}
+	}
+
+	/**
+	 * Give back a connection obtained through acquire()
+	 *
+	 * @param readDb read-only connection
+	 */
+	public synchronized void release(SQLiteDatabase readDb) {
+		Integer connectionGeneration = connectionGenerations.get(readDb);
+		if (connectionGeneration == null) {
+			return; // not ours
+		}
+		if (closed || connectionGeneration != generation) {
+			connectionGenerations.remove(readDb);
+			closeConnection(readDb);
+		} else {
+			idleConnections.push(readDb);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Discard all connections and open new ones with the given key from now on
+	 * Connections in use are closed when released
+	 *
+	 * @param encryptionKey new key
+	 */
+	public synchronized void changeKey(String encryptionKey) {
+		this.encryptionKey = encryptionKey;
+		generation++;
+		closeIdleConnections();
+		notifyAll();
+	}
+
+	/**
+	 * Close pool
+	 * Connections in use are closed when released
+	 */
+	public synchronized void close() {
+		closed = true;
+		closeIdleConnections();
+		notifyAll();
+	}
+
+	private void closeIdleConnections() {
+		while (!idleConnections.isEmpty()) {
+			SQLiteDatabase readDb = idleConnections.pop();
+			connectionGenerations.remove(readDb);
+			closeConnection(readDb);
+		}
+	}
+
+	private SQLiteDatabase openConnection() {
+		SQLiteDatabase readDb = SQLiteDatabase.openDatabase(path, encryptionKey, null, SQLiteDatabase.OPEN_READONLY, new DBOpenHelper.DBHook());
+		SmartStoreLogger.d(TAG, "Opened read connection " + connectionGenerations.size() + " to " + path);
+		return readDb;
+	}
+
+	private void closeConnection(SQLiteDatabase readDb) {
+		try {
+			readDb.close();
+		} catch (Exception e) {
+			SmartStoreLogger.w(TAG, "Failed to close read connection to " + path, e);
+		}
+	}
+
+	/**
+	 * Switch database to write-ahead-log mode (setting is persistent)
+	 *
+	 * @param db writable connection to the database
+	 */
+	private static void enableWriteAheadLogging(SQLiteDatabase db) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery("PRAGMA journal_mode = WAL", null);
+			String journalMode = c.moveToFirst() ? c.getString(0) : null;
+			if (journalMode == null || !WAL_MODE.equals(journalMode.toLowerCase(Locale.US))) {
+				throw new SmartStoreException("Could not switch " + db.getPath() + " to write-ahead-log mode, journal mode is " + journalMode);
+			}
+		} finally {
+			if (c != null) {
+				c.close();
+			}
+		}
+	}
+}
@@ -27,8 +27,10 @@
 package com.salesforce.androidsdk.smartstore.store;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,8 +46,20 @@ import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException
 public class SmartSqlHelper  {
 
 	public static final Pattern SOUP_PATH_PATTERN = Pattern.compile("\\{([^}]+)\\}");
+	public static final int SMART_SQL_CACHE_SIZE = 100;
 	private static Map<SQLiteDatabase, SmartSqlHelper> INSTANCES;
 
+	// LRU cache of smart sql to sql translations
+	// NB: accessed by read-only connections of a ReadConnectionPool without the lock on the database, always synchronize on it
+	private final Map<String, CachedTranslation> smartSqlToSqlCache = new LinkedHashMap<String, CachedTranslation>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedTranslation> eldest) {
+			return size() > SMART_SQL_CACHE_SIZE;
+		}
+	};
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+
 	/**
 	 * Returns the instance of this class associated with the database specified.
 	 *
@@ -79,6 +93,67 @@ public class SmartSqlHelper  {
 	 * @return actual sql     
 	 */
 	public String convertSmartSql(SQLiteDatabase db, String smartSql) {
+		return convertSmartSql(DBHelper.getInstance(db), db, smartSql);
+	}
+
+	/**
+	 * Convert "smart" sql query to actual sql
+	 * Soup meta data is read from (and cached in) the given DBHelper, which might not be the one attached to db
+	 * (e.g. when db is a read-only connection from a ReadConnectionPool)
+	 *
+	 * @param dbHelper
+	 * @param db
+	 * @param smartSql
+	 * @return actual sql
+	 */
+	public String convertSmartSql(DBHelper dbHelper, SQLiteDatabase db, String smartSql) {
+
+		// Translations computed before soup meta data was last removed from the DBHelper caches are stale
+		int generation = dbHelper.getMetadataGeneration();
+		synchronized (smartSqlToSqlCache) {
+			CachedTranslation cached = smartSqlToSqlCache.get(smartSql);
+			if (cached != null) {
+				if (cached.generation == generation) {
+					cacheHits.incrementAndGet();
+					return cached.sql;
+				}
+				smartSqlToSqlCache.remove(smartSql);
+			}
+		}
+		cacheMisses.incrementAndGet();
+		String sql = translateSmartSql(dbHelper, db, smartSql);
+		synchronized (smartSqlToSqlCache) {
+			smartSqlToSqlCache.put(smartSql, new CachedTranslation(sql, generation));
+		}
+		return sql;
+	}
+
+	/**
+	 * @return number of smart sql conversions served from the cache
+	 */
+	public long getCacheHitCount() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * @return number of smart sql conversions that had to be computed
+	 */
+	public long getCacheMissCount() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Empties the smart sql translation cache and resets its counters
+	 */
+	public void clearCache() {
+		synchronized (smartSqlToSqlCache) {
+			smartSqlToSqlCache.clear();
+		}
+		cacheHits.set(0);
+		cacheMisses.set(0);
+	}
+
+	private String translateSmartSql(DBHelper dbHelper, SQLiteDatabase db, String smartSql) {
 
 		// Select's only
 		String smartSqlLowerCase = smartSql.toLowerCase(Locale.getDefault()).trim();
@@ -95,10 +170,10 @@ public class SmartSqlHelper  {
 			int position = matcher.start();
 			String[] parts = match.split(":");
 			String soupName = parts[0];
-			String soupTableName = getSoupTableNameForSmartSql(db, soupName, position);
+			String soupTableName = getSoupTableNameForSmartSql(dbHelper, db, soupName, position);
 			boolean tableQualified = smartSql.charAt(position-1) == '.';
 			String tableQualifier = tableQualified ? "" : soupTableName + ".";
-			boolean useExternalStorage = DBHelper.getInstance(db).getFeatures(db, soupName).contains(SoupSpec.FEATURE_EXTERNAL_STORAGE);
+			boolean useExternalStorage = dbHelper.getFeatures(db, soupName).contains(SoupSpec.FEATURE_EXTERNAL_STORAGE);
 
 			// {soupName}
 			if (parts.length == 1) {
@@ -130,7 +205,7 @@ public class SmartSqlHelper  {
 				}
 				// {soupName:path}
 				else {
-					String columnName = getColumnNameForPathForSmartSql(db, soupName, path, position);
+					String columnName = getColumnNameForPathForSmartSql(dbHelper, db, soupName, path, position);
 					matcher.appendReplacement(sql, columnName.replace("$", "\\$") /* treat any $ as litteral */);
 				}
 			} else if (parts.length > 2) {
@@ -151,18 +226,18 @@ public class SmartSqlHelper  {
 		return sqlStr;
 	}
 	
-	private String getColumnNameForPathForSmartSql(SQLiteDatabase db, String soupName, String path, int position) {
+	private String getColumnNameForPathForSmartSql(DBHelper dbHelper, SQLiteDatabase db, String soupName, String path, int position) {
 		String columnName = null;
 		try {
-			columnName = DBHelper.getInstance(db).getColumnNameForPath(db, soupName, path);
+			columnName = dbHelper.getColumnNameForPath(db, soupName, path);
 		} catch (SmartStoreException e) {
 			reportSmartSqlError(e.getMessage(), position);
 		}
 		return columnName;
 	}
 
-	private String getSoupTableNameForSmartSql(SQLiteDatabase db, String soupName, int position) {
-		String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
+	private String getSoupTableNameForSmartSql(DBHelper dbHelper, SQLiteDatabase db, String soupName, int position) {
+		String soupTableName = dbHelper.getSoupTableName(db, soupName);
 		if (soupTableName == null) {
 			reportSmartSqlError("Unknown soup " + soupName, position);
 		}
@@ -172,6 +247,19 @@ public class SmartSqlHelper  {
 	private void reportSmartSqlError(String message, int position) {
 		throw new SmartSqlException(message + " at character " + position);
 	}
+
+	/**
+	 * Translation in cache along with the generation of the soup meta data it was computed from
+	 */
+	private static class CachedTranslation {
+		final String sql;
+		final int generation;
+
+		CachedTranslation(String sql, int generation) {
+			this.sql = sql;
+			this.generation = generation;
+		}
+	}
     
     /**
      * Exception thrown when smart sql failed to be parsed
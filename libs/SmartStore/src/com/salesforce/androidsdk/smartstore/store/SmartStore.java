@@ -36,10 +36,10 @@ import com.salesforce.androidsdk.app.SalesforceSDKManager;
 import com.salesforce.androidsdk.smartstore.store.LongOperation.LongOperationType;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec.QueryType;
 import com.salesforce.androidsdk.smartstore.util.SmartStoreLogger;
-import com.salesforce.androidsdk.util.JSONObjectHelper;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteOpenHelper;
+import net.sqlcipher.database.SQLiteStatement;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -47,6 +47,9 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -64,6 +67,9 @@ public class SmartStore  {
 
     // Default
     public static final int DEFAULT_PAGE_SIZE = 10;
+
+    // Number of soup elements re-indexed / copied per transaction by reIndexSoup and alterSoup
+    public static final int REINDEX_BATCH_SIZE = 1000;
 	private static final String TAG = "SmartStore";
 
 	/**
@@ -115,6 +121,15 @@ public class SmartStore  {
 	protected static final String ID_PREDICATE = ID_COL + " = ?";
 	protected static final String ROWID_PREDICATE = ROWID_COL + " =?";
 
+	// Max number of arguments bound in one IN (...) predicate (sqlite limit is 999)
+	private static final int MAX_BOUND_ARGS = 500;
+
+	// Savepoint around each element of upsertAll, so that a failed element doesn't leave partial writes behind
+	private static final String UPSERT_SAVEPOINT = "upsert_element";
+
+	// Returns id of the only matching row, -1 if there is none and -2 if there are several
+	private static final String LOOKUP_ID_SQL = "SELECT CASE WHEN count(*) > 1 THEN -2 ELSE ifnull(max(%1$s), -1) END FROM %2$s WHERE %3$s = ?";
+
 	// Backing database
 	protected SQLiteDatabase dbLocal;
 	protected SQLiteOpenHelper dbOpenHelper;
@@ -136,8 +151,11 @@ public class SmartStore  {
     public static synchronized void changeKey(SQLiteDatabase db, String oldKey, String newKey) {
     	synchronized(db) {
 	        if (newKey != null && !newKey.trim().equals("")) {
+	            // Re-encryption of files is recorded first, so that it gets resumed if the process dies right after the rekey
+	            ReEncryptFilesLongOperation reEncryptOperation = DBOpenHelper.prepareReEncryptAllFiles(db, oldKey, newKey);
 	            db.execSQL("PRAGMA rekey = '" + newKey + "'");
-	            DBOpenHelper.reEncryptAllFiles(db, oldKey, newKey);
+	            DBOpenHelper.changeKeyForReadConnections(db, newKey);
+	            DBOpenHelper.runReEncryptAllFiles(reEncryptOperation);
 	        }
     	}
     }
@@ -212,6 +230,17 @@ public class SmartStore  {
         this.dbLocal = db;
     }
 
+    /**
+     * Used to resume long operations while the database is being opened
+     *
+     * @param db
+     * @param encryptionKey Key the database is opened with.
+     */
+    SmartStore(SQLiteDatabase db, String encryptionKey) {
+        this.dbLocal = db;
+        this.encryptionKey = encryptionKey;
+    }
+
     /**
      * Relies on SQLiteOpenHelper for database handling.
      *
@@ -234,6 +263,47 @@ public class SmartStore  {
         }
     }
 
+	/**
+	 * Turn on or off the pool of read-only connections
+	 * When turned on, the database is switched to write-ahead-log mode and queries (query, queryAsString, countQuery, retrieve)
+	 * run on one of up to poolSize read-only connections instead of waiting on the lock of the writable connection.
+	 * Reads issued from a thread that is in a transaction keep going through the writable connection (so that they see uncommitted changes).
+	 * NB: the pool is shared by all SmartStore instances for the same database
+	 *
+	 * @param poolSize max number of read-only connections, 0 to turn the pool off
+	 */
+	public void setReadConnectionPoolSize(int poolSize) {
+		if (!(dbOpenHelper instanceof DBOpenHelper)) {
+			throw new SmartStoreException("Read connection pool not supported by this store");
+		}
+		final SQLiteDatabase db = getDatabase();
+		synchronized (db) {
+			((DBOpenHelper) dbOpenHelper).setReadConnectionPool(poolSize > 0 ? new ReadConnectionPool(db, encryptionKey, poolSize) : null);
+		}
+	}
+
+	/**
+	 * @return max number of read-only connections or 0 if the pool of read-only connections is turned off
+	 */
+	public int getReadConnectionPoolSize() {
+		ReadConnectionPool pool = dbOpenHelper instanceof DBOpenHelper ? ((DBOpenHelper) dbOpenHelper).getReadConnectionPool() : null;
+		return pool == null ? 0 : pool.getSize();
+	}
+
+	/**
+	 * @return pool to run a read with or null if the read should go through the writable connection
+	 * NB: the pool is not used by a thread in a transaction since it must see its own uncommitted changes
+	 */
+	private ReadConnectionPool getReadConnectionPool() {
+		if (dbOpenHelper instanceof DBOpenHelper) {
+			ReadConnectionPool pool = ((DBOpenHelper) dbOpenHelper).getReadConnectionPool();
+			if (pool != null && !getDatabase().inTransaction()) {
+				return pool;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * If turned on, explain query plan is run before executing a query and stored in lastExplainQueryPlan
 	 * and also get logged
@@ -254,7 +324,9 @@ public class SmartStore  {
      * Get database size
      */
     public int getDatabaseSize() {
-    	int size =  (int) (new File(getDatabase().getPath()).length()); // XXX That cast will be trouble if the file is more than 2GB
+    	final String path = getDatabase().getPath();
+    	int size =  (int) (new File(path).length()); // XXX That cast will be trouble if the file is more than 2GB
+    	size += (int) (new File(path + "-wal").length()); // in write-ahead-log mode, recent changes are not yet in the database file
     	if (dbOpenHelper instanceof DBOpenHelper) {
     		size += ((DBOpenHelper) dbOpenHelper).getSizeOfDir(null);
     	}
@@ -487,6 +559,14 @@ public class SmartStore  {
         }
     }
 
+	/**
+	 * @return barrier keeping soups being altered from being used by other threads
+	 */
+	SoupAlterBarrier getSoupAlterBarrier() {
+		final SQLiteDatabase db = getDatabase();
+		return DBHelper.getInstance(db).getSoupAlterBarrier(db);
+	}
+
 	/**
 	 * Finish long operations that were interrupted
 	 */
@@ -570,71 +650,131 @@ public class SmartStore  {
 	 * Re-index all soup elements for passed indexPaths
 	 * NB: only indexPath that have IndexSpec on them will be indexed
 	 *
+	 * Soup elements are re-indexed in batches of REINDEX_BATCH_SIZE
+	 * When handleTx is true, each batch runs in its own transaction and the database is unlocked between batches
+	 * Otherwise the database stays locked until all batches are done (the caller owns the transaction)
+	 *
 	 * @param soupName
 	 * @param indexPaths
 	 * @param handleTx
 	 */
 	public void reIndexSoup(String soupName, String[] indexPaths, boolean handleTx) {
 		final SQLiteDatabase db = getDatabase();
+		String soupTableName;
+		IndexSpec[] indexSpecs;
 		synchronized(db) {
-	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
+	        soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
+			indexSpecs = getIndexSpecsToReIndex(soupName, indexPaths);
+		}
+		if (indexSpecs.length == 0) {
+			// Nothing to do
+			return;
+		}
 
-	        // Getting index specs from indexPaths skipping json1 index specs
-			Map<String, IndexSpec> mapAllSpecs = IndexSpec.mapForIndexSpecs(getSoupIndexSpecs(soupName));
-			List<IndexSpec> indexSpecsList = new ArrayList<IndexSpec>();
-			for (String indexPath : indexPaths) {
-				if (mapAllSpecs.containsKey(indexPath)) {
-					IndexSpec indexSpec = mapAllSpecs.get(indexPath);
-					if (TypeGroup.value_extracted_to_column.isMember(indexSpec.type)) {
-						indexSpecsList.add(indexSpec);
+		if (handleTx) {
+			reIndexSoupInBatches(db, soupName, soupTableName, indexSpecs, true);
+		} else {
+			synchronized(db) {
+				reIndexSoupInBatches(db, soupName, soupTableName, indexSpecs, false);
+			}
+		}
+	}
+
+	private void reIndexSoupInBatches(SQLiteDatabase db, String soupName, String soupTableName, IndexSpec[] indexSpecs, boolean handleTx) {
+		long afterId = -1;
+		do {
+			synchronized(db) {
+				getSoupAlterBarrier().await(soupName);
+				if (handleTx) {
+					db.beginTransaction();
+				}
+				try {
+					afterId = reIndexSoupBatch(soupName, soupTableName, indexSpecs, afterId, REINDEX_BATCH_SIZE);
+					if (handleTx) {
+						db.setTransactionSuccessful();
+					}
+				} finally {
+					if (handleTx) {
+						db.endTransaction();
 					}
 				}
-				else {
-                    SmartStoreLogger.w(TAG, "Can not re-index " + indexPath + " - it does not have an index");
+			}
+		} while (afterId != -1);
+	}
+
+	/**
+	 * Getting index specs from indexPaths skipping json1 index specs
+	 *
+	 * @param soupName
+	 * @param indexPaths
+	 * @return index specs of values that need to be extracted for the given paths
+	 */
+	IndexSpec[] getIndexSpecsToReIndex(String soupName, String[] indexPaths) {
+		Map<String, IndexSpec> mapAllSpecs = IndexSpec.mapForIndexSpecs(getSoupIndexSpecs(soupName));
+		List<IndexSpec> indexSpecsList = new ArrayList<IndexSpec>();
+		for (String indexPath : indexPaths) {
+			if (mapAllSpecs.containsKey(indexPath)) {
+				IndexSpec indexSpec = mapAllSpecs.get(indexPath);
+				if (TypeGroup.value_extracted_to_column.isMember(indexSpec.type)) {
+					indexSpecsList.add(indexSpec);
 				}
 			}
-			IndexSpec[] indexSpecs = indexSpecsList.toArray(new IndexSpec[0]);
-			if (indexSpecs.length == 0) {
-				// Nothing to do
-				return;
+			else {
+                SmartStoreLogger.w(TAG, "Can not re-index " + indexPath + " - it does not have an index");
 			}
+		}
+		return indexSpecsList.toArray(new IndexSpec[0]);
+	}
 
+	/**
+	 * Re-index up to batchSize soup elements (in soup entry id order) that come after afterId
+	 * NB: caller is expected to be in a transaction
+	 *
+	 * @param soupName
+	 * @param soupTableName
+	 * @param indexSpecs index specs returned by getIndexSpecsToReIndex
+	 * @param afterId soup entry id of last soup element re-indexed (-1 to start from the beginning)
+	 * @param batchSize
+	 * @return soup entry id of last soup element re-indexed or -1 if there was none left
+	 */
+	long reIndexSoupBatch(String soupName, String soupTableName, IndexSpec[] indexSpecs, long afterId, int batchSize) {
+		final SQLiteDatabase db = getDatabase();
+		synchronized(db) {
 			boolean hasFts = IndexSpec.hasFTS(indexSpecs);
-
-			if (handleTx) {
-				db.beginTransaction();
-			}
+			boolean externalStorage = usesExternalStorage(soupName);
+			long lastId = -1;
 			Cursor cursor = null;
 			try {
 			    String[] projection;
-			    if (usesExternalStorage(soupName)) {
+			    if (externalStorage) {
 			        projection = new String[] {ID_COL};
 			    } else {
 			        projection = new String[] {ID_COL, SOUP_COL};
 			    }
-			    cursor = DBHelper.getInstance(db).query(db, soupTableName, projection, null, null, null);
+			    cursor = DBHelper.getInstance(db).query(db, soupTableName, projection, ID_COL, "" + batchSize, ID_COL + " > ?", "" + afterId);
 			    if (cursor.moveToFirst()) {
 			        do {
 			        	String soupEntryId = cursor.getString(0);
+			        	lastId = cursor.getLong(0);
 			        	try {
 			                JSONObject soupElt;
-			                if (usesExternalStorage(soupName) && dbOpenHelper instanceof DBOpenHelper) {
-			                	soupElt = ((DBOpenHelper) dbOpenHelper).loadSoupBlob(soupTableName, Long.parseLong(soupEntryId), encryptionKey);
+			                if (externalStorage && dbOpenHelper instanceof DBOpenHelper) {
+			                	soupElt = ((DBOpenHelper) dbOpenHelper).loadSoupBlob(soupTableName, lastId, encryptionKey);
 			                } else {
 			                	String soupRaw = cursor.getString(1);
 			                	soupElt = new JSONObject(soupRaw);
 			                }
 			                ContentValues contentValues = new ContentValues();
 			                projectIndexedPaths(soupElt, contentValues, indexSpecs, TypeGroup.value_extracted_to_column);
-			                DBHelper.getInstance(db).update(db, soupTableName, contentValues, ID_PREDICATE, soupEntryId + "");
+			                DBHelper.getInstance(db).update(db, soupTableName, contentValues, ID_PREDICATE, soupEntryId);
 
 							// Fts
 							if (hasFts) {
 								String soupTableNameFts = soupTableName + FTS_SUFFIX;
 								ContentValues contentValuesFts = new ContentValues();
 								projectIndexedPaths(soupElt, contentValuesFts, indexSpecs, TypeGroup.value_extracted_to_fts_column);
-								DBHelper.getInstance(db).update(db, soupTableNameFts, contentValuesFts, ROWID_PREDICATE, soupEntryId + "");
+								DBHelper.getInstance(db).update(db, soupTableNameFts, contentValuesFts, ROWID_PREDICATE, soupEntryId);
 							}
 			        	}
 			        	catch (JSONException e) {
@@ -645,12 +785,9 @@ public class SmartStore  {
 			        while (cursor.moveToNext());
 			    }
 			} finally {
-				if (handleTx) {
-					db.setTransactionSuccessful();
-					db.endTransaction();
-				}
 			    safeClose(cursor);
 			}
+			return lastId;
 		}
 	}
 
@@ -676,6 +813,7 @@ public class SmartStore  {
 	public void clearSoup(String soupName) {
 		final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+	        getSoupAlterBarrier().await(soupName);
 	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 			db.beginTransaction();
@@ -811,51 +949,171 @@ public class SmartStore  {
 	 */
 	public void queryAsString(StringBuilder resultBuilder, QuerySpec querySpec, int pageIndex) {
 		final SQLiteDatabase db = getDatabase();
-		synchronized(db) {
-			QueryType qt = querySpec.queryType;
-			String sql = convertSmartSql(querySpec.smartSql);
+		final ReadConnectionPool readPool = getReadConnectionPool();
+		if (readPool != null) {
+			getSoupAlterBarrier().beginRead(querySpec.soupName);
+			final SQLiteDatabase readDb = readPool.acquire();
+			try {
+				queryAsString(db, readDb, resultBuilder, querySpec, pageIndex);
+			} finally {
+				readPool.release(readDb);
+				getSoupAlterBarrier().endRead(querySpec.soupName);
+			}
+		} else {
+			synchronized(db) {
+				getSoupAlterBarrier().await(querySpec.soupName);
+				queryAsString(db, db, resultBuilder, querySpec, pageIndex);
+			}
+		}
+	}
 
-			// Page
-			int offsetRows = querySpec.pageSize * pageIndex;
-			int numberRows = querySpec.pageSize;
-			String limit = offsetRows + "," + numberRows;
-			Cursor cursor = null;
+	/**
+	 * Helper method for queryAsString
+	 *
+	 * @param db writable connection (soup meta data is cached in its DBHelper)
+	 * @param queryDb connection to run the query on
+	 * @param resultBuilder
+	 * @param querySpec
+	 * @param pageIndex
+	 */
+	private void queryAsString(SQLiteDatabase db, SQLiteDatabase queryDb, StringBuilder resultBuilder, QuerySpec querySpec, int pageIndex) {
+		final DBHelper dbHelper = DBHelper.getInstance(db);
+		String sql = SmartSqlHelper.getInstance(db).convertSmartSql(dbHelper, queryDb, querySpec.smartSql);
+
+		// Page
+		int offsetRows = querySpec.pageSize * pageIndex;
+		int numberRows = querySpec.pageSize;
+		Cursor cursor = null;
+		try {
+			cursor = dbHelper.limitRawQuery(queryDb, sql, offsetRows, numberRows, querySpec.getArgs());
+			resultBuilder.append("[");
+			int currentRow = 0;
+			if (cursor.moveToFirst()) {
+				do {
+					if (currentRow > 0) {
+						resultBuilder.append(", ");
+					}
+					currentRow++;
+					getRowAsString(resultBuilder, cursor, querySpec);
+				} while (cursor.moveToNext());
+			}
+			resultBuilder.append("]");
+
+		} finally {
+			safeClose(cursor);
+		}
+	}
+
+	/**
+	 * Run a query given by its query Spec and pass every result row to the visitor as it is read
+	 * Unlike calling queryAsString page after page, the query is only executed once
+	 * NB: the visitor is called while the query is running and should not write to the store
+	 *
+	 * @param querySpec
+	 * @param visitor
+	 * @throws JSONException
+	 */
+	public void queryAsStream(QuerySpec querySpec, RowVisitor visitor) throws JSONException {
+		queryAsStream(querySpec, 0, visitor);
+	}
+
+	/**
+	 * Run a query given by its query Spec starting at the selected page and pass every result row
+	 * (up to the last one - querySpec.pageSize is only used to find the first row) to the visitor as it is read
+	 * Unlike calling queryAsString page after page, the query is only executed once
+	 * NB: the visitor is called while the query is running and should not write to the store
+	 *
+	 * @param querySpec
+	 * @param pageIndex
+	 * @param visitor
+	 * @throws JSONException
+	 */
+	public void queryAsStream(QuerySpec querySpec, int pageIndex, RowVisitor visitor) throws JSONException {
+		final SQLiteDatabase db = getDatabase();
+		final ReadConnectionPool readPool = getReadConnectionPool();
+		if (readPool != null) {
+			getSoupAlterBarrier().beginRead(querySpec.soupName);
+			final SQLiteDatabase readDb = readPool.acquire();
 			try {
-				cursor = DBHelper.getInstance(db).limitRawQuery(db, sql, limit, querySpec.getArgs());
-				resultBuilder.append("[");
-				int currentRow = 0;
-				if (cursor.moveToFirst()) {
-					do {
-						if (currentRow > 0) {
-							resultBuilder.append(", ");
-						}
-						currentRow++;
+				queryAsStream(db, readDb, querySpec, pageIndex, visitor);
+			} finally {
+				readPool.release(readDb);
+				getSoupAlterBarrier().endRead(querySpec.soupName);
+			}
+		} else {
+			synchronized(db) {
+				getSoupAlterBarrier().await(querySpec.soupName);
+				queryAsStream(db, db, querySpec, pageIndex, visitor);
+			}
+		}
+	}
 
-						// Smart queries
-						if (qt == QueryType.smart || querySpec.selectPaths != null) {
-							getDataFromRowAsString(resultBuilder, cursor);
-						}
-						// Exact/like/range queries
-						else {
-							if (cursor.getColumnIndex(SoupSpec.FEATURE_EXTERNAL_STORAGE) >= 0) {
-								// Presence of external storage column implies we must fetch from storage. Soup name and entry id values can be extracted
-								String soupTableName = cursor.getString(cursor.getColumnIndex(SoupSpec.FEATURE_EXTERNAL_STORAGE));
-								Long soupEntryId = cursor.getLong(cursor.getColumnIndex(SmartStore.SOUP_ENTRY_ID));
-								resultBuilder.append(((DBOpenHelper) dbOpenHelper).loadSoupBlobAsString(soupTableName, soupEntryId, encryptionKey));
-							} else {
-								resultBuilder.append(cursor.getString(0));
-							}
-						}
-					} while (cursor.moveToNext());
+	/**
+	 * Helper method for queryAsStream
+	 *
+	 * @param db writable connection (soup meta data is cached in its DBHelper)
+	 * @param queryDb connection to run the query on
+	 * @param querySpec
+	 * @param pageIndex
+	 * @param visitor
+	 * @throws JSONException
+	 */
+	private void queryAsStream(SQLiteDatabase db, SQLiteDatabase queryDb, QuerySpec querySpec, int pageIndex, RowVisitor visitor) throws JSONException {
+		final DBHelper dbHelper = DBHelper.getInstance(db);
+		String sql = SmartSqlHelper.getInstance(db).convertSmartSql(dbHelper, queryDb, querySpec.smartSql);
+
+		// No upper bound (negative limit)
+		int offsetRows = querySpec.pageSize * pageIndex;
+		StringBuilder rowBuilder = new StringBuilder();
+		Cursor cursor = null;
+		try {
+			cursor = dbHelper.limitRawQuery(queryDb, sql, offsetRows, -1, querySpec.getArgs());
+			while (cursor.moveToNext()) {
+				rowBuilder.setLength(0);
+				getRowAsString(rowBuilder, cursor, querySpec);
+				if (!visitor.visit(rowBuilder.toString())) {
+					break;
 				}
-				resultBuilder.append("]");
+			}
+		} finally {
+			safeClose(cursor);
+		}
+	}
 
-			} finally {
-				safeClose(cursor);
+	/**
+	 * Append current row of cursor to resultBuilder
+	 *
+	 * @param resultBuilder
+	 * @param cursor
+	 * @param querySpec
+	 */
+	private void getRowAsString(StringBuilder resultBuilder, Cursor cursor, QuerySpec querySpec) {
+		// Smart queries
+		if (querySpec.queryType == QueryType.smart || querySpec.selectPaths != null) {
+			getDataFromRowAsString(resultBuilder, cursor);
+		}
+		// Exact/like/range queries
+		else {
+			if (cursor.getColumnIndex(SoupSpec.FEATURE_EXTERNAL_STORAGE) >= 0) {
+				// Presence of external storage column implies we must fetch from storage. Soup name and entry id values can be extracted
+				String soupTableName = cursor.getString(cursor.getColumnIndex(SoupSpec.FEATURE_EXTERNAL_STORAGE));
+				Long soupEntryId = cursor.getLong(cursor.getColumnIndex(SmartStore.SOUP_ENTRY_ID));
+				appendSoupBlob(resultBuilder, soupTableName, soupEntryId);
+			} else {
+				resultBuilder.append(cursor.getString(0));
 			}
 		}
 	}
 
+	/**
+	 * Streams externally stored soup element straight into result builder (appends null if it can't be read)
+	 */
+	private void appendSoupBlob(StringBuilder resultBuilder, String soupTableName, long soupEntryId) {
+		if (!((DBOpenHelper) dbOpenHelper).loadSoupBlobInto(resultBuilder, soupTableName, soupEntryId, encryptionKey)) {
+			resultBuilder.append("null");
+		}
+	}
+
 	private void getDataFromRowAsString(StringBuilder resultBuilder, Cursor cursor)  {
 		int columnCount = cursor.getColumnCount();
 		resultBuilder.append("[");
@@ -874,7 +1132,7 @@ public class SmartStore  {
 					// Presence of external storage column implies we must fetch from storage. Soup name and entry id values can be extracted
 					String soupTableName = cursor.getString(i);
 					Long soupEntryId = cursor.getLong(i + 1);
-					resultBuilder.append(((DBOpenHelper) dbOpenHelper).loadSoupBlobAsString(soupTableName, soupEntryId, encryptionKey));
+					appendSoupBlob(resultBuilder, soupTableName, soupEntryId);
 					i++; // skip next column (_soupEntryId)
 				} else if (columnName.equals(SOUP_COL) || columnName.startsWith(SOUP_COL + ":") /* :num is appended to column name when result set has more than one column with same name */) {
 					resultBuilder.append(raw);
@@ -914,7 +1172,21 @@ public class SmartStore  {
 	 */
 	public int countQuery(QuerySpec querySpec) {
 		final SQLiteDatabase db = getDatabase();
+		final ReadConnectionPool readPool = getReadConnectionPool();
+		if (readPool != null) {
+			getSoupAlterBarrier().beginRead(querySpec.soupName);
+			final SQLiteDatabase readDb = readPool.acquire();
+			try {
+				final DBHelper dbHelper = DBHelper.getInstance(db);
+				String countSql = SmartSqlHelper.getInstance(db).convertSmartSql(dbHelper, readDb, querySpec.countSmartSql);
+				return dbHelper.countRawCountQueryUncached(readDb, countSql, querySpec.getArgs());
+			} finally {
+				readPool.release(readDb);
+				getSoupAlterBarrier().endRead(querySpec.soupName);
+			}
+		}
     	synchronized(db) {
+    		getSoupAlterBarrier().await(querySpec.soupName);
 			String countSql = convertSmartSql(querySpec.countSmartSql);
 			return DBHelper.getInstance(db).countRawCountQuery(db, countSql, querySpec.getArgs());
     	}
@@ -958,6 +1230,7 @@ public class SmartStore  {
     public JSONObject create(String soupName, JSONObject soupElt, boolean handleTx) throws JSONException {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+	        getSoupAlterBarrier().await(soupName);
 	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 	        IndexSpec[] indexSpecs = DBHelper.getInstance(db).getIndexSpecs(db, soupName);
@@ -1049,21 +1322,22 @@ public class SmartStore  {
      * @param indexSpec
      */
     private void projectIndexedPath(JSONObject soupElt, ContentValues contentValues, IndexSpec indexSpec) {
-        Object value = project(soupElt, indexSpec.path);
+        Object value = indexSpec.jsonPath.project(soupElt);
 
 		contentValues.put(indexSpec.columnName, (String) null); // fall back
 		if (value != null) {
 			try {
 				switch (indexSpec.type) {
 					case integer:
-						contentValues.put(indexSpec.columnName, ((Number) value).longValue());
+						// Re-use boxed value from the json when possible
+						contentValues.put(indexSpec.columnName, value instanceof Long ? (Long) value : Long.valueOf(((Number) value).longValue()));
 						break;
 					case string:
 					case full_text:
 						contentValues.put(indexSpec.columnName, value.toString());
 						break;
 					case floating:
-						contentValues.put(indexSpec.columnName, ((Number) value).doubleValue());
+						contentValues.put(indexSpec.columnName, value instanceof Double ? (Double) value : Double.valueOf(((Number) value).doubleValue()));
 						break;
 				}
 			} catch (Exception e) {
@@ -1082,38 +1356,72 @@ public class SmartStore  {
      */
     public JSONArray retrieve(String soupName, Long... soupEntryIds) throws JSONException {
     	final SQLiteDatabase db = getDatabase();
+		final ReadConnectionPool readPool = getReadConnectionPool();
+		if (readPool != null) {
+			getSoupAlterBarrier().beginRead(soupName);
+			final SQLiteDatabase readDb = readPool.acquire();
+			try {
+				return retrieve(db, readDb, soupName, soupEntryIds);
+			} finally {
+				readPool.release(readDb);
+				getSoupAlterBarrier().endRead(soupName);
+			}
+		}
     	synchronized(db) {
-	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
-	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
-
-	        JSONArray result = new JSONArray();
-	        if (usesExternalStorage(soupName) && dbOpenHelper instanceof DBOpenHelper) {
-		        for (long soupEntryId : soupEntryIds) {
-			        JSONObject raw = ((DBOpenHelper) dbOpenHelper).loadSoupBlob(soupTableName, soupEntryId, encryptionKey);
-			        if (raw != null) {
-				        result.put(raw);
-			        }
-		        }
-	        } else {
-		        Cursor cursor = null;
-		        try {
-			        cursor = DBHelper.getInstance(db).query(db, soupTableName, new String[] { SOUP_COL }, null, null, getSoupEntryIdsPredicate(soupEntryIds), (String[]) null);
-			        if (!cursor.moveToFirst()) {
-				        return result;
-			        }
-			        do {
-				        String raw = cursor.getString(cursor.getColumnIndex(SOUP_COL));
-				        result.put(new JSONObject(raw));
-			        }
-			        while (cursor.moveToNext());
-		        } finally {
-			        safeClose(cursor);
-		        }
-	        }
-	        return result;
+    		getSoupAlterBarrier().await(soupName);
+    		return retrieve(db, db, soupName, soupEntryIds);
     	}
     }
 
+	/**
+	 * Helper method for retrieve
+	 *
+	 * @param db writable connection (soup meta data is cached in its DBHelper)
+	 * @param queryDb connection to run the query on
+	 * @param soupName
+	 * @param soupEntryIds
+	 * @return
+	 * @throws JSONException
+	 */
+	private JSONArray retrieve(SQLiteDatabase db, SQLiteDatabase queryDb, String soupName, Long... soupEntryIds) throws JSONException {
+		final DBHelper dbHelper = DBHelper.getInstance(db);
+		String soupTableName = dbHelper.getSoupTableName(queryDb, soupName);
+		if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
+
+		JSONArray result = new JSONArray();
+		if (dbHelper.getFeatures(queryDb, soupName).contains(SoupSpec.FEATURE_EXTERNAL_STORAGE) && dbOpenHelper instanceof DBOpenHelper) {
+			for (long soupEntryId : soupEntryIds) {
+				JSONObject raw = ((DBOpenHelper) dbOpenHelper).loadSoupBlob(soupTableName, soupEntryId, encryptionKey);
+				if (raw != null) {
+					result.put(raw);
+				}
+			}
+		} else {
+			Cursor cursor = null;
+			try {
+				if (soupEntryIds.length <= MAX_BOUND_ARGS) {
+					// Bound ids: same sql for every retrieve of that many entries
+					cursor = dbHelper.query(queryDb, soupTableName, new String[] { SOUP_COL }, null, null,
+							ID_COL + " IN (" + TextUtils.join(",", Collections.nCopies(soupEntryIds.length, "?")) + ")",
+							toStrings(soupEntryIds));
+				} else {
+					cursor = dbHelper.query(queryDb, soupTableName, new String[] { SOUP_COL }, null, null, getSoupEntryIdsPredicate(soupEntryIds), (String[]) null);
+				}
+				if (!cursor.moveToFirst()) {
+					return result;
+				}
+				do {
+					String raw = cursor.getString(cursor.getColumnIndex(SOUP_COL));
+					result.put(new JSONObject(raw));
+				}
+				while (cursor.moveToNext());
+			} finally {
+				safeClose(cursor);
+			}
+		}
+		return result;
+	}
+
 
     /**
      * Update (and commits)
@@ -1144,6 +1452,7 @@ public class SmartStore  {
     public JSONObject update(String soupName, JSONObject soupElt, long soupEntryId, boolean handleTx) throws JSONException {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+			getSoupAlterBarrier().await(soupName);
 			try {
 				if (handleTx) {
 					db.beginTransaction();
@@ -1241,6 +1550,7 @@ public class SmartStore  {
     public JSONObject upsert(String soupName, JSONObject soupElt, String externalIdPath, boolean handleTx) throws JSONException {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+	        getSoupAlterBarrier().await(soupName);
 	        long entryId = -1;
 	        if (externalIdPath.equals(SOUP_ENTRY_ID)) {
 	            if (soupElt.has(SOUP_ENTRY_ID)) {
@@ -1266,6 +1576,341 @@ public class SmartStore  {
     	}
     }
 
+    /**
+     * Upsert all elements (and commits)
+     * Note: Passed soup elements are modified (last modified date and soup entry id fields)
+     * @param soupName
+     * @param soupElts
+     * @param externalIdPath
+     * @return soup elements upserted (JSONObject.NULL for the ones that failed to be upserted)
+     * @throws JSONException
+     */
+    public JSONArray upsertAll(String soupName, JSONArray soupElts, String externalIdPath) throws JSONException {
+        final SQLiteDatabase db = getDatabase();
+        synchronized(db) {
+            return upsertAll(soupName, soupElts, externalIdPath, true);
+        }
+    }
+
+    /**
+     * Upsert all elements
+     * Equivalent to calling upsert for each element, but soup meta data is only looked up once,
+     * compiled insert/update statements are reused across elements and existing elements are
+     * looked up by external id in batches
+     * Each element is written under its own savepoint: the writes of an element that fails are rolled back
+     * while the other elements are still committed
+     * Note: Passed soup elements are modified (last modified date and soup entry id fields)
+     * @param soupName
+     * @param soupElts
+     * @param externalIdPath
+     * @param handleTx
+     * @return soup elements upserted (JSONObject.NULL for the ones that failed to be upserted)
+     * @throws JSONException
+     */
+    public JSONArray upsertAll(String soupName, JSONArray soupElts, String externalIdPath, boolean handleTx) throws JSONException {
+        final SQLiteDatabase db = getDatabase();
+        synchronized(db) {
+            getSoupAlterBarrier().await(soupName);
+            final DBHelper dbHelper = DBHelper.getInstance(db);
+            String soupTableName = dbHelper.getSoupTableName(db, soupName);
+            if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
+            BulkUpsertHelper helper = new BulkUpsertHelper(db, soupName, soupTableName);
+
+            JSONArray result = new JSONArray();
+            try {
+                if (handleTx) {
+                    db.beginTransaction();
+                }
+
+                // Finding existing entries
+                final JSONPath externalIdJsonPath = new JSONPath(externalIdPath);
+                Map<String, Long> externalIdToEntryId = externalIdPath.equals(SOUP_ENTRY_ID)
+                        ? null
+                        : lookupSoupEntryIds(soupName, externalIdPath, getExternalIds(soupElts, externalIdJsonPath));
+
+                for (int i = 0; i < soupElts.length(); i++) {
+                    JSONObject soupElt = soupElts.getJSONObject(i);
+                    long entryId = -1;
+                    String externalId = null;
+                    if (externalIdToEntryId == null) {
+                        if (soupElt.has(SOUP_ENTRY_ID)) {
+                            entryId = soupElt.getLong(SOUP_ENTRY_ID);
+                        }
+                    } else {
+                        externalId = externalIdJsonPath.project(soupElt) + "";
+                        Long existingId = externalIdToEntryId.get(externalId);
+                        entryId = existingId == null ? -1 : existingId;
+                    }
+
+                    // If we have an entryId, let's do an update, otherwise let's do a create
+                    // Without a transaction, every statement is committed as it runs (like for a single upsert)
+                    boolean useSavepoint = db.inTransaction();
+                    if (useSavepoint) {
+                        db.execSQL("SAVEPOINT " + UPSERT_SAVEPOINT);
+                    }
+                    JSONObject upserted = null;
+                    try {
+                        upserted = entryId != -1 ? helper.update(soupElt, entryId) : helper.create(soupElt);
+                    } finally {
+                        if (useSavepoint) {
+                            if (upserted == null) {
+                                db.execSQL("ROLLBACK TO " + UPSERT_SAVEPOINT);
+                            }
+                            db.execSQL("RELEASE " + UPSERT_SAVEPOINT);
+                        }
+                    }
+                    if (upserted != null && externalId != null) {
+                        // Later elements with the same external id should update this one
+                        externalIdToEntryId.put(externalId, upserted.getLong(SOUP_ENTRY_ID));
+                    }
+                    result.put(upserted == null ? JSONObject.NULL : upserted);
+                }
+
+                if (handleTx) {
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                if (handleTx) {
+                    db.endTransaction();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param soupElts
+     * @param externalIdPath
+     * @return external id values of the soup elements
+     */
+    private List<String> getExternalIds(JSONArray soupElts, JSONPath externalIdPath) throws JSONException {
+        List<String> externalIds = new ArrayList<String>();
+        for (int i = 0; i < soupElts.length(); i++) {
+            Object externalIdObj = externalIdPath.project(soupElts.getJSONObject(i));
+            if (externalIdObj == null) {
+                // Cannot have empty values for user-defined external ID upsert.
+                throw new SmartStoreException(String.format("For upsert with external ID path '%s', value cannot be empty for any entries.", externalIdPath.path));
+            }
+            externalIds.add(externalIdObj + "");
+        }
+        return externalIds;
+    }
+
+    /**
+     * Look for soup elements where fieldPath's value is one of fieldValues
+     * Throw an exception if fieldName is not indexed
+     * Throw an exception if more than one soup element is found for a value
+     *
+     * @param soupName
+     * @param fieldPath
+     * @param fieldValues
+     * @return map of field value to soupEntryId for the values found
+     */
+    private Map<String, Long> lookupSoupEntryIds(String soupName, String fieldPath, List<String> fieldValues) {
+        final SQLiteDatabase db = getDatabase();
+        synchronized(db) {
+            String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
+            if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
+            String columnName = DBHelper.getInstance(db).getColumnNameForPath(db, soupName, fieldPath);
+
+            Map<String, Long> fieldValueToEntryId = new HashMap<String, Long>();
+            List<String> distinctValues = new ArrayList<String>(new LinkedHashSet<String>(fieldValues));
+            for (int start = 0; start < distinctValues.size(); start += MAX_BOUND_ARGS) {
+                List<String> batch = distinctValues.subList(start, Math.min(start + MAX_BOUND_ARGS, distinctValues.size()));
+                String placeholders = TextUtils.join(",", Collections.nCopies(batch.size(), "?"));
+                Cursor cursor = null;
+                try {
+                    cursor = db.query(soupTableName, new String[] {ID_COL, columnName}, buildInStatement(columnName, placeholders), batch.toArray(new String[0]), null, null, null);
+                    while (cursor.moveToNext()) {
+                        String fieldValue = cursor.getString(1);
+                        if (fieldValueToEntryId.put(fieldValue, cursor.getLong(0)) != null) {
+                            throw new SmartStoreException(String.format("There are more than one soup elements where %s is %s", fieldPath, fieldValue));
+                        }
+                    }
+                } finally {
+                    safeClose(cursor);
+                }
+            }
+            return fieldValueToEntryId;
+        }
+    }
+
+    /**
+     * Helper for upsertAll
+     * Resolves soup meta data and compiles statements once, then creates/updates soup elements one at a time
+     */
+    private class BulkUpsertHelper {
+        private final SQLiteDatabase db;
+        private final DBHelper dbHelper;
+        private final String soupTableName;
+        private final List<IndexSpec> columnSpecs = new ArrayList<IndexSpec>();
+        private final List<IndexSpec> ftsColumnSpecs = new ArrayList<IndexSpec>();
+        private final boolean usesExternalStorage;
+        private final String insertSql;
+        private final String updateSql;
+        private final String insertFtsSql;
+        private final String updateFtsSql;
+
+        BulkUpsertHelper(SQLiteDatabase db, String soupName, String soupTableName) {
+            this.db = db;
+            this.dbHelper = DBHelper.getInstance(db);
+            this.soupTableName = soupTableName;
+            this.usesExternalStorage = usesExternalStorage(soupName);
+            for (IndexSpec indexSpec : dbHelper.getIndexSpecs(db, soupName)) {
+                if (TypeGroup.value_extracted_to_column.isMember(indexSpec.type)) {
+                    columnSpecs.add(indexSpec);
+                }
+                if (TypeGroup.value_extracted_to_fts_column.isMember(indexSpec.type)) {
+                    ftsColumnSpecs.add(indexSpec);
+                }
+            }
+
+            // Soup table statements
+            List<String> insertColumns = new ArrayList<String>();
+            List<String> updateColumns = new ArrayList<String>();
+            insertColumns.add(ID_COL);
+            insertColumns.add(CREATED_COL);
+            insertColumns.add(LAST_MODIFIED_COL);
+            updateColumns.add(LAST_MODIFIED_COL);
+            if (!usesExternalStorage) {
+                insertColumns.add(SOUP_COL);
+                updateColumns.add(SOUP_COL);
+            }
+            for (IndexSpec indexSpec : columnSpecs) {
+                insertColumns.add(indexSpec.columnName);
+                updateColumns.add(indexSpec.columnName);
+            }
+            insertSql = buildInsertSql(soupTableName, insertColumns);
+            updateSql = buildUpdateSql(soupTableName, updateColumns, ID_COL);
+
+            // Fts table statements
+            if (ftsColumnSpecs.size() > 0) {
+                List<String> insertFtsColumns = new ArrayList<String>();
+                List<String> updateFtsColumns = new ArrayList<String>();
+                insertFtsColumns.add(ROWID_COL);
+                for (IndexSpec indexSpec : ftsColumnSpecs) {
+                    insertFtsColumns.add(indexSpec.columnName);
+                    updateFtsColumns.add(indexSpec.columnName);
+                }
+                insertFtsSql = buildInsertSql(soupTableName + FTS_SUFFIX, insertFtsColumns);
+                updateFtsSql = buildUpdateSql(soupTableName + FTS_SUFFIX, updateFtsColumns, ROWID_COL);
+            } else {
+                insertFtsSql = null;
+                updateFtsSql = null;
+            }
+        }
+
+        JSONObject create(JSONObject soupElt) throws JSONException {
+            long now = System.currentTimeMillis();
+            long soupEntryId = dbHelper.getNextId(db, soupTableName);
+
+            // Adding fields to soup element
+            soupElt.put(SOUP_ENTRY_ID, soupEntryId);
+            soupElt.put(SOUP_LAST_MODIFIED_DATE, now);
+
+            // Inserting into database
+            SQLiteStatement insert = dbHelper.getWriteStatement(db, soupTableName, insertSql);
+            int index = 1;
+            insert.bindLong(index++, soupEntryId);
+            insert.bindLong(index++, now);
+            insert.bindLong(index++, now);
+            if (!usesExternalStorage) {
+                insert.bindString(index++, soupElt.toString());
+            }
+            bindIndexedPaths(insert, index, soupElt, columnSpecs);
+            boolean success = insert.executeInsert() == soupEntryId;
+
+            // Fts
+            if (success && insertFtsSql != null) {
+                SQLiteStatement insertFts = dbHelper.getWriteStatement(db, soupTableName + FTS_SUFFIX, insertFtsSql);
+                insertFts.bindLong(1, soupEntryId);
+                bindIndexedPaths(insertFts, 2, soupElt, ftsColumnSpecs);
+                insertFts.executeInsert();
+            }
+
+            // Add to external storage if applicable
+            if (success && usesExternalStorage && dbOpenHelper instanceof DBOpenHelper) {
+                success = ((DBOpenHelper) dbOpenHelper).saveSoupBlob(soupTableName, soupEntryId, soupElt, encryptionKey);
+            }
+            return success ? soupElt : null;
+        }
+
+        JSONObject update(JSONObject soupElt, long soupEntryId) throws JSONException {
+            long now = System.currentTimeMillis();
+
+            // In the case of an upsert with external id, _soupEntryId won't be in soupElt
+            soupElt.put(SOUP_ENTRY_ID, soupEntryId);
+            // Updating last modified field in soup element
+            soupElt.put(SOUP_LAST_MODIFIED_DATE, now);
+
+            // Updating database
+            SQLiteStatement update = dbHelper.getWriteStatement(db, soupTableName, updateSql);
+            int index = 1;
+            update.bindLong(index++, now);
+            if (!usesExternalStorage) {
+                update.bindString(index++, soupElt.toString());
+            }
+            index = bindIndexedPaths(update, index, soupElt, columnSpecs);
+            update.bindLong(index, soupEntryId);
+            boolean success = update.executeUpdateDelete() == 1;
+
+            // Fts
+            if (success && updateFtsSql != null) {
+                SQLiteStatement updateFts = dbHelper.getWriteStatement(db, soupTableName + FTS_SUFFIX, updateFtsSql);
+                index = bindIndexedPaths(updateFts, 1, soupElt, ftsColumnSpecs);
+                updateFts.bindLong(index, soupEntryId);
+                success = updateFts.executeUpdateDelete() == 1;
+            }
+
+            // Add to external storage if applicable
+            if (success && usesExternalStorage && dbOpenHelper instanceof DBOpenHelper) {
+                success = ((DBOpenHelper) dbOpenHelper).saveSoupBlob(soupTableName, soupEntryId, soupElt, encryptionKey);
+            }
+            return success ? soupElt : null;
+        }
+
+        /**
+         * Bind values of indexed paths (same conversions as projectIndexedPath)
+         * @return index of next parameter to bind
+         */
+        private int bindIndexedPaths(SQLiteStatement statement, int index, JSONObject soupElt, List<IndexSpec> indexSpecs) {
+            for (IndexSpec indexSpec : indexSpecs) {
+                Object value = indexSpec.jsonPath.project(soupElt);
+                statement.bindNull(index); // fall back
+                if (value != null) {
+                    try {
+                        switch (indexSpec.type) {
+                            case integer:
+                                statement.bindLong(index, ((Number) value).longValue());
+                                break;
+                            case string:
+                            case full_text:
+                                statement.bindString(index, value.toString());
+                                break;
+                            case floating:
+                                statement.bindDouble(index, ((Number) value).doubleValue());
+                                break;
+                        }
+                    } catch (Exception e) {
+                        // Ignore (will use the null value)
+                        SmartStoreLogger.e(TAG, "Unexpected error", e);
+                    }
+                }
+                index++;
+            }
+            return index;
+        }
+
+        private String buildInsertSql(String tableName, List<String> columns) {
+            return String.format("INSERT INTO %s (%s) VALUES (%s)", tableName, TextUtils.join(",", columns),
+                    TextUtils.join(",", Collections.nCopies(columns.size(), "?")));
+        }
+
+        private String buildUpdateSql(String tableName, List<String> columns, String idColumn) {
+            return String.format("UPDATE %s SET %s = ? WHERE %s = ?", tableName, TextUtils.join(" = ?, ", columns), idColumn);
+        }
+    }
+
     /**
      * Look for a soup element where fieldPath's value is fieldValue
      * Return its soupEntryId
@@ -1280,24 +1925,18 @@ public class SmartStore  {
     public long lookupSoupEntryId(String soupName, String fieldPath, String fieldValue) {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+	        getSoupAlterBarrier().await(soupName);
 	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 	        String columnName = DBHelper.getInstance(db).getColumnNameForPath(db, soupName, fieldPath);
 
-	        Cursor cursor = null;
-	        try {
-	            cursor = db.query(soupTableName, new String[] {ID_COL}, columnName + " = ?", new String[] { fieldValue }, null, null, null);
-	            if (cursor.getCount() > 1) {
-	                throw new SmartStoreException(String.format("There are more than one soup elements where %s is %s", fieldPath, fieldValue));
-	            }
-	            if (cursor.moveToFirst()) {
-	                return cursor.getLong(0);
-	            } else {
-	                return -1; // not found
-	            }
-	        } finally {
-	            safeClose(cursor);
+	        // Single value query (-1 if not found, -2 if more than one match) so that its compiled statement can be cached
+	        String sql = String.format(LOOKUP_ID_SQL, ID_COL, soupTableName, columnName);
+	        long soupEntryId = DBHelper.getInstance(db).queryForLong(db, sql, fieldValue);
+	        if (soupEntryId == -2) {
+	            throw new SmartStoreException(String.format("There are more than one soup elements where %s is %s", fieldPath, fieldValue));
 	        }
+	        return soupEntryId;
     	}
     }
 
@@ -1322,6 +1961,7 @@ public class SmartStore  {
     public void delete(String soupName, Long[] soupEntryIds, boolean handleTx) {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
+	        getSoupAlterBarrier().await(soupName);
 	        String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 	        if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 	        if (handleTx) {
@@ -1370,6 +2010,7 @@ public class SmartStore  {
 	public void deleteByQuery(String soupName, QuerySpec querySpec, boolean handleTx) {
 		final SQLiteDatabase db = getDatabase();
 		synchronized(db) {
+			getSoupAlterBarrier().await(soupName);
 			String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 			if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 			if (handleTx) {
@@ -1416,6 +2057,17 @@ public class SmartStore  {
 		}
 	}
 
+    /**
+     * @return ids as strings (to be used as bind arguments)
+     */
+    private String[] toStrings(Long[] ids) {
+        String[] args = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            args[i] = ids[i].toString();
+        }
+        return args;
+    }
+
     /**
      * @return predicate to match soup entries by id
      */
@@ -1489,48 +2141,24 @@ public class SmartStore  {
 	 *
      */
     public static Object project(JSONObject soup, String path) {
-        if (soup == null) {
-            return null;
-        }
-        if (path == null || path.equals("")) {
-            return soup;
-        }
-        String[] pathElements = path.split("[.]");
-		return project(soup, pathElements, 0);
+        return new JSONPath(path).project(soup);
     }
 
-	private static Object project(Object jsonObj, String[] pathElements, int index) {
-		Object result = null;
-		if (index == pathElements.length) {
-			return jsonObj;
-		}
-
-		if (null != jsonObj) {
-			String pathElement = pathElements[index];
-
-			if (jsonObj instanceof JSONObject) {
-				JSONObject jsonDict = (JSONObject) jsonObj;
-				Object dictVal = JSONObjectHelper.opt(jsonDict, pathElement);
-				result = project(dictVal, pathElements, index+1);
-			}
-			else if (jsonObj instanceof JSONArray) {
-				JSONArray jsonArr = (JSONArray) jsonObj;
-				result = new JSONArray();
-				for (int i=0; i<jsonArr.length(); i++) {
-					Object arrayElt = JSONObjectHelper.opt(jsonArr, i);
-					Object resultPart = project(arrayElt, pathElements, index);
-					if (resultPart != null) {
-						((JSONArray) result).put(resultPart);
-					}
-				}
-				if (((JSONArray) result).length() == 0) {
-					result = null;
-				}
-			}
-		}
-
-		return result;
-	}
+    /**
+     * Callback for queryAsStream
+     */
+    public interface RowVisitor {
+
+        /**
+         * Called for every result row
+         *
+         * @param row result row as json string (soup element for exact/like/range/match queries
+         *            or array of selected values for smart queries and queries with select paths)
+         * @return true to keep reading rows, false to stop
+         * @throws JSONException
+         */
+        boolean visit(String row) throws JSONException;
+    }
 
     /**
      * Enum for column type
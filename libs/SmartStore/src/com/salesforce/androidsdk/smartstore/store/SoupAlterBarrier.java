@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps soups that are being altered from being read or written by other threads
+ *
+ * An alter copies (and re-indexes) a soup in batches and unlocks the database between batches,
+ * so other threads must not touch that soup until the alter is done.
+ *
+ * Waits happen on the monitor of the database, so a thread waiting does not keep the database locked.
+ * Reads running on a connection of a ReadConnectionPool (without holding the monitor of the database)
+ * are counted so that an alter only starts once they are done.
+ */
+class SoupAlterBarrier {
+
+	// Database whose monitor is used for waiting
+	private final SQLiteDatabase db;
+
+	// Soups being altered to thread altering them
+	private final Map<String, Thread> alteringThreads = new HashMap<String, Thread>();
+
+	// Soups to number of reads running on read-only connections
+	private final Map<String, Integer> readCounts = new HashMap<String, Integer>();
+
+	// Number of reads running on read-only connections that can touch any soup (smart sql)
+	private int anySoupReadCount;
+
+	SoupAlterBarrier(SQLiteDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 * Called before altering a soup
+	 * Waits for alters of that soup by other threads and for reads of that soup on read-only connections
+	 *
+	 * @param soupName
+	 */
+	void beginAlter(String soupName) {
+		synchronized (db) {
+			while (isAlteredByOtherThread(soupName)) {
+				waitForAlter(soupName);
+			}
+			alteringThreads.put(soupName, Thread.currentThread());
+
+			// Reads on read-only connections don't need the database, so they can be waited for in a transaction
+			while (getReadCount(soupName) > 0 || anySoupReadCount > 0) {
+				waitOnDatabase();
+			}
+		}
+	}
+
+	/**
+	 * Called once a soup is altered (or the alter failed)
+	 *
+	 * @param soupName
+	 */
+	void endAlter(String soupName) {
+		synchronized (db) {
+			if (alteringThreads.get(soupName) == Thread.currentThread()) {
+				alteringThreads.remove(soupName);
+				db.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the soup is not being altered by another thread
+	 * NB: caller should hold the monitor of the database until it is done with the soup
+	 *
+	 * @param soupName soup name or null for any soup
+	 */
+	void await(String soupName) {
+		synchronized (db) {
+			while (isAlteredByOtherThread(soupName)) {
+				waitForAlter(soupName);
+			}
+		}
+	}
+
+	/**
+	 * Called before reading a soup on a read-only connection
+	 * Waits until the soup is not being altered by another thread
+	 *
+	 * @param soupName soup name or null for any soup
+	 */
+	void beginRead(String soupName) {
+		synchronized (db) {
+			await(soupName);
+			if (soupName == null) {
+				anySoupReadCount++;
+			} else {
+				readCounts.put(soupName, getReadCount(soupName) + 1);
+			}
+		}
+	}
+
+	/**
+	 * Called after reading a soup on a read-only connection
+	 *
+	 * @param soupName soup name or null for any soup
+	 */
+	void endRead(String soupName) {
+		synchronized (db) {
+			if (soupName == null) {
+				anySoupReadCount--;
+			} else {
+				int count = getReadCount(soupName) - 1;
+				if (count > 0) {
+					readCounts.put(soupName, count);
+				} else {
+					readCounts.remove(soupName);
+				}
+			}
+			db.notifyAll();
+		}
+	}
+
+	private boolean isAlteredByOtherThread(String soupName) {
+		final Thread currentThread = Thread.currentThread();
+		if (soupName == null) {
+			for (Thread thread : alteringThreads.values()) {
+				if (thread != currentThread) {
+					return true;
+				}
+			}
+			return false;
+		}
+		final Thread thread = alteringThreads.get(soupName);
+		return thread != null && thread != currentThread;
+	}
+
+	private int getReadCount(String soupName) {
+		final Integer count = readCounts.get(soupName);
+		return count == null ? 0 : count;
+	}
+
+	private void waitForAlter(String soupName) {
+		// The alter needs the database, a thread holding a transaction can't wait for it
+		if (db.inTransaction()) {
+			throw new SmartStoreException("Soup: " + (soupName == null ? "" : soupName + " ") + "is being altered by another thread");
+		}
+		waitOnDatabase();
+	}
+
+	private void waitOnDatabase() {
+		try {
+			db.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SmartStoreException("Interrupted while waiting for soup alter");
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import com.salesforce.androidsdk.analytics.security.Encryptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of soup elements kept in external storage
+ *
+ * Current (binary) format:
+ * - header: magic byte (0), version (1), flags (FLAG_COMPRESSED when the json was deflated)
+ * - initialization vector followed by the AES encrypted json (see Encryptor.encryptRawBytes)
+ *
+ * Legacy format (still readable): Base64 encoded initialization vector and encrypted json (see Encryptor.encryptBytes)
+ * A legacy blob never starts with the magic byte since it is made of Base64 (or plain json if there is no key) characters
+ */
+public final class SoupBlobFormat {
+
+	public static final byte MAGIC = 0;
+	public static final byte VERSION = 1;
+	public static final byte FLAG_COMPRESSED = 1;
+	public static final int HEADER_SIZE = 3;
+
+	// Json smaller than that (in bytes) is not worth compressing
+	public static final int COMPRESSION_THRESHOLD = 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 4096;
+
+	private SoupBlobFormat() {
+	}
+
+	/**
+	 * @param soupElt Soup element as json string.
+	 * @param encryptionKey Key with which to encrypt the data.
+	 * @return Blob in binary format or null if encryption failed.
+	 */
+	public static byte[] encode(String soupElt, String encryptionKey) {
+		byte[] data = soupElt.getBytes(UTF8);
+		byte flags = 0;
+		if (data.length >= COMPRESSION_THRESHOLD) {
+			byte[] compressed = deflate(data);
+			if (compressed.length < data.length) {
+				data = compressed;
+				flags |= FLAG_COMPRESSED;
+			}
+		}
+		byte[] encrypted = Encryptor.encryptRawBytes(data, encryptionKey);
+		if (encrypted == null) {
+			return null;
+		}
+		byte[] blob = new byte[HEADER_SIZE + encrypted.length];
+		blob[0] = MAGIC;
+		blob[1] = VERSION;
+		blob[2] = flags;
+		System.arraycopy(encrypted, 0, blob, HEADER_SIZE, encrypted.length);
+		return blob;
+	}
+
+	/**
+	 * Decodes blob (binary or legacy format) read from the given stream and appends the soup element to the given builder
+	 * Binary blobs are decrypted (and inflated) as they are read
+	 * With the wrong key or a corrupted blob, decryption does not always fail: the decoded data is only kept if it looks like a json object
+	 *
+	 * @param in Stream of blob.
+	 * @param encryptionKey Key with which to decrypt the data.
+	 * @param out Builder to append soup element to (left unchanged if an exception is thrown).
+	 * @throws IOException If blob can't be read or decrypted.
+	 */
+	public static void decode(InputStream in, String encryptionKey, StringBuilder out) throws IOException {
+		int initialLength = out.length();
+		boolean decoded = false;
+		try {
+			decodeUnchecked(in, encryptionKey, out);
+			if (!isJsonObject(out, initialLength)) {
+				throw new IOException("Decoded soup blob is not a json object");
+			}
+			decoded = true;
+		} finally {
+			if (!decoded) {
+				out.setLength(initialLength);
+			}
+		}
+	}
+
+	private static void decodeUnchecked(InputStream in, String encryptionKey, StringBuilder out) throws IOException {
+		PushbackInputStream pushbackIn = new PushbackInputStream(in, 1);
+		int first = pushbackIn.read();
+		if (first == -1) {
+			throw new IOException("Empty soup blob");
+		}
+		if (first != MAGIC) {
+			pushbackIn.unread(first);
+			decodeLegacy(pushbackIn, encryptionKey, out);
+			return;
+		}
+		int version = pushbackIn.read();
+		int flags = pushbackIn.read();
+		if (version != VERSION || flags == -1) {
+			throw new IOException("Unsupported soup blob version " + version);
+		}
+		InputStream plainIn = Encryptor.getDecryptingInputStream(pushbackIn, encryptionKey);
+		if ((flags & FLAG_COMPRESSED) != 0) {
+			plainIn = new InflaterInputStream(plainIn);
+		}
+		Reader reader = new InputStreamReader(plainIn, UTF8);
+		char[] buffer = new char[BUFFER_SIZE];
+		int count;
+		while ((count = reader.read(buffer)) != -1) {
+			out.append(buffer, 0, count);
+		}
+	}
+
+	/**
+	 * Re-encrypts blob (binary or legacy format) with the new key, in the binary format
+	 * A blob that can't be decrypted with the old key but can be with the new key was re-encrypted by an earlier (interrupted) run and is left alone
+	 *
+	 * @param blob Blob.
+	 * @param oldKey Old key with which to decrypt the blob.
+	 * @param newKey New key with which to encrypt the blob.
+	 * @return Blob encrypted with the new key or null if the blob was already encrypted with the new key.
+	 * @throws IOException If blob can't be decrypted with either key or can't be encrypted.
+	 */
+	public static byte[] reEncrypt(byte[] blob, String oldKey, String newKey) throws IOException {
+		StringBuilder soupElt = new StringBuilder();
+		if (!tryDecode(blob, oldKey, soupElt)) {
+			if (tryDecode(blob, newKey, new StringBuilder())) {
+				return null;
+			}
+			throw new IOException("Could not decrypt soup blob");
+		}
+		byte[] newBlob = encode(soupElt.toString(), newKey);
+		if (newBlob == null) {
+			throw new IOException("Could not encrypt soup blob");
+		}
+		return newBlob;
+	}
+
+	private static boolean tryDecode(byte[] blob, String encryptionKey, StringBuilder out) {
+		try {
+			decode(new ByteArrayInputStream(blob), encryptionKey, out);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Soup elements are json objects: with the wrong key, decoding either fails or produces something else
+	 */
+	private static boolean isJsonObject(StringBuilder out, int start) {
+		int first = start;
+		while (first < out.length() && Character.isWhitespace(out.charAt(first))) {
+			first++;
+		}
+		int last = out.length() - 1;
+		while (last > first && Character.isWhitespace(out.charAt(last))) {
+			last--;
+		}
+		return last > first && out.charAt(first) == '{' && out.charAt(last) == '}';
+	}
+
+	private static void decodeLegacy(InputStream in, String encryptionKey, StringBuilder out) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, count);
+		}
+		String soupElt = Encryptor.decrypt(bytes.toByteArray(), encryptionKey);
+		if (soupElt == null) {
+			throw new IOException("Could not decrypt soup blob");
+		}
+		out.append(soupElt);
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartstore.store;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled statements keyed by sql
+ * Statements are closed when evicted or removed
+ *
+ * NB: not thread safe, callers should hold the lock on the database the statements were compiled against
+ */
+class StatementCache {
+
+	private final int maxSize;
+	private final LinkedHashMap<String, SQLiteStatement> statements;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxSize maximum number of statements to keep compiled
+	 */
+	StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+				if (size() > StatementCache.this.maxSize) {
+					eldest.getValue().close();
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Return compiled statement for sql (compiling it if it is not cached) with no bindings
+	 * @param db
+	 * @param sql
+	 * @return
+	 */
+	SQLiteStatement get(SQLiteDatabase db, String sql) {
+		SQLiteStatement prog = statements.get(sql);
+		if (prog == null) {
+			misses++;
+			prog = db.compileStatement(sql);
+			statements.put(sql, prog);
+		} else {
+			hits++;
+			prog.clearBindings();
+		}
+		return prog;
+	}
+
+	/**
+	 * Close and remove statements referencing the given table
+	 * @param tableName
+	 */
+	void removeForTable(String tableName) {
+		List<String> sqlToRemove = new ArrayList<String>();
+		for (String sql : statements.keySet()) {
+			if (referencesTable(sql, tableName)) {
+				sqlToRemove.add(sql);
+			}
+		}
+		for (String sql : sqlToRemove) {
+			statements.remove(sql).close();
+		}
+	}
+
+	/**
+	 * Close and remove all statements
+	 */
+	void clear() {
+		Iterator<SQLiteStatement> iterator = statements.values().iterator();
+		while (iterator.hasNext()) {
+			iterator.next().close();
+			iterator.remove();
+		}
+	}
+
+	int size() {
+		return statements.size();
+	}
+
+	long getHitCount() {
+		return hits;
+	}
+
+	long getMissCount() {
+		return misses;
+	}
+
+	long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return true if sql contains tableName as a whole identifier (e.g. TABLE_1 but not TABLE_10)
+	 *         also matches derived tables (e.g. TABLE_1_fts)
+	 */
+	static boolean referencesTable(String sql, String tableName) {
+		int from = 0;
+		int index;
+		while ((index = sql.indexOf(tableName, from)) >= 0) {
+			int end = index + tableName.length();
+			boolean startsIdentifier = index == 0 || !isIdentifierChar(sql.charAt(index - 1));
+			boolean endsIdentifier = end == sql.length() || !Character.isDigit(sql.charAt(end));
+			if (startsIdentifier && endsIdentifier) {
+				return true;
+			}
+			from = end;
+		}
+		return false;
+	}
+
+	private static boolean isIdentifierChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
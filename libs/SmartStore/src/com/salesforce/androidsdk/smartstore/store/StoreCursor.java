@@ -96,6 +96,18 @@ public class StoreCursor {
 		resultBuilder.append("}");
 		return new FakeJSONObject(resultBuilder.toString());
 	}
+
+	/**
+	 * Passes all the entries from the current page to the last page to the visitor using a single query
+	 * (instead of one query per page) then moves the cursor to the last page
+	 * @param smartStore
+	 * @param visitor
+	 * @throws JSONException
+	 */
+	public void streamRemainingEntries(SmartStore smartStore, SmartStore.RowVisitor visitor) throws JSONException {
+		smartStore.queryAsStream(querySpec, currentPageIndex, visitor);
+		moveToPageIndex(totalPages - 1);
+	}
 }
 
 /**
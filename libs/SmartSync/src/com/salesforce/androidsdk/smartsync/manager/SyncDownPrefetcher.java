@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.manager;
+
+import com.salesforce.androidsdk.smartsync.target.SyncDownTarget;
+
+import org.json.JSONArray;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the next pages of a sync down in the background while the current page is saved to the local store
+ * - at most maxPages pages are kept waiting (the fetching thread blocks until the sync down catches up)
+ * - pages are handed back in the order they were fetched
+ * - an exception thrown while fetching is rethrown to the sync down when it asks for the corresponding page
+ *   (errors are rethrown wrapped in a SmartSyncException)
+ */
+class SyncDownPrefetcher {
+
+    // Marks the end of the pages (continueFetch returned null)
+    private static final JSONArray END = new JSONArray();
+
+    private final BlockingQueue<Object> pages;
+    private final Future<?> future;
+    private volatile boolean stopped;
+
+    /**
+     * Starts fetching pages following the one returned by startFetch
+     * @param syncManager
+     * @param target target of the sync down (startFetch must have been called already)
+     * @param maxPages max number of pages fetched ahead
+     * @param threadPool
+     */
+    SyncDownPrefetcher(final SyncManager syncManager, final SyncDownTarget target, int maxPages, ExecutorService threadPool) {
+        pages = new ArrayBlockingQueue<>(Math.max(1, maxPages));
+        future = threadPool.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSONArray records;
+                    do {
+                        records = target.continueFetch(syncManager);
+                        pages.put(records == null ? END : records);
+                    } while (records != null && !stopped);
+                } catch (InterruptedException e) {
+                    // Stopped while waiting for the sync down to catch up
+                } catch (Throwable t) {
+                    if (!stopped) {
+                        try {
+                            pages.put(t);
+                        } catch (InterruptedException ie) {
+                            // Stopped
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for next page
+     * @return next page of records or null if there are no more records to fetch
+     * @throws Exception thrown by the target while fetching that page
+     */
+    JSONArray next() throws Exception {
+        Object page = pages.take();
+        if (page instanceof Exception) {
+            throw (Exception) page;
+        }
+        if (page instanceof Throwable) {
+            throw new SyncManager.SmartSyncException((Throwable) page);
+        }
+        return page == END ? null : (JSONArray) page;
+    }
+
+    /**
+     * Stops fetching (pages not yet consumed are dropped)
+     */
+    void stop() {
+        stopped = true;
+        future.cancel(true);
+        pages.clear();
+    }
+}
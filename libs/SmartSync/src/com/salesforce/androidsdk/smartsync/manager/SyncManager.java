@@ -39,6 +39,7 @@ import com.salesforce.androidsdk.smartstore.store.SmartStore.SmartStoreException
 import com.salesforce.androidsdk.smartsync.app.Features;
 import com.salesforce.androidsdk.smartsync.app.SmartSyncSDKManager;
 import com.salesforce.androidsdk.smartsync.target.AdvancedSyncUpTarget;
+import com.salesforce.androidsdk.smartsync.target.BatchSyncUpTarget;
 import com.salesforce.androidsdk.smartsync.target.SyncDownTarget;
 import com.salesforce.androidsdk.smartsync.target.SyncUpTarget;
 import com.salesforce.androidsdk.smartsync.util.SmartSyncLogger;
@@ -53,8 +54,11 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -69,6 +73,12 @@ public class SyncManager {
     private static final int UNCHANGED = -1;
     private static final String TAG = "SyncManager";
 
+    // Max number of syncs running at the same time (syncs on the same soup always run one at a time)
+    public static final int DEFAULT_MAX_CONCURRENT_SYNCS = 4;
+
+    // Max number of pages fetched ahead during a sync down (0 to fetch pages only after the previous one has been saved)
+    public static final int DEFAULT_SYNC_DOWN_PREFETCH_PAGES = 2;
+
     // For user agent
     private static final String SMART_SYNC = "SmartSync";
 
@@ -76,9 +86,12 @@ public class SyncManager {
     private static Map<String, SyncManager> INSTANCES = new HashMap<String, SyncManager>();
 
     // Members
-    private Set<Long> runningSyncIds = new HashSet<Long>();
+    private Set<Long> runningSyncIds = Collections.synchronizedSet(new HashSet<Long>());
     public final String apiVersion;
-    private final ExecutorService threadPool = Executors.newFixedThreadPool(1);
+    private final SyncScheduler scheduler = new SyncScheduler(DEFAULT_MAX_CONCURRENT_SYNCS);
+    private final ExecutorService prefetchThreadPool = Executors.newCachedThreadPool();
+    private volatile int syncDownPrefetchPages = DEFAULT_SYNC_DOWN_PREFETCH_PAGES;
+    private volatile boolean syncDownStreaming;
 	private SmartStore smartStore;
 	private RestClient restClient;
 
@@ -167,7 +180,8 @@ public class SyncManager {
      */
     public static synchronized void reset() {
         for (SyncManager syncManager : INSTANCES.values()) {
-            syncManager.threadPool.shutdownNow();
+            syncManager.scheduler.shutdownNow();
+            syncManager.prefetchThreadPool.shutdownNow();
         }
         INSTANCES.clear();
     }
@@ -184,7 +198,8 @@ public class SyncManager {
                     if (key.startsWith(account.getUserId())) {
                         keysToRemove.add(key);
                         SyncManager syncManager = INSTANCES.get(key);
-                        syncManager.threadPool.shutdownNow();
+                        syncManager.scheduler.shutdownNow();
+                        syncManager.prefetchThreadPool.shutdownNow();
                     }
                 }
                 // NB: keySet returns a Set view of the keys contained in this map.
@@ -193,6 +208,60 @@ public class SyncManager {
 	    }
     }
 
+    /**
+     * Set max number of syncs running at the same time
+     * NB: syncs on the same soup always run one at a time
+     *
+     * @param maxConcurrentSyncs
+     */
+    public void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+        scheduler.setMaxConcurrentTasks(maxConcurrentSyncs);
+    }
+
+    /**
+     * @return max number of syncs running at the same time
+     */
+    public int getMaxConcurrentSyncs() {
+        return scheduler.getMaxConcurrentTasks();
+    }
+
+    /**
+     * Set max number of pages fetched ahead during a sync down
+     * While a page is saved to the local store, the following pages are fetched from the server
+     * NB: only used with targets that support it (see SyncDownTarget.supportsPrefetch)
+     *
+     * @param syncDownPrefetchPages 0 to only fetch a page once the previous one has been saved
+     */
+    public void setSyncDownPrefetchPages(int syncDownPrefetchPages) {
+        this.syncDownPrefetchPages = Math.max(0, syncDownPrefetchPages);
+    }
+
+    /**
+     * @return max number of pages fetched ahead during a sync down
+     */
+    public int getSyncDownPrefetchPages() {
+        return syncDownPrefetchPages;
+    }
+
+    /**
+     * Turn streaming sync down on or off (off by default)
+     * When on, responses are parsed as they are read and records are saved in small chunks
+     * so that a whole page of records is never held in memory (pages are then not fetched ahead)
+     * NB: only used with targets that support it (see SyncDownTarget.supportsStreaming)
+     *
+     * @param syncDownStreaming
+     */
+    public void setSyncDownStreaming(boolean syncDownStreaming) {
+        this.syncDownStreaming = syncDownStreaming;
+    }
+
+    /**
+     * @return true if streaming sync down is on
+     */
+    public boolean isSyncDownStreaming() {
+        return syncDownStreaming;
+    }
+
     /**
      * Get details of a sync by id
      * @param syncId
@@ -309,6 +378,17 @@ public class SyncManager {
      * @throws JSONException
      */
     public SyncState reSync(long syncId, SyncUpdateCallback callback) throws JSONException {
+        return reSync(syncId, Priority.NORMAL, callback);
+    }
+
+    /**
+     * Re-run sync but only fetch new/modified records
+     * @param syncId
+     * @param priority
+     * @param callback
+     * @throws JSONException
+     */
+    public SyncState reSync(long syncId, Priority priority, SyncUpdateCallback callback) throws JSONException {
         if (runningSyncIds.contains(syncId)) {
             throw new SmartSyncException("Cannot run reSync:" + syncId + ": still running");
         }
@@ -318,7 +398,7 @@ public class SyncManager {
         }
         sync.setTotalSize(-1);
         SmartSyncLogger.d(TAG, "reSync called", sync);
-        runSync(sync, callback);
+        runSync(sync, priority, callback);
         return sync;
     }
 
@@ -342,11 +422,25 @@ public class SyncManager {
 	 * @param callback
 	 */
 	public void runSync(final SyncState sync, final SyncUpdateCallback callback) {
+		runSync(sync, Priority.NORMAL, callback);
+	}
+
+    /**
+     * Run a sync
+     * Syncs on different soups run concurrently (up to getMaxConcurrentSyncs() of them), syncs on the same soup run one at a time
+     * Among the syncs waiting to run, the ones with the highest priority are started first
+     *
+     * @param sync
+     * @param priority
+     * @param callback
+     */
+    public void runSync(final SyncState sync, Priority priority, final SyncUpdateCallback callback) {
 		updateSync(sync, SyncState.Status.RUNNING, 0, callback);
-		threadPool.execute(new Runnable() {
+		Runnable runnable = new Runnable() {
             @Override
             public void run() {
                 try {
+                    checkIfStopped(sync);
                     switch (sync.getType()) {
                         case syncDown:
                             syncDown(sync, callback);
@@ -356,6 +450,9 @@ public class SyncManager {
                             break;
                     }
                     updateSync(sync, SyncState.Status.DONE, 100, callback);
+                } catch (SyncStoppedException se) {
+                    SmartSyncLogger.d(TAG, "Sync stopped", sync);
+                    updateSync(sync, SyncState.Status.STOPPED, UNCHANGED, callback);
                 } catch (RestClient.RefreshTokenRevokedException re) {
                     SmartSyncLogger.e(TAG, "Exception thrown in runSync", re);
                     // Do not do anything - let the logout go through!
@@ -368,9 +465,52 @@ public class SyncManager {
                     updateSync(sync, SyncState.Status.FAILED, UNCHANGED, callback);
                 }
             }
-        });
+        };
+		Runnable onStopped = new Runnable() {
+            @Override
+            public void run() {
+                SmartSyncLogger.d(TAG, "Sync stopped before it started", sync);
+                updateSync(sync, SyncState.Status.STOPPED, UNCHANGED, callback);
+            }
+        };
+        try {
+            scheduler.submit(new SyncScheduler.Task(sync.getId(), sync.getTarget().getSoupNames(sync.getSoupName()), priority, runnable, onStopped));
+        } catch (SmartSyncException e) {
+            SmartSyncLogger.e(TAG, "Exception thrown in runSync", e);
+            sync.setError(e.getMessage());
+            updateSync(sync, SyncState.Status.FAILED, UNCHANGED, callback);
+        }
 	}
 
+    /**
+     * Stop a sync
+     * A sync waiting to run is removed from the queue, a running sync stops once it is done with the records it is currently processing
+     * Either way, its status becomes STOPPED (and the callback it was started with is invoked)
+     *
+     * @param syncId
+     * @return true if the sync was waiting to run or running
+     */
+    public boolean stopSync(long syncId) {
+        SyncScheduler.Task task = scheduler.cancel(syncId);
+        if (task == null) {
+            return false;
+        }
+        if (!task.isStarted() && task.onCancelled != null) {
+            task.onCancelled.run();
+        }
+        return true;
+    }
+
+    /**
+     * Throw SyncStoppedException if stopSync was called for the given sync
+     * @param sync
+     */
+    private void checkIfStopped(SyncState sync) {
+        if (scheduler.isCancelled(sync.getId())) {
+            throw new SyncStoppedException(sync.getId());
+        }
+    }
+
     /**
      * Create and run a sync up without a name
      * @param target
@@ -450,8 +590,8 @@ public class SyncManager {
         final String soupName = sync.getSoupName();
         final SyncDownTarget target = (SyncDownTarget) sync.getTarget();
 
-        // Ask target to clean up ghosts
-        threadPool.execute(new Runnable() {
+        // Ask target to clean up ghosts (not cancellable, runs after any sync already queued on the same soup)
+        scheduler.submit(new SyncScheduler.Task(-1, target.getSoupNames(soupName), Priority.NORMAL, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -484,7 +624,7 @@ public class SyncManager {
                 }
 
             }
-        });
+        }, null));
 
     }
 
@@ -509,6 +649,7 @@ public class SyncManager {
                     break;
                 case DONE:
                 case FAILED:
+                case STOPPED:
                     int totalSize = sync.getTotalSize();
                     final JSONObject attributes = new JSONObject();
                     try {
@@ -544,8 +685,16 @@ public class SyncManager {
 		int totalSize = dirtyRecordIds.size();
         sync.setTotalSize(totalSize);
         updateSync(sync, SyncState.Status.RUNNING, 0, callback);
+
+        // Batch sync up target take it from here
+        if (target instanceof BatchSyncUpTarget) {
+            syncUpInBatches(sync, (BatchSyncUpTarget) target, dirtyRecordIds, callback);
+            return;
+        }
+
         int i = 0;
         for (final String id : dirtyRecordIds) {
+            checkIfStopped(sync);
             JSONObject record = target.getFromLocalStore(this, soupName, id);
             syncUpOneRecord(target, soupName, record, options);
 
@@ -560,6 +709,31 @@ public class SyncManager {
         }
 	}
 
+    private void syncUpInBatches(SyncState sync, BatchSyncUpTarget target, Set<String> dirtyRecordIds, SyncUpdateCallback callback) throws Exception {
+        final String soupName = sync.getSoupName();
+        final SyncOptions options = sync.getOptions();
+        final int totalSize = dirtyRecordIds.size();
+        final int maxBatchSize = target.getMaxBatchSize();
+        final List<String> batchIds = new ArrayList<>();
+        int i = 0;
+        for (final String id : dirtyRecordIds) {
+            batchIds.add(id);
+            i++;
+            if (batchIds.size() == maxBatchSize || i == totalSize) {
+                checkIfStopped(sync);
+                List<JSONObject> records = target.getFromLocalStore(this, soupName, batchIds);
+                target.syncUpRecords(this, soupName, records, options.getFieldlist(), options.getMergeMode());
+                batchIds.clear();
+
+                // Updating status
+                int progress = i * 100 / totalSize;
+                if (progress < 100) {
+                    updateSync(sync, SyncState.Status.RUNNING, progress, callback);
+                }
+            }
+        }
+    }
+
     private void syncUpOneRecord(SyncUpTarget target, String soupName,
                                  JSONObject record, SyncOptions options) throws JSONException, IOException {
         SmartSyncLogger.d(TAG, "syncUpOneRecord called", record);
@@ -662,6 +836,10 @@ public class SyncManager {
     private void syncDown(SyncState sync, SyncUpdateCallback callback) throws Exception {
         String soupName = sync.getSoupName();
         SyncDownTarget target = (SyncDownTarget) sync.getTarget();
+        if (syncDownStreaming && target.supportsStreaming()) {
+            syncDownStreamed(sync, target, callback);
+            return;
+        }
         MergeMode mergeMode = sync.getMergeMode();
         long maxTimeStamp = sync.getMaxTimeStamp();
         JSONArray records = target.startFetch(this, maxTimeStamp);
@@ -677,25 +855,124 @@ public class SyncManager {
             idsToSkip = target.getIdsToSkip(this, soupName);
         }
 
-        while (records != null) {
+        // Fetch next pages while saving the current one (when the target allows it)
+        int prefetchPages = syncDownPrefetchPages;
+        SyncDownPrefetcher prefetcher = null;
+        if (records != null && prefetchPages > 0 && target.supportsPrefetch()) {
+            prefetcher = new SyncDownPrefetcher(this, target, prefetchPages, prefetchThreadPool);
+        }
+        try {
+            while (records != null) {
+                // Figure out records to save
+                JSONArray recordsToSave = idsToSkip == null ? records : removeWithIds(records, idsToSkip, idField);
+
+                // Save to smartstore.
+                target.saveRecordsToLocalStore(this, soupName, recordsToSave, sync.getId());
+                countSaved += records.length();
+                maxTimeStamp = Math.max(maxTimeStamp, target.getLatestModificationTimeStamp(records));
+
+                // Update sync status.
+                if (countSaved < totalSize) {
+                    updateSync(sync, SyncState.Status.RUNNING, countSaved*100 / totalSize, callback);
+                }
+
+                // Fetch next records, if any.
+                checkIfStopped(sync);
+                records = prefetcher != null ? prefetcher.next() : target.continueFetch(this);
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.stop();
+            }
+        }
+
+        // Only recorded once all pages have been saved, an interrupted sync down will start over from the previous value
+        sync.setMaxTimeStamp(maxTimeStamp);
+	}
+
+    private void syncDownStreamed(SyncState sync, SyncDownTarget target, SyncUpdateCallback callback) throws Exception {
+        // Get ids of records to leave alone
+        Set<String> idsToSkip = null;
+        if (sync.getMergeMode() == MergeMode.LEAVE_IF_CHANGED) {
+            idsToSkip = target.getIdsToSkip(this, sync.getSoupName());
+        }
+
+        // Records are saved as they are parsed
+        StreamedRecordsSaver saver = new StreamedRecordsSaver(sync, target, idsToSkip, callback);
+        boolean fetched = target.startFetch(this, sync.getMaxTimeStamp(), saver);
+        saver.started();
+        while (fetched) {
+            // Fetch next records, if any.
+            checkIfStopped(sync);
+            fetched = target.continueFetch(this, saver);
+            saver.updateTotalSize();
+        }
+
+        // Only recorded once all pages have been saved, an interrupted sync down will start over from the previous value
+        sync.setMaxTimeStamp(saver.maxTimeStamp);
+    }
+
+    /**
+     * Saves records handed over by a streaming sync down target, keeping track of progress and max time stamp
+     */
+    private class StreamedRecordsSaver implements SyncDownTarget.RecordsHandler {
+        private final SyncState sync;
+        private final SyncDownTarget target;
+        private final Set<String> idsToSkip;
+        private final SyncUpdateCallback callback;
+        private long maxTimeStamp;
+        private int countSaved;
+        private boolean started;
+
+        StreamedRecordsSaver(SyncState sync, SyncDownTarget target, Set<String> idsToSkip, SyncUpdateCallback callback) {
+            this.sync = sync;
+            this.target = target;
+            this.idsToSkip = idsToSkip;
+            this.callback = callback;
+            this.maxTimeStamp = sync.getMaxTimeStamp();
+        }
+
+        @Override
+        public void onRecords(JSONArray records) throws JSONException {
+            // Total size might only be known once the target has read the whole first response
+            started();
+
             // Figure out records to save
-            JSONArray recordsToSave = idsToSkip == null ? records : removeWithIds(records, idsToSkip, idField);
+            JSONArray recordsToSave = idsToSkip == null ? records : removeWithIds(records, idsToSkip, target.getIdFieldName());
 
             // Save to smartstore.
-            target.saveRecordsToLocalStore(this, soupName, recordsToSave, sync.getId());
+            target.saveRecordsToLocalStore(SyncManager.this, sync.getSoupName(), recordsToSave, sync.getId());
             countSaved += records.length();
             maxTimeStamp = Math.max(maxTimeStamp, target.getLatestModificationTimeStamp(records));
 
-            // Update sync status.
-            if (countSaved < totalSize) {
+            // Update sync status (only once total size is known)
+            int totalSize = sync.getTotalSize();
+            if (totalSize > 0 && countSaved < totalSize) {
                 updateSync(sync, SyncState.Status.RUNNING, countSaved*100 / totalSize, callback);
             }
+            checkIfStopped(sync);
+        }
 
-            // Fetch next records, if any.
-            records = target.continueFetch(this);
+        void started() {
+            if (!started) {
+                started = true;
+                sync.setTotalSize(Math.max(target.getTotalSize(), 0));
+                updateSync(sync, SyncState.Status.RUNNING, 0, callback);
+            } else {
+                updateTotalSize();
+            }
         }
-        sync.setMaxTimeStamp(maxTimeStamp);
-	}
+
+        /**
+         * Picks up the total size from the target (once it has read it)
+         */
+        void updateTotalSize() {
+            int totalSize = target.getTotalSize();
+            if (totalSize >= 0) {
+                sync.setTotalSize(totalSize);
+            }
+        }
+    }
 
     private JSONArray removeWithIds(JSONArray records, Set<String> idsToSkip, String idField) throws JSONException {
         JSONArray arr = new JSONArray();
@@ -740,6 +1017,15 @@ public class SyncManager {
     	delete
     }
 
+    /**
+     * Enum for sync priority
+     */
+    public enum Priority {
+        LOW,
+        NORMAL,
+        HIGH
+    }
+
     /**
      * Exception thrown by smart sync manager
      *
@@ -757,6 +1043,18 @@ public class SyncManager {
 		private static final long serialVersionUID = 1L;
     }
 
+    /**
+     * Exception thrown when a running sync is stopped
+     */
+    private static class SyncStoppedException extends SmartSyncException {
+
+        SyncStoppedException(long syncId) {
+            super("Sync " + syncId + " stopped");
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
     /**
      * Sets the rest client to be used.
      *
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.manager;
+
+import com.salesforce.androidsdk.smartsync.util.SmartSyncLogger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the tasks of a sync manager (syncs and clean resync ghosts)
+ * - tasks on different soups run concurrently (up to a configurable number of them)
+ * - tasks on the same soup run one at a time (a task can work on several soups, it then waits for all of them)
+ * - among tasks that can be started, the ones with higher priority go first
+ * - queued tasks can be cancelled, running tasks are flagged and are expected to check isCancelled
+ */
+class SyncScheduler {
+
+    private static final String TAG = "SyncScheduler";
+
+    /**
+     * Task run by the scheduler
+     */
+    static class Task {
+        final long syncId;
+        final Set<String> soupNames;
+        final SyncManager.Priority priority;
+        final Runnable runnable;
+        final Runnable onCancelled;
+        private long sequence;
+        private volatile boolean started;
+        private volatile boolean cancelled;
+
+        /**
+         * @param syncId id of sync or -1 if task is not cancellable
+         * @param soupName soup the task works on
+         * @param priority
+         * @param runnable
+         * @param onCancelled to run if the task is cancelled before it starts (can be null)
+         */
+        Task(long syncId, String soupName, SyncManager.Priority priority, Runnable runnable, Runnable onCancelled) {
+            this(syncId, Collections.singleton(soupName), priority, runnable, onCancelled);
+        }
+
+        /**
+         * @param syncId id of sync or -1 if task is not cancellable
+         * @param soupNames soups the task works on
+         * @param priority
+         * @param runnable
+         * @param onCancelled to run if the task is cancelled before it starts (can be null)
+         */
+        Task(long syncId, Collection<String> soupNames, SyncManager.Priority priority, Runnable runnable, Runnable onCancelled) {
+            this.syncId = syncId;
+            this.soupNames = Collections.unmodifiableSet(new HashSet<>(soupNames));
+            this.priority = priority;
+            this.runnable = runnable;
+            this.onCancelled = onCancelled;
+        }
+
+        boolean isStarted() {
+            return started;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    // Higher priority first, then first submitted first
+    private static final Comparator<Task> TASK_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task t1, Task t2) {
+            int result = t2.priority.compareTo(t1.priority);
+            return result != 0 ? result : Long.compare(t1.sequence, t2.sequence);
+        }
+    };
+
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final TreeSet<Task> queuedTasks = new TreeSet<>(TASK_ORDER);
+    private final Map<Long, Task> runningTasks = new HashMap<>();
+    private final Set<String> busySoups = new HashSet<>();
+    private int runningCount;
+    private int maxConcurrentTasks;
+    private long nextSequence;
+    private boolean shutdown;
+
+    /**
+     * @param maxConcurrentTasks max number of tasks running at the same time
+     */
+    SyncScheduler(int maxConcurrentTasks) {
+        this.maxConcurrentTasks = Math.max(1, maxConcurrentTasks);
+    }
+
+    /**
+     * Queues task and starts it if possible
+     * @param task
+     */
+    synchronized void submit(Task task) {
+        if (shutdown) {
+            throw new SyncManager.SmartSyncException("Sync manager has been reset");
+        }
+        task.sequence = nextSequence++;
+        queuedTasks.add(task);
+        dispatch();
+    }
+
+    /**
+     * Cancels task for the given sync
+     * A queued task is removed from the queue, a running task is only flagged as cancelled
+     * @param syncId
+     * @return task cancelled or null if there was no task queued or running for the given sync
+     */
+    synchronized Task cancel(long syncId) {
+        for (Iterator<Task> iterator = queuedTasks.iterator(); iterator.hasNext(); ) {
+            Task task = iterator.next();
+            if (task.syncId == syncId) {
+                iterator.remove();
+                task.cancelled = true;
+                return task;
+            }
+        }
+        Task task = runningTasks.get(syncId);
+        if (task != null) {
+            task.cancelled = true;
+        }
+        return task;
+    }
+
+    /**
+     * @param syncId
+     * @return true if the task running for the given sync has been cancelled
+     */
+    synchronized boolean isCancelled(long syncId) {
+        Task task = runningTasks.get(syncId);
+        return task != null && task.isCancelled();
+    }
+
+    /**
+     * @param maxConcurrentTasks max number of tasks running at the same time
+     */
+    synchronized void setMaxConcurrentTasks(int maxConcurrentTasks) {
+        this.maxConcurrentTasks = Math.max(1, maxConcurrentTasks);
+        dispatch();
+    }
+
+    /**
+     * @return max number of tasks running at the same time
+     */
+    synchronized int getMaxConcurrentTasks() {
+        return maxConcurrentTasks;
+    }
+
+    /**
+     * Drops queued tasks and interrupts running ones
+     */
+    synchronized void shutdownNow() {
+        shutdown = true;
+        queuedTasks.clear();
+        threadPool.shutdownNow();
+    }
+
+    /**
+     * Starts queued tasks until the concurrency cap is reached or all remaining tasks are on busy soups
+     * A task only starts once none of its soups are busy, and then reserves all of them at once
+     */
+    private void dispatch() {
+        for (Iterator<Task> iterator = queuedTasks.iterator(); iterator.hasNext() && runningCount < maxConcurrentTasks; ) {
+            final Task task = iterator.next();
+            if (!Collections.disjoint(busySoups, task.soupNames)) {
+                continue;
+            }
+            iterator.remove();
+            task.started = true;
+            busySoups.addAll(task.soupNames);
+            if (task.syncId >= 0) {
+                runningTasks.put(task.syncId, task);
+            }
+            runningCount++;
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.runnable.run();
+                    } catch (Exception e) {
+                        SmartSyncLogger.e(TAG, "Exception thrown by task", e);
+                    } finally {
+                        finished(task);
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void finished(Task task) {
+        busySoups.removeAll(task.soupNames);
+        if (task.syncId >= 0) {
+            runningTasks.remove(task.syncId);
+        }
+        runningCount--;
+        if (!shutdown) {
+            dispatch();
+        }
+    }
+}
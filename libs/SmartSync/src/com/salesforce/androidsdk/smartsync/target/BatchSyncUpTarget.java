@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.target;
+
+import com.salesforce.androidsdk.rest.RestRequest;
+import com.salesforce.androidsdk.rest.RestResponse;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+import com.salesforce.androidsdk.smartsync.manager.SyncManager;
+import com.salesforce.androidsdk.smartsync.util.Constants;
+import com.salesforce.androidsdk.smartsync.util.SmartSyncLogger;
+import com.salesforce.androidsdk.smartsync.util.SyncState.MergeMode;
+import com.salesforce.androidsdk.util.JSONObjectHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sync up target that sends records to the server in batches
+ *
+ * Instead of doing one request per record, sync manager hands records to syncUpRecords up to getMaxBatchSize() at a time
+ * - locally created/updated/deleted records of a batch are sent in a single batch request (one sub request per record)
+ * - with merge mode leave-if-changed, the last modified dates of the records of a batch are also fetched in a single batch request
+ * - the result of each sub request is handled the same way SyncManager handles the response of a single record sync up
+ *   (server id saved for created records, __last_error__ saved for failed records etc)
+ */
+public class BatchSyncUpTarget extends SyncUpTarget {
+
+    // Constants
+    public static final String TAG = "BatchSyncUpTarget";
+    public static final String MAX_BATCH_SIZE = "maxBatchSize";
+    public static final int MAX_SUB_REQUESTS_COUNT = 25; // max number of sub requests allowed in a batch request
+
+    // Batch response fields
+    private static final String RESULTS = "results";
+    private static final String STATUS_CODE = "statusCode";
+    private static final String RESULT = "result";
+
+    // Fields
+    protected int maxBatchSize;
+
+    /**
+     * Construct BatchSyncUpTarget
+     */
+    public BatchSyncUpTarget() {
+        this(null, null);
+    }
+
+    /**
+     * Construct BatchSyncUpTarget
+     */
+    public BatchSyncUpTarget(List<String> createFieldlist, List<String> updateFieldlist) {
+        this(createFieldlist, updateFieldlist, MAX_SUB_REQUESTS_COUNT);
+    }
+
+    /**
+     * Construct BatchSyncUpTarget
+     * @param createFieldlist
+     * @param updateFieldlist
+     * @param maxBatchSize max number of records sent in a single request (capped at MAX_SUB_REQUESTS_COUNT)
+     */
+    public BatchSyncUpTarget(List<String> createFieldlist, List<String> updateFieldlist, int maxBatchSize) {
+        super(createFieldlist, updateFieldlist);
+        this.maxBatchSize = capMaxBatchSize(maxBatchSize);
+    }
+
+    /**
+     * Construct BatchSyncUpTarget from json
+     * @param target
+     * @throws JSONException
+     */
+    public BatchSyncUpTarget(JSONObject target) throws JSONException {
+        super(target);
+        this.maxBatchSize = capMaxBatchSize(target.optInt(MAX_BATCH_SIZE, MAX_SUB_REQUESTS_COUNT));
+    }
+
+    /**
+     * @return json representation of target
+     * @throws JSONException
+     */
+    public JSONObject asJSON() throws JSONException {
+        JSONObject target = super.asJSON();
+        target.put(MAX_BATCH_SIZE, maxBatchSize);
+        return target;
+    }
+
+    /**
+     * @return max number of records sent in a single request
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sync up a batch of records
+     * @param syncManager
+     * @param soupName
+     * @param records (no more than getMaxBatchSize())
+     * @param fieldlist
+     * @param mergeMode
+     * @throws JSONException
+     * @throws IOException
+     */
+    public void syncUpRecords(SyncManager syncManager, String soupName, List<JSONObject> records, List<String> fieldlist, MergeMode mergeMode) throws JSONException, IOException {
+        if (records.size() > maxBatchSize) {
+            throw new SyncManager.SmartSyncException(TAG + ":syncUpRecords can't handle more than " + maxBatchSize + " records");
+        }
+
+        // Leaving alone records changed on the server
+        if (mergeMode == MergeMode.LEAVE_IF_CHANGED) {
+            records = getRecordsNewerThanServer(syncManager, records);
+        }
+
+        // Figuring out what to do for each record
+        final List<JSONObject> recordsToSend = new ArrayList<>();
+        final List<RestRequest> requests = new ArrayList<>();
+        for (JSONObject record : records) {
+            if (isLocallyDeleted(record)) {
+                if (isLocallyCreated(record)) {
+                    // Never made it to the server
+                    deleteFromLocalStore(syncManager, soupName, record);
+                } else {
+                    recordsToSend.add(record);
+                    requests.add(getRequestForDelete(syncManager, record));
+                }
+            } else if (isLocallyCreated(record)) {
+                recordsToSend.add(record);
+                requests.add(getRequestForCreate(syncManager, record, fieldlist));
+            } else if (isLocallyUpdated(record)) {
+                recordsToSend.add(record);
+                requests.add(getRequestForUpdate(syncManager, record, fieldlist));
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        // Sending them and handling the results
+        final List<JSONObject> recordsToRecreate = new ArrayList<>();
+        final JSONArray results = sendBatchRequest(syncManager, requests);
+        for (int i = 0; i < recordsToSend.size(); i++) {
+            final JSONObject record = recordsToSend.get(i);
+            final JSONObject result = results == null ? null : results.optJSONObject(i);
+            final int statusCode = result == null ? -1 : result.optInt(STATUS_CODE, -1);
+            final String error = getError(result, results);
+            if (isLocallyDeleted(record)) {
+                if (RestResponse.isSuccess(statusCode) || statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                    deleteFromLocalStore(syncManager, soupName, record);
+                } else {
+                    saveRecordToLocalStoreWithError(syncManager, soupName, record, error);
+                }
+            } else if (isLocallyCreated(record)) {
+                handleCreateResult(syncManager, soupName, record, statusCode, result, error);
+            } else {
+                if (RestResponse.isSuccess(statusCode)) {
+                    cleanAndSaveInLocalStore(syncManager, soupName, record);
+                }
+                // Handling remotely deleted records
+                else if (statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                    if (mergeMode == MergeMode.OVERWRITE) {
+                        recordsToRecreate.add(record);
+                    } else {
+                        // Leave local record alone
+                    }
+                } else {
+                    saveRecordToLocalStoreWithError(syncManager, soupName, record, error);
+                }
+            }
+        }
+
+        // Recreating records deleted on the server
+        if (!recordsToRecreate.isEmpty()) {
+            final List<RestRequest> createRequests = new ArrayList<>();
+            for (JSONObject record : recordsToRecreate) {
+                createRequests.add(getRequestForCreate(syncManager, record, fieldlist));
+            }
+            final JSONArray createResults = sendBatchRequest(syncManager, createRequests);
+            for (int i = 0; i < recordsToRecreate.size(); i++) {
+                final JSONObject result = createResults == null ? null : createResults.optJSONObject(i);
+                final int statusCode = result == null ? -1 : result.optInt(STATUS_CODE, -1);
+                handleCreateResult(syncManager, soupName, recordsToRecreate.get(i), statusCode, result, getError(result, createResults));
+            }
+        }
+    }
+
+    /**
+     * Return records more recent than the corresponding records on the server
+     * Last modified dates are fetched with a single batch request
+     * @param syncManager
+     * @param records
+     * @return
+     * @throws JSONException
+     * @throws IOException
+     */
+    protected List<JSONObject> getRecordsNewerThanServer(SyncManager syncManager, List<JSONObject> records) throws JSONException, IOException {
+        final List<JSONObject> newerRecords = new ArrayList<>();
+        final List<JSONObject> recordsToCheck = new ArrayList<>();
+        final List<RestRequest> requests = new ArrayList<>();
+        for (JSONObject record : records) {
+            if (isLocallyCreated(record)) {
+                newerRecords.add(record);
+            } else {
+                final String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+                final String objectId = record.getString(getIdFieldName());
+                recordsToCheck.add(record);
+                requests.add(RestRequest.getRequestForRetrieve(syncManager.apiVersion, objectType, objectId, Arrays.asList(getModificationDateFieldName())));
+            }
+        }
+        if (requests.isEmpty()) {
+            return newerRecords;
+        }
+        final JSONArray results = sendBatchRequest(syncManager, requests);
+        for (int i = 0; i < recordsToCheck.size(); i++) {
+            final JSONObject record = recordsToCheck.get(i);
+            final JSONObject result = results == null ? null : results.optJSONObject(i);
+            final int statusCode = result == null ? -1 : result.optInt(STATUS_CODE, -1);
+            final JSONObject remoteRecord = RestResponse.isSuccess(statusCode) ? result.optJSONObject(RESULT) : null;
+            final RecordModDate localModDate = new RecordModDate(
+                    JSONObjectHelper.optString(record, getModificationDateFieldName()),
+                    isLocallyDeleted(record)
+            );
+            final RecordModDate remoteModDate = new RecordModDate(
+                    remoteRecord == null ? null : JSONObjectHelper.optString(remoteRecord, getModificationDateFieldName()),
+                    statusCode == HttpURLConnection.HTTP_NOT_FOUND
+            );
+            if (isNewerThanServer(localModDate, remoteModDate)) {
+                newerRecords.add(record);
+            } else {
+                SmartSyncLogger.d(TAG, "syncUpRecords: Record not synched since client does not have the latest from server", record);
+            }
+        }
+        return newerRecords;
+    }
+
+    /**
+     * Send batch request
+     * @param syncManager
+     * @param requests
+     * @return results of sub requests (in the same order as the requests) or null if the batch request failed as a whole
+     * @throws JSONException
+     * @throws IOException
+     */
+    protected JSONArray sendBatchRequest(SyncManager syncManager, List<RestRequest> requests) throws JSONException, IOException {
+        final RestRequest request = RestRequest.getBatchRequest(syncManager.apiVersion, false, requests);
+        final RestResponse response = syncManager.sendSyncWithSmartSyncUserAgent(request);
+        if (!response.isSuccess()) {
+            lastError = response.asString();
+            return null;
+        }
+        lastError = null;
+        return response.asJSONObject().getJSONArray(RESULTS);
+    }
+
+    protected RestRequest getRequestForCreate(SyncManager syncManager, JSONObject record, List<String> fieldlist) {
+        fieldlist = this.createFieldlist != null ? this.createFieldlist : fieldlist;
+        final String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+        final Map<String, Object> fields = buildFieldsMap(record, fieldlist, getIdFieldName(), getModificationDateFieldName());
+        return RestRequest.getRequestForCreate(syncManager.apiVersion, objectType, fields);
+    }
+
+    protected RestRequest getRequestForUpdate(SyncManager syncManager, JSONObject record, List<String> fieldlist) throws JSONException {
+        fieldlist = this.updateFieldlist != null ? this.updateFieldlist : fieldlist;
+        final String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+        final String objectId = record.getString(getIdFieldName());
+        final Map<String, Object> fields = buildFieldsMap(record, fieldlist, getIdFieldName(), getModificationDateFieldName());
+        return RestRequest.getRequestForUpdate(syncManager.apiVersion, objectType, objectId, fields);
+    }
+
+    protected RestRequest getRequestForDelete(SyncManager syncManager, JSONObject record) throws JSONException {
+        final String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+        final String objectId = record.getString(getIdFieldName());
+        return RestRequest.getRequestForDelete(syncManager.apiVersion, objectType, objectId);
+    }
+
+    private void handleCreateResult(SyncManager syncManager, String soupName, JSONObject record, int statusCode, JSONObject result, String error) throws JSONException {
+        final JSONObject created = RestResponse.isSuccess(statusCode) ? result.optJSONObject(RESULT) : null;
+        final String recordServerId = created == null ? null : JSONObjectHelper.optString(created, Constants.LID);
+        // Success
+        if (recordServerId != null) {
+            record.put(getIdFieldName(), recordServerId);
+            cleanAndSaveInLocalStore(syncManager, soupName, record);
+        }
+        // Failure
+        else {
+            saveRecordToLocalStoreWithError(syncManager, soupName, record, error);
+        }
+    }
+
+    /**
+     * @return error for sub request (body of batch response if the batch request failed as a whole)
+     */
+    private String getError(JSONObject result, JSONArray results) {
+        if (results == null) {
+            return lastError;
+        }
+        if (result == null) {
+            return "Missing result in batch response";
+        }
+        return result.isNull(RESULT) ? String.valueOf(result.optInt(STATUS_CODE)) : result.opt(RESULT).toString();
+    }
+
+    private static int capMaxBatchSize(int maxBatchSize) {
+        return Math.max(1, Math.min(maxBatchSize, MAX_SUB_REQUESTS_COUNT));
+    }
+}
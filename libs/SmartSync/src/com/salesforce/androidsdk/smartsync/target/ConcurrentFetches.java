@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.target;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs independent fetches (e.g. the pages of remote ids checked when cleaning ghosts) concurrently
+ * - no more than maxInFlight fetches run at the same time: submit blocks until one of the running fetches completes
+ *   (so that whatever the caller reads to build a fetch is not read too far ahead)
+ * - once a fetch has failed, no new fetch can be submitted and the failure is rethrown by submit / awaitAll
+ *   (errors included, wrapped in a RuntimeException, so that an incomplete fetch never looks like a success)
+ *
+ * Fetches run on their own threads, whatever they hand their results to must be thread safe
+ */
+class ConcurrentFetches {
+
+    private static final long AWAIT_SECONDS = 60;
+
+    /**
+     * A fetch
+     */
+    interface Fetch {
+        void run() throws IOException, JSONException;
+    }
+
+    private final ExecutorService threadPool;
+    private final Semaphore inFlight;
+    private volatile Throwable failure;
+
+    /**
+     * @param maxInFlight max number of fetches running at the same time
+     */
+    ConcurrentFetches(int maxInFlight) {
+        maxInFlight = Math.max(1, maxInFlight);
+        this.threadPool = Executors.newFixedThreadPool(maxInFlight);
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Start fetch, waiting first if maxInFlight fetches are already running
+     * @param fetch
+     * @throws IOException, JSONException if an earlier fetch failed
+     */
+    void submit(final Fetch fetch) throws IOException, JSONException {
+        rethrowFailure();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for fetches");
+        }
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (failure == null) {
+                        fetch.run();
+                    }
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for all submitted fetches to complete
+     * @throws IOException, JSONException if a fetch failed
+     */
+    void awaitAll() throws IOException, JSONException {
+        threadPool.shutdown();
+        try {
+            while (!threadPool.awaitTermination(AWAIT_SECONDS, TimeUnit.SECONDS)) {
+                // keep waiting
+            }
+        } catch (InterruptedException e) {
+            threadPool.shutdownNow();
+            throw new InterruptedIOException("Interrupted while waiting for fetches");
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Interrupt running fetches and drop pending ones (no-op if awaitAll completed)
+     */
+    void cancel() {
+        threadPool.shutdownNow();
+    }
+
+    private void rethrowFailure() throws IOException, JSONException {
+        final Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof JSONException) {
+            throw (JSONException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        throw new RuntimeException("Fetch failed", t);
+    }
+}
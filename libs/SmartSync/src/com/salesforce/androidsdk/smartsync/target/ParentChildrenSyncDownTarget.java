@@ -119,6 +119,11 @@ public class ParentChildrenSyncDownTarget extends SoqlSyncDownTarget {
         return target;
     }
 
+    @Override
+    public Set<String> getSoupNames(String soupName) {
+        return ParentChildrenSyncTargetHelper.getSoupNames(soupName, parentInfo, childrenInfo);
+    }
+
     @Override
     protected String getSoqlForRemoteIds() {
         // This is for clean re-sync ghosts
@@ -172,28 +177,31 @@ public class ParentChildrenSyncDownTarget extends SoqlSyncDownTarget {
 
         // NB: ParentChildrenSyncDownTarget's getNonDirtyRecordIdsSql does a join between parent and children soups
         // We only want to look at the children soup, so using SoqlSyncDownTarget's getNonDirtyRecordIdsSql
-        final Set<String> localChildrenIds = getIdsWithQuery(syncManager, super.getNonDirtyRecordIdsSql(childrenInfo.soupName, childrenInfo.idFieldName, buildSyncIdPredicateIfIndexed(syncManager, childrenInfo.soupName, syncId)));
-        final Set<String> remoteChildrenIds = getChildrenRemoteIdsWithSoql(syncManager, getSoqlForRemoteChildrenIds());
-        if (remoteChildrenIds != null) {
-            localChildrenIds.removeAll(remoteChildrenIds);
-        }
-        if (localChildrenIds.size() > 0) {
-            deleteRecordsFromLocalStore(syncManager, childrenInfo.soupName, localChildrenIds, childrenInfo.idFieldName);
+        final String nonDirtyChildrenIdsSql = super.getNonDirtyRecordIdsSql(childrenInfo.soupName, childrenInfo.idFieldName, buildSyncIdPredicateIfIndexed(syncManager, childrenInfo.soupName, syncId));
+        final TempIdsTable remoteChildrenIdsTable = new TempIdsTable(syncManager.getSmartStore());
+        try {
+            fetchRemoteIdsWithSoql(syncManager, getSoqlForRemoteChildrenIds(), new RecordsHandler() {
+                @Override
+                public void onRecords(JSONArray records) {
+                    remoteChildrenIdsTable.addIds(parseChildrenIdsFromResponse(records));
+                }
+            });
+            remoteChildrenIdsTable.deleteRecords(childrenInfo.soupName, getGhostRecordsSmartSql(childrenInfo.soupName, childrenInfo.idFieldName,
+                    nonDirtyChildrenIdsSql, remoteChildrenIdsTable.getName()));
+        } finally {
+            remoteChildrenIdsTable.drop();
         }
         return localIdsSize;
     }
 
     protected Set<String> getChildrenRemoteIdsWithSoql(SyncManager syncManager, String soqlForChildrenRemoteIds) throws IOException, JSONException {
-
-        // Makes network request and parses the response.
-        JSONArray records = startFetch(syncManager, soqlForChildrenRemoteIds);
-        final Set<String> remoteChildrenIds = new HashSet<>(parseChildrenIdsFromResponse(records));
-        while (records != null) {
-
-            // Fetch next records, if any.
-            records = continueFetch(syncManager);
-            remoteChildrenIds.addAll(parseIdsFromResponse(records));
-        }
+        final Set<String> remoteChildrenIds = new HashSet<>();
+        fetchRemoteIdsWithSoql(syncManager, soqlForChildrenRemoteIds, new RecordsHandler() {
+            @Override
+            public void onRecords(JSONArray records) {
+                remoteChildrenIds.addAll(parseChildrenIdsFromResponse(records));
+            }
+        });
         return remoteChildrenIds;
     }
 
@@ -273,17 +281,21 @@ public class ParentChildrenSyncDownTarget extends SoqlSyncDownTarget {
     protected JSONArray getRecordsFromResponseJson(JSONObject responseJson) throws JSONException {
         JSONArray records = responseJson.getJSONArray(Constants.RECORDS);
         for (int i=0; i<records.length(); i++) {
-            JSONObject record = records.getJSONObject(i);
-            JSONArray childrenRecords = (record.has(childrenInfo.sobjectTypePlural) && !record.isNull(childrenInfo.sobjectTypePlural)
-                    ? record.getJSONObject(childrenInfo.sobjectTypePlural).getJSONArray(Constants.RECORDS)
-                    : new JSONArray());
-            // Cleaning up record
-            record.put(childrenInfo.sobjectTypePlural, childrenRecords);
-            // XXX what if not all children were fetched
+            prepareRecordFromResponse(records.getJSONObject(i));
         }
         return records;
     }
 
+    @Override
+    protected void prepareRecordFromResponse(JSONObject record) throws JSONException {
+        JSONArray childrenRecords = (record.has(childrenInfo.sobjectTypePlural) && !record.isNull(childrenInfo.sobjectTypePlural)
+                ? record.getJSONObject(childrenInfo.sobjectTypePlural).getJSONArray(Constants.RECORDS)
+                : new JSONArray());
+        // Cleaning up record
+        record.put(childrenInfo.sobjectTypePlural, childrenRecords);
+        // XXX what if not all children were fetched
+    }
+
     @Override
     public long getLatestModificationTimeStamp(JSONArray records) throws JSONException {
         // NB: method is called during sync down so for this target records contain parent and children
@@ -40,6 +40,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Shared code for ParentChildrenSyncDownTarget and ParentChildrenSyncUpTarget
  */
@@ -95,6 +98,14 @@ public class ParentChildrenSyncTargetHelper {
         }
     }
 
+    public static Set<String> getSoupNames(String soupName, ParentInfo parentInfo, ChildrenInfo childrenInfo) {
+        Set<String> soupNames = new HashSet<>();
+        soupNames.add(soupName);
+        soupNames.add(parentInfo.soupName);
+        soupNames.add(childrenInfo.soupName);
+        return soupNames;
+    }
+
     public static String getDirtyRecordIdsSql(ParentInfo parentInfo, ChildrenInfo childrenInfo, String parentFieldToSelect) {
         return String.format(
                 "SELECT DISTINCT {%s:%s} FROM {%s} WHERE {%s:%s} = 'true' OR EXISTS (SELECT {%s:%s} FROM {%s} WHERE {%s:%s} = {%s:%s} AND {%s:%s} = 'true')",
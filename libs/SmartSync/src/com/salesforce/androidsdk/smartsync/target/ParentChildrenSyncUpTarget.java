@@ -51,6 +51,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Target for sync that uploads parent with children records
@@ -110,6 +111,11 @@ public class ParentChildrenSyncUpTarget extends SyncUpTarget implements Advanced
         return target;
     }
 
+    @Override
+    public Set<String> getSoupNames(String soupName) {
+        return ParentChildrenSyncTargetHelper.getSoupNames(soupName, parentInfo, childrenInfo);
+    }
+
     @Override
     protected String getDirtyRecordIdsSql(String soupName, String idField) {
         return ParentChildrenSyncTargetHelper.getDirtyRecordIdsSql(parentInfo, childrenInfo, idField);
@@ -34,6 +34,7 @@ import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartsync.manager.SyncManager;
 import com.salesforce.androidsdk.smartsync.util.Constants;
 import com.salesforce.androidsdk.smartsync.util.SOQLBuilder;
+import com.salesforce.androidsdk.smartsync.util.SmartSyncLogger;
 import com.salesforce.androidsdk.util.JSONObjectHelper;
 
 import org.json.JSONArray;
@@ -44,8 +45,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -58,17 +61,21 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
     public static final String SOBJECT_TYPE = "sobjectType";
     public static final String SOUP_NAME = "soupName";
     public static final String COUNT_IDS_PER_SOQL = "coundIdsPerSoql";
+    public static final String INCREMENTAL = "incremental";
     private List<String> fieldlist;
     private String objectType;
     private String soupName;
     private int countIdsPerSoql;
+    private boolean incremental;
     private static final int defaultCountIdsPerSoql = 500;
 
     // NB: For each sync run - a fresh sync down target is created (by deserializing it from smartstore)
     // The following members are specific to a run
-    // page will change during a run as we call start/continueFetch
+    // lastId and countIdsRead will change during a run as we call start/continueFetch
+    // local ids are read in ascending order, each slice starting after the last id of the previous one (keyset pagination)
     private boolean isResync = false;
-    private int page = 0;
+    private String lastId = null;
+    private int countIdsRead = 0;
 
     /**
      * Return number of ids to pack in a single SOQL call
@@ -98,6 +105,7 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
         this.objectType = target.getString(SOBJECT_TYPE);
         this.soupName = target.getString(SOUP_NAME);
         this.countIdsPerSoql = target.optInt(COUNT_IDS_PER_SOQL, defaultCountIdsPerSoql);
+        this.incremental = target.optBoolean(INCREMENTAL, false);
     }
 
     /**
@@ -106,12 +114,25 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
      * @param objectType
      */
     public RefreshSyncDownTarget(List<String> fieldlist, String objectType, String soupName) {
+        this(fieldlist, objectType, soupName, false);
+    }
+
+    /**
+     * Constructor
+     * @param fieldlist
+     * @param objectType
+     * @param soupName
+     * @param incremental when true, only the records modified on the server since they were last fetched are downloaded
+     *                    (the server is first asked for the modification dates of the records in the soup)
+     */
+    public RefreshSyncDownTarget(List<String> fieldlist, String objectType, String soupName, boolean incremental) {
         super();
         this.queryType = QueryType.refresh;
         this.fieldlist = fieldlist;
         this.objectType = objectType;
         this.soupName = soupName;
         this.countIdsPerSoql = defaultCountIdsPerSoql;
+        this.incremental = incremental;
     }
 
     /**
@@ -124,6 +145,7 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
         target.put(SOBJECT_TYPE, objectType);
         target.put(SOUP_NAME, soupName);
         target.put(COUNT_IDS_PER_SOQL, countIdsPerSoql);
+        target.put(INCREMENTAL, incremental);
         return target;
     }
 
@@ -133,68 +155,135 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
         // since we expect records to have been fetched from the server and written to the soup directly outside a sync down operation
         // Instead during a reSymc, we compute maxTimeStamp from the records in the soup
         isResync = maxTimeStamp > 0;
+        lastId = null;
+        countIdsRead = 0;
         return  getIdsFromSmartStoreAndFetchFromServer(syncManager);
     }
 
+    // Saving a page only updates records with the ids of that page, the ids of the next pages do not change
+    @Override
+    public boolean supportsPrefetch() {
+        return true;
+    }
+
     @Override
     public JSONArray continueFetch(SyncManager syncManager) throws IOException, JSONException {
-        return page > 0 ? getIdsFromSmartStoreAndFetchFromServer(syncManager) : null;
+        return lastId != null ? getIdsFromSmartStoreAndFetchFromServer(syncManager) : null;
     }
 
     private JSONArray getIdsFromSmartStoreAndFetchFromServer(SyncManager syncManager) throws IOException, JSONException {
+        // If fetch is starting, figuring out totalSize
+        // NB: it might not be the correct value during resync or incremental refresh
+        //     since not all records will have changed
+        if (lastId == null) {
+            totalSize = syncManager.getSmartStore().countQuery(QuerySpec.buildSmartQuerySpec(getLocalIdsSmartSql(getIdPath()), 1));
+        }
+
         // Read from smartstore
-        final QuerySpec querySpec;
+        // Getting full records from SmartStore during resync (to compute maxTimeStamp) or incremental refresh (to get modification dates)
+        // So doing more db work in the hope of doing less server work
+        final boolean needRecords = isResync || incremental;
+        final QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(getLocalIdsSmartSql(needRecords ? "{" + soupName + ":_soup}" : getIdPath()), getCountIdsPerSoql());
+        final JSONArray rows = syncManager.getSmartStore().query(querySpec, 0);
         final List<String> idsInSmartStore = new ArrayList<>();
-        final long maxTimeStamp;
-        if (isResync) {
-            // Getting full records from SmartStore to compute maxTimeStamp
-            // So doing more db work in the hope of doing less server work
-            querySpec = QuerySpec.buildAllQuerySpec(soupName, getIdFieldName(), QuerySpec.Order.ascending, getCountIdsPerSoql());
-            JSONArray recordsFromSmartStore = syncManager.getSmartStore().query(querySpec, page);
-
-            // Compute max time stamp
-            maxTimeStamp = getLatestModificationTimeStamp(recordsFromSmartStore);
-
-            // Get ids
-            for (int i = 0; i < recordsFromSmartStore.length(); i++) {
-                idsInSmartStore.add(recordsFromSmartStore.getJSONObject(i).getString(getIdFieldName()));
+        final JSONArray recordsFromSmartStore = new JSONArray();
+        for (int i = 0; i < rows.length(); i++) {
+            if (needRecords) {
+                JSONObject record = rows.getJSONArray(i).getJSONObject(0);
+                recordsFromSmartStore.put(record);
+                idsInSmartStore.add(record.getString(getIdFieldName()));
+            } else {
+                idsInSmartStore.add(rows.getJSONArray(i).getString(0));
             }
         }
-        else {
-            querySpec = QuerySpec.buildSmartQuerySpec("SELECT {" + soupName + ":" + getIdFieldName()
-                    + "} FROM {" + soupName + "} ORDER BY {" + soupName + ":" + getIdFieldName() + "} ASC", getCountIdsPerSoql());
-            JSONArray result = syncManager.getSmartStore().query(querySpec, page);
 
-            // Not a resync
-            maxTimeStamp = 0;
+        if (idsInSmartStore.size() > 0) {
+            // Next slice starts after the last id of this slice
+            countIdsRead += idsInSmartStore.size();
+            boolean done = idsInSmartStore.size() < getCountIdsPerSoql() || countIdsRead >= totalSize;
+            lastId = (done ? null : idsInSmartStore.get(idsInSmartStore.size() - 1));
 
-            // Get ids
-            for (int i = 0; i < result.length(); i++) {
-                idsInSmartStore.add(result.getJSONArray(i).getString(0));
+            if (incremental) {
+                // Get records from server that have changed since they were fetched
+                final List<String> idsToFetch = getIdsModifiedOnServer(syncManager, recordsFromSmartStore);
+                return idsToFetch.isEmpty() ? new JSONArray() : fetchFromServer(syncManager, idsToFetch, getFieldlistWithModificationDate(), 0);
             }
-        }
 
-        // If fetch is starting, figuring out totalSize
-        // NB: it might not be the correct value during resync
-        //     since not all records will have changed
-        if (page == 0) {
-            totalSize = syncManager.getSmartStore().countQuery(querySpec);
-        }
-        if (idsInSmartStore.size() > 0) {
             // Get records from server that have changed after maxTimeStamp
-            final JSONArray records = fetchFromServer(syncManager, idsInSmartStore, fieldlist, maxTimeStamp);
-
-            // Increment page if there is more to fetch
-            boolean done = getCountIdsPerSoql() * (page + 1) >= totalSize;
-            page = (done ? 0 : page + 1);
-            return records;
+            final long maxTimeStamp = isResync ? getLatestModificationTimeStamp(recordsFromSmartStore) : 0;
+            return fetchFromServer(syncManager, idsInSmartStore, fieldlist, maxTimeStamp);
         }
         else {
-            page = 0; // done
+            lastId = null; // done
             return null;
         }
     }
 
+    private String getIdPath() {
+        return "{" + soupName + ":" + getIdFieldName() + "}";
+    }
+
+    /**
+     * Return smart sql selecting the given column of the local records following lastId (ordered by id)
+     */
+    private String getLocalIdsSmartSql(String column) {
+        return "SELECT " + column + " FROM {" + soupName + "}"
+                + (lastId != null ? " WHERE " + getIdPath() + " > '" + lastId.replace("'", "''") + "'" : "")
+                + " ORDER BY " + getIdPath() + " ASC";
+    }
+
+    /**
+     * Ask the server for the modification dates of the given records
+     * @return ids of the records with a more recent modification date on the server than in the soup
+     */
+    private List<String> getIdsModifiedOnServer(SyncManager syncManager, JSONArray recordsFromSmartStore) throws IOException, JSONException {
+        final Map<String, Long> idToLocalTimeStamp = new HashMap<>();
+        for (int i = 0; i < recordsFromSmartStore.length(); i++) {
+            JSONObject record = recordsFromSmartStore.getJSONObject(i);
+            idToLocalTimeStamp.put(record.getString(getIdFieldName()), parseTimeStamp(JSONObjectHelper.optString(record, getModificationDateFieldName())));
+        }
+        final JSONArray serverRecords = fetchFromServer(syncManager, new ArrayList<>(idToLocalTimeStamp.keySet()),
+                Arrays.asList(getIdFieldName(), getModificationDateFieldName()), 0 /* get all */);
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < serverRecords.length(); i++) {
+            JSONObject serverRecord = serverRecords.getJSONObject(i);
+            String id = serverRecord.getString(getIdFieldName());
+            long localTimeStamp = idToLocalTimeStamp.containsKey(id) ? idToLocalTimeStamp.get(id) : -1;
+            long serverTimeStamp = parseTimeStamp(JSONObjectHelper.optString(serverRecord, getModificationDateFieldName()));
+            if (localTimeStamp < 0 || serverTimeStamp < 0 || serverTimeStamp > localTimeStamp) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return time stamp or -1 if the date is missing or could not be parsed
+     */
+    private long parseTimeStamp(String timeStampStr) {
+        if (timeStampStr == null) {
+            return -1;
+        }
+        try {
+            return Constants.TIMESTAMP_FORMAT.parse(timeStampStr).getTime();
+        } catch (Exception e) {
+            SmartSyncLogger.w(TAG, "Could not parse modification date field: " + getModificationDateFieldName(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Modification dates have to be saved for the next incremental refresh to compare against
+     */
+    private List<String> getFieldlistWithModificationDate() {
+        if (fieldlist.contains(getModificationDateFieldName())) {
+            return fieldlist;
+        }
+        List<String> fields = new ArrayList<>(fieldlist);
+        fields.add(getModificationDateFieldName());
+        return fields;
+    }
+
     private JSONArray fetchFromServer(SyncManager syncManager, List<String> ids, List<String> fieldlist, long maxTimeStamp) throws IOException, JSONException {
         final String whereClause = ""
                 + getIdFieldName() + " IN ('" + TextUtils.join("', '", ids) + "')"
@@ -207,6 +296,40 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
         return responseJson.getJSONArray(Constants.RECORDS);
     }
 
+    @Override
+    protected boolean fetchRemoteIds(final SyncManager syncManager, String soupName, String additionalPredicate, final RecordsHandler handler) throws IOException, JSONException {
+        // Reading local ids one slice at a time (nothing gets deleted until all slices have been checked against the server)
+        // Slices are checked concurrently, the next slice is only read once a request slot is available
+        final int sliceSize = getCountIdsPerSoql();
+        final QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(getNonDirtyRecordIdsSql(soupName, getIdFieldName(), additionalPredicate), sliceSize);
+        final ConcurrentFetches fetches = new ConcurrentFetches(getMaxConcurrentRemoteIdsFetches());
+        try {
+            for (int slice = 0; ; slice++) {
+                JSONArray rows = syncManager.getSmartStore().query(querySpec, slice);
+                if (rows.length() == 0) {
+                    break;
+                }
+                final List<String> idsToFetch = new ArrayList<>();
+                for (int i = 0; i < rows.length(); i++) {
+                    idsToFetch.add(rows.getJSONArray(i).getString(0));
+                }
+                fetches.submit(new ConcurrentFetches.Fetch() {
+                    @Override
+                    public void run() throws IOException, JSONException {
+                        handler.onRecords(fetchFromServer(syncManager, idsToFetch, Arrays.asList(getIdFieldName()), 0 /* get all */));
+                    }
+                });
+                if (rows.length() < sliceSize) {
+                    break;
+                }
+            }
+            fetches.awaitAll();
+        } finally {
+            fetches.cancel();
+        }
+        return true;
+    }
+
     @Override
     protected Set<String> getRemoteIds(SyncManager syncManager, Set<String> localIds) throws IOException, JSONException {
         if (localIds == null) {
@@ -237,4 +360,11 @@ public class RefreshSyncDownTarget extends SyncDownTarget {
     public String getObjectType() {
         return objectType;
     }
+
+    /**
+     * @return true if only records modified on the server since they were last fetched are downloaded
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
 }
@@ -27,11 +27,16 @@
 package com.salesforce.androidsdk.smartsync.target;
 
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.salesforce.androidsdk.rest.RestRequest;
 import com.salesforce.androidsdk.rest.RestResponse;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.smartsync.manager.SyncManager;
 import com.salesforce.androidsdk.smartsync.util.Constants;
+import com.salesforce.androidsdk.smartsync.util.JSONReaderHelper;
 import com.salesforce.androidsdk.util.JSONObjectHelper;
 
 import org.json.JSONArray;
@@ -39,9 +44,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
 
 /**
  * Target for sync defined by a SOQL query
@@ -52,6 +64,10 @@ public class SoqlSyncDownTarget extends SyncDownTarget {
 	private String query;
     private String nextRecordsUrl;
 
+    // Ghost cleanup splits the remote ids in ranges fetched concurrently once there are enough local ids
+    public static final int REMOTE_IDS_PARTITION_SIZE = 10000;
+    private static final int MAX_REMOTE_IDS_PARTITIONS = 32;
+
     /**
      * Construct SoqlSyncDownTarget from json
      * @param target
@@ -143,6 +159,103 @@ public class SoqlSyncDownTarget extends SyncDownTarget {
         return responseJson.getJSONArray(Constants.RECORDS);
     }
 
+    // Next page is only determined by nextRecordsUrl
+    @Override
+    public boolean supportsPrefetch() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsStreaming() {
+        return true;
+    }
+
+    @Override
+    public boolean startFetch(SyncManager syncManager, long maxTimeStamp, RecordsHandler handler) throws IOException, JSONException {
+        RestRequest request = RestRequest.getRequestForQuery(syncManager.apiVersion, getQuery(maxTimeStamp));
+        totalSize = -1; // unknown until totalSize is read from the response
+        fetchStreamed(syncManager, request, handler);
+        return true;
+    }
+
+    @Override
+    public boolean continueFetch(SyncManager syncManager, RecordsHandler handler) throws IOException, JSONException {
+        if (nextRecordsUrl == null) {
+            return false;
+        }
+        fetchStreamed(syncManager, new RestRequest(RestRequest.RestMethod.GET, nextRecordsUrl), handler);
+        return true;
+    }
+
+    /**
+     * Send request and parse response as it is read
+     * Records are handed over to the handler in chunks of at most STREAMED_RECORDS_CHUNK_SIZE
+     * Fields can come in any order: if records come before totalSize, getTotalSize() returns -1
+     * while the first chunks are handed over (it is set by the time this method returns)
+     * @param syncManager
+     * @param request
+     * @param handler
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected void fetchStreamed(SyncManager syncManager, RestRequest request, RecordsHandler handler) throws IOException, JSONException {
+        RestResponse response = syncManager.sendSyncWithSmartSyncUserAgent(request);
+        if (!response.isSuccess()) {
+            // Rest API errors are returned as JSON array
+            throw new SyncManager.SmartSyncException(response.asString());
+        }
+        nextRecordsUrl = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(response.asInputStream(), "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (Constants.TOTAL_SIZE.equals(name)) {
+                    totalSize = reader.nextInt();
+                } else if (Constants.NEXT_RECORDS_URL.equals(name) && reader.peek() == JsonToken.STRING) {
+                    nextRecordsUrl = reader.nextString();
+                } else if (Constants.RECORDS.equals(name)) {
+                    streamRecords(reader, handler);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader when the response does not have the expected shape
+            throw new JSONException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void streamRecords(JsonReader reader, RecordsHandler handler) throws IOException, JSONException {
+        JSONArray records = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JSONObject record = JSONReaderHelper.readObject(reader);
+            prepareRecordFromResponse(record);
+            records.put(record);
+            if (records.length() == STREAMED_RECORDS_CHUNK_SIZE) {
+                handler.onRecords(records);
+                records = new JSONArray();
+            }
+        }
+        reader.endArray();
+        if (records.length() > 0) {
+            handler.onRecords(records);
+        }
+    }
+
+    /**
+     * Called on each record parsed from a streamed response before it is handed over
+     * Subclasses that clean up records in getRecordsFromResponseJson should do the same clean up here
+     * @param record
+     * @throws JSONException
+     */
+    protected void prepareRecordFromResponse(JSONObject record) throws JSONException {
+    }
+
     @Override
     public JSONArray continueFetch(SyncManager syncManager) throws IOException, JSONException {
         if (nextRecordsUrl == null) {
@@ -163,19 +276,138 @@ public class SoqlSyncDownTarget extends SyncDownTarget {
         return getRemoteIdsWithSoql(syncManager, getSoqlForRemoteIds());
     }
 
+    @Override
+    protected boolean fetchRemoteIds(final SyncManager syncManager, String soupName, String additionalPredicate, final RecordsHandler handler) throws IOException, JSONException {
+        final String soql = getSoqlForRemoteIds();
+        final List<String> boundaries = canPartitionById(soql)
+                ? getIdRangesBoundaries(syncManager, soupName, additionalPredicate)
+                : new ArrayList<String>();
+        if (boundaries.isEmpty()) {
+            fetchRemoteIdsWithSoql(syncManager, soql, handler);
+            return true;
+        }
+
+        // Id ranges are fetched concurrently
+        final ConcurrentFetches fetches = new ConcurrentFetches(getMaxConcurrentRemoteIdsFetches());
+        try {
+            for (final String rangeSoql : getSoqlsForIdRanges(soql, getIdFieldName(), boundaries)) {
+                fetches.submit(new ConcurrentFetches.Fetch() {
+                    @Override
+                    public void run() throws IOException, JSONException {
+                        fetchAllPages(syncManager, rangeSoql, handler);
+                    }
+                });
+            }
+            fetches.awaitAll();
+        } finally {
+            fetches.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Id ranges are delimited by adding predicates to the query
+     * That is only safe for queries without sub-queries, OR, LIMIT, OFFSET or GROUP BY
+     */
+    private static boolean canPartitionById(String soql) {
+        final String lowerSoql = soql.toLowerCase(Locale.US);
+        return lowerSoql.indexOf(" from ") == lowerSoql.lastIndexOf(" from ")
+                && !lowerSoql.contains(" or ")
+                && !lowerSoql.contains(" limit ")
+                && !lowerSoql.contains(" offset ")
+                && !lowerSoql.contains(" group by ");
+    }
+
+    /**
+     * Return ids splitting the local (non-dirty) ids into ranges of about REMOTE_IDS_PARTITION_SIZE ids
+     * Remote ids are expected to be spread over the ranges the same way
+     * @return sorted boundaries (empty if there are not enough local ids to be worth partitioning)
+     */
+    private List<String> getIdRangesBoundaries(SyncManager syncManager, String soupName, String additionalPredicate) throws JSONException {
+        final SmartStore smartStore = syncManager.getSmartStore();
+        final QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(getNonDirtyRecordIdsSql(soupName, getIdFieldName(), additionalPredicate), 1);
+        final int count = smartStore.countQuery(querySpec);
+        final int countRanges = Math.min(MAX_REMOTE_IDS_PARTITIONS, count / REMOTE_IDS_PARTITION_SIZE);
+        final SortedSet<String> boundaries = new TreeSet<>();
+        for (int range = 1; range < countRanges; range++) {
+            JSONArray rows = smartStore.query(querySpec, (int) ((long) count * range / countRanges));
+            if (rows.length() > 0) {
+                boundaries.add(rows.getJSONArray(0).getString(0));
+            }
+        }
+        return new ArrayList<>(boundaries);
+    }
+
+    /**
+     * Return one query per id range: (-inf, boundaries[0]), [boundaries[0], boundaries[1]), ..., [boundaries[n-1], +inf)
+     * Together the ranges cover all ids whatever the ordering the server uses
+     * @param soql
+     * @param idFieldName
+     * @param boundaries
+     * @return
+     */
+    protected static List<String> getSoqlsForIdRanges(String soql, String idFieldName, List<String> boundaries) {
+        final List<String> soqls = new ArrayList<>();
+        for (int i = 0; i <= boundaries.size(); i++) {
+            final StringBuilder predicate = new StringBuilder();
+            if (i > 0) {
+                predicate.append(idFieldName).append(" >= '").append(escapeSoqlString(boundaries.get(i - 1))).append("'");
+            }
+            if (i < boundaries.size()) {
+                predicate.append(i > 0 ? " and " : "").append(idFieldName).append(" < '").append(escapeSoqlString(boundaries.get(i))).append("'");
+            }
+            soqls.add(addPredicate(soql, predicate.toString()));
+        }
+        return soqls;
+    }
+
+    private static String escapeSoqlString(String value) {
+        return value.replace("\\", "\\\\").replace("'", "\\'");
+    }
+
+    /**
+     * Fetch all pages of the given query without touching the state of the target (so that it can run concurrently)
+     */
+    private void fetchAllPages(SyncManager syncManager, String soql, RecordsHandler handler) throws IOException, JSONException {
+        RestRequest request = RestRequest.getRequestForQuery(syncManager.apiVersion, soql);
+        while (request != null) {
+            RestResponse response = syncManager.sendSyncWithSmartSyncUserAgent(request);
+            JSONObject responseJson = getResponseJson(response);
+            handler.onRecords(getRecordsFromResponseJson(responseJson));
+            String nextUrl = JSONObjectHelper.optString(responseJson, Constants.NEXT_RECORDS_URL);
+            request = (nextUrl == null ? null : new RestRequest(RestRequest.RestMethod.GET, nextUrl));
+        }
+    }
+
     protected Set<String> getRemoteIdsWithSoql(SyncManager syncManager, String soqlForRemoteIds) throws IOException, JSONException {
         final Set<String> remoteIds = new HashSet<>();
+        fetchRemoteIdsWithSoql(syncManager, soqlForRemoteIds, new RecordsHandler() {
+            @Override
+            public void onRecords(JSONArray records) {
+                remoteIds.addAll(parseIdsFromResponse(records));
+            }
+        });
+        return remoteIds;
+    }
+
+    /**
+     * Run soql query page by page, handing over each page of records to the handler
+     * @param syncManager
+     * @param soql
+     * @param handler
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected void fetchRemoteIdsWithSoql(SyncManager syncManager, String soql, RecordsHandler handler) throws IOException, JSONException {
 
         // Makes network request and parses the response.
-        JSONArray records = startFetch(syncManager, soqlForRemoteIds);
-        remoteIds.addAll(parseIdsFromResponse(records));
+        JSONArray records = startFetch(syncManager, soql);
         while (records != null) {
+            handler.onRecords(records);
 
             // Fetch next records, if any.
             records = continueFetch(syncManager);
-            remoteIds.addAll(parseIdsFromResponse(records));
         }
-        return remoteIds;
     }
 
     protected String getSoqlForRemoteIds() {
@@ -191,13 +423,17 @@ public class SoqlSyncDownTarget extends SyncDownTarget {
     protected static String addFilterForReSync(String query, String modificationFieldDatName, long maxTimeStamp) {
         if (maxTimeStamp > 0) {
             String extraPredicate = modificationFieldDatName + " > " + Constants.TIMESTAMP_FORMAT.format(new Date(maxTimeStamp));
-            query = query.toLowerCase().contains(" where ")
-                    ? query.replaceFirst("( [wW][hH][eE][rR][eE] )", "$1" + extraPredicate + " and ")
-                    : query.replaceFirst("( [fF][rR][oO][mM][ ]+[^ ]*)", "$1 where " + extraPredicate);
+            query = addPredicate(query, extraPredicate);
         }
         return query;
     }
 
+    private static String addPredicate(String query, String predicate) {
+        return query.toLowerCase().contains(" where ")
+                ? query.replaceFirst("( [wW][hH][eE][rR][eE] )", "$1" + Matcher.quoteReplacement(predicate) + " and ")
+                : query.replaceFirst("( [fF][rR][oO][mM][ ]+[^ ]*)", "$1 where " + Matcher.quoteReplacement(predicate));
+    }
+
     /**
      * @return soql query for this target
      */
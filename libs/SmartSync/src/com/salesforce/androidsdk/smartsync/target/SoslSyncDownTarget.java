@@ -97,6 +97,12 @@ public class SoslSyncDownTarget extends SyncDownTarget {
         return null;
     }
 
+    @Override
+    protected boolean fetchRemoteIds(SyncManager syncManager, String soupName, String additionalPredicate, RecordsHandler handler) throws IOException, JSONException {
+        handler.onRecords(startFetch(syncManager, 0, query));
+        return true;
+    }
+
     @Override
     protected Set<String> getRemoteIds(SyncManager syncManager, Set<String> localIds) throws IOException, JSONException {
         if (localIds == null) {
@@ -27,6 +27,7 @@
 package com.salesforce.androidsdk.smartsync.target;
 
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.smartsync.manager.SyncManager;
 import com.salesforce.androidsdk.smartsync.util.Constants;
 import com.salesforce.androidsdk.smartsync.util.SmartSyncLogger;
@@ -53,6 +54,8 @@ public abstract class SyncDownTarget extends SyncTarget {
     // Constants
     private static final String TAG = "SyncDownTarget";
 	public static final String QUERY_TYPE = "type";
+    public static final int STREAMED_RECORDS_CHUNK_SIZE = 100; // max number of records handed at once to a RecordsHandler by a streaming target
+    public static final int MAX_CONCURRENT_REMOTE_IDS_FETCHES = 4; // max number of requests in flight when fetching remote ids concurrently
 
     // Fields
 	protected QueryType queryType;
@@ -138,6 +141,58 @@ public abstract class SyncDownTarget extends SyncTarget {
      */
     public abstract JSONArray continueFetch(SyncManager syncManager) throws IOException, JSONException;
 
+    /**
+     * Whether startFetch/continueFetch with a RecordsHandler stream records
+     * Streaming targets parse responses as they are read and hand records over in chunks of at most STREAMED_RECORDS_CHUNK_SIZE
+     * so that a whole page of records is never held in memory
+     * @return true if the sync manager can use the streaming fetch methods
+     */
+    public boolean supportsStreaming() {
+        return false;
+    }
+
+    /**
+     * Start fetching records conforming to target, handing them over to the handler
+     * Default implementation hands over the page returned by startFetch(syncManager, maxTimeStamp)
+     * @param syncManager
+     * @param maxTimeStamp
+     * @param handler
+     * @return false if there was nothing to fetch
+     * @throws IOException, JSONException
+     */
+    public boolean startFetch(SyncManager syncManager, long maxTimeStamp, RecordsHandler handler) throws IOException, JSONException {
+        return handlePage(startFetch(syncManager, maxTimeStamp), handler);
+    }
+
+    /**
+     * Continue fetching records conforming to target if any, handing them over to the handler
+     * Default implementation hands over the page returned by continueFetch(syncManager)
+     * @param syncManager
+     * @param handler
+     * @return false if there are no more records to fetch
+     * @throws IOException, JSONException
+     */
+    public boolean continueFetch(SyncManager syncManager, RecordsHandler handler) throws IOException, JSONException {
+        return handlePage(continueFetch(syncManager), handler);
+    }
+
+    private boolean handlePage(JSONArray records, RecordsHandler handler) throws JSONException {
+        if (records == null) {
+            return false;
+        }
+        handler.onRecords(records);
+        return true;
+    }
+
+    /**
+     * Whether continueFetch can be called from another thread while the previous pages are being saved to the local store
+     * Targets should only return true if fetching a page does not depend on the saving of the previous ones
+     * @return true if the sync manager can fetch pages ahead
+     */
+    public boolean supportsPrefetch() {
+        return false;
+    }
+
     /**
      * Delete from local store records that a full sync down would no longer download
      * @param syncManager
@@ -147,24 +202,73 @@ public abstract class SyncDownTarget extends SyncTarget {
      * @throws JSONException, IOException
      */
     public int cleanGhosts(SyncManager syncManager, String soupName, long syncId) throws JSONException, IOException {
+        final String additionalPredicate = buildSyncIdPredicateIfIndexed(syncManager, soupName, syncId);
 
-        // Fetches list of IDs present in local soup that have not been modified locally.
-        final Set<String> localIds = getNonDirtyRecordIds(syncManager, soupName, getIdFieldName(),
-                buildSyncIdPredicateIfIndexed(syncManager, soupName, syncId));
+        // Ids still present on the server go into a temporary table (batch by batch)
+        final TempIdsTable remoteIdsTable = new TempIdsTable(syncManager.getSmartStore());
+        try {
+            if (!fetchRemoteIds(syncManager, soupName, additionalPredicate, getIdsCollector(remoteIdsTable))) {
+                // Target needs the ids present in local soup that have not been modified locally
+                final Set<String> localIds = getNonDirtyRecordIds(syncManager, soupName, getIdFieldName(), additionalPredicate);
+                remoteIdsTable.addIds(getRemoteIds(syncManager, localIds));
+            }
 
-         // Fetches list of IDs still present on the server from the list of local IDs
-         // and removes the list of IDs that are still present on the server.
-        final Set<String> remoteIds = getRemoteIds(syncManager, localIds);
-        if (remoteIds != null) {
-            localIds.removeAll(remoteIds);
+            // Deletes non-dirty records not found in the temporary table
+            return remoteIdsTable.deleteRecords(soupName, getGhostRecordsSmartSql(soupName, getIdFieldName(),
+                    getNonDirtyRecordIdsSql(soupName, getIdFieldName(), additionalPredicate), remoteIdsTable.getName()));
+        } finally {
+            remoteIdsTable.drop();
         }
+    }
 
-        // Deletes extra IDs from SmartStore.
-        int localIdSize = localIds.size();
-        if (localIdSize > 0) {
-            deleteRecordsFromLocalStore(syncManager, soupName, localIds, getIdFieldName());
-        }
-        return localIdSize;
+    /**
+     * Fetches ids of records still present on the server, handing them over (page by page) to the handler
+     * Targets that do not need all the local ids to figure out the remote ids should override this method
+     * so that cleanGhosts does not have to load the local ids in memory
+     * Ids can be fetched concurrently (see getMaxConcurrentRemoteIdsFetches): the handler is thread safe
+     *
+     * @param syncManager
+     * @param soupName
+     * @param additionalPredicate predicate restricting local records to this sync (to use if local records are read)
+     * @param handler
+     * @return false if not supported by target (cleanGhosts then calls getRemoteIds)
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected boolean fetchRemoteIds(SyncManager syncManager, String soupName, String additionalPredicate, RecordsHandler handler) throws IOException, JSONException {
+        return false;
+    }
+
+    /**
+     * @return max number of requests fetchRemoteIds should have in flight at the same time
+     */
+    protected int getMaxConcurrentRemoteIdsFetches() {
+        return MAX_CONCURRENT_REMOTE_IDS_FETCHES;
+    }
+
+    /**
+     * Return smart sql selecting the soup entry ids of ghost records
+     * @param soupName
+     * @param idField
+     * @param nonDirtyRecordIdsSql smart sql selecting the ids of non-dirty records
+     * @param remoteIdsTableName name of temporary table holding the ids of records still present on the server
+     * @return
+     */
+    protected static String getGhostRecordsSmartSql(String soupName, String idField, String nonDirtyRecordIdsSql, String remoteIdsTableName) {
+        return String.format("SELECT {%s:%s} FROM {%s} WHERE {%s:%s} IN (%s) AND {%s:%s} NOT IN (SELECT id FROM %s)",
+                soupName, SmartStore.SOUP_ENTRY_ID, soupName, soupName, idField, nonDirtyRecordIdsSql, soupName, idField, remoteIdsTableName);
+    }
+
+    /**
+     * Return handler adding the ids of the records it receives to the given table
+     */
+    private RecordsHandler getIdsCollector(final TempIdsTable idsTable) {
+        return new RecordsHandler() {
+            @Override
+            public void onRecords(JSONArray records) {
+                idsTable.addIds(parseIdsFromResponse(records));
+            }
+        };
     }
 
     /**
@@ -314,4 +418,17 @@ public abstract class SyncDownTarget extends SyncTarget {
         }
         return remoteIds;
     }
+
+    /**
+     * Receives the records fetched by startFetch/continueFetch
+     */
+    public interface RecordsHandler {
+
+        /**
+         * Called (possibly several times per page) with fetched records
+         * @param records
+         * @throws JSONException
+         */
+        void onRecords(JSONArray records) throws JSONException;
+    }
 }
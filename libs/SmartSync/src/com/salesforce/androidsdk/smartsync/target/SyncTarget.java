@@ -26,8 +26,6 @@
  */
 package com.salesforce.androidsdk.smartsync.target;
 
-import android.text.TextUtils;
-
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.smartsync.manager.SyncManager;
@@ -39,6 +37,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -122,6 +123,18 @@ public abstract class SyncTarget {
         return modificationDateFieldName;
     }
 
+    /**
+     * Return names of all the soups read or written by this target
+     * Syncs with soups in common don't run at the same time
+     * Targets working on other soups than the one of the sync should override this method
+     *
+     * @param soupName soup of the sync
+     * @return names of soups used by this target
+     */
+    public Set<String> getSoupNames(String soupName) {
+        return Collections.singleton(soupName);
+    }
+
     /**
      * Return ids of "dirty" records (records locally created/upated or deleted)
      * @param syncManager
@@ -148,13 +161,15 @@ public abstract class SyncTarget {
     protected SortedSet<String> getIdsWithQuery(SyncManager syncManager, String idsSql) throws JSONException {
         final SortedSet<String> ids = new TreeSet<>();
         final QuerySpec smartQuerySpec = QuerySpec.buildSmartQuerySpec(idsSql, PAGE_SIZE);
-        boolean hasMore = true;
-        for (int pageIndex = 0; hasMore; pageIndex++) {
-            JSONArray results = syncManager.getSmartStore().query(smartQuerySpec, pageIndex);
-            hasMore = (results.length() == PAGE_SIZE);
-            ids.addAll(toSortedSet(results));
-        }
 
+        // Single pass over the results (no OFFSET paging)
+        syncManager.getSmartStore().queryAsStream(smartQuerySpec, new SmartStore.RowVisitor() {
+            @Override
+            public boolean visit(String row) throws JSONException {
+                ids.add(new JSONArray(row).getString(0));
+                return true;
+            }
+        });
         return ids;
     }
 
@@ -206,6 +221,7 @@ public abstract class SyncTarget {
 
     /**
      * Save records to local store
+     * NB: records are modified in place (sync id and local flags are set on them)
      * @param syncManager
      * @param soupName
      * @param records
@@ -217,11 +233,21 @@ public abstract class SyncTarget {
         synchronized(smartStore.getDatabase()) {
             try {
                 smartStore.beginTransaction();
+                JSONArray recordsFromServer = new JSONArray();
                 for (int i = 0; i < records.length(); i++) {
-                    JSONObject record = new JSONObject(records.getJSONObject(i).toString());
+                    JSONObject record = records.getJSONObject(i);
                     addSyncId(record, syncId);
-                    cleanAndSaveInSmartStore(syncManager.getSmartStore(), soupName, record, getIdFieldName(), false);
+                    if (record.has(SmartStore.SOUP_ENTRY_ID)) {
+                        // Record came from smartstore
+                        cleanAndSaveInSmartStore(smartStore, soupName, record, getIdFieldName(), false);
+                    }
+                    else {
+                        // Record came from server - upserted in bulk below
+                        cleanRecord(record);
+                        recordsFromServer.put(record);
+                    }
                 }
+                smartStore.upsertAll(soupName, recordsFromServer, getIdFieldName(), false);
                 smartStore.setTransactionSuccessful();
             }
             finally {
@@ -245,20 +271,17 @@ public abstract class SyncTarget {
      */
     protected void deleteRecordsFromLocalStore(SyncManager syncManager, String soupName, Set<String> ids, String idField) {
         if (ids.size() > 0) {
-            String smartSql = String.format("SELECT {%s:%s} FROM {%s} WHERE {%s:%s} IN (%s)",
-                    soupName, SmartStore.SOUP_ENTRY_ID, soupName, soupName, idField,
-                    "'" + TextUtils.join("', '", ids) + "'");
-            QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(smartSql, Integer.MAX_VALUE /* delete all */);
-            syncManager.getSmartStore().deleteByQuery(soupName, querySpec);
-        }
-    }
-
-    private SortedSet<String> toSortedSet(JSONArray jsonArray) throws JSONException {
-        SortedSet<String> set = new TreeSet<>();
-        for (int i = 0; i < jsonArray.length(); i++) {
-            set.add(jsonArray.getJSONArray(i).getString(0));
+            // Ids go through a temporary table to not run into SQLite limits with large IN clauses
+            TempIdsTable idsTable = new TempIdsTable(syncManager.getSmartStore());
+            try {
+                idsTable.addIds(ids);
+                String smartSql = String.format("SELECT {%s:%s} FROM {%s} WHERE {%s:%s} IN (SELECT id FROM %s)",
+                        soupName, SmartStore.SOUP_ENTRY_ID, soupName, soupName, idField, idsTable.getName());
+                idsTable.deleteRecords(soupName, smartSql);
+            } finally {
+                idsTable.drop();
+            }
         }
-        return set;
     }
 
     /**
@@ -308,6 +331,26 @@ public abstract class SyncTarget {
         return syncManager.getSmartStore().retrieve(soupName, Long.valueOf(storeId)).getJSONObject(0);
     }
 
+    /**
+     * Get records from local store by storeIds (with a single retrieve)
+     * @param syncManager
+     * @param soupName
+     * @param storeIds
+     * @throws  JSONException
+     */
+    public List<JSONObject> getFromLocalStore(SyncManager syncManager, String soupName, List<String> storeIds) throws JSONException {
+        Long[] soupEntryIds = new Long[storeIds.size()];
+        for (int i = 0; i < soupEntryIds.length; i++) {
+            soupEntryIds[i] = Long.valueOf(storeIds.get(i));
+        }
+        JSONArray records = syncManager.getSmartStore().retrieve(soupName, soupEntryIds);
+        List<JSONObject> result = new ArrayList<>(records.length());
+        for (int i = 0; i < records.length(); i++) {
+            result.add(records.getJSONObject(i));
+        }
+        return result;
+    }
+
     /**
      * Delete record from local store
      * @param syncManager
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.target;
+
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Temporary table of ids used when cleaning ghosts
+ * Ids are added in batches and records are then deleted with a single query joining against the table
+ * so that neither the ids nor giant IN clauses have to be held in memory
+ *
+ * NB: temporary tables only exist on the connection that created them, smart sql referring to the table
+ * must therefore run on the main connection of the smart store (which deleteRecords does)
+ */
+class TempIdsTable {
+
+    private static final String TABLE_NAME_PREFIX = "sync_temp_ids_";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final SmartStore smartStore;
+    private final String name;
+
+    /**
+     * Create temporary table
+     * @param smartStore
+     */
+    TempIdsTable(SmartStore smartStore) {
+        this.smartStore = smartStore;
+        this.name = TABLE_NAME_PREFIX + COUNTER.incrementAndGet();
+        final SQLiteDatabase db = smartStore.getDatabase();
+        synchronized (db) {
+            db.execSQL("CREATE TEMP TABLE " + name + " (id TEXT PRIMARY KEY)");
+        }
+    }
+
+    /**
+     * @return name of table to use in smart sql
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Add ids to table (in a single transaction)
+     * @param ids
+     */
+    void addIds(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        final SQLiteDatabase db = smartStore.getDatabase();
+        synchronized (db) {
+            SQLiteStatement statement = db.compileStatement("INSERT OR IGNORE INTO " + name + " (id) VALUES (?)");
+            db.beginTransaction();
+            try {
+                for (String id : ids) {
+                    if (id != null) {
+                        statement.bindString(1, id);
+                        statement.execute();
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Delete the records selected by the given smart sql (which can refer to this table by name)
+     * @param soupName
+     * @param idsSmartSql smart sql selecting the soup entry ids of the records to delete
+     * @return number of records deleted
+     */
+    int deleteRecords(String soupName, String idsSmartSql) {
+        final SQLiteDatabase db = smartStore.getDatabase();
+        synchronized (db) {
+            db.beginTransaction();
+            try {
+                int count = count(db, smartStore.convertSmartSql(idsSmartSql));
+                if (count > 0) {
+                    smartStore.deleteByQuery(soupName, QuerySpec.buildSmartQuerySpec(idsSmartSql, Integer.MAX_VALUE), false);
+                }
+                db.setTransactionSuccessful();
+                return count;
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Drop table
+     */
+    void drop() {
+        final SQLiteDatabase db = smartStore.getDatabase();
+        synchronized (db) {
+            db.execSQL("DROP TABLE IF EXISTS temp." + name);
+        }
+    }
+
+    private static int count(SQLiteDatabase db, String sql) {
+        Cursor c = null;
+        try {
+            c = db.rawQuery("SELECT count(*) FROM (" + sql + ")", null);
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+}
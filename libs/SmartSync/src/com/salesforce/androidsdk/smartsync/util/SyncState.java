@@ -393,7 +393,7 @@ public class SyncState {
 		if (this.status == Status.NEW && status == Status.RUNNING) {
 			this.startTime = System.currentTimeMillis();
 		}
-		if (this.status == Status.RUNNING && (status == Status.DONE || status == Status.FAILED)) {
+		if (this.status == Status.RUNNING && (status == Status.DONE || status == Status.FAILED || status == Status.STOPPED)) {
 			this.endTime = System.currentTimeMillis();
 		}
 
@@ -415,6 +415,10 @@ public class SyncState {
 	public boolean isRunning() {
 		return this.status == Status.RUNNING;
 	}
+
+	public boolean isStopped() {
+		return this.status == Status.STOPPED;
+	}
 	
 	public SyncState copy() throws JSONException {
 		return SyncState.fromJSON(asJSON());
@@ -436,7 +440,8 @@ public class SyncState {
     	NEW,
     	RUNNING,
     	DONE,
-    	FAILED
+    	FAILED,
+    	STOPPED
     }
 
     /**
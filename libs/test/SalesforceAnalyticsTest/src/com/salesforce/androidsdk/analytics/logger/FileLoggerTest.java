@@ -311,4 +311,20 @@ public class FileLoggerTest {
         size = fileLogger.getSize();
         Assert.assertEquals("Log file should have no entries", 0, size);
     }
+
+    /**
+     * Test for writing more log lines at once than the max size.
+     */
+    @Test
+    public void testAddLogLinesOverMaxSize() {
+        fileLogger.addLogLines(new String[] {TEST_LOG_LINE_1, TEST_LOG_LINE_2});
+        fileLogger.setMaxSize(2);
+        fileLogger.addLogLines(new String[] {TEST_LOG_LINE_3, TEST_LOG_LINE_4});
+        Assert.assertEquals("Log file should have 2 entries", 2, fileLogger.getSize());
+        fileLogger.addLogLines(new String[] {TEST_LOG_LINE_1, TEST_LOG_LINE_2, TEST_LOG_LINE_3});
+        final List<String> logLines = fileLogger.readAndRemoveFileAsList();
+        Assert.assertEquals("Log file should have 2 entries", 2, logLines.size());
+        Assert.assertEquals("Incorrect log line read", TEST_LOG_LINE_2, logLines.get(0));
+        Assert.assertEquals("Incorrect log line read", TEST_LOG_LINE_3, logLines.get(1));
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.analytics.logger;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for LogRingBuffer.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LogRingBufferTest {
+
+    /**
+     * Test that elements are drained in the order they were added.
+     */
+    @Test
+    public void testOfferAndDrain() {
+        final LogRingBuffer<String> buffer = new LogRingBuffer<>(4);
+        Assert.assertTrue("Buffer should be empty", buffer.isEmpty());
+        Assert.assertTrue("Offer should succeed", buffer.offer("a"));
+        Assert.assertTrue("Offer should succeed", buffer.offer("b"));
+        Assert.assertTrue("Offer should succeed", buffer.offer("c"));
+        Assert.assertEquals("Wrong size", 3, buffer.size());
+        final List<String> drained = new ArrayList<>();
+        Assert.assertEquals("Wrong number of elements drained", 2, buffer.drainTo(drained, 2));
+        Assert.assertEquals("Wrong number of elements drained", 1, buffer.drainTo(drained, 10));
+        Assert.assertEquals("Wrong elements drained", "[a, b, c]", drained.toString());
+        Assert.assertTrue("Buffer should be empty", buffer.isEmpty());
+    }
+
+    /**
+     * Test that elements are rejected when the buffer is full, and accepted again once drained.
+     */
+    @Test
+    public void testOfferWhenFull() {
+        final LogRingBuffer<Integer> buffer = new LogRingBuffer<>(3);
+        Assert.assertEquals("Capacity should be rounded up to a power of two", 4, buffer.capacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue("Offer should succeed", buffer.offer(i));
+        }
+        Assert.assertFalse("Offer should fail when full", buffer.offer(4));
+        final List<Integer> drained = new ArrayList<>();
+        buffer.drainTo(drained, 1);
+        Assert.assertTrue("Offer should succeed after drain", buffer.offer(5));
+        buffer.drainTo(drained, 10);
+        Assert.assertEquals("Wrong elements drained", "[0, 1, 2, 3, 5]", drained.toString());
+    }
+
+    /**
+     * Test that elements added concurrently are each drained exactly once.
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int numProducers = 4;
+        final int numPerProducer = 10000;
+        final LogRingBuffer<Integer> buffer = new LogRingBuffer<>(64);
+        final CountDownLatch done = new CountDownLatch(numProducers);
+        for (int p = 0; p < numProducers; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < numPerProducer; i++) {
+                        while (!buffer.offer(producer * numPerProducer + i)) {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        final Set<Integer> seen = new HashSet<>();
+        final List<Integer> drained = new ArrayList<>();
+        final int[] lastPerProducer = new int[numProducers];
+        for (int p = 0; p < numProducers; p++) {
+            lastPerProducer[p] = -1;
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (seen.size() < numProducers * numPerProducer && System.currentTimeMillis() < deadline) {
+            drained.clear();
+            buffer.drainTo(drained, 100);
+            for (final Integer element : drained) {
+                Assert.assertTrue("Element drained twice: " + element, seen.add(element));
+                final int producer = element / numPerProducer;
+                Assert.assertTrue("Elements of a producer should be drained in order",
+                        element % numPerProducer > lastPerProducer[producer]);
+                lastPerProducer[producer] = element % numPerProducer;
+            }
+        }
+        Assert.assertTrue("Producers should have completed", done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("Wrong number of elements drained", numProducers * numPerProducer, seen.size());
+        Assert.assertTrue("Buffer should be empty", buffer.isEmpty());
+    }
+}
@@ -107,4 +107,30 @@ public class SalesforceLoggerTest {
         logLevel = logger.getLogLevel();
         Assert.assertEquals("Log levels should be the same", SalesforceLogger.Level.VERBOSE, logLevel);
     }
+
+    /**
+     * Test that log lines end up in the file.
+     */
+    @Test
+    public void testLogToFile() throws Exception {
+        final SalesforceLogger logger = SalesforceLogger.getLogger(TEST_COMPONENT_1, targetContext);
+        final FileLogger fileLogger = logger.getFileLogger();
+        fileLogger.flushLog();
+        logger.enableFileLogging(100);
+        logger.setLogLevel(SalesforceLogger.Level.VERBOSE);
+        final long writtenBefore = logger.getWrittenLogLineCount();
+        for (int i = 0; i < 10; i++) {
+            logger.d(TEST_COMPONENT_1, "Log line " + i);
+        }
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (logger.getWrittenLogLineCount() - writtenBefore < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Wrong number of log lines written", 10, logger.getWrittenLogLineCount() - writtenBefore);
+        Assert.assertEquals("No log line should have been dropped", 0, logger.getDroppedLogLineCount());
+        Assert.assertEquals("Wrong number of log lines in file", 10, fileLogger.getSize());
+        Assert.assertTrue("Wrong first log line", fileLogger.readLogLine().endsWith("MESSAGE: Log line 0"));
+        fileLogger.flushLog();
+        FileLogger.resetFileLoggerPrefs(targetContext);
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.analytics.security;
+
+import android.os.Debug;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tests to compare speed and allocations of the different ways of encrypting / decrypting with Encryptor.
+ * Numbers are logged, only correctness is asserted.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class EncryptorSpeedTest {
+
+    private static final String TAG = "EncryptorSpeedTest";
+    private static final int WARM_UP_ITERATIONS = 100;
+    private static final int ITERATIONS = 2000;
+    private static final int[] DATA_SIZES = new int[] {64, 1024, 16 * 1024};
+    private static final String KEY = Encryptor.hash("test1234", "hashing-key");
+
+    /**
+     * Compares a new cipher per call (how Encryptor used to work), the string API and the byte buffer API.
+     */
+    @Test
+    public void testEncryptDecryptSpeed() throws Exception {
+        for (int dataSize : DATA_SIZES) {
+            final byte[] data = new byte[dataSize];
+            new SecureRandom().nextBytes(data);
+            final String dataString = Base64.encodeToString(data, Base64.NO_WRAP);
+            runNewCipherPerCall(data, WARM_UP_ITERATIONS);
+            runStringApi(dataString, WARM_UP_ITERATIONS);
+            runByteBufferApi(data, WARM_UP_ITERATIONS);
+            logResult("newCipherPerCall", dataSize, runNewCipherPerCall(data, ITERATIONS));
+            logResult("stringApi", dataSize, runStringApi(dataString, ITERATIONS));
+            logResult("byteBufferApi", dataSize, runByteBufferApi(data, ITERATIONS));
+        }
+    }
+
+    private long[] runNewCipherPerCall(byte[] data, int iterations) throws Exception {
+        final long[] result = start();
+        for (int i = 0; i < iterations; i++) {
+            final byte[] keyBytes = Base64.decode(KEY, Base64.DEFAULT);
+            final byte[] iv = new byte[16];
+            SecureRandom.getInstance("SHA1PRNG").nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes, cipher.getAlgorithm()), new IvParameterSpec(iv));
+            final byte[] encrypted = cipher.doFinal(data);
+            cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, cipher.getAlgorithm()), new IvParameterSpec(iv));
+            Assert.assertArrayEquals("Decrypt should restore original", data, cipher.doFinal(encrypted));
+        }
+        return stop(result, iterations);
+    }
+
+    private long[] runStringApi(String data, int iterations) {
+        final long[] result = start();
+        for (int i = 0; i < iterations; i++) {
+            Assert.assertEquals("Decrypt should restore original", data, Encryptor.decrypt(Encryptor.encrypt(data, KEY), KEY));
+        }
+        return stop(result, iterations);
+    }
+
+    private long[] runByteBufferApi(byte[] data, int iterations) throws Exception {
+        final ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+        final ByteBuffer encrypted = ByteBuffer.allocateDirect(Encryptor.getEncryptedSize(data.length));
+        final ByteBuffer decrypted = ByteBuffer.allocate(Encryptor.getEncryptedSize(data.length));
+        final long[] result = start();
+        for (int i = 0; i < iterations; i++) {
+            dataBuffer.clear();
+            encrypted.clear();
+            decrypted.clear();
+            Encryptor.encrypt(dataBuffer, encrypted, KEY);
+            encrypted.flip();
+            Encryptor.decrypt(encrypted, decrypted, KEY);
+        }
+        final long[] stopped = stop(result, iterations);
+        Assert.assertArrayEquals("Decrypt should restore original", data, Arrays.copyOf(decrypted.array(), decrypted.position()));
+        return stopped;
+    }
+
+    @SuppressWarnings("deprecation")
+    private long[] start() {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        return new long[] {System.nanoTime(), 0, 0};
+    }
+
+    /*
+     * Returns average time (ns), allocations and allocated bytes per round trip.
+     */
+    @SuppressWarnings("deprecation")
+    private long[] stop(long[] result, int iterations) {
+        final long elapsed = System.nanoTime() - result[0];
+        Debug.stopAllocCounting();
+        return new long[] {elapsed / iterations, Debug.getThreadAllocCount() / iterations,
+                Debug.getThreadAllocSize() / iterations};
+    }
+
+    private void logResult(String name, int dataSize, long[] result) {
+        Log.i(TAG, String.format("%s dataSize=%d avgRoundTripTime=%.4fms allocationsPerRoundTrip=%d bytesAllocatedPerRoundTrip=%d",
+                name, dataSize, result[0] / 1000000.0, result[1], result[2]));
+    }
+}
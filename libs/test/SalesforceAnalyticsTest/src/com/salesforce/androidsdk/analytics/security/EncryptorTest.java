@@ -33,6 +33,15 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
 /**
  * Tests for Encryptor.
  *
@@ -139,6 +148,86 @@ public class EncryptorTest {
 		}
 	}
 
+    /**
+     * Test to ensure the byte buffer APIs round trip and are compatible with the raw bytes APIs.
+     */
+    @Test
+    public void testEncryptDecryptByteBuffers() throws Exception {
+        for (String key : TEST_KEYS) {
+            for (String data : TEST_DATA) {
+                final byte[] dataBytes = data.getBytes(Charset.forName("UTF-8"));
+                final ByteBuffer encrypted = ByteBuffer.allocate(Encryptor.getEncryptedSize(dataBytes.length));
+                int encryptedLength = Encryptor.encrypt(ByteBuffer.wrap(dataBytes), encrypted, key);
+                Assert.assertEquals("Wrong number of bytes written", encrypted.position(), encryptedLength);
+                encrypted.flip();
+                final byte[] encryptedBytes = Arrays.copyOf(encrypted.array(), encryptedLength);
+                if (key != null) {
+                    Assert.assertFalse("Encrypted bytes should be different from original", Arrays.equals(dataBytes, encryptedBytes));
+                }
+                final ByteBuffer decrypted = ByteBuffer.allocateDirect(encryptedLength);
+                int decryptedLength = Encryptor.decrypt(encrypted, decrypted, key);
+                Assert.assertEquals("Wrong number of decrypted bytes", dataBytes.length, decryptedLength);
+                decrypted.flip();
+                final byte[] decryptedBytes = new byte[decryptedLength];
+                decrypted.get(decryptedBytes);
+                Assert.assertArrayEquals("Decrypt should restore original", dataBytes, decryptedBytes);
+                Assert.assertArrayEquals("decryptRawBytes should restore original", dataBytes,
+                        Encryptor.decryptRawBytes(encryptedBytes, key));
+                final ByteBuffer decryptedRaw = ByteBuffer.allocate(encryptedLength);
+                Encryptor.decrypt(ByteBuffer.wrap(Encryptor.encryptRawBytes(dataBytes, key)), decryptedRaw, key);
+                Assert.assertEquals("Decrypt should restore original from encryptRawBytes", data,
+                        new String(decryptedRaw.array(), 0, decryptedRaw.position(), "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * Test to make sure encrypt fails when the output buffer is too small.
+     */
+    @Test
+    public void testEncryptByteBufferTooSmall() {
+        final byte[] dataBytes = TEST_DATA[0].getBytes(Charset.forName("UTF-8"));
+        try {
+            Encryptor.encrypt(ByteBuffer.wrap(dataBytes), ByteBuffer.allocate(dataBytes.length), makeKey("123456"));
+            Assert.fail("Encrypt should have failed");
+        } catch (GeneralSecurityException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test to ensure the encrypting output stream and decrypting input stream work together.
+     */
+    @Test
+    public void testEncryptDecryptStreams() throws Exception {
+        final byte[] dataBytes = new byte[10000];
+        for (int i = 0; i < dataBytes.length; i++) {
+            dataBytes[i] = (byte) i;
+        }
+        for (String key : TEST_KEYS) {
+            final ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+            final OutputStream out = Encryptor.getEncryptingOutputStream(encrypted, key);
+            out.write(dataBytes, 0, 100);
+            out.write(dataBytes, 100, dataBytes.length - 100);
+            out.close();
+
+            // Uses the per thread cipher while the streams are open.
+            Assert.assertEquals("Decrypt should restore original", TEST_DATA[0],
+                    Encryptor.decrypt(Encryptor.encrypt(TEST_DATA[0], key), key));
+            final InputStream in = Encryptor.getDecryptingInputStream(new ByteArrayInputStream(encrypted.toByteArray()), key);
+            final ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                decrypted.write(buffer, 0, read);
+            }
+            in.close();
+            Assert.assertArrayEquals("Streams should restore original", dataBytes, decrypted.toByteArray());
+            Assert.assertArrayEquals("decryptRawBytes should restore original", dataBytes,
+                    Encryptor.decryptRawBytes(encrypted.toByteArray(), key));
+        }
+    }
+
 	private static String makeKey(String passcode) {
         return Encryptor.hash(passcode, "hashing-key");
 	}
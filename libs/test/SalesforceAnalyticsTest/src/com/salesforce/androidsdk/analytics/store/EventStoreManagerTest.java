@@ -44,6 +44,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -313,6 +315,105 @@ public class EventStoreManagerTest {
         Assert.assertTrue("Stored event should be the same as generated event", event.equals(events.get(0)));
     }
 
+    /**
+     * Test for fetching stored events in chunks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFetchEventsInChunks() throws Exception {
+        final List<InstrumentationEvent> genEvents = new ArrayList<InstrumentationEvent>();
+        for (int i = 0; i < 5; i++) {
+            genEvents.add(createTestEvent());
+        }
+        storeManager.storeEvents(genEvents);
+        List<InstrumentationEvent> chunk = storeManager.fetchEvents(2, Long.MAX_VALUE);
+        Assert.assertEquals("Wrong number of events in chunk", 2, chunk.size());
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(0).equals(chunk.get(0)));
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(1).equals(chunk.get(1)));
+        chunk = storeManager.fetchEvents(10, 1);
+        Assert.assertEquals("Chunk should only contain the first event", 1, chunk.size());
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(0).equals(chunk.get(0)));
+        final List<String> eventIds = new ArrayList<String>();
+        eventIds.add(genEvents.get(0).getEventId());
+        eventIds.add(genEvents.get(1).getEventId());
+        storeManager.deleteEvents(eventIds);
+        chunk = storeManager.fetchEvents(10, Long.MAX_VALUE);
+        Assert.assertEquals("Wrong number of events in chunk", 3, chunk.size());
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(2).equals(chunk.get(0)));
+    }
+
+    /**
+     * Test for fetching events stored by another instance (index rebuilt from the segments).
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEventsReloadedFromSegments() throws Exception {
+        final List<InstrumentationEvent> genEvents = new ArrayList<InstrumentationEvent>();
+        for (int i = 0; i < 3; i++) {
+            genEvents.add(createTestEvent());
+        }
+        storeManager.storeEvents(genEvents);
+        storeManager.deleteEvent(genEvents.get(1).getEventId());
+        final EventStoreManager otherStoreManager = new EventStoreManager(TEST_FILENAME_SUFFIX,
+                targetContext, TEST_ENCRYPTION_KEY);
+        Assert.assertEquals("Number of events stored should be 2", 2, otherStoreManager.getNumStoredEvents());
+        final List<InstrumentationEvent> events = otherStoreManager.fetchAllEvents();
+        Assert.assertEquals("Number of events stored should be 2", 2, events.size());
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(0).equals(events.get(0)));
+        Assert.assertTrue("Stored event should be the same as generated event", genEvents.get(2).equals(events.get(1)));
+        Assert.assertTrue("Stored event should be the same as generated event",
+                genEvents.get(2).equals(otherStoreManager.fetchEvent(genEvents.get(2).getEventId())));
+        Assert.assertNull("Deleted event should not be returned", otherStoreManager.fetchEvent(genEvents.get(1).getEventId()));
+    }
+
+    /**
+     * Test that segments are deleted once all their events are deleted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSegmentsDeletedWithTheirEvents() throws Exception {
+        storeManager.setMaxSegmentSize(1);
+        final List<InstrumentationEvent> genEvents = new ArrayList<InstrumentationEvent>();
+        final List<String> eventIds = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            final InstrumentationEvent event = createTestEvent();
+            genEvents.add(event);
+            eventIds.add(event.getEventId());
+        }
+        storeManager.storeEvents(genEvents);
+        Assert.assertEquals("Wrong number of segments", 3, storeManager.getNumSegments());
+        storeManager.deleteEvents(eventIds.subList(0, 2));
+        Assert.assertEquals("Wrong number of segments", 1, storeManager.getNumSegments());
+        Assert.assertEquals("Number of events stored should be 1", 1, storeManager.getNumStoredEvents());
+        storeManager.deleteAllEvents();
+        Assert.assertEquals("Wrong number of segments", 0, storeManager.getNumSegments());
+        Assert.assertEquals("Number of events stored should be 0", 0, storeManager.getNumStoredEvents());
+    }
+
+    /**
+     * Test that events stored one per file by earlier versions are still returned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLegacyEventsMigrated() throws Exception {
+        final InstrumentationEvent event = createTestEvent();
+        final String filename = event.getEventId() + TEST_FILENAME_SUFFIX;
+        final FileOutputStream outputStream = targetContext.openFileOutput(filename, Context.MODE_PRIVATE);
+        outputStream.write(Encryptor.encrypt(event.toJson().toString(), TEST_ENCRYPTION_KEY).getBytes());
+        outputStream.close();
+        final EventStoreManager otherStoreManager = new EventStoreManager(TEST_FILENAME_SUFFIX,
+                targetContext, TEST_ENCRYPTION_KEY);
+        final List<InstrumentationEvent> events = otherStoreManager.fetchAllEvents();
+        Assert.assertEquals("Number of events stored should be 1", 1, events.size());
+        Assert.assertTrue("Stored event should be the same as generated event", event.equals(events.get(0)));
+        Assert.assertFalse("Legacy file should have been deleted", new File(targetContext.getFilesDir(), filename).exists());
+        otherStoreManager.deleteAllEvents();
+    }
+
     private InstrumentationEvent createTestEvent() throws Exception {
         final InstrumentationEventBuilder eventBuilder = InstrumentationEventBuilder.getInstance(analyticsManager, targetContext);
         long curTime = System.currentTimeMillis();
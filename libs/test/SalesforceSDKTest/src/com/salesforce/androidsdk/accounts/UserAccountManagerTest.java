@@ -231,6 +231,34 @@ public class UserAccountManagerTest {
         Assert.assertEquals("There should be 1 authenticated user", 1, users.size());
     }
 
+    /**
+     * Test that user accounts are cached, and invalidated when accounts are added or removed.
+     */
+    @Test
+    public void testUserAccountCache() throws Exception {
+        createTestAccount();
+        final long missesBefore = userAccMgr.getUserAccountCacheMissCount();
+        final long hitsBefore = userAccMgr.getUserAccountCacheHitCount();
+        final UserAccount user = userAccMgr.getUserFromOrgAndUserId(ClientManagerTest.TEST_ORG_ID,
+                ClientManagerTest.TEST_USER_ID);
+        Assert.assertNotNull("User should have been found", user);
+        Assert.assertSame("Cached user account should be returned", user,
+                userAccMgr.getUserFromOrgAndUserId(ClientManagerTest.TEST_ORG_ID, ClientManagerTest.TEST_USER_ID));
+        Assert.assertEquals("Wrong number of cache misses", 1, userAccMgr.getUserAccountCacheMissCount() - missesBefore);
+        Assert.assertEquals("Wrong number of cache hits", 1, userAccMgr.getUserAccountCacheHitCount() - hitsBefore);
+        Assert.assertTrue("Hit rate should be positive", userAccMgr.getUserAccountCacheHitRate() > 0);
+
+        // Recreating the account invalidates its cached user account
+        cleanupAccounts();
+        Assert.assertNull("There should be no authenticated users", userAccMgr.getAuthenticatedUsers());
+        createTestAccount();
+        final UserAccount recreatedUser = userAccMgr.getUserFromOrgAndUserId(ClientManagerTest.TEST_ORG_ID,
+                ClientManagerTest.TEST_USER_ID);
+        Assert.assertNotNull("User should have been found", recreatedUser);
+        Assert.assertNotSame("User account should have been read again", user, recreatedUser);
+        Assert.assertEquals("User accounts should be equal", user, recreatedUser);
+    }
+
     /**
      * Removes any existing accounts.
      */
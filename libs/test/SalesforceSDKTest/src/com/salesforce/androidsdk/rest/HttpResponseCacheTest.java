@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.rest;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.salesforce.androidsdk.analytics.security.Encryptor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Tests for HttpResponseCache
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class HttpResponseCacheTest {
+
+    private static final String URL = "https://test.salesforce.com/services/data/v44.0/sobjects/Account/describe";
+    private static final String ETAG = "\"etag-1\"";
+    private static final String BODY = "{\"name\":\"Account\"}";
+
+    private File directory;
+    private HttpResponseCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "HttpResponseCacheTest");
+        cache = new HttpResponseCache(directory, Encryptor.hash("test_encryption_key", "key"), HttpResponseCache.DEFAULT_MAX_SIZE);
+        cache.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.clear();
+        directory.delete();
+    }
+
+    /**
+     * Cached response should be revalidated and returned when the server answers 304
+     */
+    @Test
+    public void testRevalidate() throws IOException {
+        FakeServerChain chain = new FakeServerChain(buildRequest(RestRequest.CachePolicy.REVALIDATE));
+        Response response = cache.intercept(chain);
+        Assert.assertEquals("Wrong body", BODY, response.body().string());
+        Assert.assertEquals("Wrong miss count", 1, cache.getMissCount());
+        Assert.assertNull("First request should not be conditional", chain.requests.get(0).header("If-None-Match"));
+
+        response = cache.intercept(chain);
+        Assert.assertEquals("Wrong code", HttpURLConnection.HTTP_OK, response.code());
+        Assert.assertEquals("Wrong body", BODY, response.body().string());
+        Assert.assertEquals("Second request should be conditional", ETAG, chain.requests.get(1).header("If-None-Match"));
+        Assert.assertEquals("Wrong hit count", 1, cache.getHitCount());
+        Assert.assertEquals("Wrong not modified count", 1, cache.getNotModifiedCount());
+    }
+
+    /**
+     * Cached response should be returned without contacting the server with CACHE_FIRST
+     */
+    @Test
+    public void testCacheFirst() throws IOException {
+        FakeServerChain chain = new FakeServerChain(buildRequest(RestRequest.CachePolicy.CACHE_FIRST));
+        cache.intercept(chain).close();
+        Response response = cache.intercept(chain);
+        Assert.assertEquals("Wrong body", BODY, response.body().string());
+        Assert.assertEquals("Server should have been contacted once", 1, chain.requests.size());
+        Assert.assertEquals("Wrong hit count", 1, cache.getHitCount());
+    }
+
+    /**
+     * Nothing should be cached with NO_CACHE
+     */
+    @Test
+    public void testNoCache() throws IOException {
+        FakeServerChain chain = new FakeServerChain(buildRequest(RestRequest.CachePolicy.NO_CACHE));
+        cache.intercept(chain).close();
+        cache.intercept(chain).close();
+        Assert.assertNull("Request should not be conditional", chain.requests.get(1).header("If-None-Match"));
+        Assert.assertEquals("Nothing should be cached", 0, cache.getSize());
+    }
+
+    /**
+     * Cached responses should be encrypted
+     */
+    @Test
+    public void testEncrypted() throws IOException {
+        cache.intercept(new FakeServerChain(buildRequest(RestRequest.CachePolicy.REVALIDATE))).close();
+        File[] files = directory.listFiles();
+        Assert.assertEquals("Wrong number of files", 1, files.length);
+        byte[] bytes = new byte[(int) files[0].length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(files[0]));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        Assert.assertFalse("Response should be encrypted", new String(bytes, "UTF-8").contains(BODY));
+    }
+
+    private Request buildRequest(RestRequest.CachePolicy cachePolicy) {
+        return new Request.Builder().url(URL).get().tag(cachePolicy).build();
+    }
+
+    /**
+     * Chain answering 304 when the request has the expected ETag, 200 with the ETag otherwise
+     */
+    private static class FakeServerChain implements Interceptor.Chain {
+        private final Request request;
+        final List<Request> requests = new ArrayList<>();
+
+        FakeServerChain(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) {
+            requests.add(request);
+            Response.Builder builder = new Response.Builder().request(request).protocol(Protocol.HTTP_1_1);
+            if (ETAG.equals(request.header("If-None-Match"))) {
+                return builder.code(HttpURLConnection.HTTP_NOT_MODIFIED).message("Not Modified")
+                        .body(ResponseBody.create(null, new byte[0])).build();
+            }
+            return builder.code(HttpURLConnection.HTTP_OK).message("OK").header("ETag", ETAG)
+                    .body(ResponseBody.create(MediaType.parse("application/json"), BODY)).build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @Override
+        public Call call() {
+            return null;
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+    }
+}
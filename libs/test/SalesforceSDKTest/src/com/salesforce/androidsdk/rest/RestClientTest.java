@@ -67,6 +67,8 @@ import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 /**
  * Tests for RestClient
  *
@@ -316,6 +318,202 @@ public class RestClientTest {
     }
 
 
+    /**
+     * Testing a call with a bad auth token that is expected to have expired
+     * Expect token to be refreshed before the request is sent (no 401 retry).
+     * @throws IOException
+     */
+    @Test
+    public void testProactiveRefresh() throws IOException {
+        RestClient.clearCaches();
+        final AtomicInteger refreshCount = new AtomicInteger();
+        final AtomicLong lastRefreshTime = new AtomicLong(System.currentTimeMillis() - RestClient.OAuthRefreshInterceptor.DEFAULT_ACCESS_TOKEN_LIFETIME);
+        AuthTokenProvider authTokenProvider = new AuthTokenProvider() {
+            @Override
+            public String getNewAuthToken() {
+                refreshCount.incrementAndGet();
+                lastRefreshTime.set(System.currentTimeMillis());
+                return authToken;
+            }
+
+            @Override
+            public String getRefreshToken() {
+                return null;
+            }
+
+            @Override
+            public long getLastRefreshTime() {
+                return lastRefreshTime.get();
+            }
+
+            @Override
+            public String getInstanceUrl() { return instanceUrl; }
+        };
+        RestClient unauthenticatedRestClient = new RestClient(clientInfo, BAD_TOKEN, httpAccess, authTokenProvider);
+        RestClient.OAuthRefreshInterceptor interceptor = unauthenticatedRestClient.getOAuthRefreshInterceptor();
+        RestResponse response = unauthenticatedRestClient.sendSync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        Assert.assertTrue("Expected success", response.isSuccess());
+        Assert.assertEquals("RestClient should now be using the good token", authToken, unauthenticatedRestClient.getAuthToken());
+        Assert.assertEquals("Token should have been refreshed once", 1, refreshCount.get());
+        Assert.assertEquals("Wrong proactive refresh count", 1, interceptor.getProactiveRefreshCount());
+        Assert.assertEquals("Wrong reactive refresh count", 0, interceptor.getReactiveRefreshCount());
+        Assert.assertEquals("Wrong avoided retry count", 1, interceptor.getAvoidedUnauthorizedRetryCount());
+
+        // Token is not expected to expire anymore
+        response = unauthenticatedRestClient.sendSync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        Assert.assertTrue("Expected success", response.isSuccess());
+        Assert.assertEquals("Token should not have been refreshed again", 1, refreshCount.get());
+    }
+
+    /**
+     * Testing a call with a valid auth token that is expected to expire soon when the refresh fails
+     * Expect the request to go out with the current token instead of failing.
+     * @throws IOException
+     */
+    @Test
+    public void testFailedProactiveRefresh() throws IOException {
+        RestClient.clearCaches();
+        final AtomicInteger refreshCount = new AtomicInteger();
+        AuthTokenProvider authTokenProvider = new AuthTokenProvider() {
+            @Override
+            public String getNewAuthToken() {
+                refreshCount.incrementAndGet();
+                return null;
+            }
+
+            @Override
+            public String getRefreshToken() {
+                return null;
+            }
+
+            @Override
+            public long getLastRefreshTime() {
+                return System.currentTimeMillis() - RestClient.OAuthRefreshInterceptor.DEFAULT_ACCESS_TOKEN_LIFETIME;
+            }
+
+            @Override
+            public String getInstanceUrl() { return instanceUrl; }
+        };
+        RestClient expiringRestClient = new RestClient(clientInfo, authToken, httpAccess, authTokenProvider);
+        RestClient.OAuthRefreshInterceptor interceptor = expiringRestClient.getOAuthRefreshInterceptor();
+        RestResponse response = expiringRestClient.sendSync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        Assert.assertTrue("Expected success", response.isSuccess());
+        Assert.assertEquals("RestClient should still be using the current token", authToken, expiringRestClient.getAuthToken());
+        Assert.assertEquals("Wrong proactive refresh count", 1, interceptor.getProactiveRefreshCount());
+        Assert.assertEquals("Wrong avoided retry count", 0, interceptor.getAvoidedUnauthorizedRetryCount());
+
+        // Failed proactive refresh is not retried right away
+        response = expiringRestClient.sendSync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        Assert.assertTrue("Expected success", response.isSuccess());
+        Assert.assertEquals("Token refresh should not have been attempted again", 1, refreshCount.get());
+    }
+
+    /**
+     * Testing concurrent calls with a bad auth token when restClient has a token provider
+     * Expect a single refresh shared by all the requests.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentCallsWithBadTokenShareRefresh() throws Exception {
+        RestClient.clearCaches();
+        final AtomicInteger refreshCount = new AtomicInteger();
+        AuthTokenProvider authTokenProvider = new AuthTokenProvider() {
+            @Override
+            public String getNewAuthToken() {
+                refreshCount.incrementAndGet();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                return authToken;
+            }
+
+            @Override
+            public String getRefreshToken() {
+                return null;
+            }
+
+            @Override
+            public long getLastRefreshTime() {
+                return -1;
+            }
+
+            @Override
+            public String getInstanceUrl() { return instanceUrl; }
+        };
+        final RestClient unauthenticatedRestClient = new RestClient(clientInfo, BAD_TOKEN, httpAccess, authTokenProvider);
+        final int countRequests = 4;
+        final BlockingQueue<RestResponse> responses = new ArrayBlockingQueue<>(countRequests);
+        for (int i = 0; i < countRequests; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        responses.add(unauthenticatedRestClient.sendSync(RestRequest.getRequestForResources(TestCredentials.API_VERSION)));
+                    } catch (IOException e) {
+                        // test will time out
+                    }
+                }
+            }).start();
+        }
+        for (int i = 0; i < countRequests; i++) {
+            RestResponse response = responses.poll(30, TimeUnit.SECONDS);
+            Assert.assertNotNull("Timed out waiting for response", response);
+            Assert.assertTrue("Expected success", response.isSuccess());
+        }
+        Assert.assertEquals("Token should have been refreshed once", 1, refreshCount.get());
+        Assert.assertEquals("Wrong reactive refresh count", 1, unauthenticatedRestClient.getOAuthRefreshInterceptor().getReactiveRefreshCount());
+    }
+
+    /**
+     * Testing identical get calls sent at the same time with the future based sendAsync
+     * Expect a single call to the server with its response handed to every caller.
+     * @throws Exception
+     */
+    @Test
+    public void testSendAsyncCoalescesIdenticalRequests() throws Exception {
+        long coalescedBefore = RestClient.getCoalescedRequestCount();
+        RestFuture<RestResponse> future1 = restClient.sendAsync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        RestFuture<RestResponse> future2 = restClient.sendAsync(RestRequest.getRequestForResources(TestCredentials.API_VERSION));
+        RestResponse response1 = future1.get(30, TimeUnit.SECONDS);
+        RestResponse response2 = future2.get(30, TimeUnit.SECONDS);
+        checkResponse(response1, HttpURLConnection.HTTP_OK, false);
+        checkKeys(response2.asJSONObject(), "sobjects", "search", "recent");
+        if (RestClient.getCoalescedRequestCount() > coalescedBefore) {
+            Assert.assertSame("Coalesced requests should share the response", response1, response2);
+
+            // Shared response can be streamed by each caller
+            for (RestResponse response : new RestResponse[] {response1, response2}) {
+                InputStream in = response.asInputStream();
+                try {
+                    Assert.assertTrue("Shared response should be streamable", in.read() != -1);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Testing chaining of dependent requests with the future based sendAsync
+     * @throws Exception
+     */
+    @Test
+    public void testSendAsyncChaining() throws Exception {
+        final IdName newAccountIdName = createAccount();
+        RestResponse response = restClient.sendAsync(RestRequest.getRequestForQuery(TestCredentials.API_VERSION,
+                "select Id from Account where Id = '" + newAccountIdName.id + "'"))
+                .then(new RestFuture.Continuation<RestResponse, RestResponse>() {
+                    @Override
+                    public RestFuture<RestResponse> then(RestResponse queryResponse) throws Exception {
+                        String id = queryResponse.asJSONObject().getJSONArray("records").getJSONObject(0).getString("Id");
+                        return restClient.sendAsync(RestRequest.getRequestForRetrieve(TestCredentials.API_VERSION, ACCOUNT, id, Arrays.asList(NAME)));
+                    }
+                }).get(30, TimeUnit.SECONDS);
+        Assert.assertEquals("Wrong name", newAccountIdName.name, response.asJSONObject().getString(NAME));
+    }
+
     /**
      * Testing a get versions call to the server - check response
      * @throws Exception
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.rest;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for RestFuture
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RestFutureTest {
+
+    /**
+     * Callbacks should be invoked when future completes, or right away if it is already complete
+     */
+    @Test
+    public void testCallbacks() throws Exception {
+        RestFuture<String> future = new RestFuture<>();
+        final AtomicReference<String> before = new AtomicReference<>();
+        future.addCallback(new RecordingCallback(before));
+        Assert.assertNull("Callback should not have been invoked yet", before.get());
+        Assert.assertTrue("Future should have been completed", future.complete("result"));
+        Assert.assertFalse("Future was already completed", future.complete("other"));
+        Assert.assertEquals("Wrong result passed to callback", "result", before.get());
+        final AtomicReference<String> after = new AtomicReference<>();
+        future.addCallback(new RecordingCallback(after));
+        Assert.assertEquals("Wrong result passed to callback", "result", after.get());
+        Assert.assertEquals("Wrong result", "result", future.get());
+    }
+
+    /**
+     * Chained steps should run as previous steps complete, errors should propagate
+     */
+    @Test
+    public void testChaining() throws Exception {
+        final RestFuture<String> first = new RestFuture<>();
+        final RestFuture<Integer> second = new RestFuture<>();
+        RestFuture<Integer> chained = first.then(new RestFuture.Continuation<String, Integer>() {
+            @Override
+            public RestFuture<Integer> then(String result) {
+                return second;
+            }
+        }).map(new RestFuture.Transformation<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer result) {
+                return result * 2;
+            }
+        });
+        first.complete("first");
+        Assert.assertFalse("Chain should not be complete yet", chained.isDone());
+        second.complete(21);
+        Assert.assertEquals("Wrong result", Integer.valueOf(42), chained.get(1, TimeUnit.SECONDS));
+
+        RestFuture<String> failing = new RestFuture<>();
+        RestFuture<String> mapped = failing.map(new RestFuture.Transformation<String, String>() {
+            @Override
+            public String apply(String result) {
+                return result;
+            }
+        });
+        failing.completeExceptionally(new IllegalStateException("failed"));
+        try {
+            mapped.get();
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue("Wrong cause", e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Cancelling a chained future should cancel the step it depends on
+     */
+    @Test
+    public void testCancel() throws Exception {
+        RestFuture<String> first = new RestFuture<>();
+        RestFuture<String> chained = first.map(new RestFuture.Transformation<String, String>() {
+            @Override
+            public String apply(String result) {
+                return result;
+            }
+        });
+        Assert.assertTrue("Future should have been cancelled", chained.cancel(true));
+        Assert.assertTrue("Upstream future should have been cancelled", first.isCancelled());
+        try {
+            chained.get();
+            Assert.fail("CancellationException expected");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * get with timeout should time out if future does not complete
+     */
+    @Test
+    public void testGetTimeout() throws Exception {
+        try {
+            new RestFuture<String>().get(10, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException expected");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    private static class RecordingCallback implements RestFuture.Callback<String> {
+        private final AtomicReference<String> ref;
+
+        RecordingCallback(AtomicReference<String> ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        public void onSuccess(String result) {
+            ref.set(result);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            ref.set(exception.getMessage());
+        }
+    }
+}
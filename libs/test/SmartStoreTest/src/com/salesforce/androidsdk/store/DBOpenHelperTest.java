@@ -33,6 +33,7 @@ import com.salesforce.androidsdk.accounts.UserAccount;
 import com.salesforce.androidsdk.analytics.EventBuilderHelper;
 import com.salesforce.androidsdk.analytics.security.Encryptor;
 import com.salesforce.androidsdk.smartstore.store.DBOpenHelper;
+import com.salesforce.androidsdk.smartstore.store.SoupBlobFormat;
 
 import net.sqlcipher.database.SQLiteDatabase;
 
@@ -45,6 +46,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
@@ -353,7 +356,7 @@ public class DBOpenHelperTest {
 	public void testGetSizeOfDir() throws JSONException {
 		DBOpenHelper helper = DBOpenHelper.getOpenHelper(targetContext, TEST_DB, null, null);
 		String contents = "{size:9}";
-		String encryptedContents = Encryptor.hash(contents, PASSCODE);
+		byte[] encryptedContents = SoupBlobFormat.encode(new JSONObject(contents).toString(), PASSCODE);
 
 		// Create first subdirectory
 		helper.createExternalBlobsDirectory(TEST_SOUP);
@@ -370,7 +373,7 @@ public class DBOpenHelperTest {
 		}
 
 		// Total size of all files should be 2 (since two subdirs) * 100 (since 100 files each) * filesize of each file after encryption
-        Assert.assertEquals("Total file sizes of both subdirectories is not correct.", 2 * 100 * (encryptedContents.length() + 1), helper.getSizeOfDir(null));
+        Assert.assertEquals("Total file sizes of both subdirectories is not correct.", 2 * 100 * encryptedContents.length, helper.getSizeOfDir(null));
 	}
 
 	/**
@@ -493,6 +496,72 @@ public class DBOpenHelperTest {
 		File blobFile = new File(helper.getExternalSoupBlobsPath(TEST_SOUP), "soupelt_" + soupEntryId);
 		blobFile.delete();
 	}
+
+	/**
+	 * Ensures soup blobs written in the legacy (Base64 encoded) format can still be read
+	 */
+    @Test
+	public void testLoadLegacySoupBlob() throws JSONException, IOException {
+		DBOpenHelper helper = DBOpenHelper.getOpenHelper(targetContext, TEST_DB, null, null);
+		helper.createExternalBlobsDirectory(TEST_SOUP);
+		long soupEntryId = System.currentTimeMillis();
+		JSONObject soupElt = new JSONObject("{testKey:" + soupEntryId + "}");
+
+		// Write blob the way it used to be written
+		File blobFile = helper.getSoupBlobFile(TEST_SOUP, soupEntryId);
+		try (FileOutputStream outputStream = new FileOutputStream(blobFile, false)) {
+			outputStream.write(Encryptor.encryptBytes(soupElt.toString(), PASSCODE));
+		}
+
+		// Act
+		JSONObject result = helper.loadSoupBlob(TEST_SOUP, soupEntryId, PASSCODE);
+
+		// Verify
+        Assert.assertNotNull("Legacy soup blob could not be read.", result);
+        Assert.assertEquals("Retrieved soup does not have expected values.", soupEntryId, result.getLong("testKey"));
+
+		// Clean up
+		blobFile.delete();
+	}
+
+	/**
+	 * Ensures large soup blobs are compressed on disk and read back intact
+	 */
+    @Test
+	public void testSaveAndLoadLargeSoupBlob() throws JSONException {
+		DBOpenHelper helper = DBOpenHelper.getOpenHelper(targetContext, TEST_DB, null, null);
+		helper.createExternalBlobsDirectory(TEST_SOUP);
+		long soupEntryId = System.currentTimeMillis();
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			value.append("value").append(i % 10);
+		}
+		JSONObject soupElt = new JSONObject();
+		soupElt.put("key", value.toString());
+
+		// Act
+		helper.saveSoupBlob(TEST_SOUP, soupEntryId, soupElt, PASSCODE);
+		StringBuilder result = new StringBuilder("prefix:");
+		boolean loaded = helper.loadSoupBlobInto(result, TEST_SOUP, soupEntryId, PASSCODE);
+
+		// Verify
+		File blobFile = helper.getSoupBlobFile(TEST_SOUP, soupEntryId);
+        Assert.assertTrue("Soup blob could not be read.", loaded);
+        Assert.assertEquals("Retrieved soup does not have expected values.", "prefix:" + soupElt.toString(), result.toString());
+        Assert.assertTrue("Soup blob should have been compressed.", blobFile.length() < soupElt.toString().length() / 2);
+
+		// Reading a missing blob should leave builder untouched
+        Assert.assertFalse("Missing soup blob should not be readable.", helper.loadSoupBlobInto(result, TEST_SOUP, soupEntryId + 1, PASSCODE));
+        Assert.assertEquals("Builder should be unchanged.", "prefix:" + soupElt.toString(), result.toString());
+
+		// Reading a blob with the wrong key should leave builder untouched
+        Assert.assertFalse("Soup blob should not be readable with wrong key.", helper.loadSoupBlobInto(result, TEST_SOUP, soupEntryId, PASSCODE + "x"));
+        Assert.assertEquals("Builder should be unchanged.", "prefix:" + soupElt.toString(), result.toString());
+
+		// Clean up
+		blobFile.delete();
+	}
+
 	/**
 	 * Ensures soup was successfully removed from file system
 	 */
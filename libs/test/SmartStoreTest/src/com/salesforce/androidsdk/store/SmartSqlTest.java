@@ -31,6 +31,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartSqlHelper;
 import com.salesforce.androidsdk.smartstore.store.SmartSqlHelper.SmartSqlException;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.smartstore.store.SmartStore.Type;
@@ -179,6 +180,26 @@ public class SmartSqlTest extends SmartStoreTestCase {
 		}
 	}
 
+	/**
+	 * Test that smart sql translations are cached and invalidated when a soup is altered
+	 */
+    @Test
+	public void testConvertSmartSqlCache() throws JSONException {
+		SmartSqlHelper smartSqlHelper = SmartSqlHelper.getInstance(store.getDatabase());
+		smartSqlHelper.clearCache();
+		String smartSql = "select {employees:firstName} from {employees}";
+        Assert.assertEquals("select TABLE_1_0 from TABLE_1", store.convertSmartSql(smartSql));
+        Assert.assertEquals("select TABLE_1_0 from TABLE_1", store.convertSmartSql(smartSql));
+        Assert.assertEquals("Wrong miss count", 1, smartSqlHelper.getCacheMissCount());
+        Assert.assertEquals("Wrong hit count", 1, smartSqlHelper.getCacheHitCount());
+
+		// Altering soup should invalidate translation
+		store.alterSoup(EMPLOYEES_SOUP, new IndexSpec[] {new IndexSpec(LAST_NAME, Type.string), new IndexSpec(FIRST_NAME, Type.json1)}, false);
+        Assert.assertEquals("select json_extract(soup, '$.firstName') from TABLE_1", store.convertSmartSql(smartSql));
+        Assert.assertEquals("Wrong miss count", 2, smartSqlHelper.getCacheMissCount());
+        Assert.assertEquals("Wrong hit count", 1, smartSqlHelper.getCacheHitCount());
+	}
+
     @Test
 	public void testConvertSmartSqlWithJSON1() {
         Assert.assertEquals("select TABLE_1_1, json_extract(soup, '$.education') from TABLE_1 where json_extract(soup, '$.education') = 'MIT'",
@@ -645,6 +645,120 @@ public class SmartStoreAlterTest extends SmartStoreTestCase {
         assertRowCount(1, "address.street", "1 market");
     }
 
+    /**
+     * Test alterSoup and reIndexSoup on a soup with more elements than fit in one batch
+     * @throws JSONException
+     */
+    @Test
+    public void testAlterSoupAndReIndexSoupInBatches() throws JSONException {
+        IndexSpec[] indexSpecs = new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string)};
+        store.registerSoup(TEST_SOUP, indexSpecs);
+        int count = SmartStore.REINDEX_BATCH_SIZE * 2 + 10;
+        store.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                store.create(TEST_SOUP, new JSONObject("{'lastName':'Doe" + i + "', 'address':{'city':'" + (i % 2 == 0 ? "San Francisco" : "Paris") + "','street':'1 market'}}"), false);
+            }
+            store.setTransactionSuccessful();
+        } finally {
+            store.endTransaction();
+        }
+
+        // Alter soup - add city and re-index
+        store.alterSoup(TEST_SOUP, new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string), new IndexSpec("address.city", SmartStore.Type.string)}, true);
+        Assert.assertEquals("No long operation should be left", 0, store.getLongOperations().length);
+        Assert.assertEquals("Wrong number of soup elements", count, store.countQuery(QuerySpec.buildAllQuerySpec(TEST_SOUP, null, null, 10)));
+        assertRowCount(1, "lastName", "Doe" + (count - 1));
+        assertRowCount(count / 2, "address.city", "San Francisco");
+        assertRowCount(count / 2, "address.city", "Paris");
+
+        // Alter soup - add street without re-indexing then re-index street
+        store.alterSoup(TEST_SOUP, new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string), new IndexSpec("address.city", SmartStore.Type.string), new IndexSpec("address.street", SmartStore.Type.string)}, false);
+        assertRowCount(0, "address.street", "1 market");
+        store.reIndexSoup(TEST_SOUP, new String[] {"address.street"}, true);
+        assertRowCount(count, "address.street", "1 market");
+        assertRowCount(count / 2, "address.city", "Paris");
+    }
+
+    /**
+     * Test that soup elements created while alter soup is copying rows don't take the ids of rows not copied yet
+     * @throws JSONException
+     */
+    @Test
+    public void testCreateDuringAlterSoupCopy() throws JSONException {
+        store.registerSoup(TEST_SOUP, new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string)});
+        JSONObject soupElt1Created = store.create(TEST_SOUP, new JSONObject("{'lastName':'Doe'}"));
+        JSONObject soupElt2Created = store.create(TEST_SOUP, new JSONObject("{'lastName':'Jackson'}"));
+
+        // Stop alter before rows are copied and create soup element
+        AlterSoupLongOperation operation = new AlterSoupLongOperation(store, TEST_SOUP, new SoupSpec(TEST_SOUP),
+                new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string)}, false);
+        operation.run(AlterSoupLongOperation.AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME);
+        JSONObject soupElt3Created = store.create(TEST_SOUP, new JSONObject("{'lastName':'Smith'}"));
+        Assert.assertTrue("New soup element should not reuse the id of a row to copy", idOf(soupElt3Created) > idOf(soupElt2Created));
+
+        // Finish alter
+        operation.run();
+        Assert.assertEquals("No long operation should be left", 0, store.getLongOperations().length);
+        Assert.assertEquals("Wrong number of soup elements", 3, store.countQuery(QuerySpec.buildAllQuerySpec(TEST_SOUP, null, null, 10)));
+        JSONTestHelper.assertSameJSON("Wrong soup element", soupElt1Created, store.retrieve(TEST_SOUP, idOf(soupElt1Created)).getJSONObject(0));
+        assertRowCount(1, "lastName", "Smith");
+    }
+
+    /**
+     * Test alter soup interrupted in the middle of the copy step and resumed from its saved checkpoint
+     * @throws JSONException
+     */
+    @Test
+    public void testAlterSoupResumeFromCopyCheckpoint() throws JSONException {
+        final SQLiteDatabase db = dbOpenHelper.getWritableDatabase(getEncryptionKey());
+        store.registerSoup(TEST_SOUP, new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string)});
+        String soupTableName = getSoupTableName(TEST_SOUP);
+        int count = SmartStore.REINDEX_BATCH_SIZE * 2 + 10;
+        List<Long> ids = new ArrayList<>();
+        store.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ids.add(idOf(store.create(TEST_SOUP, new JSONObject("{'lastName':'Doe" + i + "', 'address':{'city':'" + (i % 2 == 0 ? "San Francisco" : "Paris") + "'}}"), false)));
+            }
+            store.setTransactionSuccessful();
+        } finally {
+            store.endTransaction();
+        }
+
+        // Partial alter - stop after copying one batch
+        AlterSoupLongOperation operation = new AlterSoupLongOperation(store, TEST_SOUP, new SoupSpec(TEST_SOUP),
+                new IndexSpec[] {new IndexSpec("lastName", SmartStore.Type.string), new IndexSpec("address.city", SmartStore.Type.string)}, true);
+        operation.run(AlterSoupLongOperation.AlterSoupStep.LAST, 1);
+
+        // Check checkpoint
+        LongOperation[] operations = store.getLongOperations();
+        Assert.assertEquals("Wrong number of long operations found", 1, operations.length);
+        Assert.assertEquals("Wrong step", AlterSoupLongOperation.AlterSoupStep.REGISTER_SOUP_USING_TABLE_NAME, ((AlterSoupLongOperation) operations[0]).getLastStepCompleted());
+        Assert.assertEquals("Wrong checkpoint", (long) ids.get(SmartStore.REINDEX_BATCH_SIZE - 1), operations[0].getDetails().getLong("checkpointId"));
+        Cursor c = null;
+        try {
+            c = DBHelper.getInstance(db).query(db, soupTableName, null, null, null, null);
+            Assert.assertEquals("Wrong number of rows copied", SmartStore.REINDEX_BATCH_SIZE, c.getCount());
+        } finally {
+            safeClose(c);
+        }
+
+        // Simulate restart (clear cache and call resumeLongOperations)
+        DBHelper.getInstance(db).clearMemoryCache();
+        store.resumeLongOperations();
+
+        // Check soup
+        Assert.assertEquals("No long operation should be left", 0, store.getLongOperations().length);
+        Assert.assertEquals("Wrong number of soup elements", count, store.countQuery(QuerySpec.buildAllQuerySpec(TEST_SOUP, null, null, 10)));
+        for (int i : new int[] {0, SmartStore.REINDEX_BATCH_SIZE - 1, SmartStore.REINDEX_BATCH_SIZE, count - 1}) {
+            Assert.assertEquals("Wrong soup element", "Doe" + i, store.retrieve(TEST_SOUP, ids.get(i)).getJSONObject(0).getString("lastName"));
+            assertRowCount(1, "lastName", "Doe" + i);
+        }
+        assertRowCount(count / 2, "address.city", "San Francisco");
+        assertRowCount(count / 2, "address.city", "Paris");
+    }
+
     /**
      * Helper function for testReIndexSoup: count rows where field has value
      * @param expectedCount
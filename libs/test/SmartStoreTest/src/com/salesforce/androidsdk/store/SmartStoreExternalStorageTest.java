@@ -35,6 +35,7 @@ import com.salesforce.androidsdk.smartstore.store.DBOpenHelper;
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec.Order;
+import com.salesforce.androidsdk.smartstore.store.ReEncryptFilesLongOperation;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.smartstore.store.SmartStore.Type;
 import com.salesforce.androidsdk.smartstore.store.SoupSpec;
@@ -113,6 +114,46 @@ public class SmartStoreExternalStorageTest extends SmartStoreTest {
 		JSONTestHelper.assertSameJSON("Wrong result for query", soupElt, result.getJSONObject(0));
 	}
 
+	/**
+	 * Ensure re-encryption of files interrupted after the database was rekeyed is completed when long operations are resumed
+	 */
+    @Test
+	public void testChangeKeyInterrupted() throws JSONException {
+		String newPasscode = Encryptor.hash("123test", "hashing-key");
+		int count = ReEncryptFilesLongOperation.CHUNK_SIZE * 2 + 50;
+		for (int i = 0; i < count; i++) {
+			store.create(TEST_SOUP, new JSONObject("{'key':'k" + String.format("%03d", i) + "', 'value':'v" + i + "'}"));
+		}
+
+		// Record re-encryption, rekey database and only re-encrypt first chunk of files
+		final SQLiteDatabase db = dbOpenHelper.getWritableDatabase(getEncryptionKey());
+		ReEncryptFilesLongOperation operation = new ReEncryptFilesLongOperation(store, getEncryptionKey(), newPasscode);
+		db.execSQL("PRAGMA rekey = '" + newPasscode + "'");
+		operation.run(1);
+        Assert.assertTrue("Some files should have been re-encrypted", operation.getFilesReEncryptedCount() > 0);
+        Assert.assertEquals("Wrong number of long operations", 1, store.getLongOperations().length);
+        String details = store.getLongOperations()[0].getDetails().toString();
+        Assert.assertFalse("Old key should not be saved", details.contains(getEncryptionKey()));
+        Assert.assertFalse("New key should not be saved", details.contains(newPasscode));
+        Assert.assertEquals("Wrong step", ReEncryptFilesLongOperation.ReEncryptStep.RE_ENCRYPT_FILES, operation.getLastStepCompleted());
+
+		// Run another operation from scratch - files already re-encrypted should be left alone
+		new ReEncryptFilesLongOperation(store, getEncryptionKey(), newPasscode).run();
+        Assert.assertEquals("Wrong number of long operations", 1, store.getLongOperations().length);
+
+		// Resume interrupted operation
+		store = new SmartStore(dbOpenHelper, newPasscode);
+		store.resumeLongOperations();
+        Assert.assertEquals("Wrong number of long operations", 0, store.getLongOperations().length);
+
+		// Verify that data is still accessible
+		JSONArray result = store.query(QuerySpec.buildAllQuerySpec(TEST_SOUP, "key", Order.ascending, count), 0);
+        Assert.assertEquals("Wrong number of results", count, result.length());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("Wrong value", "v" + i, result.getJSONObject(i).getString("value"));
+		}
+	}
+
 	/**
 	 * Test for getDatabaseSize
 	 *
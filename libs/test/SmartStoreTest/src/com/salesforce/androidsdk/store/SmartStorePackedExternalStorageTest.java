@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.store;
+
+import androidx.test.filters.MediumTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.salesforce.androidsdk.smartstore.store.DBOpenHelper;
+import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.PackedBlobStore;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the external storage test suite with soup elements packed into segment files
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class SmartStorePackedExternalStorageTest extends SmartStoreExternalStorageTest {
+
+	@Override
+	protected void registerSoup(SmartStore store, String soupName, IndexSpec[] indexSpecs) {
+		((DBOpenHelper) dbOpenHelper).setPackedExternalStorage(true);
+		super.registerSoup(store, soupName, indexSpecs);
+	}
+
+	/**
+	 * Make sure soup elements are not stored in individual files
+	 */
+	@Test
+	public void testNoFilePerSoupElement() throws JSONException {
+		long id = idOf(store.create(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}")));
+		String soupTableName = getSoupTableName(TEST_SOUP);
+		Assert.assertNotNull("Soup should use packed storage", ((DBOpenHelper) dbOpenHelper).getPackedBlobStore(soupTableName));
+		Assert.assertFalse("There should be no file for soup element", ((DBOpenHelper) dbOpenHelper).getSoupBlobFile(soupTableName, id).exists());
+	}
+
+	/**
+	 * Make sure the offset index is correctly rebuilt from the segment files
+	 */
+	@Test
+	public void testReloadFromSegments() throws JSONException {
+		JSONObject soupElt1 = store.create(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}"));
+		JSONObject soupElt2 = store.create(TEST_SOUP, new JSONObject("{'key':'ka2', 'value':'va2'}"));
+		JSONObject soupElt3 = store.create(TEST_SOUP, new JSONObject("{'key':'ka3', 'value':'va3'}"));
+		soupElt2.put("value", "va2u");
+		soupElt2 = store.update(TEST_SOUP, soupElt2, idOf(soupElt2));
+		store.delete(TEST_SOUP, idOf(soupElt3));
+
+		// Forget in-memory index
+		PackedBlobStore.closeAll(((DBOpenHelper) dbOpenHelper).getExternalSoupBlobsPath(null));
+		PackedBlobStore packedBlobStore = ((DBOpenHelper) dbOpenHelper).getPackedBlobStore(getSoupTableName(TEST_SOUP));
+		Assert.assertEquals("Wrong number of entries", 2, packedBlobStore.size());
+		assertSameSoupAsDB(soupElt1, null, getSoupTableName(TEST_SOUP), idOf(soupElt1));
+		assertSameSoupAsDB(soupElt2, null, getSoupTableName(TEST_SOUP), idOf(soupElt2));
+		Assert.assertNull("Deleted entry should not be found", packedBlobStore.get(idOf(soupElt3)));
+	}
+
+	/**
+	 * Make sure segments with mostly dead records are compacted
+	 */
+	@Test
+	public void testCompaction() throws JSONException {
+		char[] chars = new char[PackedBlobStore.MAX_SEGMENT_SIZE / 8];
+		Arrays.fill(chars, 'x');
+		String largeValue = new String(chars);
+		long[] ids = new long[10];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = idOf(store.create(TEST_SOUP, new JSONObject().put("key", "k" + i).put("value", largeValue)));
+		}
+
+		// Overwrite everything
+		for (int i = 0; i < ids.length; i++) {
+			store.update(TEST_SOUP, new JSONObject().put("key", "k" + i).put("value", "v" + i), ids[i]);
+		}
+		PackedBlobStore packedBlobStore = ((DBOpenHelper) dbOpenHelper).getPackedBlobStore(getSoupTableName(TEST_SOUP));
+		packedBlobStore.compact();
+		Assert.assertEquals("Sealed segments should have been compacted", 1, packedBlobStore.getSegmentCount());
+		File dir = new File(((DBOpenHelper) dbOpenHelper).getExternalSoupBlobsPath(getSoupTableName(TEST_SOUP)));
+		Assert.assertTrue("Segments should have shrunk", ((DBOpenHelper) dbOpenHelper).getSizeOfDir(dir) < PackedBlobStore.MAX_SEGMENT_SIZE);
+		for (int i = 0; i < ids.length; i++) {
+			Assert.assertEquals("Wrong value", "v" + i, store.retrieve(TEST_SOUP, ids[i]).getJSONObject(0).getString("value"));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.store;
+
+import android.database.Cursor;
+import androidx.test.filters.MediumTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec.Order;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the main smart store test suite with the pool of read-only connections turned on
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class SmartStoreReadConnectionPoolTest extends SmartStoreTest {
+
+	private static final int POOL_SIZE = 2;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		store.setReadConnectionPoolSize(POOL_SIZE);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.setReadConnectionPoolSize(0);
+		super.tearDown();
+	}
+
+	/**
+	 * Make sure database was switched to write-ahead-log mode
+	 */
+	@Test
+	public void testJournalModeIsWal() {
+		Assert.assertEquals("Wrong pool size", POOL_SIZE, store.getReadConnectionPoolSize());
+		Cursor c = null;
+		try {
+			c = store.getDatabase().rawQuery("PRAGMA journal_mode", null);
+			Assert.assertTrue("Expected a row", c.moveToFirst());
+			Assert.assertEquals("Wrong journal mode", "wal", c.getString(0).toLowerCase());
+		} finally {
+			safeClose(c);
+		}
+	}
+
+	/**
+	 * Make sure queries from other threads are not blocked by an on-going transaction
+	 * and only see committed data
+	 */
+	@Test
+	public void testQueryDuringWriteTransaction() throws Exception {
+		store.create(TEST_SOUP, new JSONObject("{'key':'ka1'}"));
+		final CountDownLatch transactionStarted = new CountDownLatch(1);
+		final CountDownLatch queryDone = new CountDownLatch(1);
+		final Exception[] writerException = new Exception[1];
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final SQLiteDatabase db = store.getDatabase();
+				synchronized (db) {
+					store.beginTransaction();
+					try {
+						store.create(TEST_SOUP, new JSONObject("{'key':'ka2'}"), false);
+						transactionStarted.countDown();
+						queryDone.await(10, TimeUnit.SECONDS);
+						store.setTransactionSuccessful();
+					} catch (Exception e) {
+						writerException[0] = e;
+					} finally {
+						store.endTransaction();
+					}
+				}
+			}
+		});
+		writer.start();
+		Assert.assertTrue("Transaction did not start", transactionStarted.await(10, TimeUnit.SECONDS));
+
+		// Should not wait for transaction and should not see uncommitted element
+		QuerySpec querySpec = QuerySpec.buildAllQuerySpec(TEST_SOUP, "key", Order.ascending, 10);
+		JSONArray result = store.query(querySpec, 0);
+		Assert.assertEquals("Only committed element expected", 1, result.length());
+		Assert.assertEquals("Wrong element", "ka1", result.getJSONObject(0).getString("key"));
+		Assert.assertEquals("Wrong count", 1, store.countQuery(querySpec));
+		queryDone.countDown();
+
+		writer.join();
+		Assert.assertNull("Writer failed", writerException[0]);
+
+		// Committed element should now be visible
+		Assert.assertEquals("Wrong count after commit", 2, store.countQuery(querySpec));
+	}
+
+	/**
+	 * Make sure reads from within a transaction see uncommitted data
+	 */
+	@Test
+	public void testQueryWithinTransaction() throws Exception {
+		final SQLiteDatabase db = store.getDatabase();
+		synchronized (db) {
+			store.beginTransaction();
+			try {
+				JSONObject created = store.create(TEST_SOUP, new JSONObject("{'key':'ka1'}"), false);
+				Assert.assertEquals("Uncommitted element expected", 1, store.retrieve(TEST_SOUP, idOf(created)).length());
+				Assert.assertEquals("Wrong count", 1, store.countQuery(QuerySpec.buildAllQuerySpec(TEST_SOUP, "key", Order.ascending, 10)));
+				store.setTransactionSuccessful();
+			} finally {
+				store.endTransaction();
+			}
+		}
+	}
+}
@@ -161,6 +161,21 @@ public class SmartStoreTest extends SmartStoreTestCase {
 		JSONTestHelper.assertSameJSON("Wrong value for key d.dd.ddd3", new JSONArray("[[\"ddd32\"]]"), SmartStore.project(json, "d.dd.ddd3"));
 	}
 
+	/**
+	 * Testing projection with the path pre-parsed by IndexSpec
+	 * @throws JSONException
+	 */
+	@Test
+	public void testProjectWithIndexSpecPath() throws JSONException {
+		JSONObject json = new JSONObject("{'a':'va', 'b':null, 'c':[{'cc':1}, null, {'cc':2}], 'd': {'d4':{'e':5}}}");
+		Assert.assertEquals("Wrong value for key a", "va", new IndexSpec("a", Type.string).jsonPath.project(json));
+		Assert.assertNull("Should have been null", new IndexSpec("b", Type.string).jsonPath.project(json));
+		Assert.assertNull("Should have been null", new IndexSpec("a.x", Type.string).jsonPath.project(json));
+		Assert.assertEquals("Wrong value for key d.d4.e", 5, new IndexSpec("d.d4.e", Type.integer).jsonPath.project(json));
+		JSONTestHelper.assertSameJSON("Wrong value for key c.cc", new JSONArray("[1,2]"), new IndexSpec("c.cc", Type.integer).jsonPath.project(json));
+		JSONTestHelper.assertSameJSON("Should have returned whole object", json, new IndexSpec("", Type.string).jsonPath.project(json));
+	}
+
 	/**
 	 * Check that the meta data table (soup index map) has been created
 	 */
@@ -525,6 +540,168 @@ public class SmartStoreTest extends SmartStoreTestCase {
 		}
 	}
 	
+	/**
+	 * Testing upsertAll with external id: upsert new elements, existing elements and the same new element twice in one batch
+	 * @throws JSONException
+	 */
+	@Test
+	public void testUpsertAllWithExternalId() throws JSONException {
+		JSONObject soupElt1Upserted = store.upsert(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}"), "key");
+		JSONObject soupElt2Upserted = store.upsert(TEST_SOUP, new JSONObject("{'key':'ka2', 'value':'va2'}"), "key");
+		SystemClock.sleep(10); // to get a different last modified date
+		JSONArray soupElts = new JSONArray("[{'key':'ka2', 'value':'va2u'}, {'key':'ka3', 'value':'va3'}, {'key':'ka3', 'value':'va3u'}]");
+		JSONArray upserted = store.upsertAll(TEST_SOUP, soupElts, "key");
+		Assert.assertEquals("Wrong number of elements upserted", 3, upserted.length());
+		Assert.assertEquals("Existing element should have been updated", idOf(soupElt2Upserted), idOf(upserted.getJSONObject(0)));
+		Assert.assertEquals("Element created in batch should have been updated", idOf(upserted.getJSONObject(1)), idOf(upserted.getJSONObject(2)));
+
+		JSONObject soupElt1Retrieved = store.retrieve(TEST_SOUP, idOf(soupElt1Upserted)).getJSONObject(0);
+		JSONObject soupElt2Retrieved = store.retrieve(TEST_SOUP, idOf(soupElt2Upserted)).getJSONObject(0);
+		JSONObject soupElt3Retrieved = store.retrieve(TEST_SOUP, idOf(upserted.getJSONObject(2))).getJSONObject(0);
+		JSONTestHelper.assertSameJSON("Retrieve mismatch", soupElt1Upserted, soupElt1Retrieved);
+		JSONTestHelper.assertSameJSON("Retrieve mismatch", upserted.getJSONObject(0), soupElt2Retrieved);
+		JSONTestHelper.assertSameJSON("Retrieve mismatch", upserted.getJSONObject(2), soupElt3Retrieved);
+		Assert.assertEquals("Wrong value", "va3u", soupElt3Retrieved.getString("value"));
+
+		// Check DB
+		Cursor c = null;
+		try {
+			final SQLiteDatabase db = dbOpenHelper.getWritableDatabase(getEncryptionKey());
+			String soupTableName = getSoupTableName(TEST_SOUP);
+			c = DBHelper.getInstance(db).query(db, soupTableName, null, "id ASC", null, null);
+			Assert.assertEquals("Expected three soup elements", 3, c.getCount());
+			c.moveToPosition(1);
+			Assert.assertEquals("Wrong value in index column", "ka2", c.getString(c.getColumnIndex(soupTableName + "_0")));
+			Assert.assertTrue("Last modified date should be more recent than created date", c.getLong(c.getColumnIndex("created")) < c.getLong(c.getColumnIndex("lastModified")));
+			assertSameSoupAsDB(upserted.getJSONObject(0), c, soupTableName, idOf(soupElt2Upserted));
+			c.moveToNext();
+			Assert.assertEquals("Wrong value in index column", "ka3", c.getString(c.getColumnIndex(soupTableName + "_0")));
+			assertSameSoupAsDB(upserted.getJSONObject(2), c, soupTableName, idOf(upserted.getJSONObject(2)));
+		}
+		finally {
+			safeClose(c);
+		}
+	}
+
+	/**
+	 * Testing upsertAll with soup entry id: elements with an id are updated, the others are created
+	 * @throws JSONException
+	 */
+	@Test
+	public void testUpsertAllWithSoupEntryId() throws JSONException {
+		JSONObject soupElt1Upserted = store.upsert(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}"));
+		JSONObject soupElt1ForUpdate = new JSONObject(soupElt1Upserted.toString());
+		soupElt1ForUpdate.put("value", "va1u");
+		JSONArray upserted = store.upsertAll(TEST_SOUP, new JSONArray().put(soupElt1ForUpdate).put(new JSONObject("{'key':'ka2', 'value':'va2'}")), SmartStore.SOUP_ENTRY_ID);
+		Assert.assertEquals("Existing element should have been updated", idOf(soupElt1Upserted), idOf(upserted.getJSONObject(0)));
+		Assert.assertTrue("New element should have been created", idOf(upserted.getJSONObject(1)) > idOf(soupElt1Upserted));
+		Assert.assertEquals("Wrong value", "va1u", store.retrieve(TEST_SOUP, idOf(soupElt1Upserted)).getJSONObject(0).getString("value"));
+		Assert.assertEquals("Wrong number of elements", 2, store.countQuery(QuerySpec.buildAllQuerySpec(TEST_SOUP, "key", Order.ascending, 10)));
+	}
+
+	/**
+	 * Testing upsertAll with an element that fails after some of its writes were done: they should be rolled back
+	 * @throws JSONException
+	 */
+	@Test
+	public void testUpsertAllWithFailedElement() throws JSONException {
+		store.registerSoup(OTHER_TEST_SOUP, new IndexSpec[] {new IndexSpec("key", Type.full_text)});
+		JSONObject soupElt1Created = store.create(OTHER_TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}"));
+
+		// Without its fts row, the update of the element fails after its soup table row was updated
+		final SQLiteDatabase db = dbOpenHelper.getWritableDatabase(getEncryptionKey());
+		db.delete(getSoupTableName(OTHER_TEST_SOUP) + SmartStore.FTS_SUFFIX, "rowid = ?", new String[] {"" + idOf(soupElt1Created)});
+		JSONObject soupElt1ForUpdate = new JSONObject(soupElt1Created.toString());
+		soupElt1ForUpdate.put("value", "va1u");
+		JSONArray upserted = store.upsertAll(OTHER_TEST_SOUP, new JSONArray().put(soupElt1ForUpdate).put(new JSONObject("{'key':'ka2', 'value':'va2'}")), SmartStore.SOUP_ENTRY_ID);
+		Assert.assertEquals("Failed element should be null", JSONObject.NULL, upserted.get(0));
+		Assert.assertEquals("Failed element should not have been updated", "va1", store.retrieve(OTHER_TEST_SOUP, idOf(soupElt1Created)).getJSONObject(0).getString("value"));
+		Assert.assertEquals("Other element should have been created", "va2", store.retrieve(OTHER_TEST_SOUP, idOf(upserted.getJSONObject(1))).getJSONObject(0).getString("value"));
+	}
+
+	/**
+	 * Testing upsertAll with an external id that is not unique in the soup
+	 * @throws JSONException
+	 */
+	@Test
+	public void testUpsertAllWithNonUniqueExternalId() throws JSONException {
+		store.upsert(TEST_SOUP, new JSONObject("{'key':'ka', 'value':'va1'}"));
+		store.upsert(TEST_SOUP, new JSONObject("{'key':'ka', 'value':'va2'}"));
+		try {
+			store.upsertAll(TEST_SOUP, new JSONArray("[{'key':'kb'}, {'key':'ka'}]"), "key");
+			Assert.fail("Exception was expected: key is not unique in the soup");
+		} catch (RuntimeException e) {
+			Assert.assertTrue("Wrong exception", e.getMessage().contains("are more than one soup elements"));
+		}
+	}
+
+	/**
+	 * Testing queryAsStream: all rows should be visited in order with a single query, starting at the requested page
+	 * @throws JSONException
+	 */
+	@Test
+	public void testQueryAsStream() throws JSONException {
+		for (int i = 0; i < 10; i++) {
+			store.create(TEST_SOUP, new JSONObject("{'key':'k" + i + "', 'value':'v" + i + "'}"));
+		}
+		final JSONArray visited = new JSONArray();
+		SmartStore.RowVisitor visitor = new SmartStore.RowVisitor() {
+			@Override
+			public boolean visit(String row) throws JSONException {
+				visited.put(new JSONObject(row));
+				return true;
+			}
+		};
+
+		// Page size should only be used to compute the first row
+		store.queryAsStream(QuerySpec.buildAllQuerySpec(TEST_SOUP, "key", Order.ascending, 3), 1, visitor);
+		Assert.assertEquals("Wrong number of rows", 7, visited.length());
+		for (int i = 0; i < 7; i++) {
+			Assert.assertEquals("Wrong row", "k" + (i + 3), visited.getJSONObject(i).getString("key"));
+		}
+
+		// Smart query rows should be arrays
+		final JSONArray smartRows = new JSONArray();
+		store.queryAsStream(QuerySpec.buildSmartQuerySpec("select {" + TEST_SOUP + ":key} from {" + TEST_SOUP + "} order by {" + TEST_SOUP + ":key} desc", 4), new SmartStore.RowVisitor() {
+			@Override
+			public boolean visit(String row) throws JSONException {
+				smartRows.put(new JSONArray(row));
+				return smartRows.length() < 2; // stop after second row
+			}
+		});
+		Assert.assertEquals("Wrong number of rows", 2, smartRows.length());
+		Assert.assertEquals("Wrong row", "k9", smartRows.getJSONArray(0).getString(0));
+		Assert.assertEquals("Wrong row", "k8", smartRows.getJSONArray(1).getString(0));
+	}
+
+	/**
+	 * Testing that compiled statements are reused by lookupSoupEntryId
+	 * @throws JSONException
+	 */
+	@Test
+	public void testQueryStatementCache() throws JSONException {
+		JSONObject soupElt1 = store.create(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va1'}"));
+		JSONObject soupElt2 = store.create(TEST_SOUP, new JSONObject("{'key':'ka2', 'value':'va2'}"));
+		final SQLiteDatabase db = dbOpenHelper.getWritableDatabase(getEncryptionKey());
+		DBHelper dbHelper = DBHelper.getInstance(db);
+		long hits = dbHelper.getQueryStatementCacheHitCount();
+		long misses = dbHelper.getQueryStatementCacheMissCount();
+		Assert.assertEquals("Wrong id", idOf(soupElt1), store.lookupSoupEntryId(TEST_SOUP, "key", "ka1"));
+		Assert.assertEquals("Should not have been found", -1, store.lookupSoupEntryId(TEST_SOUP, "key", "ka3"));
+		Assert.assertEquals("Wrong id", idOf(soupElt2), store.lookupSoupEntryId(TEST_SOUP, "key", "ka2"));
+		Assert.assertEquals("Wrong number of statements compiled", misses + 1, dbHelper.getQueryStatementCacheMissCount());
+		Assert.assertEquals("Wrong number of statements reused", hits + 2, dbHelper.getQueryStatementCacheHitCount());
+
+		// Duplicate values should still be detected
+		store.create(TEST_SOUP, new JSONObject("{'key':'ka1', 'value':'va3'}"));
+		try {
+			store.lookupSoupEntryId(TEST_SOUP, "key", "ka1");
+			Assert.fail("Exception was expected: key is not unique in the soup");
+		} catch (RuntimeException e) {
+			Assert.assertTrue("Wrong exception", e.getMessage().contains("are more than one soup elements"));
+		}
+	}
+
 	/**
 	 * Testing retrieve: create multiple soup elements and retrieves them back
 	 * @throws JSONException 
@@ -34,6 +34,7 @@ import com.salesforce.androidsdk.analytics.EventBuilderHelper;
 import com.salesforce.androidsdk.smartstore.store.DBHelper;
 import com.salesforce.androidsdk.smartstore.store.DBOpenHelper;
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.PackedBlobStore;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.util.test.JSONTestHelper;
 
@@ -195,7 +196,13 @@ public abstract class SmartStoreTestCase {
 
 	protected void checkFileSystem(String soupName, long[] expectedIds, boolean shouldExist) {
 		String soupTableName = getSoupTableName(soupName);
+		PackedBlobStore packedBlobStore = ((DBOpenHelper) dbOpenHelper).getPackedBlobStore(soupTableName);
 		for (long expectedId : expectedIds) {
+			if (packedBlobStore != null) {
+				Assert.assertEquals("Packed external storage for " + expectedId + (shouldExist ? " should" : " should not") + " exist",
+						shouldExist, packedBlobStore.get(expectedId) != null);
+				continue;
+			}
 			File file = ((DBOpenHelper) dbOpenHelper).getSoupBlobFile(soupTableName, expectedId);
 			if (shouldExist) {
 				Assert.assertTrue("External file for " + expectedId + " should exist", file.exists());
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.manager;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.salesforce.androidsdk.smartsync.target.SyncDownTarget;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for SyncDownPrefetcher
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SyncDownPrefetcherTest {
+
+    private static final int COUNT_PAGES = 10;
+
+    private ExecutorService threadPool;
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    /**
+     * Pages should come back in order and no more than max pages should be fetched ahead
+     */
+    @Test
+    public void testPagesInOrderAndBounded() throws Exception {
+        final int maxPages = 2;
+        PagedTarget target = new PagedTarget(COUNT_PAGES, -1);
+        SyncDownPrefetcher prefetcher = new SyncDownPrefetcher(null, target, maxPages, threadPool);
+        try {
+            for (int i = 0; i < COUNT_PAGES; i++) {
+                Thread.sleep(10); // slow "save"
+                JSONArray page = prefetcher.next();
+                Assert.assertNotNull("Page expected", page);
+                Assert.assertEquals("Wrong page", i, page.getInt(0));
+
+                // Pages fetched: consumed ones + the ones queued + the one blocked on a full queue
+                Assert.assertTrue("Too many pages fetched ahead", target.fetched.get() <= i + 1 + maxPages + 1);
+            }
+            Assert.assertNull("No more pages expected", prefetcher.next());
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    /**
+     * Exception thrown while fetching a page should be rethrown when that page is asked for
+     */
+    @Test
+    public void testFetchFailure() throws Exception {
+        PagedTarget target = new PagedTarget(COUNT_PAGES, 3);
+        SyncDownPrefetcher prefetcher = new SyncDownPrefetcher(null, target, 2, threadPool);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("Wrong page", i, prefetcher.next().getInt(0));
+            }
+            try {
+                prefetcher.next();
+                Assert.fail("Exception expected");
+            } catch (IOException e) {
+                Assert.assertEquals("Wrong exception", "Failed to fetch page 3", e.getMessage());
+            }
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    /**
+     * Error thrown while fetching a page should be rethrown (wrapped) instead of leaving the sync down waiting
+     */
+    @Test
+    public void testFetchError() throws Exception {
+        final AssertionError error = new AssertionError("Failed to fetch");
+        PagedTarget target = new PagedTarget(COUNT_PAGES, -1) {
+            @Override
+            public JSONArray continueFetch(SyncManager syncManager) {
+                throw error;
+            }
+        };
+        SyncDownPrefetcher prefetcher = new SyncDownPrefetcher(null, target, 2, threadPool);
+        try {
+            prefetcher.next();
+            Assert.fail("Exception expected");
+        } catch (SyncManager.SmartSyncException e) {
+            Assert.assertSame("Wrong cause", error, e.getCause());
+        } finally {
+            prefetcher.stop();
+        }
+    }
+
+    /**
+     * Stopped prefetcher should not fetch more pages
+     */
+    @Test
+    public void testStop() throws Exception {
+        PagedTarget target = new PagedTarget(COUNT_PAGES, -1);
+        SyncDownPrefetcher prefetcher = new SyncDownPrefetcher(null, target, 1, threadPool);
+        Assert.assertEquals("Wrong page", 0, prefetcher.next().getInt(0));
+        prefetcher.stop();
+        Thread.sleep(50);
+        int fetched = target.fetched.get();
+        Thread.sleep(50);
+        Assert.assertEquals("No pages should have been fetched after stop", fetched, target.fetched.get());
+        Assert.assertTrue("Not all pages should have been fetched", fetched < COUNT_PAGES);
+    }
+
+    /**
+     * Target returning pages made of a single number
+     */
+    private static class PagedTarget extends SyncDownTarget {
+        private final int countPages;
+        private final int failingPage;
+        final AtomicInteger fetched = new AtomicInteger();
+
+        PagedTarget(int countPages, int failingPage) {
+            this.countPages = countPages;
+            this.failingPage = failingPage;
+        }
+
+        @Override
+        public JSONArray startFetch(SyncManager syncManager, long maxTimeStamp) {
+            return null;
+        }
+
+        @Override
+        public JSONArray continueFetch(SyncManager syncManager) throws IOException, JSONException {
+            int page = fetched.get();
+            if (page == failingPage) {
+                throw new IOException("Failed to fetch page " + page);
+            }
+            if (page >= countPages) {
+                return null;
+            }
+            fetched.incrementAndGet();
+            return new JSONArray().put(page);
+        }
+
+        @Override
+        protected Set<String> getRemoteIds(SyncManager syncManager, Set<String> localIds) {
+            return null;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import androidx.test.filters.LargeTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartsync.target.BatchSyncUpTarget;
 import com.salesforce.androidsdk.smartsync.target.LayoutSyncDownTarget;
 import com.salesforce.androidsdk.smartsync.target.MetadataSyncDownTarget;
 import com.salesforce.androidsdk.smartsync.target.MruSyncDownTarget;
@@ -121,6 +122,22 @@ public class SyncManagerTest extends SyncManagerTestCase {
         checkDb(idToFields, ACCOUNTS_SOUP);
 	}
 
+    /**
+     * Sync down the test accounts with streaming turned on, check smart store
+     */
+    @Test
+    public void testSyncDownStreamed() throws Exception {
+        syncManager.setSyncDownStreaming(true);
+        try {
+            trySyncDown(MergeMode.OVERWRITE);
+
+            // Check that db was correctly populated
+            checkDb(idToFields, ACCOUNTS_SOUP);
+        } finally {
+            syncManager.setSyncDownStreaming(false);
+        }
+    }
+
     /**
      * Sync down the test accounts, make some local changes, sync down again with merge mode LEAVE_IF_CHANGED then sync down with merge mode OVERWRITE
      */
@@ -461,6 +478,76 @@ public class SyncManagerTest extends SyncManagerTestCase {
         checkServerDeleted(idsLocallyDeleted, Constants.ACCOUNT);
 	}
 
+    /**
+     * Sync down the test accounts, modify a few, sync up in batches of 2 using BatchSyncUpTarget, check smartstore and server afterwards
+     */
+    @Test
+    public void testBatchSyncUpWithLocallyUpdatedRecords() throws Exception {
+        // First sync down
+        trySyncDown(MergeMode.OVERWRITE);
+
+        // Update a few entries locally
+        Map<String, Map<String, Object>> idToFieldsLocallyUpdated = makeLocalChanges(idToFields, ACCOUNTS_SOUP);
+
+        // Sync up
+        trySyncUp(new BatchSyncUpTarget(null, null, 2), 3, MergeMode.OVERWRITE);
+
+        // Check that db doesn't show entries as locally modified anymore
+        Set<String> ids = idToFieldsLocallyUpdated.keySet();
+        checkDbStateFlags(ids, false, false, false, ACCOUNTS_SOUP);
+
+        // Check server
+        checkServer(idToFieldsLocallyUpdated, Constants.ACCOUNT);
+    }
+
+    /**
+     * Create accounts locally, sync up in batches of 2 using BatchSyncUpTarget, check smartstore and server afterwards
+     */
+    @Test
+    public void testBatchSyncUpWithLocallyCreatedRecords() throws Exception {
+        // Create a few entries locally
+        String[] names = new String[] { createRecordName(Constants.ACCOUNT),
+                createRecordName(Constants.ACCOUNT),
+                createRecordName(Constants.ACCOUNT) };
+        createAccountsLocally(names);
+
+        // Sync up
+        trySyncUp(new BatchSyncUpTarget(null, null, 2), 3, MergeMode.LEAVE_IF_CHANGED);
+
+        // Check that db doesn't show entries as locally created anymore and that they use sfdc id
+        Map<String, Map<String, Object>> idToFieldsCreated = getIdToFieldsByName(ACCOUNTS_SOUP, new String[]{Constants.NAME, Constants.DESCRIPTION}, Constants.NAME, names);
+        checkDbStateFlags(idToFieldsCreated.keySet(), false, false, false, ACCOUNTS_SOUP);
+
+        // Check server
+        checkServer(idToFieldsCreated, Constants.ACCOUNT);
+
+        // Adding to idToFields so that they get deleted in tearDown
+        idToFields.putAll(idToFieldsCreated);
+    }
+
+    /**
+     * Sync down the test accounts, delete a few, sync up in batches of 2 using BatchSyncUpTarget, check smartstore and server afterwards
+     */
+    @Test
+    public void testBatchSyncUpWithLocallyDeletedRecords() throws Exception {
+        // First sync down
+        trySyncDown(MergeMode.OVERWRITE);
+
+        // Delete a few entries locally
+        String[] allIds = idToFields.keySet().toArray(new String[0]);
+        String[] idsLocallyDeleted = new String[] { allIds[0], allIds[1], allIds[2] };
+        deleteRecordsLocally(ACCOUNTS_SOUP, idsLocallyDeleted);
+
+        // Sync up
+        trySyncUp(new BatchSyncUpTarget(null, null, 2), 3, MergeMode.OVERWRITE);
+
+        // Check that db doesn't contain those entries anymore
+        checkDbDeleted(ACCOUNTS_SOUP, idsLocallyDeleted, Constants.ID);
+
+        // Check server
+        checkServerDeleted(idsLocallyDeleted, Constants.ACCOUNT);
+    }
+
     /**
      * Create accounts locally, delete them locally, sync up with merge mode LEAVE_IF_CHANGED, check smartstore
      *
@@ -1186,6 +1273,50 @@ public class SyncManagerTest extends SyncManagerTestCase {
         Assert.assertTrue("Wrong time stamp", syncManager.getSyncStatus(syncId).getMaxTimeStamp() > maxTimeStamp);
     }
 
+    /**
+     * Tests incremental refresh-sync-down: records not modified on the server since they were fetched should not be downloaded again
+     * @throws Exception
+     */
+    @Test
+    public void testIncrementalRefreshSyncDown() throws Exception {
+        // Setup has created records on the server
+        // Adding soup elements with just ids to soup
+        for (String id : idToFields.keySet()) {
+            JSONObject soupElement = new JSONObject();
+            soupElement.put(Constants.ID, id);
+            smartStore.create(ACCOUNTS_SOUP, soupElement);
+        }
+        // Running an incremental refresh-sync-down for soup (no modification dates in soup, so all records are downloaded)
+        RefreshSyncDownTarget target = new RefreshSyncDownTarget(REFRESH_FIELDLIST, Constants.ACCOUNT, ACCOUNTS_SOUP, true);
+        target.setCountIdsPerSoql(2);
+        trySyncDown(MergeMode.OVERWRITE, target, ACCOUNTS_SOUP, idToFields.size(), idToFields.size() / 2, null);
+        checkDb(idToFields, ACCOUNTS_SOUP);
+
+        // Changing the name of a record in the soup without marking it as dirty (to find out whether it gets downloaded again)
+        String[] allIds = idToFields.keySet().toArray(new String[0]);
+        Arrays.sort(allIds);
+        String unchangedId = allIds[1];
+        JSONObject unchangedRecord = smartStore.query(QuerySpec.buildExactQuerySpec(ACCOUNTS_SOUP, Constants.ID, unchangedId, Constants.ID, QuerySpec.Order.ascending, 1), 0).getJSONObject(0);
+        unchangedRecord.put(Constants.NAME, "not-downloaded-again");
+        smartStore.upsert(ACCOUNTS_SOUP, unchangedRecord);
+
+        // Make some remote change (not touching the record changed locally)
+        Map<String, Map<String, Object>> idToFieldsUpdated = makeRemoteChanges(idToFields, Constants.ACCOUNT);
+        Assert.assertFalse("Record should not have changed on the server", idToFieldsUpdated.containsKey(unchangedId));
+
+        // Running an incremental refresh-sync-down again
+        target = new RefreshSyncDownTarget(REFRESH_FIELDLIST, Constants.ACCOUNT, ACCOUNTS_SOUP, true);
+        trySyncDown(MergeMode.OVERWRITE, target, ACCOUNTS_SOUP, idToFields.size(), 1, null);
+
+        // Records modified on the server should have been downloaded, others should have been left alone
+        Map<String, Map<String, Object>> idToFieldsExpected = new HashMap<>(idToFields);
+        idToFieldsExpected.putAll(idToFieldsUpdated);
+        Map<String, Object> unchangedFields = new HashMap<>(idToFields.get(unchangedId));
+        unchangedFields.put(Constants.NAME, "not-downloaded-again");
+        idToFieldsExpected.put(unchangedId, unchangedFields);
+        checkDb(idToFieldsExpected, ACCOUNTS_SOUP);
+    }
+
     /**
      * Tests if ghost records are cleaned locally for a refresh target.
      */
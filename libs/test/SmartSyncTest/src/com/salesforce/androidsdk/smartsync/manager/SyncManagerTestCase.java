@@ -34,6 +34,7 @@ import com.salesforce.androidsdk.rest.RestResponse;
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
+import com.salesforce.androidsdk.smartsync.target.BatchSyncUpTarget;
 import com.salesforce.androidsdk.smartsync.target.SyncDownTarget;
 import com.salesforce.androidsdk.smartsync.target.SyncTarget;
 import com.salesforce.androidsdk.smartsync.target.SyncUpTarget;
@@ -601,7 +602,9 @@ abstract public class SyncManagerTestCase extends ManagerTestCase {
         if (expectSyncFailure) {
             checkStatus(queue.getNextSyncUpdate(), SyncState.Type.syncUp, syncId, target, options, SyncState.Status.FAILED, 0, numberChanges);
         } else {
-            for (int i = 1; i < numberChanges; i++) {
+            // Batch sync up targets report progress once per batch
+            int step = target instanceof BatchSyncUpTarget ? ((BatchSyncUpTarget) target).getMaxBatchSize() : 1;
+            for (int i = step; i < numberChanges; i += step) {
                 checkStatus(queue.getNextSyncUpdate(), SyncState.Type.syncUp, syncId, target, options, SyncState.Status.RUNNING, i * 100 / numberChanges, numberChanges);
             }
             checkStatus(queue.getNextSyncUpdate(), SyncState.Type.syncUp, syncId, target, options, SyncState.Status.DONE, 100, numberChanges);
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.manager;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for SyncScheduler
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SyncSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private SyncScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new SyncScheduler(4);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Tasks on different soups should run at the same time
+     */
+    @Test
+    public void testTasksOnDifferentSoupsRunConcurrently() throws InterruptedException {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (String soupName : new String[] {"soup1", "soup2"}) {
+            scheduler.submit(new SyncScheduler.Task(-1, soupName, SyncManager.Priority.NORMAL, new Runnable() {
+                @Override
+                public void run() {
+                    bothStarted.countDown();
+                    try {
+                        if (bothStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        // test will fail
+                    }
+                }
+            }, null));
+        }
+        Assert.assertTrue("Tasks should have run concurrently", done.await(TIMEOUT_SECONDS * 2, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tasks on the same soup should run one at a time
+     */
+    @Test
+    public void testTasksOnSameSoupRunOneAtATime() throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(new SyncScheduler.Task(i, "soup", SyncManager.Priority.NORMAL, new TrackingRunnable(running, maxRunning, done), null));
+        }
+        Assert.assertTrue("Tasks should have completed", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Only one task should have run at a time", 1, maxRunning.get());
+    }
+
+    /**
+     * Tasks sharing any of their soups should run one at a time
+     */
+    @Test
+    public void testTasksOnOverlappingSoupsRunOneAtATime() throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(3);
+        scheduler.submit(new SyncScheduler.Task(1, Arrays.asList("soup1", "soup2"), SyncManager.Priority.NORMAL, new TrackingRunnable(running, maxRunning, done), null));
+        scheduler.submit(new SyncScheduler.Task(2, Arrays.asList("soup2", "soup3"), SyncManager.Priority.NORMAL, new TrackingRunnable(running, maxRunning, done), null));
+        scheduler.submit(new SyncScheduler.Task(3, Arrays.asList("soup3", "soup1"), SyncManager.Priority.NORMAL, new TrackingRunnable(running, maxRunning, done), null));
+        Assert.assertTrue("Tasks should have completed", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Only one task should have run at a time", 1, maxRunning.get());
+    }
+
+    /**
+     * No more than max concurrent tasks should run at the same time
+     */
+    @Test
+    public void testMaxConcurrentTasks() throws InterruptedException {
+        scheduler.setMaxConcurrentTasks(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            scheduler.submit(new SyncScheduler.Task(i, "soup" + i, SyncManager.Priority.NORMAL, new TrackingRunnable(running, maxRunning, done), null));
+        }
+        Assert.assertTrue("Tasks should have completed", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue("No more than two tasks should have run at a time", maxRunning.get() <= 2);
+    }
+
+    /**
+     * Queued tasks with higher priority should start first
+     */
+    @Test
+    public void testPriority() throws InterruptedException {
+        scheduler.setMaxConcurrentTasks(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.submit(new SyncScheduler.Task(0, "soup0", SyncManager.Priority.NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // test will fail
+                }
+                done.countDown();
+            }
+        }, null));
+        scheduler.submit(new SyncScheduler.Task(1, "soup1", SyncManager.Priority.LOW, new RecordingRunnable("low", order, done), null));
+        scheduler.submit(new SyncScheduler.Task(2, "soup2", SyncManager.Priority.NORMAL, new RecordingRunnable("normal", order, done), null));
+        scheduler.submit(new SyncScheduler.Task(3, "soup3", SyncManager.Priority.HIGH, new RecordingRunnable("high", order, done), null));
+        release.countDown();
+        Assert.assertTrue("Tasks should have completed", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Wrong order", "[high, normal, low]", order.toString());
+    }
+
+    /**
+     * Cancelled queued task should not run, cancelled running task should be flagged
+     */
+    @Test
+    public void testCancel() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.submit(new SyncScheduler.Task(1, "soup", SyncManager.Priority.NORMAL, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // test will fail
+                }
+            }
+        }, null));
+        scheduler.submit(new SyncScheduler.Task(2, "soup", SyncManager.Priority.NORMAL, new RecordingRunnable("cancelled", order, done), null));
+        scheduler.submit(new SyncScheduler.Task(3, "soup", SyncManager.Priority.NORMAL, new RecordingRunnable("ran", order, done), null));
+        Assert.assertTrue("First task should have started", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // Cancel queued task
+        SyncScheduler.Task queuedTask = scheduler.cancel(2);
+        Assert.assertNotNull("Queued task should have been found", queuedTask);
+        Assert.assertFalse("Queued task should not have started", queuedTask.isStarted());
+
+        // Cancel running task
+        SyncScheduler.Task runningTask = scheduler.cancel(1);
+        Assert.assertNotNull("Running task should have been found", runningTask);
+        Assert.assertTrue("Running task should have started", runningTask.isStarted());
+        Assert.assertTrue("Running task should be flagged as cancelled", scheduler.isCancelled(1));
+        Assert.assertNull("No task expected", scheduler.cancel(4));
+
+        release.countDown();
+        Assert.assertTrue("Tasks should have completed", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Wrong tasks run", "[ran]", order.toString());
+    }
+
+    /**
+     * Runnable keeping track of how many of its kind run at the same time
+     */
+    private static class TrackingRunnable implements Runnable {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final CountDownLatch done;
+
+        TrackingRunnable(AtomicInteger running, AtomicInteger maxRunning, CountDownLatch done) {
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            int count = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), count));
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            running.decrementAndGet();
+            done.countDown();
+        }
+    }
+
+    /**
+     * Runnable recording its name when it runs
+     */
+    private static class RecordingRunnable implements Runnable {
+        private final String name;
+        private final List<String> order;
+        private final CountDownLatch done;
+
+        RecordingRunnable(String name, List<String> order, CountDownLatch done) {
+            this.name = name;
+            this.order = order;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+            done.countDown();
+        }
+    }
+}
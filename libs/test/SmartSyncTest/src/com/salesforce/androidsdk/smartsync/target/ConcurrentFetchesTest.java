@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.target;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for ConcurrentFetches
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ConcurrentFetchesTest {
+
+    /**
+     * All fetches should run, no more than max in flight at the same time
+     */
+    @Test
+    public void testMaxInFlight() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        ConcurrentFetches fetches = new ConcurrentFetches(3);
+        try {
+            for (int i = 0; i < 12; i++) {
+                fetches.submit(new ConcurrentFetches.Fetch() {
+                    @Override
+                    public void run() {
+                        int count = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), count));
+                        }
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            // ignore
+                        }
+                        running.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                });
+            }
+            fetches.awaitAll();
+        } finally {
+            fetches.cancel();
+        }
+        Assert.assertEquals("All fetches should have completed", 12, completed.get());
+        Assert.assertTrue("Too many fetches in flight", maxRunning.get() <= 3);
+        Assert.assertTrue("Fetches should have run concurrently", maxRunning.get() > 1);
+    }
+
+    /**
+     * Failure of a fetch should be rethrown
+     */
+    @Test
+    public void testFailure() throws Exception {
+        ConcurrentFetches fetches = new ConcurrentFetches(2);
+        try {
+            fetches.submit(new ConcurrentFetches.Fetch() {
+                @Override
+                public void run() throws IOException {
+                    throw new IOException("fetch failed");
+                }
+            });
+            fetches.awaitAll();
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertEquals("Wrong exception", "fetch failed", e.getMessage());
+        } finally {
+            fetches.cancel();
+        }
+    }
+
+    /**
+     * Error thrown by a fetch should be rethrown (wrapped) too
+     */
+    @Test
+    public void testErrorFailure() throws Exception {
+        final AssertionError error = new AssertionError("fetch failed");
+        ConcurrentFetches fetches = new ConcurrentFetches(2);
+        try {
+            fetches.submit(new ConcurrentFetches.Fetch() {
+                @Override
+                public void run() {
+                    throw error;
+                }
+            });
+            fetches.awaitAll();
+            Assert.fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            Assert.assertSame("Wrong cause", error, e.getCause());
+        } finally {
+            fetches.cancel();
+        }
+    }
+}
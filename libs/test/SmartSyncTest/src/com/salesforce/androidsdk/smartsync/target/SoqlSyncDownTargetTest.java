@@ -40,7 +40,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Test class for SoqlSyncDownTarget.
@@ -78,6 +80,22 @@ public class SoqlSyncDownTargetTest extends SyncManagerTestCase {
         Assert.assertEquals("Wrong result for addFilterForReSync", "SELECT Id FROM Account WHERE LastModifiedDate > " + dateStr + " and Name = 'John' LIMIT 100", SoqlSyncDownTarget.addFilterForReSync("SELECT Id FROM Account WHERE Name = 'John' LIMIT 100", "LastModifiedDate", dateLong));
     }
 
+    /**
+     * Test getSoqlsForIdRanges with and without where clause
+     */
+    @Test
+    public void testGetSoqlsForIdRanges() {
+        List<String> soqls = SoqlSyncDownTarget.getSoqlsForIdRanges("SELECT Id FROM Account", "Id", Arrays.asList("001B", "001D"));
+        Assert.assertEquals("Wrong number of queries", 3, soqls.size());
+        Assert.assertEquals("Wrong query for first range", "SELECT Id FROM Account where Id < '001B'", soqls.get(0));
+        Assert.assertEquals("Wrong query for middle range", "SELECT Id FROM Account where Id >= '001B' and Id < '001D'", soqls.get(1));
+        Assert.assertEquals("Wrong query for last range", "SELECT Id FROM Account where Id >= '001D'", soqls.get(2));
+        soqls = SoqlSyncDownTarget.getSoqlsForIdRanges("SELECT Id FROM Account WHERE Name = 'John'", "Id", Arrays.asList("001B"));
+        Assert.assertEquals("Wrong number of queries", 2, soqls.size());
+        Assert.assertEquals("Wrong query for first range", "SELECT Id FROM Account WHERE Id < '001B' and Name = 'John'", soqls.get(0));
+        Assert.assertEquals("Wrong query for last range", "SELECT Id FROM Account WHERE Id >= '001B' and Name = 'John'", soqls.get(1));
+    }
+
     /**
      * Test getSoqlForRemoteIds for SoqlSyncDownTarget
      */
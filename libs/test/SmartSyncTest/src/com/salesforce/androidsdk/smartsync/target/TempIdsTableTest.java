@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.target;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartsync.manager.SyncManagerTestCase;
+import com.salesforce.androidsdk.smartsync.util.Constants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Test class for TempIdsTable (used to clean ghosts)
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class TempIdsTableTest extends SyncManagerTestCase {
+
+    private static final int COUNT_RECORDS = 1500;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        createAccountsSoup();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dropAccountsSoup();
+        super.tearDown();
+    }
+
+    /**
+     * Non-dirty records missing from the table should be deleted, dirty records should be left alone
+     */
+    @Test
+    public void testDeleteGhosts() throws Exception {
+        List<String> remoteIds = new ArrayList<>();
+        for (int i = 0; i < COUNT_RECORDS; i++) {
+            String id = "id" + i;
+            saveAccount(id, false);
+            if (i % 3 != 0) {
+                remoteIds.add(id);
+            }
+        }
+        saveAccount("dirtyGhost", true);
+
+        TempIdsTable remoteIdsTable = new TempIdsTable(smartStore);
+        try {
+            // Adding ids in batches (with duplicates)
+            remoteIdsTable.addIds(remoteIds.subList(0, COUNT_RECORDS / 2));
+            remoteIdsTable.addIds(remoteIds.subList(COUNT_RECORDS / 3, remoteIds.size()));
+            String nonDirtyIdsSql = String.format("SELECT {%s:%s} FROM {%s} WHERE {%s:%s} = 'false'",
+                    ACCOUNTS_SOUP, Constants.ID, ACCOUNTS_SOUP, ACCOUNTS_SOUP, SyncTarget.LOCAL);
+            int countDeleted = remoteIdsTable.deleteRecords(ACCOUNTS_SOUP,
+                    SyncDownTarget.getGhostRecordsSmartSql(ACCOUNTS_SOUP, Constants.ID, nonDirtyIdsSql, remoteIdsTable.getName()));
+            Assert.assertEquals("Wrong number of records deleted", COUNT_RECORDS / 3, countDeleted);
+        } finally {
+            remoteIdsTable.drop();
+        }
+
+        Set<String> expectedIds = new HashSet<>(remoteIds);
+        expectedIds.add("dirtyGhost");
+        Assert.assertEquals("Wrong ids left", expectedIds, getAccountIds());
+    }
+
+    /**
+     * deleteRecordsFromLocalStore should delete records with the given ids
+     */
+    @Test
+    public void testDeleteRecordsFromLocalStore() throws Exception {
+        saveAccount("id1", false);
+        saveAccount("id2", false);
+        saveAccount("id3", false);
+        new SoqlSyncDownTarget("SELECT Id FROM Account").deleteRecordsFromLocalStore(syncManager, ACCOUNTS_SOUP,
+                new HashSet<>(Arrays.asList("id1", "id3", "id4")), Constants.ID);
+        Assert.assertEquals("Wrong ids left", new HashSet<>(Arrays.asList("id2")), getAccountIds());
+    }
+
+    private void saveAccount(String id, boolean dirty) throws Exception {
+        JSONObject account = new JSONObject();
+        account.put(Constants.ID, id);
+        account.put(SyncTarget.LOCAL, dirty);
+        smartStore.create(ACCOUNTS_SOUP, account);
+    }
+
+    private Set<String> getAccountIds() throws Exception {
+        Set<String> ids = new HashSet<>();
+        JSONArray rows = smartStore.query(QuerySpec.buildSmartQuerySpec(
+                String.format("SELECT {%s:%s} FROM {%s}", ACCOUNTS_SOUP, Constants.ID, ACCOUNTS_SOUP), COUNT_RECORDS * 2), 0);
+        for (int i = 0; i < rows.length(); i++) {
+            ids.add(rows.getJSONArray(i).getString(0));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018-present, salesforce.com, inc.
+ * All rights reserved.
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * - Neither the name of salesforce.com, inc. nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission of salesforce.com, inc.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.salesforce.androidsdk.smartsync.util;
+
+import android.util.JsonReader;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+
+/**
+ * Tests for JSONReaderHelper
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class JSONReaderHelperTest {
+
+    /**
+     * Object read from a JsonReader should be the same as the one parsed by JSONObject
+     */
+    @Test
+    public void testReadObject() throws Exception {
+        String json = "{\"Id\":\"001\",\"Name\":\"Acme\",\"NumberOfEmployees\":12,\"AnnualRevenue\":1.5E7,"
+                + "\"BigNumber\":12345678901,\"IsDeleted\":false,\"Description\":null,"
+                + "\"attributes\":{\"type\":\"Account\"},\"Contacts\":{\"totalSize\":2,\"records\":[{\"Id\":\"003\"},{\"Id\":\"004\"}]}}";
+        JsonReader reader = new JsonReader(new StringReader(json));
+        JSONObject actual = JSONReaderHelper.readObject(reader);
+        JSONObject expected = new JSONObject(json);
+        Assert.assertEquals("Wrong object", expected.toString(), actual.toString());
+        Assert.assertEquals("Wrong int", 12, actual.get("NumberOfEmployees"));
+        Assert.assertEquals("Wrong long", 12345678901L, actual.get("BigNumber"));
+        Assert.assertEquals("Wrong double", 1.5E7, actual.get("AnnualRevenue"));
+        Assert.assertTrue("Wrong null", actual.isNull("Description"));
+    }
+
+    /**
+     * Array read from a JsonReader should be the same as the one parsed by JSONArray
+     */
+    @Test
+    public void testReadArray() throws Exception {
+        String json = "[1,\"two\",[3,4],{\"five\":5},true,null]";
+        JsonReader reader = new JsonReader(new StringReader(json));
+        JSONArray actual = JSONReaderHelper.readArray(reader);
+        Assert.assertEquals("Wrong array", new JSONArray(json).toString(), actual.toString());
+    }
+}